@@ -0,0 +1,636 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BinaryOperator;
+
+import components.map.Map;
+import components.map.Map2;
+import components.map.MapSecondary;
+import components.queue.Queue;
+import components.queue.Queue2;
+
+/**
+ * Thread-safe {@code Map} represented, like {@code Map4}, as a hash table
+ * using {@code Map}s for the buckets, with implementations of primary methods
+ * and of {@code merge}.
+ *
+ * <p>
+ * Bucket {@code i} is guarded by lock {@code stripes[i mod |stripes|]}, so
+ * threads working on keys in different stripes never wait for each other. The
+ * size is kept in a {@code LongAdder} so that concurrent {@code add}s do not
+ * all contend on one counter. Growing the table takes every lock (in index
+ * order); an operation that finds the table replaced after taking its lock
+ * simply retries. The buckets are kept in a plain Java array rather than an
+ * {@code Array} so that unsynchronized reads of the table reference are safe.
+ *
+ * <p>
+ * Each kernel method is atomic. Sequences of calls (e.g., {@code hasKey}
+ * followed by {@code add}) are not, which is what {@code merge} is for. The
+ * iterator returns the pairs present when it was created. {@code removeAny}
+ * throws {@code NoSuchElementException} if other threads empty {@code this}
+ * after the caller checked its size. {@code transferFrom} takes the locks of
+ * both maps, always those of the map with the smaller identity hash code
+ * first, so two threads transferring between the same two maps in opposite
+ * directions cannot deadlock.
+ *
+ * @param <K>
+ *            type of {@code Map} domain (key) entries
+ * @param <V>
+ *            type of {@code Map} range (associated value) entries
+ * @convention <pre>
+ * |$this.hashTable| > 0  and  |$this.stripes| > 0  and
+ * $this.initialTableSize > 0  and
+ * for all i: integer, pf: PARTIAL_FUNCTION, x: K
+ *     where (0 <= i  and  i < |$this.hashTable|  and
+ *            pf = $this.hashTable[i]  and
+ *            x is in DOMAIN(pf))
+ *   ([computed result of x.hashCode()] mod |$this.hashTable| = i))  and
+ * [when no operation is in progress,]
+ * $this.size.sum = sum i: integer, pf: PARTIAL_FUNCTION
+ *     where (0 <= i  and  i < |$this.hashTable|  and
+ *            pf = $this.hashTable[i])
+ *   (|pf|)  and
+ * [$this.hashTable[i] is only read or changed by a thread holding
+ *  $this.stripes[i mod |$this.stripes|]]
+ * </pre>
+ * @correspondence <pre>
+ * this = union i: integer, pf: PARTIAL_FUNCTION
+ *            where (0 <= i  and  i < |$this.hashTable|  and
+ *                   pf = $this.hashTable[i])
+ *          (pf)
+ * </pre>
+ *
+ * @author Mingzhu Bao and Andy Shih
+ *
+ */
+public class ConcurrentMap4<K, V> extends MapSecondary<K, V> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Default size of hash table.
+     */
+    private static final int DEFAULT_HASH_TABLE_SIZE = 101;
+
+    /**
+     * Default number of locks.
+     */
+    private static final int DEFAULT_STRIPES = 64;
+
+    /**
+     * Ratio of size to number of buckets above which the table grows.
+     */
+    private static final double LOAD_FACTOR = 0.75;
+
+    /**
+     * Buckets for hashing.
+     */
+    private volatile Map<K, V>[] hashTable;
+
+    /**
+     * Locks; bucket i is guarded by stripes[i mod |stripes|]. They stay with
+     * {@code this} for its lifetime, whatever table it holds.
+     */
+    private final ReentrantLock[] stripes;
+
+    /**
+     * Total size of abstract {@code this}; like {@code stripes}, never
+     * replaced, so reading it needs no lock.
+     */
+    private final LongAdder size = new LongAdder();
+
+    /**
+     * Size of hash table chosen by the client; {@code clear} goes back to it.
+     */
+    private int initialTableSize;
+
+    /**
+     * Bucket at which {@code removeAny} resumes looking for a pair. It is
+     * only a hint, read and written without holding any lock: a stale value
+     * just makes the next {@code removeAny} look further.
+     */
+    private volatile int removeCursor;
+
+    /**
+     * Lock taken first by {@code transferFrom} between two maps with the same
+     * identity hash code, which then cannot be ordered by it.
+     */
+    private static final ReentrantLock TIE_LOCK = new ReentrantLock();
+
+    /**
+     * Computes {@code a} mod {@code b} as % should have been defined to work.
+     *
+     * @param a
+     *            the number being reduced
+     * @param b
+     *            the modulus
+     * @return the result of a mod b, which satisfies 0 <= {@code mod} < b
+     * @requires b > 0
+     * @ensures <pre>
+     * 0 <= mod  and  mod < b  and
+     * there exists k: integer (a = k * b + mod)
+     * </pre>
+     */
+    private static int mod(int a, int b) {
+        assert b > 0 : "Violation of: b > 0";
+        int result = a % b;
+        if (result < 0) {
+            result = result + b;
+        }
+        return result;
+    }
+
+    /**
+     * Creates a table of {@code tableSize} empty buckets.
+     *
+     * @param <K>
+     *            type of {@code Map} domain (key) entries
+     * @param <V>
+     *            type of {@code Map} range (associated value) entries
+     * @param tableSize
+     *            the number of buckets
+     * @return the new table
+     * @requires tableSize > 0
+     * @ensures |newTable| = tableSize  and  [every bucket of newTable is {}]
+     */
+    @SuppressWarnings("unchecked")
+    private static <K, V> Map<K, V>[] newTable(int tableSize) {
+        Map<K, V>[] table = (Map<K, V>[]) new Map<?, ?>[tableSize];
+        for (int i = 0; i < tableSize; i++) {
+            table[i] = new Map2<K, V>();
+        }
+        return table;
+    }
+
+    /**
+     * Creator of initial representation, but for {@code stripes}, which the
+     * constructor makes.
+     *
+     * @param hashTableSize
+     *            the size of the hash table
+     * @requires hashTableSize > 0
+     * @ensures <pre>
+     * |$this.hashTable| = hashTableSize  and
+     * [every bucket of $this.hashTable is {}]  and
+     * $this.initialTableSize = hashTableSize  and
+     * $this.size.sum = 0
+     * </pre>
+     */
+    private void createNewRep(int hashTableSize) {
+        this.size.reset();
+        this.initialTableSize = hashTableSize;
+        this.removeCursor = 0;
+        this.hashTable = newTable(hashTableSize);
+    }
+
+    /**
+     * Locks the stripe guarding the bucket of {@code key} in the current table
+     * and returns that table.
+     *
+     * @param key
+     *            the key whose bucket is about to be used
+     * @return the table, which cannot be replaced until
+     *         {@code unlockBucket(key, table)} is called
+     * @ensures <pre>
+     * lockBucket = $this.hashTable  and
+     * [the current thread holds the stripe guarding the bucket of key]
+     * </pre>
+     */
+    private Map<K, V>[] lockBucket(K key) {
+        int hash = key.hashCode();
+        Map<K, V>[] table = this.hashTable;
+        ReentrantLock lock = this.stripes[mod(hash, table.length)
+                % this.stripes.length];
+        lock.lock();
+        while (table != this.hashTable) {
+            /*
+             * The table grew while we waited for the lock: the key's bucket,
+             * and so its stripe, may be different now
+             */
+            lock.unlock();
+            table = this.hashTable;
+            lock = this.stripes[mod(hash, table.length) % this.stripes.length];
+            lock.lock();
+        }
+        return table;
+    }
+
+    /**
+     * Releases the stripe taken by {@code lockBucket(key)}.
+     *
+     * @param key
+     *            the key passed to {@code lockBucket}
+     * @param table
+     *            the table returned by {@code lockBucket}
+     */
+    private void unlockBucket(K key, Map<K, V>[] table) {
+        this.stripes[mod(key.hashCode(), table.length) % this.stripes.length]
+                .unlock();
+    }
+
+    /**
+     * Acquires every stripe, in index order.
+     */
+    private void lockAll() {
+        for (ReentrantLock lock : this.stripes) {
+            lock.lock();
+        }
+    }
+
+    /**
+     * Releases every stripe.
+     */
+    private void unlockAll() {
+        for (ReentrantLock lock : this.stripes) {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Acquires every stripe of {@code a} and of {@code b}, in an order that
+     * depends only on the two maps, so that two threads locking the same two
+     * maps, in whichever argument order, cannot deadlock.
+     *
+     * @param a
+     *            one map
+     * @param b
+     *            the other map
+     * @requires a /= b
+     */
+    private static void lockBoth(ConcurrentMap4<?, ?> a,
+            ConcurrentMap4<?, ?> b) {
+        int hashA = System.identityHashCode(a);
+        int hashB = System.identityHashCode(b);
+        if (hashA < hashB) {
+            a.lockAll();
+            b.lockAll();
+        } else if (hashB < hashA) {
+            b.lockAll();
+            a.lockAll();
+        } else {
+            TIE_LOCK.lock();
+            try {
+                a.lockAll();
+                b.lockAll();
+            } finally {
+                TIE_LOCK.unlock();
+            }
+        }
+    }
+
+    /**
+     * Grows the table if size exceeds the load factor times the number of
+     * buckets.
+     *
+     * @updates this
+     * @ensures this = #this
+     */
+    private void growIfNeeded() {
+        if (this.size.sum() > LOAD_FACTOR * this.hashTable.length) {
+            this.lockAll();
+            try {
+                Map<K, V>[] table = this.hashTable;
+                if (this.size.sum() > LOAD_FACTOR * table.length) {
+                    Map<K, V>[] bigger = newTable(2 * table.length + 1);
+                    for (Map<K, V> bucket : table) {
+                        while (bucket.size() > 0) {
+                            Pair<K, V> p = bucket.removeAny();
+                            bigger[mod(p.key().hashCode(), bigger.length)]
+                                    .add(p.key(), p.value());
+                        }
+                    }
+                    this.hashTable = bigger;
+                }
+            } finally {
+                this.unlockAll();
+            }
+        }
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public ConcurrentMap4() {
+        this(DEFAULT_HASH_TABLE_SIZE, DEFAULT_STRIPES);
+    }
+
+    /**
+     * Constructor resulting in a hash table of size {@code hashTableSize}.
+     *
+     * @param hashTableSize
+     *            size of hash table
+     * @requires hashTableSize > 0
+     * @ensures this = {}
+     */
+    public ConcurrentMap4(int hashTableSize) {
+        this(hashTableSize, DEFAULT_STRIPES);
+    }
+
+    /**
+     * Constructor resulting in a hash table of size {@code hashTableSize}
+     * guarded by {@code stripeCount} locks.
+     *
+     * @param hashTableSize
+     *            size of hash table
+     * @param stripeCount
+     *            number of locks
+     * @requires hashTableSize > 0  and  stripeCount > 0
+     * @ensures this = {}
+     */
+    public ConcurrentMap4(int hashTableSize, int stripeCount) {
+        assert hashTableSize > 0 : "Violation of: hashTableSize > 0";
+        assert stripeCount > 0 : "Violation of: stripeCount > 0";
+        this.stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.createNewRep(hashTableSize);
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final Map<K, V> newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.lockAll();
+        try {
+            this.size.reset();
+            this.removeCursor = 0;
+            this.hashTable = newTable(this.initialTableSize);
+        } finally {
+            this.unlockAll();
+        }
+    }
+
+    @Override
+    public final void transferFrom(Map<K, V> source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof ConcurrentMap4<?, ?> : ""
+                + "Violation of: source is of dynamic type ConcurrentMap4<?,?>";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case: source must be of dynamic type
+         * ConcurrentMap4<?,?>, and the ?,? must be K,V or the call would not
+         * have compiled.
+         */
+        ConcurrentMap4<K, V> localSource = (ConcurrentMap4<K, V>) source;
+        lockBoth(this, localSource);
+        try {
+            this.initialTableSize = localSource.initialTableSize;
+            this.size.reset();
+            this.size.add(localSource.size.sumThenReset());
+            this.removeCursor = localSource.removeCursor;
+            this.hashTable = localSource.hashTable;
+            localSource.removeCursor = 0;
+            localSource.hashTable = newTable(localSource.initialTableSize);
+        } finally {
+            localSource.unlockAll();
+            this.unlockAll();
+        }
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(K key, V value) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+        Map<K, V>[] table = this.lockBucket(key);
+        try {
+            Map<K, V> bucket = table[mod(key.hashCode(), table.length)];
+            assert !bucket.hasKey(key) : ""
+                    + "Violation of: key is not in DOMAIN(this)";
+            bucket.add(key, value);
+            this.size.increment();
+        } finally {
+            this.unlockBucket(key, table);
+        }
+        this.growIfNeeded();
+    }
+
+    @Override
+    public final Pair<K, V> remove(K key) {
+        assert key != null : "Violation of: key is not null";
+        Map<K, V>[] table = this.lockBucket(key);
+        try {
+            Map<K, V> bucket = table[mod(key.hashCode(), table.length)];
+            assert bucket.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+            Pair<K, V> currPair = bucket.remove(key);
+            this.size.decrement();
+            return currPair;
+        } finally {
+            this.unlockBucket(key, table);
+        }
+    }
+
+    @Override
+    public final Pair<K, V> removeAny() {
+        assert this.size() > 0 : "Violation of: this /= empty_set";
+        Pair<K, V> removed = null;
+        while (removed == null && this.size.sum() > 0) {
+            /*
+             * Another thread may empty a bucket between our check and our
+             * removal, or grow the table; take the stripe before looking.
+             * Start at the cursor and wrap around, so pairs added behind it
+             * are found too; give up on a table once it has been replaced
+             */
+            Map<K, V>[] table = this.hashTable;
+            int start = this.removeCursor % table.length;
+            int n = 0;
+            while (removed == null && n < table.length
+                    && table == this.hashTable) {
+                int i = (start + n) % table.length;
+                ReentrantLock lock = this.stripes[i % this.stripes.length];
+                lock.lock();
+                try {
+                    if (table == this.hashTable && table[i].size() > 0) {
+                        removed = table[i].removeAny();
+                        this.size.decrement();
+                        this.removeCursor = i;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                n++;
+            }
+        }
+        if (removed == null) {
+            /*
+             * Other threads emptied this after the caller checked its size
+             */
+            throw new NoSuchElementException("removeAny on an empty map");
+        }
+        return removed;
+    }
+
+    @Override
+    public final V value(K key) {
+        assert key != null : "Violation of: key is not null";
+        Map<K, V>[] table = this.lockBucket(key);
+        try {
+            Map<K, V> bucket = table[mod(key.hashCode(), table.length)];
+            assert bucket.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+            return bucket.value(key);
+        } finally {
+            this.unlockBucket(key, table);
+        }
+    }
+
+    @Override
+    public final boolean hasKey(K key) {
+        assert key != null : "Violation of: key is not null";
+        Map<K, V>[] table = this.lockBucket(key);
+        try {
+            return table[mod(key.hashCode(), table.length)].hasKey(key);
+        } finally {
+            this.unlockBucket(key, table);
+        }
+    }
+
+    @Override
+    public final int size() {
+        return (int) this.size.sum();
+    }
+
+    @Override
+    public final Iterator<Pair<K, V>> iterator() {
+        return new ConcurrentMap4Iterator();
+    }
+
+    /*
+     * Other methods ----------------------------------------------------------
+     */
+
+    /**
+     * Atomically associates {@code value} with {@code key} if {@code key} is
+     * not in {@code this}, and otherwise replaces the value associated with
+     * {@code key} by {@code combine} applied to it and {@code value}. This is
+     * the way for several threads to count into one map, e.g.,
+     * {@code map.merge(word, 1, Integer::sum)}.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value to associate with or combine into {@code key}
+     * @param combine
+     *            the function combining the old value and {@code value}
+     * @return the value now associated with {@code key}
+     * @updates this
+     * @requires [combine does not return null and does not use this]
+     * @ensures <pre>
+     * if key is in DOMAIN(#this) then
+     *   this = (#this \ {(key, #this(key))}) union
+     *          {(key, combine(#this(key), value))}
+     * else
+     *   this = #this union {(key, value)}
+     *   and
+     * merge = this(key)
+     * </pre>
+     */
+    public final V merge(K key, V value, BinaryOperator<V> combine) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+        assert combine != null : "Violation of: combine is not null";
+        V result = value;
+        boolean added = false;
+        Map<K, V>[] table = this.lockBucket(key);
+        try {
+            Map<K, V> bucket = table[mod(key.hashCode(), table.length)];
+            if (bucket.hasKey(key)) {
+                result = combine.apply(bucket.value(key), value);
+                bucket.replaceValue(key, result);
+            } else {
+                bucket.add(key, value);
+                this.size.increment();
+                added = true;
+            }
+        } finally {
+            this.unlockBucket(key, table);
+        }
+        if (added) {
+            this.growIfNeeded();
+        }
+        return result;
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for
+     * {@code ConcurrentMap4}. The pairs are copied when the iterator is
+     * created, with every stripe held, so the iterator sees a consistent
+     * state no matter what other threads do afterward.
+     */
+    private final class ConcurrentMap4Iterator
+            implements Iterator<Pair<K, V>> {
+
+        /**
+         * Pairs not yet returned.
+         */
+        private final Queue<Pair<K, V>> unseen;
+
+        /**
+         * No-argument constructor.
+         */
+        ConcurrentMap4Iterator() {
+            this.unseen = new Queue2<>();
+            ConcurrentMap4.this.lockAll();
+            try {
+                for (Map<K, V> bucket : ConcurrentMap4.this.hashTable) {
+                    for (Pair<K, V> p : bucket) {
+                        this.unseen.enqueue(p);
+                    }
+                }
+            } finally {
+                ConcurrentMap4.this.unlockAll();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.unseen.length() > 0;
+        }
+
+        @Override
+        public Pair<K, V> next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            return this.unseen.dequeue();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
@@ -0,0 +1,529 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import components.map.Map;
+import components.map.MapSecondary;
+
+/**
+ * {@code Map} from keys to counts, represented as an open-addressing hash
+ * table (linear probing, as in {@code Map4a}) over a key array and a parallel
+ * {@code int} array, with implementations of primary methods and of the
+ * counting methods {@code increment} and {@code addTo}. The probing itself is
+ * done by {@code Map4a}'s helpers, which work on the key array alone.
+ *
+ * <p>
+ * Counts are stored unboxed, so {@code increment} and {@code addTo} on a key
+ * already in {@code this} allocate nothing; an {@code Integer} is only created
+ * when a count is read back through the {@code Map} methods.
+ *
+ * <p>
+ * Since counted maps are usually drained with {@code removeAny} once counting
+ * is done, {@code removeAny} resumes from a cursor, and the table halves (never
+ * below the size asked for) whenever fewer than 1 / {@code SHRINK_DIVISOR} of
+ * its slots are in use, so draining takes time linear in the number of pairs.
+ *
+ * @param <K>
+ *            type of {@code Map} domain (key) entries
+ * @mathdefinitions <pre>
+ * HOME (
+ *   x: K,
+ *   n: integer
+ *  ) : integer is
+ *  [computed result of Map4a.spread(x.hashCode())] mod n
+ *
+ * IS_RUN (
+ *   keys: string of K,
+ *   from: integer,
+ *   to: integer
+ *  ) : boolean is
+ *  [every slot visited going forward (wrapping around) from slot from to
+ *   slot to, inclusive, holds a non-null key]
+ * </pre>
+ * @convention <pre>
+ * |$this.keys| = |$this.counts|  and
+ * [|$this.keys| is a power of 2]  and
+ * $this.size < |$this.keys|  and
+ * for all i: integer
+ *     where (0 <= i  and  i < |$this.keys|)
+ *   (if $this.keys[i] = null then $this.counts[i] = 0)  and
+ * for all i: integer
+ *     where (0 <= i  and  i < |$this.keys|  and  $this.keys[i] /= null)
+ *   (IS_RUN($this.keys, HOME($this.keys[i], |$this.keys|), i)  and
+ *    for all j: integer
+ *        where (0 <= j  and  j < |$this.keys|  and  j /= i)
+ *      ($this.keys[j] /= $this.keys[i]))  and
+ * $this.size = |{i: integer where ($this.keys[i] /= null)}|  and
+ * ($this.size * SHRINK_DIVISOR >= |$this.keys|  or
+ *  |$this.keys| = [computed result of Map4a.tableLength(
+ *                   $this.initialCapacity)])  and
+ * 0 <= $this.removeCursor < |$this.keys|  and
+ * [every slot after $this.removeCursor is empty]  and
+ * 0 <= $this.initialCapacity
+ * </pre>
+ * @correspondence <pre>
+ * this = {(k, v): (K, integer)
+ *            where (there exists i: integer
+ *                     ($this.keys[i] = k  and  $this.counts[i] = v))}
+ * </pre>
+ *
+ * @author Mingzhu Bao and Andy Shih
+ *
+ */
+public class CountingMap4<K> extends MapSecondary<K, Integer> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Default number of pairs the table holds before it first grows.
+     */
+    private static final int DEFAULT_HASH_TABLE_SIZE = 101;
+
+    /**
+     * The table halves when fewer than 1 / SHRINK_DIVISOR of its slots are in
+     * use.
+     */
+    private static final int SHRINK_DIVISOR = 8;
+
+    /**
+     * Keys, or {@code null} for an empty slot.
+     */
+    private Object[] keys;
+
+    /**
+     * Counts, parallel to {@code keys}.
+     */
+    private int[] counts;
+
+    /**
+     * Total size of abstract {@code this}.
+     */
+    private int size;
+
+    /**
+     * Slot at which {@code removeAny} resumes looking for a pair, going
+     * down.
+     */
+    private int removeCursor;
+
+    /**
+     * Number of pairs the client asked room for; {@code clear} goes back to
+     * it.
+     */
+    private int initialCapacity;
+
+    /**
+     * Creator of initial representation.
+     *
+     * @param capacity
+     *            number of pairs to make room for
+     * @requires capacity >= 0
+     * @ensures <pre>
+     * $this.keys = <null, ..., null>  and
+     * $this.counts = <0, ..., 0>  and
+     * |$this.keys| = Map4a.tableLength(capacity)  and
+     * $this.initialCapacity = capacity  and
+     * $this.size = 0  and  $this.removeCursor = |$this.keys| - 1
+     * </pre>
+     */
+    private void createNewRep(int capacity) {
+        int length = Map4a.tableLength(capacity);
+        this.keys = new Object[length];
+        this.counts = new int[length];
+        this.size = 0;
+        this.removeCursor = length - 1;
+        this.initialCapacity = capacity;
+    }
+
+    /**
+     * Returns the slot holding {@code key}, or the empty slot that ends its
+     * probe sequence if {@code key} is not in {@code this}.
+     *
+     * @param key
+     *            the key to look for
+     * @return the slot index
+     * @ensures <pre>
+     * ($this.keys[indexOf] = key  or  $this.keys[indexOf] = null)  and
+     * IS_RUN($this.keys, HOME(key, |$this.keys|), indexOf - 1)
+     * </pre>
+     */
+    private int indexOf(Object key) {
+        return Map4a.slotOf(this.keys, key);
+    }
+
+    /**
+     * Moves every pair into a table of {@code length} slots.
+     *
+     * @param length
+     *            the new number of slots
+     * @updates this
+     * @requires [length is a power of 2]  and  $this.size < length
+     * @ensures <pre>
+     * this = #this  and  |$this.keys| = length  and
+     * $this.removeCursor = length - 1
+     * </pre>
+     */
+    private void rehash(int length) {
+        Object[] oldKeys = this.keys;
+        int[] oldCounts = this.counts;
+        this.keys = new Object[length];
+        this.counts = new int[length];
+        this.removeCursor = length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            Object k = oldKeys[j];
+            if (k != null) {
+                int i = Map4a.emptySlot(this.keys, k);
+                this.keys[i] = k;
+                this.counts[i] = oldCounts[j];
+            }
+        }
+    }
+
+    /**
+     * Returns the slot into which a new key with probe sequence ending at
+     * {@code i} should go, growing the table first if it would become too
+     * full.
+     *
+     * @param key
+     *            the key about to be inserted
+     * @param i
+     *            the empty slot ending the probe sequence of {@code key}
+     * @return the slot for {@code key}
+     * @updates this
+     * @requires key is not in DOMAIN(this)  and  $this.keys[i] = null
+     * @ensures <pre>
+     * this = #this  and  $this.keys[slotForNewKey] = null  and
+     * $this.removeCursor = |$this.keys| - 1
+     * </pre>
+     */
+    private int slotForNewKey(K key, int i) {
+        int slot = i;
+        if (Map4a.isOverloaded(this.size + 1, this.keys.length)) {
+            this.rehash(2 * this.keys.length);
+            slot = this.indexOf(key);
+        }
+        /*
+         * The key may go past the cursor
+         */
+        this.removeCursor = this.keys.length - 1;
+        return slot;
+    }
+
+    /**
+     * Empties slot {@code hole} and shifts back any later pair of the same run
+     * whose probe sequence passes over {@code hole}.
+     *
+     * @param hole
+     *            the slot to empty
+     * @updates $this.keys, $this.counts
+     * @requires $this.keys[hole] /= null
+     * @ensures <pre>
+     * [the pair in slot hole is removed, and the convention again holds for
+     *  the remaining pairs]
+     * </pre>
+     */
+    private void deleteSlot(int hole) {
+        int free = hole;
+        this.keys[free] = null;
+        int i = Map4a.nextToShift(this.keys, free);
+        while (i >= 0) {
+            this.keys[free] = this.keys[i];
+            this.counts[free] = this.counts[i];
+            this.keys[i] = null;
+            free = i;
+            i = Map4a.nextToShift(this.keys, free);
+        }
+        this.counts[free] = 0;
+    }
+
+    /**
+     * Removes the pair in slot {@code i} and returns it.
+     *
+     * @param i
+     *            the slot
+     * @return the removed pair
+     * @updates this
+     * @requires $this.keys[i] /= null
+     * @ensures <pre>
+     * removeSlot = (#$this.keys[i], #$this.counts[i])  and
+     * this = #this \ {removeSlot}
+     * </pre>
+     */
+    @SuppressWarnings("unchecked")
+    private Pair<K, Integer> removeSlot(int i) {
+        Pair<K, Integer> removed = new SimplePair<>((K) this.keys[i],
+                this.counts[i]);
+        this.deleteSlot(i);
+        this.size--;
+        int half = this.keys.length / 2;
+        if ((long) this.size * SHRINK_DIVISOR < this.keys.length
+                && half >= Map4a.tableLength(this.initialCapacity)) {
+            this.rehash(half);
+        }
+        return removed;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public CountingMap4() {
+        this.createNewRep(DEFAULT_HASH_TABLE_SIZE);
+    }
+
+    /**
+     * Constructor resulting in a table with room for {@code hashTableSize}
+     * pairs before it first grows.
+     *
+     * @param hashTableSize
+     *            number of pairs to make room for
+     * @requires hashTableSize > 0
+     * @ensures this = {}
+     */
+    public CountingMap4(int hashTableSize) {
+        assert hashTableSize > 0 : "Violation of: hashTableSize > 0";
+        this.createNewRep(hashTableSize);
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final Map<K, Integer> newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.createNewRep(this.initialCapacity);
+    }
+
+    @Override
+    public final void transferFrom(Map<K, Integer> source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof CountingMap4<?> : ""
+                + "Violation of: source is of dynamic type CountingMap4<?>";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case: source must be of dynamic type
+         * CountingMap4<?>, and the ? must be K or the call would not have
+         * compiled.
+         */
+        CountingMap4<K> localSource = (CountingMap4<K>) source;
+        this.keys = localSource.keys;
+        this.counts = localSource.counts;
+        this.size = localSource.size;
+        this.removeCursor = localSource.removeCursor;
+        this.initialCapacity = localSource.initialCapacity;
+        localSource.createNewRep(localSource.initialCapacity);
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(K key, Integer value) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+        assert !this.hasKey(key) : "Violation of: key is not in DOMAIN(this)";
+        int i = this.slotForNewKey(key, this.indexOf(key));
+        this.keys[i] = key;
+        this.counts[i] = value;
+        this.size++;
+    }
+
+    @Override
+    public final Pair<K, Integer> remove(K key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+        return this.removeSlot(this.indexOf(key));
+    }
+
+    @Override
+    public final Pair<K, Integer> removeAny() {
+        assert this.size() > 0 : "Violation of: this /= empty_set";
+        /*
+         * Every slot after the cursor is empty, so the pair found is the last
+         * of its run and deleteSlot has nothing to shift back (see
+         * Map4a.removeAny)
+         */
+        while (this.keys[this.removeCursor] == null) {
+            this.removeCursor--;
+        }
+        return this.removeSlot(this.removeCursor);
+    }
+
+    @Override
+    public final Integer value(K key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+        return this.counts[this.indexOf(key)];
+    }
+
+    @Override
+    public final boolean hasKey(K key) {
+        assert key != null : "Violation of: key is not null";
+        return this.keys[this.indexOf(key)] != null;
+    }
+
+    @Override
+    public final int size() {
+        return this.size;
+    }
+
+    @Override
+    public final Iterator<Pair<K, Integer>> iterator() {
+        return new CountingMap4Iterator();
+    }
+
+    /*
+     * Counting methods -------------------------------------------------------
+     */
+
+    /**
+     * Adds {@code delta} to the count associated with {@code key}, first
+     * adding {@code key} with count 0 if it is not in {@code this}.
+     *
+     * @param key
+     *            the key whose count is updated
+     * @param delta
+     *            the amount added to the count
+     * @return the updated count
+     * @updates this
+     * @ensures <pre>
+     * if key is in DOMAIN(#this) then
+     *   this = (#this \ {(key, #this(key))}) union
+     *          {(key, #this(key) + delta)}
+     * else
+     *   this = #this union {(key, delta)}
+     *   and
+     * addTo = this(key)
+     * </pre>
+     */
+    public final int addTo(K key, int delta) {
+        assert key != null : "Violation of: key is not null";
+        int i = this.indexOf(key);
+        if (this.keys[i] == null) {
+            i = this.slotForNewKey(key, i);
+            this.keys[i] = key;
+            this.size++;
+        }
+        this.counts[i] += delta;
+        return this.counts[i];
+    }
+
+    /**
+     * Adds 1 to the count associated with {@code key}, first adding
+     * {@code key} with count 0 if it is not in {@code this}.
+     *
+     * @param key
+     *            the key whose count is updated
+     * @return the updated count
+     * @updates this
+     * @ensures <pre>
+     * if key is in DOMAIN(#this) then
+     *   this = (#this \ {(key, #this(key))}) union {(key, #this(key) + 1)}
+     * else
+     *   this = #this union {(key, 1)}
+     *   and
+     * increment = this(key)
+     * </pre>
+     */
+    public final int increment(K key) {
+        assert key != null : "Violation of: key is not null";
+        return this.addTo(key, 1);
+    }
+
+    /**
+     * Reports the count associated with {@code key} without boxing it.
+     *
+     * @param key
+     *            the key whose count is reported
+     * @return the count associated with {@code key}, or 0 if {@code key} is
+     *         not in {@code this}
+     * @ensures <pre>
+     * if key is in DOMAIN(this) then
+     *   count = this(key)
+     * else
+     *   count = 0
+     * </pre>
+     */
+    public final int count(K key) {
+        assert key != null : "Violation of: key is not null";
+        return this.counts[this.indexOf(key)];
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for {@code CountingMap4}.
+     */
+    private final class CountingMap4Iterator
+            implements Iterator<Pair<K, Integer>> {
+
+        /**
+         * Number of elements seen already (i.e., |~this.seen|).
+         */
+        private int numberSeen;
+
+        /**
+         * Slot from which the next element will come, once empty slots are
+         * skipped.
+         */
+        private int currentSlot;
+
+        /**
+         * No-argument constructor.
+         */
+        CountingMap4Iterator() {
+            this.numberSeen = 0;
+            this.currentSlot = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.numberSeen < CountingMap4.this.size;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Pair<K, Integer> next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            this.numberSeen++;
+            while (CountingMap4.this.keys[this.currentSlot] == null) {
+                this.currentSlot++;
+            }
+            int i = this.currentSlot;
+            this.currentSlot++;
+            return new SimplePair<>((K) CountingMap4.this.keys[i],
+                    CountingMap4.this.counts[i]);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
@@ -0,0 +1,626 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import components.map.Map;
+import components.map.MapSecondary;
+
+/**
+ * {@code Map} represented as a cuckoo hash table: two tables, each key having
+ * exactly one candidate slot in each, plus a small stash, with
+ * implementations of primary methods.
+ *
+ * <p>
+ * A key is only ever in one of its two candidate slots or in the stash, so
+ * {@code hasKey} and {@code value} look at two slots and then, only if the
+ * stash is not empty, at its few slots; no lookup walks a chain or a probe
+ * sequence. {@code add} puts the new pair in a free candidate slot if there is
+ * one, and otherwise evicts the pair in the first one, which moves to its own
+ * other candidate slot, possibly evicting another pair, and so on. A chain of
+ * evictions longer than {@code maxKicks} (a small multiple of the log of the
+ * table length) ends with the homeless pair going into the stash, and when
+ * the stash is full too, every pair is placed again with new hash seeds.
+ *
+ * <p>
+ * The tables are kept at most half full, where with good hash codes a
+ * rebuild is rare and the stash is almost always empty. Keys that share a
+ * hash code share both candidate slots, though, so if more of them than the
+ * tables and stash can hold are added, no seed helps; after
+ * {@code REBUILD_ATTEMPTS} failed rebuilds the stash doubles instead, and
+ * lookups of those keys get slower, but never wrong.
+ *
+ * @param <K>
+ *            type of {@code Map} domain (key) entries
+ * @param <V>
+ *            type of {@code Map} range (associated value) entries
+ * @convention <pre>
+ * [$this.capacity is a power of 2]  and
+ * |$this.keys| = |$this.values| = 2 * $this.capacity + $this.stashCapacity
+ *   and
+ * for all i: integer
+ *     where (0 <= i  and  i < |$this.keys|)
+ *   (($this.keys[i] = null) = ($this.values[i] = null)  and
+ *    if $this.keys[i] /= null  and  i < 2 * $this.capacity then
+ *      (i = slot0($this.keys[i])  or  i = slot1($this.keys[i])))  and
+ * [no two keys are equal]  and
+ * $this.size = |{i: integer where ($this.keys[i] /= null)}|  and
+ * $this.size <= $this.capacity  and
+ * $this.stashSize = |{i: integer
+ *                      where (i >= 2 * $this.capacity  and
+ *                             $this.keys[i] /= null)}|  and
+ * 0 <= $this.removeCursor <= |$this.keys|  and
+ * [every slot before $this.removeCursor is empty]  and
+ * 0 < $this.initialCapacity
+ * </pre>
+ * @correspondence <pre>
+ * this = {(k, v): (K, V)
+ *            where (there exists i: integer
+ *                     ($this.keys[i] = k  and  $this.values[i] = v))}
+ * </pre>
+ *
+ * @author Mingzhu Bao and Andy Shih
+ *
+ */
+public class CuckooMap4<K, V> extends MapSecondary<K, V> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Default number of pairs the tables hold before they first grow.
+     */
+    private static final int DEFAULT_HASH_TABLE_SIZE = 101;
+
+    /**
+     * Number of slots in the stash of a new or cleared map.
+     */
+    private static final int STASH_SIZE = 4;
+
+    /**
+     * Number of rebuilds with new seeds tried before the stash is doubled.
+     */
+    private static final int REBUILD_ATTEMPTS = 4;
+
+    /**
+     * {@code maxKicks} is this many times the log of the table length, plus
+     * one.
+     */
+    private static final int KICKS_PER_LOG = 4;
+
+    /**
+     * Added to a seed to get the next one (2^32 divided by the golden ratio).
+     */
+    private static final int SEED_STEP = 0x9e3779b9;
+
+    /**
+     * Keys; slots [0, capacity) are the first table, [capacity, 2 *
+     * capacity) the second, and the rest the stash.
+     */
+    private Object[] keys;
+
+    /**
+     * Values, parallel to {@code keys}.
+     */
+    private Object[] values;
+
+    /**
+     * Number of slots of each table; a power of 2.
+     */
+    private int capacity;
+
+    /**
+     * Number of slots of the stash.
+     */
+    private int stashCapacity;
+
+    /**
+     * Number of pairs in the stash.
+     */
+    private int stashSize;
+
+    /**
+     * Seed of the hash function of the first table.
+     */
+    private int seed0;
+
+    /**
+     * Seed of the hash function of the second table.
+     */
+    private int seed1;
+
+    /**
+     * Longest chain of evictions tried before using the stash.
+     */
+    private int maxKicks;
+
+    /**
+     * Total size of abstract {@code this}.
+     */
+    private int size;
+
+    /**
+     * Slot at which {@code removeAny} resumes looking for a pair.
+     */
+    private int removeCursor;
+
+    /**
+     * Number of pairs the client asked room for; {@code clear} goes back to
+     * it.
+     */
+    private int initialCapacity;
+
+    /**
+     * Returns the number of slots per table needed to hold {@code pairs}
+     * pairs with the tables at most half full.
+     *
+     * @param pairs
+     *            the number of pairs
+     * @return the number of slots per table
+     * @requires pairs >= 0
+     * @ensures [tableLength is a power of 2]  and  pairs <= tableLength
+     */
+    private static int tableLength(int pairs) {
+        int length = 1;
+        while (length < pairs) {
+            length *= 2;
+        }
+        return length;
+    }
+
+    /**
+     * Returns the slot of {@code key} in the first table.
+     *
+     * @param key
+     *            the key
+     * @return the slot
+     * @ensures 0 <= slot0 < $this.capacity
+     */
+    private int slot0(Object key) {
+        return HashStrategies.mix(key.hashCode() ^ this.seed0)
+                & (this.capacity - 1);
+    }
+
+    /**
+     * Returns the slot of {@code key} in the second table.
+     *
+     * @param key
+     *            the key
+     * @return the slot
+     * @ensures $this.capacity <= slot1 < 2 * $this.capacity
+     */
+    private int slot1(Object key) {
+        return this.capacity + (HashStrategies.mix(key.hashCode() ^ this.seed1)
+                & (this.capacity - 1));
+    }
+
+    /**
+     * Sets the representation to empty tables of {@code tableLength} slots
+     * each, a stash of {@code stash} slots, and the seeds that follow the
+     * current ones.
+     *
+     * @param tableLength
+     *            the number of slots per table
+     * @param stash
+     *            the number of slots of the stash
+     * @requires [tableLength is a power of 2]  and  stash > 0
+     * @ensures <pre>
+     * $this.capacity = tableLength  and  $this.stashCapacity = stash  and
+     * [every slot is empty]  and  $this.size = 0  and
+     * $this.stashSize = 0  and  $this.removeCursor = 0
+     * </pre>
+     */
+    private void newTables(int tableLength, int stash) {
+        this.capacity = tableLength;
+        this.stashCapacity = stash;
+        this.keys = new Object[2 * tableLength + stash];
+        this.values = new Object[2 * tableLength + stash];
+        this.seed0 = HashStrategies.mix(this.seed1 + SEED_STEP);
+        this.seed1 = HashStrategies.mix(this.seed0 + SEED_STEP);
+        this.maxKicks = KICKS_PER_LOG * Integer.numberOfTrailingZeros(
+                tableLength) + 1;
+        this.size = 0;
+        this.stashSize = 0;
+        this.removeCursor = 0;
+    }
+
+    /**
+     * Creator of initial representation.
+     *
+     * @param pairs
+     *            number of pairs to make room for
+     * @requires pairs > 0
+     * @ensures <pre>
+     * $this.capacity = tableLength(pairs)  and
+     * $this.stashCapacity = STASH_SIZE  and
+     * $this.initialCapacity = pairs  and  $this.size = 0
+     * </pre>
+     */
+    private void createNewRep(int pairs) {
+        this.newTables(tableLength(pairs), STASH_SIZE);
+        this.initialCapacity = pairs;
+    }
+
+    /**
+     * Returns the slot holding {@code key}, or -1 if {@code key} is not in
+     * {@code this}.
+     *
+     * @param key
+     *            the key to look for
+     * @return the slot index, or -1
+     * @ensures <pre>
+     * if key is in DOMAIN(this) then
+     *   $this.keys[find] = key
+     * else
+     *   find = -1
+     * </pre>
+     */
+    private int find(Object key) {
+        int result = this.slot0(key);
+        if (!key.equals(this.keys[result])) {
+            result = this.slot1(key);
+            if (!key.equals(this.keys[result])) {
+                result = -1;
+                if (this.stashSize > 0) {
+                    int i = 2 * this.capacity;
+                    while (result < 0 && i < this.keys.length) {
+                        if (key.equals(this.keys[i])) {
+                            result = i;
+                        }
+                        i++;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Puts ({@code key}, {@code value}) in a free candidate slot of
+     * {@code key}, evicting pairs along a chain of at most {@code maxKicks}
+     * slots if both are full, or else in the stash. If neither works, the
+     * pair left without a slot at the end of the chain is returned, as
+     * {key, value}, and is then not in {@code this}.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     * @return {@code null}, or the pair left without a slot
+     * @updates this
+     * @requires key is not in DOMAIN(this)  and  $this.size < $this.capacity
+     * @ensures <pre>
+     * if place = null then
+     *   this = #this union {(key, value)}
+     * else
+     *   this union {(place[0], place[1])} = #this union {(key, value)}
+     * </pre>
+     */
+    private Object[] place(Object key, Object value) {
+        Object k = key;
+        Object v = value;
+        int i = this.slot0(k);
+        if (this.keys[i] != null && this.keys[this.slot1(k)] == null) {
+            i = this.slot1(k);
+        }
+        int kicks = 0;
+        while (this.keys[i] != null && kicks < this.maxKicks) {
+            Object evictedKey = this.keys[i];
+            Object evictedValue = this.values[i];
+            this.keys[i] = k;
+            this.values[i] = v;
+            k = evictedKey;
+            v = evictedValue;
+            if (i < this.capacity) {
+                i = this.slot1(k);
+            } else {
+                i = this.slot0(k);
+            }
+            kicks++;
+        }
+        if (this.keys[i] != null) {
+            /*
+             * The chain was too long: try the stash
+             */
+            i = 2 * this.capacity;
+            while (i < this.keys.length && this.keys[i] != null) {
+                i++;
+            }
+            if (i < this.keys.length) {
+                this.stashSize++;
+            }
+        }
+        Object[] homeless = null;
+        if (i < this.keys.length) {
+            this.keys[i] = k;
+            this.values[i] = v;
+            this.size++;
+        } else {
+            homeless = new Object[] { k, v };
+        }
+        return homeless;
+    }
+
+    /**
+     * Places every pair of {@code this}, and ({@code key}, {@code value}) if
+     * {@code key} is not {@code null}, again, in tables of {@code tableLength}
+     * slots with new seeds, repeating with yet other seeds, and eventually a
+     * larger stash, until all of them fit.
+     *
+     * @param tableLength
+     *            the number of slots per table
+     * @param key
+     *            the key of the pair to add, or {@code null}
+     * @param value
+     *            the value of the pair to add
+     * @updates this
+     * @requires <pre>
+     * [tableLength is a power of 2]  and
+     * |this| + 1 <= tableLength  and
+     * (key = null  or  key is not in DOMAIN(this))
+     * </pre>
+     * @ensures <pre>
+     * $this.capacity = tableLength  and
+     * if key = null then
+     *   this = #this
+     * else
+     *   this = #this union {(key, value)}
+     * </pre>
+     */
+    private void rebuild(int tableLength, Object key, Object value) {
+        int n = this.size;
+        if (key != null) {
+            n++;
+        }
+        Object[] oldKeys = new Object[n];
+        Object[] oldValues = new Object[n];
+        int j = 0;
+        for (int i = 0; i < this.keys.length; i++) {
+            if (this.keys[i] != null) {
+                oldKeys[j] = this.keys[i];
+                oldValues[j] = this.values[i];
+                j++;
+            }
+        }
+        if (key != null) {
+            oldKeys[j] = key;
+            oldValues[j] = value;
+        }
+        int stash = this.stashCapacity;
+        int attempts = 0;
+        boolean placed = false;
+        while (!placed) {
+            this.newTables(tableLength, stash);
+            placed = true;
+            j = 0;
+            while (placed && j < n) {
+                placed = this.place(oldKeys[j], oldValues[j]) == null;
+                j++;
+            }
+            attempts++;
+            if (attempts % REBUILD_ATTEMPTS == 0) {
+                stash *= 2;
+            }
+        }
+    }
+
+    /**
+     * Removes the pair in slot {@code i} and returns it.
+     *
+     * @param i
+     *            the slot
+     * @return the removed pair
+     * @updates this
+     * @requires $this.keys[i] /= null
+     * @ensures <pre>
+     * removeSlot = (#$this.keys[i], #$this.values[i])  and
+     * this = #this \ {removeSlot}
+     * </pre>
+     */
+    @SuppressWarnings("unchecked")
+    private Pair<K, V> removeSlot(int i) {
+        Pair<K, V> removed = new SimplePair<>((K) this.keys[i],
+                (V) this.values[i]);
+        this.keys[i] = null;
+        this.values[i] = null;
+        this.size--;
+        if (i >= 2 * this.capacity) {
+            this.stashSize--;
+        }
+        return removed;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public CuckooMap4() {
+        this.createNewRep(DEFAULT_HASH_TABLE_SIZE);
+    }
+
+    /**
+     * Constructor resulting in tables with room for {@code hashTableSize}
+     * pairs before they first grow.
+     *
+     * @param hashTableSize
+     *            number of pairs to make room for
+     * @requires hashTableSize > 0
+     * @ensures this = {}
+     */
+    public CuckooMap4(int hashTableSize) {
+        assert hashTableSize > 0 : "Violation of: hashTableSize > 0";
+        this.createNewRep(hashTableSize);
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final Map<K, V> newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.createNewRep(this.initialCapacity);
+    }
+
+    @Override
+    public final void transferFrom(Map<K, V> source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof CuckooMap4<?, ?> : ""
+                + "Violation of: source is of dynamic type CuckooMap4<?,?>";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case: source must be of dynamic type
+         * CuckooMap4<?,?>, and the ?,? must be K,V or the call would not have
+         * compiled.
+         */
+        CuckooMap4<K, V> localSource = (CuckooMap4<K, V>) source;
+        this.keys = localSource.keys;
+        this.values = localSource.values;
+        this.capacity = localSource.capacity;
+        this.stashCapacity = localSource.stashCapacity;
+        this.stashSize = localSource.stashSize;
+        this.seed0 = localSource.seed0;
+        this.seed1 = localSource.seed1;
+        this.maxKicks = localSource.maxKicks;
+        this.size = localSource.size;
+        this.removeCursor = localSource.removeCursor;
+        this.initialCapacity = localSource.initialCapacity;
+        localSource.createNewRep(localSource.initialCapacity);
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(K key, V value) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+        assert !this.hasKey(key) : "Violation of: key is not in DOMAIN(this)";
+        if (this.size == this.capacity) {
+            this.rebuild(2 * this.capacity, key, value);
+        } else {
+            Object[] homeless = this.place(key, value);
+            if (homeless != null) {
+                this.rebuild(this.capacity, homeless[0], homeless[1]);
+            }
+        }
+        /*
+         * Evictions may have moved pairs in front of the cursor
+         */
+        this.removeCursor = 0;
+    }
+
+    @Override
+    public final Pair<K, V> remove(K key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+        return this.removeSlot(this.find(key));
+    }
+
+    @Override
+    public final Pair<K, V> removeAny() {
+        assert this.size() > 0 : "Violation of: this /= empty_set";
+        while (this.keys[this.removeCursor] == null) {
+            this.removeCursor++;
+        }
+        return this.removeSlot(this.removeCursor);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final V value(K key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+        return (V) this.values[this.find(key)];
+    }
+
+    @Override
+    public final boolean hasKey(K key) {
+        assert key != null : "Violation of: key is not null";
+        return this.find(key) >= 0;
+    }
+
+    @Override
+    public final int size() {
+        return this.size;
+    }
+
+    @Override
+    public final Iterator<Pair<K, V>> iterator() {
+        return new CuckooMap4Iterator();
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for {@code CuckooMap4}.
+     */
+    private final class CuckooMap4Iterator implements Iterator<Pair<K, V>> {
+
+        /**
+         * Number of elements seen already (i.e., |~this.seen|).
+         */
+        private int numberSeen;
+
+        /**
+         * Slot of the next element.
+         */
+        private int currentSlot;
+
+        /**
+         * No-argument constructor.
+         */
+        CuckooMap4Iterator() {
+            this.numberSeen = 0;
+            this.currentSlot = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.numberSeen < CuckooMap4.this.size;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Pair<K, V> next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            while (CuckooMap4.this.keys[this.currentSlot] == null) {
+                this.currentSlot++;
+            }
+            Pair<K, V> p = new SimplePair<>(
+                    (K) CuckooMap4.this.keys[this.currentSlot],
+                    (V) CuckooMap4.this.values[this.currentSlot]);
+            this.numberSeen++;
+            this.currentSlot++;
+            return p;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
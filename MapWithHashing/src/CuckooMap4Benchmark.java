@@ -0,0 +1,250 @@
+import java.util.Arrays;
+import java.util.Random;
+
+import components.map.Map;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+
+/**
+ * Times single {@code value} calls (hits) and single {@code hasKey} calls
+ * (misses) on {@code String} keys in {@code CuckooMap4} and {@code Map4}, for
+ * maps of 10^3 up to 10^6 entries, and reports percentiles of the latency of
+ * one call rather than an average: a cuckoo table is meant to bound the worst
+ * lookup, which an average hides.
+ *
+ * <p>
+ * The two maps are compared at the same load: {@code CuckooMap4} keeps its
+ * tables at most half full, so {@code Map4} is given a load factor of 1/2
+ * too, i.e., it grows when it holds more than half as many pairs as buckets.
+ * Keys looked up are built separately from the keys added, and shuffled, as
+ * in {@code SwissMap4Benchmark}.
+ *
+ * <p>
+ * Each call is timed on its own with {@code System.nanoTime}, whose own cost
+ * and granularity are in every figure; the first line of output shows them,
+ * as the percentiles of timing nothing.
+ *
+ * @author Mingzhu Bao and Andy Shih
+ *
+ */
+public final class CuckooMap4Benchmark {
+
+    /**
+     * Smallest map size timed.
+     */
+    private static final int MIN_SIZE = 1_000;
+
+    /**
+     * Largest map size timed.
+     */
+    private static final int MAX_SIZE = 1_000_000;
+
+    /**
+     * Factor between successive map sizes.
+     */
+    private static final int SIZE_STEP = 10;
+
+    /**
+     * Number of calls timed per map and workload, whatever its size.
+     */
+    private static final int LOOKUPS = 1_000_000;
+
+    /**
+     * Number of untimed runs first so the JIT compiler has warmed up.
+     */
+    private static final int WARM_UP_RUNS = 3;
+
+    /**
+     * Load factor given to {@code Map4}, matching {@code CuckooMap4}'s.
+     */
+    private static final double LOAD_FACTOR = 0.5;
+
+    /**
+     * Seed of the shuffles, so every run looks keys up in the same order.
+     */
+    private static final long SEED = 42;
+
+    /**
+     * Percentiles reported, in parts per thousand.
+     */
+    private static final int[] PER_MILLE = { 500, 990, 999 };
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private CuckooMap4Benchmark() {
+    }
+
+    /**
+     * Returns the keys {@code prefix + i} for 0 <= i < n, each a new object.
+     *
+     * @param prefix
+     *            the prefix of every key
+     * @param n
+     *            the number of keys
+     * @return the keys
+     */
+    private static String[] keys(String prefix, int n) {
+        String[] result = new String[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = new StringBuilder(prefix).append(i).toString();
+        }
+        return result;
+    }
+
+    /**
+     * Shuffles {@code a} in place.
+     *
+     * @param a
+     *            the array
+     * @param random
+     *            the source of randomness
+     * @updates a
+     * @ensures [a is a permutation of #a]
+     */
+    private static void shuffle(String[] a, Random random) {
+        for (int i = a.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            String t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+
+    /**
+     * Returns a new empty map of the kind named {@code kind}.
+     *
+     * @param kind
+     *            "CuckooMap4" or "Map4"
+     * @return the map
+     */
+    private static Map<String, Integer> newMap(String kind) {
+        Map<String, Integer> map;
+        if (kind.equals("CuckooMap4")) {
+            map = new CuckooMap4<>();
+        } else {
+            map = new Map4<>(1, LOAD_FACTOR);
+        }
+        return map;
+    }
+
+    /**
+     * Returns the percentiles {@code PER_MILLE} of {@code latencies}, and its
+     * maximum, tab-separated.
+     *
+     * @param latencies
+     *            the latencies
+     * @return the percentiles
+     * @updates latencies
+     * @requires |latencies| > 0
+     * @ensures [latencies is sorted]
+     */
+    private static String percentiles(long[] latencies) {
+        Arrays.sort(latencies);
+        StringBuilder result = new StringBuilder();
+        for (int p : PER_MILLE) {
+            int i = (int) ((long) (latencies.length - 1) * p / 1000);
+            result.append(latencies[i]).append('\t');
+        }
+        result.append(latencies[latencies.length - 1]);
+        return result.toString();
+    }
+
+    /**
+     * Times {@code LOOKUPS} calls of {@code value} (if {@code hits}) or
+     * {@code hasKey} (otherwise) on keys of {@code probes}, cycling through
+     * them, one call at a time.
+     *
+     * @param map
+     *            the map
+     * @param probes
+     *            the keys looked up
+     * @param hits
+     *            whether every key of {@code probes} is in {@code map}
+     * @return the elapsed time of each call in nanoseconds
+     */
+    private static long[] time(Map<String, Integer> map, String[] probes,
+            boolean hits) {
+        long[] latencies = new long[LOOKUPS];
+        long found = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            String key = probes[i % probes.length];
+            long start = System.nanoTime();
+            if (hits) {
+                found += map.value(key);
+            } else if (map.hasKey(key)) {
+                found++;
+            }
+            latencies[i] = System.nanoTime() - start;
+        }
+        /*
+         * Use the result, so the lookups cannot be optimized away
+         */
+        if (found == -1) {
+            throw new AssertionError();
+        }
+        return latencies;
+    }
+
+    /**
+     * Returns the elapsed times of timing nothing {@code LOOKUPS} times.
+     *
+     * @return the elapsed times in nanoseconds
+     */
+    private static long[] timeNothing() {
+        long[] latencies = new long[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            long start = System.nanoTime();
+            latencies[i] = System.nanoTime() - start;
+        }
+        return latencies;
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        SimpleWriter out = new SimpleWriter1L();
+        Random random = new Random(SEED);
+        String[] kinds = { "CuckooMap4", "Map4" };
+
+        String[] warmKeys = keys("word", MIN_SIZE);
+        for (int run = 0; run < WARM_UP_RUNS; run++) {
+            for (String kind : kinds) {
+                Map<String, Integer> map = newMap(kind);
+                for (int i = 0; i < warmKeys.length; i++) {
+                    map.add(warmKeys[i], i);
+                }
+                time(map, keys("word", MIN_SIZE), true);
+                time(map, keys("miss", MIN_SIZE), false);
+            }
+            timeNothing();
+        }
+
+        out.println("entries\tmap\tlookup\tp50 ns\tp99 ns\tp99.9 ns\tmax ns");
+        out.println("-\ttimer\t-\t" + percentiles(timeNothing()));
+        for (int n = MIN_SIZE; n <= MAX_SIZE; n *= SIZE_STEP) {
+            String[] added = keys("word", n);
+            String[] hits = keys("word", n);
+            String[] misses = keys("miss", n);
+            shuffle(hits, random);
+            shuffle(misses, random);
+            for (String kind : kinds) {
+                Map<String, Integer> map = newMap(kind);
+                for (int i = 0; i < n; i++) {
+                    map.add(added[i], i);
+                }
+                out.println(n + "\t" + kind + "\thit\t"
+                        + percentiles(time(map, hits, true)));
+                out.println(n + "\t" + kind + "\tmiss\t"
+                        + percentiles(time(map, misses, false)));
+            }
+        }
+
+        out.close();
+    }
+
+}
@@ -0,0 +1,461 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+import components.map.Map;
+import components.map.MapSecondary;
+
+/**
+ * {@code Map} whose pairs expire: each pair is added with a time to live, and
+ * once a {@code clock} reading reaches its expiry time the pair is treated as
+ * gone and its memory is reclaimed. The pairs are kept in a {@code Map4} from
+ * each key to an entry holding the value and the expiry time.
+ *
+ * <p>
+ * Nothing is ever reclaimed all at once. An expired pair is removed when
+ * {@code hasKey}, {@code value} or {@code add} looks at its key, and every
+ * kernel operation also sweeps {@code SWEEP_BUCKETS_PER_STEP} buckets of the
+ * table (see {@code Map4.sweep}), so pairs that nobody asks for again are
+ * reclaimed too, a few at a time, as long as the map is used.
+ *
+ * <p>
+ * The abstract value is the pairs not expired as of the last clock reading.
+ * Each operation takes a new reading first, so pairs may drop out of
+ * {@code this} at the start of any operation, {@code hasKey} and
+ * {@code value} included, simply because time has passed; apart from that,
+ * they keep {@code this} as it was. Until it is reclaimed, an expired pair
+ * still counts in {@code size}, and can still be returned by the iterator
+ * and by {@code removeAny}: {@code size} is an upper bound on
+ * {@code |this|}, and the iterator returns every pair of {@code this} but
+ * possibly some expired ones too. The clock is any {@code LongSupplier} (by
+ * default {@code System::currentTimeMillis}), so tests can use one they
+ * control, and times to live are in its units. {@code replaceValue} keeps
+ * the expiry time of the pair it changes.
+ *
+ * @param <K>
+ *            type of {@code Map} domain (key) entries
+ * @param <V>
+ *            type of {@code Map} range (associated value) entries
+ * @convention <pre>
+ * $this.defaultTimeToLive > 0  and  $this.clock /= null  and
+ * for all k: K, e: Entry
+ *     where ((k, e) is in $this.entries)
+ *   (e.value /= null)  and
+ * $this.reclaimed >= 0
+ * </pre>
+ * @correspondence <pre>
+ * this = {(k, v): (K, V)
+ *            where (there exists e: Entry
+ *                     ((k, e) is in $this.entries  and  e.value = v  and
+ *                      e.expiresAt > $this.now))}
+ * </pre>
+ *
+ * @author Mingzhu Bao and Andy Shih
+ *
+ */
+public class ExpiringMap4<K, V> extends MapSecondary<K, V> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Number of non-empty buckets of the table swept by each kernel
+     * operation.
+     */
+    private static final int SWEEP_BUCKETS_PER_STEP = 2;
+
+    /**
+     * A value and the time at which it expires.
+     *
+     * @param <V>
+     *            type of value
+     */
+    private static final class Entry<V> {
+
+        /**
+         * The value.
+         */
+        private final V value;
+
+        /**
+         * Clock reading from which the pair is expired.
+         */
+        private final long expiresAt;
+
+        /**
+         * Constructor.
+         *
+         * @param value
+         *            the value
+         * @param expiresAt
+         *            clock reading from which the pair is expired
+         */
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+    }
+
+    /**
+     * The pairs, each key mapped to its value and expiry time.
+     */
+    private Map4<K, Entry<V>> entries;
+
+    /**
+     * Time to live of the pairs added by the two-argument {@code add}.
+     */
+    private long defaultTimeToLive;
+
+    /**
+     * Source of the current time.
+     */
+    private LongSupplier clock;
+
+    /**
+     * Clock reading taken by the current (or else the last) operation.
+     */
+    private long now;
+
+    /**
+     * Tells whether an entry has expired as of {@code now}.
+     */
+    private final Predicate<Pair<K, Entry<V>>> expired = p -> p
+            .value().expiresAt <= this.now;
+
+    /**
+     * Number of expired pairs reclaimed.
+     */
+    private long reclaimed;
+
+    /**
+     * Creator of initial representation.
+     *
+     * @param timeToLive
+     *            the default time to live
+     * @param c
+     *            the clock
+     * @requires timeToLive > 0  and  c /= null
+     * @ensures <pre>
+     * $this.entries = {}  and  $this.defaultTimeToLive = timeToLive  and
+     * $this.clock = c  and  $this.reclaimed = 0
+     * </pre>
+     */
+    private void createNewRep(long timeToLive, LongSupplier c) {
+        this.entries = new Map4<>();
+        this.defaultTimeToLive = timeToLive;
+        this.clock = c;
+        this.reclaimed = 0;
+    }
+
+    /**
+     * Sweeps a few buckets, as every kernel operation does last (so that the
+     * pair it is about cannot be swept away under it).
+     *
+     * @updates this
+     * @ensures this = #this \ [some pairs that had expired as of $this.now]
+     */
+    private void sweep() {
+        this.reclaimed += this.entries.sweep(SWEEP_BUCKETS_PER_STEP,
+                this.expired);
+    }
+
+    /**
+     * Removes the pair whose key is {@code key} if it has expired, and reports
+     * whether {@code key} is (still) in {@code this}.
+     *
+     * @param key
+     *            the key
+     * @return true iff {@code key} is in DOMAIN(this) and has not expired
+     * @updates this
+     * @ensures <pre>
+     * if key is in DOMAIN(#this)  and  [its pair has expired] then
+     *   this = #this \ {(key, #this(key))}  and  not live
+     * else
+     *   this = #this  and  live = (key is in DOMAIN(this))
+     * </pre>
+     */
+    private boolean live(K key) {
+        boolean found = this.entries.hasKey(key);
+        if (found && this.entries.value(key).expiresAt <= this.now) {
+            this.entries.remove(key);
+            this.reclaimed++;
+            found = false;
+        }
+        return found;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor: pairs added without a time to live never
+     * expire.
+     */
+    public ExpiringMap4() {
+        this.createNewRep(Long.MAX_VALUE, System::currentTimeMillis);
+    }
+
+    /**
+     * Constructor resulting in a map whose pairs live {@code timeToLive}
+     * milliseconds unless added with a time to live of their own.
+     *
+     * @param timeToLive
+     *            the default time to live, in milliseconds
+     * @requires timeToLive > 0
+     * @ensures this = {}
+     */
+    public ExpiringMap4(long timeToLive) {
+        assert timeToLive > 0 : "Violation of: timeToLive > 0";
+        this.createNewRep(timeToLive, System::currentTimeMillis);
+    }
+
+    /**
+     * Constructor resulting in a map whose pairs live {@code timeToLive}
+     * units of {@code clock} unless added with a time to live of their own.
+     *
+     * @param timeToLive
+     *            the default time to live
+     * @param clock
+     *            the source of the current time
+     * @requires timeToLive > 0
+     * @ensures this = {}
+     */
+    public ExpiringMap4(long timeToLive, LongSupplier clock) {
+        assert timeToLive > 0 : "Violation of: timeToLive > 0";
+        assert clock != null : "Violation of: clock is not null";
+        this.createNewRep(timeToLive, clock);
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final Map<K, V> newInstance() {
+        try {
+            /*
+             * The new map shares the time to live and the clock of this
+             */
+            return this.getClass()
+                    .getConstructor(long.class, LongSupplier.class)
+                    .newInstance(this.defaultTimeToLive, this.clock);
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.createNewRep(this.defaultTimeToLive, this.clock);
+    }
+
+    @Override
+    public final void transferFrom(Map<K, V> source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof ExpiringMap4<?, ?> : ""
+                + "Violation of: source is of dynamic type ExpiringMap4<?,?>";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case: source must be of dynamic type
+         * ExpiringMap4<?,?>, and the ?,? must be K,V or the call would not
+         * have compiled.
+         */
+        ExpiringMap4<K, V> localSource = (ExpiringMap4<K, V>) source;
+        this.entries = localSource.entries;
+        this.defaultTimeToLive = localSource.defaultTimeToLive;
+        this.clock = localSource.clock;
+        this.reclaimed = localSource.reclaimed;
+        localSource.createNewRep(localSource.defaultTimeToLive,
+                localSource.clock);
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(K key, V value) {
+        this.add(key, value, this.defaultTimeToLive);
+    }
+
+    @Override
+    public final Pair<K, V> remove(K key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.entries
+                .hasKey(key) : "Violation of: key is in DOMAIN(this)";
+        this.now = this.clock.getAsLong();
+        Entry<V> e = this.entries.remove(key).value();
+        this.sweep();
+        return new SimplePair<>(key, e.value);
+    }
+
+    @Override
+    public final Pair<K, V> removeAny() {
+        assert this.size() > 0 : "Violation of: this /= empty_set";
+        this.now = this.clock.getAsLong();
+        Pair<K, Entry<V>> p = this.entries.removeAny();
+        this.sweep();
+        return new SimplePair<>(p.key(), p.value().value);
+    }
+
+    @Override
+    public final V value(K key) {
+        assert key != null : "Violation of: key is not null";
+        this.now = this.clock.getAsLong();
+        boolean found = this.live(key);
+        assert found : "Violation of: key is in DOMAIN(this)";
+        V result = this.entries.value(key).value;
+        this.sweep();
+        return result;
+    }
+
+    @Override
+    public final boolean hasKey(K key) {
+        assert key != null : "Violation of: key is not null";
+        this.now = this.clock.getAsLong();
+        boolean found = this.live(key);
+        this.sweep();
+        return found;
+    }
+
+    @Override
+    public final int size() {
+        return this.entries.size();
+    }
+
+    @Override
+    public final Iterator<Pair<K, V>> iterator() {
+        return new ExpiringMap4Iterator();
+    }
+
+    /*
+     * Other methods ----------------------------------------------------------
+     */
+
+    @Override
+    public final V replaceValue(K key, V value) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+        this.now = this.clock.getAsLong();
+        boolean found = this.live(key);
+        assert found : "Violation of: key is in DOMAIN(this)";
+        long expiresAt = this.entries.value(key).expiresAt;
+        V result = this.entries
+                .replaceValue(key, new Entry<>(value, expiresAt)).value;
+        this.sweep();
+        return result;
+    }
+
+    /**
+     * Adds the pair ({@code key}, {@code value}) to {@code this}, to expire
+     * {@code timeToLive} clock units from now. An expired pair with the same
+     * key that has not been reclaimed yet is replaced.
+     *
+     * @param key
+     *            the key to be added
+     * @param value
+     *            the associated value to be added
+     * @param timeToLive
+     *            how long the pair lives
+     * @updates this
+     * @requires key is not in DOMAIN(this)  and  timeToLive > 0
+     * @ensures this = #this union {(key, value)}
+     */
+    public final void add(K key, V value, long timeToLive) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+        assert timeToLive > 0 : "Violation of: timeToLive > 0";
+        this.now = this.clock.getAsLong();
+        boolean found = this.live(key);
+        assert !found : "Violation of: key is not in DOMAIN(this)";
+        long expiresAt = Long.MAX_VALUE;
+        if (timeToLive < Long.MAX_VALUE - this.now) {
+            expiresAt = this.now + timeToLive;
+        }
+        this.entries.add(key, new Entry<>(value, expiresAt));
+        this.sweep();
+    }
+
+    /**
+     * Reports how much longer the pair whose key is {@code key} lives.
+     *
+     * @param key
+     *            the key
+     * @return the remaining time to live, in clock units
+     * @updates this
+     * @requires key is in DOMAIN(this)
+     * @ensures timeToLive > 0
+     */
+    public final long timeToLive(K key) {
+        assert key != null : "Violation of: key is not null";
+        this.now = this.clock.getAsLong();
+        boolean found = this.live(key);
+        assert found : "Violation of: key is in DOMAIN(this)";
+        long result = this.entries.value(key).expiresAt - this.now;
+        this.sweep();
+        return result;
+    }
+
+    /**
+     * Reports the number of expired pairs reclaimed, whether on access or by
+     * the sweep.
+     *
+     * @return the number of pairs reclaimed
+     */
+    public final long reclaimed() {
+        return this.reclaimed;
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for {@code ExpiringMap4}.
+     */
+    private final class ExpiringMap4Iterator implements Iterator<Pair<K, V>> {
+
+        /**
+         * Representation iterator.
+         */
+        private final Iterator<Pair<K, Entry<V>>> iterator;
+
+        /**
+         * No-argument constructor.
+         */
+        ExpiringMap4Iterator() {
+            this.iterator = ExpiringMap4.this.entries.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.iterator.hasNext();
+        }
+
+        @Override
+        public Pair<K, V> next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            Pair<K, Entry<V>> p = this.iterator.next();
+            return new SimplePair<>(p.key(), p.value().value);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
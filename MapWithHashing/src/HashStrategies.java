@@ -0,0 +1,264 @@
+import java.util.function.ToIntFunction;
+
+/**
+ * Factory methods for the {@code HashStrategy}s used with {@code Map4}.
+ *
+ * <p>
+ * {@code modulo} reproduces the original {@code Map4} behavior: the bucket is
+ * the key's hash code mod the table length. {@code mixed} first scrambles the
+ * hash code with the MurmurHash3 finalizer, so keys whose hash codes differ
+ * only in a few bits (e.g., sequential IDs) still spread over the table.
+ * {@code powerOfTwo} also mixes, but keeps the table length a power of 2 and
+ * takes the low bits of the mixed hash with a mask instead of a division.
+ * Each can be given a caller-supplied hash function in place of
+ * {@code hashCode}.
+ *
+ * @author Mingzhu Bao and Andy Shih
+ *
+ */
+public final class HashStrategies {
+
+    /**
+     * First multiplier of the MurmurHash3 32-bit finalizer.
+     */
+    private static final int MIX_MULTIPLIER_1 = 0x85ebca6b;
+
+    /**
+     * Second multiplier of the MurmurHash3 32-bit finalizer.
+     */
+    private static final int MIX_MULTIPLIER_2 = 0xc2b2ae35;
+
+    /**
+     * First shift of the MurmurHash3 32-bit finalizer.
+     */
+    private static final int MIX_SHIFT_1 = 16;
+
+    /**
+     * Second shift of the MurmurHash3 32-bit finalizer.
+     */
+    private static final int MIX_SHIFT_2 = 13;
+
+    /**
+     * Largest power of 2 that is an {@code int}.
+     */
+    private static final int MAX_POWER_OF_TWO = 1 << 30;
+
+    /**
+     * The strategy returned by {@code modulo()}. The no-argument strategies
+     * are shared, so maps built with the same one can tell that their keys
+     * land in the same buckets (see {@code Map4.addAll}).
+     */
+    private static final HashStrategy<Object> MODULO = new Modulo<>(
+            Object::hashCode, false);
+
+    /**
+     * The strategy returned by {@code mixed()}.
+     */
+    private static final HashStrategy<Object> MIXED = new Modulo<>(
+            Object::hashCode, true);
+
+    /**
+     * The strategy returned by {@code powerOfTwo()}.
+     */
+    private static final HashStrategy<Object> POWER_OF_TWO = new PowerOfTwo<>(
+            Object::hashCode);
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private HashStrategies() {
+    }
+
+    /**
+     * {@code HashStrategy} choosing the bucket by taking the mod of a hash.
+     *
+     * @param <K>
+     *            type of keys hashed
+     */
+    private static final class Modulo<K> implements HashStrategy<K> {
+
+        /**
+         * Hash function.
+         */
+        private final ToIntFunction<? super K> hasher;
+
+        /**
+         * Whether the hash is mixed before the mod is taken.
+         */
+        private final boolean mix;
+
+        /**
+         * Constructor.
+         *
+         * @param hasher
+         *            the hash function
+         * @param mix
+         *            whether the hash is mixed before the mod is taken
+         */
+        Modulo(ToIntFunction<? super K> hasher, boolean mix) {
+            this.hasher = hasher;
+            this.mix = mix;
+        }
+
+        @Override
+        public int bucketIndex(K key, int tableLength) {
+            int hash = this.hasher.applyAsInt(key);
+            if (this.mix) {
+                hash = mix(hash);
+            }
+            return Math.floorMod(hash, tableLength);
+        }
+
+        @Override
+        public int tableLength(int minimum) {
+            return minimum;
+        }
+
+    }
+
+    /**
+     * {@code HashStrategy} choosing the bucket by masking a mixed hash, over
+     * tables whose length is a power of 2.
+     *
+     * @param <K>
+     *            type of keys hashed
+     */
+    private static final class PowerOfTwo<K> implements HashStrategy<K> {
+
+        /**
+         * Hash function.
+         */
+        private final ToIntFunction<? super K> hasher;
+
+        /**
+         * Constructor.
+         *
+         * @param hasher
+         *            the hash function
+         */
+        PowerOfTwo(ToIntFunction<? super K> hasher) {
+            this.hasher = hasher;
+        }
+
+        @Override
+        public int bucketIndex(K key, int tableLength) {
+            return mix(this.hasher.applyAsInt(key)) & (tableLength - 1);
+        }
+
+        @Override
+        public int tableLength(int minimum) {
+            assert minimum <= MAX_POWER_OF_TWO : ""
+                    + "Violation of: minimum <= 2^30";
+            return Math.max(1, Integer.highestOneBit(minimum - 1) << 1);
+        }
+
+    }
+
+    /**
+     * Scrambles the bits of {@code h} so that every input bit affects every
+     * output bit (the MurmurHash3 32-bit finalizer).
+     *
+     * @param h
+     *            the hash code
+     * @return the mixed hash code
+     * @ensures [mix is a bijection on int]
+     */
+    public static int mix(int h) {
+        int x = h;
+        x ^= x >>> MIX_SHIFT_1;
+        x *= MIX_MULTIPLIER_1;
+        x ^= x >>> MIX_SHIFT_2;
+        x *= MIX_MULTIPLIER_2;
+        x ^= x >>> MIX_SHIFT_1;
+        return x;
+    }
+
+    /**
+     * Returns the strategy {@code Map4} uses by default: {@code hashCode} mod
+     * the table length, with any table length allowed.
+     *
+     * @param <K>
+     *            type of keys hashed
+     * @return the strategy
+     */
+    @SuppressWarnings("unchecked")
+    public static <K> HashStrategy<K> modulo() {
+        return (HashStrategy<K>) MODULO;
+    }
+
+    /**
+     * Returns the strategy taking {@code hasher} mod the table length, with any
+     * table length allowed.
+     *
+     * @param <K>
+     *            type of keys hashed
+     * @param hasher
+     *            the hash function
+     * @return the strategy
+     * @requires [hasher gives equal results for equal keys]
+     */
+    public static <K> HashStrategy<K> modulo(ToIntFunction<? super K> hasher) {
+        assert hasher != null : "Violation of: hasher is not null";
+        return new Modulo<K>(hasher, false);
+    }
+
+    /**
+     * Returns the strategy taking {@code mix(hashCode)} mod the table length,
+     * with any table length allowed.
+     *
+     * @param <K>
+     *            type of keys hashed
+     * @return the strategy
+     */
+    @SuppressWarnings("unchecked")
+    public static <K> HashStrategy<K> mixed() {
+        return (HashStrategy<K>) MIXED;
+    }
+
+    /**
+     * Returns the strategy taking {@code mix(hasher)} mod the table length,
+     * with any table length allowed.
+     *
+     * @param <K>
+     *            type of keys hashed
+     * @param hasher
+     *            the hash function
+     * @return the strategy
+     * @requires [hasher gives equal results for equal keys]
+     */
+    public static <K> HashStrategy<K> mixed(ToIntFunction<? super K> hasher) {
+        assert hasher != null : "Violation of: hasher is not null";
+        return new Modulo<K>(hasher, true);
+    }
+
+    /**
+     * Returns the strategy taking the low bits of {@code mix(hashCode)}, with
+     * table lengths rounded up to a power of 2.
+     *
+     * @param <K>
+     *            type of keys hashed
+     * @return the strategy
+     */
+    @SuppressWarnings("unchecked")
+    public static <K> HashStrategy<K> powerOfTwo() {
+        return (HashStrategy<K>) POWER_OF_TWO;
+    }
+
+    /**
+     * Returns the strategy taking the low bits of {@code mix(hasher)}, with
+     * table lengths rounded up to a power of 2.
+     *
+     * @param <K>
+     *            type of keys hashed
+     * @param hasher
+     *            the hash function
+     * @return the strategy
+     * @requires [hasher gives equal results for equal keys]
+     */
+    public static <K> HashStrategy<K> powerOfTwo(
+            ToIntFunction<? super K> hasher) {
+        assert hasher != null : "Violation of: hasher is not null";
+        return new PowerOfTwo<K>(hasher);
+    }
+
+}
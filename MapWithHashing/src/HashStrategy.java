@@ -0,0 +1,49 @@
+/**
+ * Strategy used by {@code Map4} to choose the bucket of a key and the lengths
+ * its hash table may have. Implementations for the usual choices are provided
+ * by {@code HashStrategies}.
+ *
+ * @param <K>
+ *            type of keys hashed
+ *
+ * @author Mingzhu Bao and Andy Shih
+ *
+ */
+public interface HashStrategy<K> {
+
+    /**
+     * Returns the bucket of {@code key} in a table of {@code tableLength}
+     * buckets.
+     *
+     * @param key
+     *            the key
+     * @param tableLength
+     *            the number of buckets
+     * @return the bucket index
+     * @requires <pre>
+     * key /= null  and  tableLength > 0  and
+     * tableLength = tableLength(tableLength)
+     * </pre>
+     * @ensures <pre>
+     * 0 <= bucketIndex < tableLength  and
+     * [bucketIndex depends only on the value of key and on tableLength]
+     * </pre>
+     */
+    int bucketIndex(K key, int tableLength);
+
+    /**
+     * Returns the smallest table length this strategy can use that is at least
+     * {@code minimum}.
+     *
+     * @param minimum
+     *            the smallest acceptable length
+     * @return the table length
+     * @requires minimum > 0
+     * @ensures <pre>
+     * tableLength >= minimum  and
+     * tableLength(tableLength) = tableLength
+     * </pre>
+     */
+    int tableLength(int minimum);
+
+}
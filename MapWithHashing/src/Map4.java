@@ -1,5 +1,11 @@
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import components.array.Array;
 import components.array.Array1L;
@@ -11,28 +17,123 @@ import components.map.MapSecondary;
  * {@code Map} represented as a hash table using {@code Map}s for the buckets,
  * with implementations of primary methods.
  *
+ * <p>
+ * The hash table grows when {@code size} exceeds {@code loadFactor} times the
+ * number of buckets, and shrinks (never below the configured size) when
+ * {@code size} falls under a quarter of that threshold. The pairs are not
+ * moved all at once: while a resize is in progress the previous table is kept
+ * in {@code oldTable}, and every {@code add}, {@code remove} and
+ * {@code removeAny} moves a few of its buckets into {@code hashTable}, so no
+ * single call pays for the whole rehash.
+ *
+ * <p>
+ * The bucket of a key, and the table lengths allowed, are chosen by a
+ * {@code HashStrategy} (see {@code HashStrategies}); by default the bucket is
+ * {@code hashCode} mod the table length, as before strategies existed.
+ *
+ * <p>
+ * Each table has a bitmap with one bit per bucket, set exactly when that
+ * bucket is not empty. The iterator and {@code removeAny} use it to skip
+ * runs of 64 empty buckets at a time.
+ *
+ * <p>
+ * Nothing is allocated until it is needed: a new or cleared {@code Map4} has
+ * no table until the first {@code add}, and a bucket's {@code Map2} is created
+ * the first time a pair is added to that bucket. Construction, {@code clear}
+ * and {@code transferFrom} therefore take constant time however large the
+ * table is, and a small map only pays for the buckets it uses.
+ *
+ * <p>
+ * A bucket starts out as a {@code Map2}, which is searched linearly. Once it
+ * holds more than {@code TREEIFY_THRESHOLD} pairs, it is replaced by a
+ * {@code Map4TreeBucket}, which keeps them in a balanced tree ordered by hash
+ * code, and then by {@code compareTo} for {@code Comparable} keys (falling
+ * back to {@code equals} among keys it ranks equal); so even when many keys
+ * collide, whether by accident or by design, {@code hasKey} and {@code value}
+ * take O(log n) time, unless the keys have equal hash codes and are not
+ * {@code Comparable}, or {@code compareTo} ranks many of them equal. A tree
+ * bucket goes back to a {@code Map2} when it falls below
+ * {@code UNTREEIFY_THRESHOLD} pairs.
+ *
+ * <p>
+ * {@code snapshot} returns, in constant time, a read-only view of the pairs
+ * that shares the tables and buckets of {@code this}. From then on
+ * {@code this} treats them as copy-on-write: the first call that changes it
+ * copies the table arrays (but none of the buckets), and each bucket is
+ * copied the first time {@code this} touches it afterwards, so the snapshot
+ * never sees a change and the writer only pays for the buckets it uses.
+ *
  * @param <K>
  *            type of {@code Map} domain (key) entries
  * @param <V>
  *            type of {@code Map} range (associated value) entries
+ * @mathdefinitions <pre>
+ * IS_MIGRATED (
+ *   x: K,
+ *   old: ARRAY_MODEL,
+ *   migrated: integer
+ *  ) : boolean is
+ *  old = null  or
+ *  $this.strategy.bucketIndex(x, |old.entries|) < migrated
+ *
+ * IS_OCCUPANCY (
+ *   bits: string of integer,
+ *   table: ARRAY_MODEL
+ *  ) : boolean is
+ *  |bits| * 64 >= |table.entries|  and
+ *  for all i: integer, pf: PARTIAL_FUNCTION
+ *      where (0 <= i  and  i < |table.entries|  and
+ *             <pf> = table.entries[i, i+1))
+ *    ([bit i mod 64 of bits[i / 64] is set] = (pf /= {}))
+ * </pre>
  * @convention <pre>
+ * [an entry of $this.hashTable or $this.oldTable that is not in its
+ *  examinableIndices stands for the empty bucket {}]  and
+ * ($this.hashTable = null) = ($this.occupied = null)  and
+ * if $this.hashTable = null then
+ *   ($this.size = 0  and  $this.oldTable = null  and
+ *    $this.removeCursor = 0  and  $this.sweepCursor = 0)  and
+ * $this.initialTableSize > 0  and  $this.loadFactor > 0  and
+ * $this.strategy /= null  and
+ * if $this.tablesShared then $this.hashTable /= null  and
+ * [if $this.owned /= null, bucket i of $this.hashTable may be changed only
+ *  if bit i of $this.owned is set; likewise $this.oldOwned for
+ *  $this.oldTable]  and
+ * [if $this.hashTable /= null, the rest of this convention holds]  and
  * |$this.hashTable.entries| > 0  and
+ * $this.strategy.tableLength(|$this.hashTable.entries|) =
+ *   |$this.hashTable.entries|  and
+ * 0 <= $this.removeCursor < |$this.hashTable.entries|  and
+ * 0 <= $this.sweepCursor <= |$this.hashTable.entries|  and
+ * IS_OCCUPANCY($this.occupied, $this.hashTable)  and
  * for all i: integer, pf: PARTIAL_FUNCTION, x: K
  *     where (0 <= i  and  i < |$this.hashTable.entries|  and
  *            <pf> = $this.hashTable.entries[i, i+1)  and
  *            x is in DOMAIN(pf))
- *   ([computed result of x.hashCode()] mod |$this.hashTable.entries| = i))  and
- * |$this.hashTable.examinableIndices| = |$this.hashTable.entries|  and
+ *   ($this.strategy.bucketIndex(x, |$this.hashTable.entries|) = i  and
+ *    IS_MIGRATED(x, $this.oldTable, $this.migrated))  and
+ * if $this.oldTable /= null then
+ *   (0 <= $this.migrated <= |$this.oldTable.entries|  and
+ *    IS_OCCUPANCY($this.oldOccupied, $this.oldTable)  and
+ *    for all i: integer, pf: PARTIAL_FUNCTION, x: K
+ *        where (0 <= i  and  i < |$this.oldTable.entries|  and
+ *               <pf> = $this.oldTable.entries[i, i+1)  and
+ *               x is in DOMAIN(pf))
+ *      ($this.strategy.bucketIndex(x, |$this.oldTable.entries|) = i  and
+ *       i >= $this.migrated))  and
  * $this.size = sum i: integer, pf: PARTIAL_FUNCTION
  *     where (0 <= i  and  i < |$this.hashTable.entries|  and
  *            <pf> = $this.hashTable.entries[i, i+1))
- *   (|pf|)
+ *   (|pf|) +
+ *   [the same sum over $this.oldTable.entries, if $this.oldTable /= null]
  * </pre>
  * @correspondence <pre>
  * this = union i: integer, pf: PARTIAL_FUNCTION
  *            where (0 <= i  and  i < |$this.hashTable.entries|  and
  *                   <pf> = $this.hashTable.entries[i, i+1))
- *          (pf)
+ *          (pf)  union
+ *        [the same union over $this.oldTable.entries,
+ *         if $this.oldTable /= null]
  * </pre>
  *
  * @author Mingzhu Bao and Andy Shih
@@ -50,71 +151,759 @@ public class Map4<K, V> extends MapSecondary<K, V> {
     private static final int DEFAULT_HASH_TABLE_SIZE = 101;
 
     /**
-     * Buckets for hashing.
+     * Default ratio of size to number of buckets above which the table grows.
+     */
+    private static final double DEFAULT_LOAD_FACTOR = 0.75;
+
+    /**
+     * The table shrinks when size drops below loadFactor / SHRINK_DIVISOR
+     * times the number of buckets.
+     */
+    private static final int SHRINK_DIVISOR = 4;
+
+    /**
+     * Number of buckets of {@code oldTable} moved by each rehash step.
+     */
+    private static final int REHASH_BUCKETS_PER_STEP = 4;
+
+    /**
+     * A {@code Map2} bucket holding more pairs than this becomes a
+     * {@code Map4TreeBucket}.
+     */
+    private static final int TREEIFY_THRESHOLD = 8;
+
+    /**
+     * A {@code Map4TreeBucket} holding fewer pairs than this becomes a
+     * {@code Map2} again; kept below {@code TREEIFY_THRESHOLD} so a bucket
+     * whose size goes up and down by one does not convert on every call.
+     */
+    private static final int UNTREEIFY_THRESHOLD = 6;
+
+    /**
+     * Buckets for hashing, or {@code null} until the first {@code add}.
      */
     private Array<Map<K, V>> hashTable;
 
+    /**
+     * Table being migrated into {@code hashTable}, or {@code null} when no
+     * resize is in progress.
+     */
+    private Array<Map<K, V>> oldTable;
+
+    /**
+     * Number of leading buckets of {@code oldTable} already moved (and
+     * therefore empty).
+     */
+    private int migrated;
+
+    /**
+     * Bitmap of the non-empty buckets of {@code hashTable}, or {@code null}
+     * when {@code hashTable} is.
+     */
+    private long[] occupied;
+
+    /**
+     * Bitmap of the non-empty buckets of {@code oldTable}, or {@code null}
+     * when {@code oldTable} is.
+     */
+    private long[] oldOccupied;
+
+    /**
+     * Whether a snapshot shares {@code hashTable}, {@code oldTable} and their
+     * bitmaps, so they must be copied before they are changed.
+     */
+    private boolean tablesShared;
+
+    /**
+     * Bitmap of the buckets of {@code hashTable} that are not shared with any
+     * snapshot, or {@code null} when none of them is.
+     */
+    private long[] owned;
+
+    /**
+     * Bitmap of the buckets of {@code oldTable} that are not shared with any
+     * snapshot, or {@code null} when none of them is.
+     */
+    private long[] oldOwned;
+
+    /**
+     * Bucket of {@code hashTable} at which {@code removeAny} resumes looking
+     * for a non-empty bucket.
+     */
+    private int removeCursor;
+
+    /**
+     * Bucket of {@code hashTable} at which {@code sweep} resumes.
+     */
+    private int sweepCursor;
+
     /**
      * Total size of abstract {@code this}.
      */
     private int size;
 
     /**
-     * Computes {@code a} mod {@code b} as % should have been defined to work.
+     * Size of hash table chosen by the client; the table never shrinks below
+     * it and {@code clear} goes back to it.
+     */
+    private int initialTableSize;
+
+    /**
+     * Ratio of size to number of buckets above which the table grows.
+     */
+    private double loadFactor;
+
+    /**
+     * Chooses the bucket of each key and the allowed table lengths.
+     */
+    private HashStrategy<? super K> strategy;
+
+    /**
+     * Number of {@code hasKey} and {@code value} calls on {@code this}.
+     */
+    private long lookups;
+
+    /**
+     * Number of {@code add} calls on {@code this}.
+     */
+    private long inserts;
+
+    /**
+     * Number of {@code remove} and {@code removeAny} calls on {@code this}.
+     */
+    private long removals;
+
+    /**
+     * Number of resizes started by {@code this}.
+     */
+    private long rehashes;
+
+    /**
+     * Creates a table of {@code tableSize} empty buckets, none of which has
+     * been allocated yet.
      *
-     * @param a
-     *            the number being reduced
-     * @param b
-     *            the modulus
-     * @return the result of a mod b, which satisfies 0 <= {@code mod} < b
-     * @requires b > 0
+     * @param <K>
+     *            type of {@code Map} domain (key) entries
+     * @param <V>
+     *            type of {@code Map} range (associated value) entries
+     * @param tableSize
+     *            the number of buckets
+     * @return the new table
+     * @requires tableSize > 0
      * @ensures <pre>
-     * 0 <= mod  and  mod < b  and
-     * there exists k: integer (a = k * b + mod)
+     * |newTable.entries| = tableSize  and  newTable.examinableIndices = {}
      * </pre>
      */
-    private static int mod(int a, int b) {
-        assert b > 0 : "Violation of: b > 0";
+    private static <K, V> Array<Map<K, V>> newTable(int tableSize) {
+        return new Array1L<>(tableSize);
+    }
+
+    /**
+     * Returns the number of pairs in bucket {@code i} of {@code table}.
+     *
+     * @param <K>
+     *            type of {@code Map} domain (key) entries
+     * @param <V>
+     *            type of {@code Map} range (associated value) entries
+     * @param table
+     *            the table
+     * @param i
+     *            the bucket
+     * @return the size of the bucket
+     * @requires 0 <= i < |table.entries|
+     * @ensures <pre>
+     * if i is in table.examinableIndices then
+     *   bucketSize = |table.entries[i]|
+     * else
+     *   bucketSize = 0
+     * </pre>
+     */
+    private static <K, V> int bucketSize(Array<Map<K, V>> table, int i) {
         int result = 0;
-        if (a > 0) {
-            result = a % b;
-        } else if (a < 0) {
-            result = a % b;
-            if (a % b != 0) {
-                result = result + b;
+        if (table.mayBeExamined(i)) {
+            result = table.entry(i).size();
+        }
+        return result;
+    }
+
+    /**
+     * Creates a bitmap with room for {@code length} bits, all clear.
+     *
+     * @param length
+     *            the number of bits
+     * @return the new bitmap
+     * @requires length >= 0
+     * @ensures <pre>
+     * |newBitmap| = ceiling(length / 64)  and
+     * newBitmap = <0, ..., 0>
+     * </pre>
+     */
+    private static long[] newBitmap(int length) {
+        return new long[(length + Long.SIZE - 1) / Long.SIZE];
+    }
+
+    /**
+     * Sets or clears bit {@code i} of {@code bits}.
+     *
+     * @param bits
+     *            the bitmap
+     * @param i
+     *            the bit
+     * @param value
+     *            whether the bit is to be set
+     * @updates bits
+     * @requires 0 <= i < |bits| * 64
+     * @ensures <pre>
+     * [bit i of bits is set iff value]  and
+     * [the other bits of bits are unchanged]
+     * </pre>
+     */
+    private static void setBit(long[] bits, int i, boolean value) {
+        if (value) {
+            bits[i / Long.SIZE] |= 1L << i;
+        } else {
+            bits[i / Long.SIZE] &= ~(1L << i);
+        }
+    }
+
+    /**
+     * Returns the first set bit of {@code bits} at or after {@code from}.
+     *
+     * @param bits
+     *            the bitmap
+     * @param from
+     *            the first bit to look at
+     * @return the index of the set bit, or -1 if there is none
+     * @requires from >= 0
+     * @ensures <pre>
+     * if [some bit at or after from is set] then
+     *   nextSetBit >= from  and  [bit nextSetBit of bits is set]  and
+     *   [no bit in [from, nextSetBit) of bits is set]
+     * else
+     *   nextSetBit = -1
+     * </pre>
+     */
+    private static int nextSetBit(long[] bits, int from) {
+        int word = from / Long.SIZE;
+        int result = -1;
+        if (word < bits.length) {
+            long w = bits[word] & (-1L << from);
+            while (w == 0 && word + 1 < bits.length) {
+                word++;
+                w = bits[word];
+            }
+            if (w != 0) {
+                result = word * Long.SIZE + Long.numberOfTrailingZeros(w);
             }
         }
         return result;
     }
 
+    /**
+     * Reports whether bit {@code i} of {@code bits} is set.
+     *
+     * @param bits
+     *            the bitmap
+     * @param i
+     *            the bit
+     * @return true iff bit {@code i} is set
+     * @requires 0 <= i < |bits| * 64
+     * @ensures bitIsSet = [bit i of bits is set]
+     */
+    private static boolean bitIsSet(long[] bits, int i) {
+        return (bits[i / Long.SIZE] & (1L << i)) != 0;
+    }
+
+    /**
+     * Creates a table holding the same buckets (not copies of them) as
+     * {@code table}.
+     *
+     * @param <K>
+     *            type of {@code Map} domain (key) entries
+     * @param <V>
+     *            type of {@code Map} range (associated value) entries
+     * @param table
+     *            the table
+     * @return the new table
+     * @ensures <pre>
+     * copyTable.entries = table.entries  and
+     * copyTable.examinableIndices = table.examinableIndices
+     * </pre>
+     */
+    private static <K, V> Array<Map<K, V>> copyTable(
+            Array<Map<K, V>> table) {
+        Array<Map<K, V>> copy = newTable(table.length());
+        for (int i = 0; i < table.length(); i++) {
+            if (table.mayBeExamined(i)) {
+                copy.setEntry(i, table.entry(i));
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Moves every pair of {@code from} into {@code to}.
+     *
+     * @param <K>
+     *            type of {@code Map} domain (key) entries
+     * @param <V>
+     *            type of {@code Map} range (associated value) entries
+     * @param from
+     *            the map the pairs are taken from
+     * @param to
+     *            the map the pairs are moved into
+     * @return {@code to}
+     * @updates from, to
+     * @requires to = {}
+     * @ensures from = {}  and  to = #from  and  moveAll = to
+     */
+    private static <K, V> Map<K, V> moveAll(Map<K, V> from, Map<K, V> to) {
+        while (from.size() > 0) {
+            Pair<K, V> p = from.removeAny();
+            to.add(p.key(), p.value());
+        }
+        return to;
+    }
+
+    /**
+     * Adds ({@code key}, {@code value}) to bucket {@code i} of {@code table},
+     * turning the bucket into a {@code Map4TreeBucket} afterwards if it has
+     * grown past {@code TREEIFY_THRESHOLD} pairs.
+     *
+     * @param <K>
+     *            type of {@code Map} domain (key) entries
+     * @param <V>
+     *            type of {@code Map} range (associated value) entries
+     * @param table
+     *            the table
+     * @param bits
+     *            the occupancy bitmap of {@code table}
+     * @param i
+     *            the bucket
+     * @param key
+     *            the key added
+     * @param value
+     *            the value added
+     * @updates table, bits
+     * @requires <pre>
+     * IS_OCCUPANCY(bits, table)  and  0 <= i < |table.entries|  and
+     * [key is not in bucket i of table]
+     * </pre>
+     * @ensures <pre>
+     * IS_OCCUPANCY(bits, table)  and
+     * table.entries[i] = #table.entries[i] union {(key, value)}  and
+     * [the other entries of table are unchanged]
+     * </pre>
+     */
+    private static <K, V> void addToBucket(Array<Map<K, V>> table,
+            long[] bits, int i, K key, V value) {
+        if (!table.mayBeExamined(i)) {
+            table.setEntry(i, new Map2<K, V>());
+        }
+        Map<K, V> bucket = table.entry(i);
+        bucket.add(key, value);
+        setBit(bits, i, true);
+        if (!(bucket instanceof Map4TreeBucket<?, ?>)
+                && bucket.size() > TREEIFY_THRESHOLD) {
+            table.setEntry(i, moveAll(bucket, new Map4TreeBucket<K, V>()));
+        }
+    }
+
+    /**
+     * Updates bucket {@code i} of {@code table} after a pair has been removed
+     * from it: clears its occupancy bit if it is now empty, and turns it back
+     * into a {@code Map2} if it is a tree holding fewer than
+     * {@code UNTREEIFY_THRESHOLD} pairs.
+     *
+     * @param <K>
+     *            type of {@code Map} domain (key) entries
+     * @param <V>
+     *            type of {@code Map} range (associated value) entries
+     * @param table
+     *            the table
+     * @param bits
+     *            the occupancy bitmap of {@code table}
+     * @param i
+     *            the bucket
+     * @updates table, bits
+     * @requires 0 <= i < |table.entries|  and  i is in table.examinableIndices
+     * @ensures <pre>
+     * IS_OCCUPANCY(bits, table)  and  table = #table  and
+     * [bits other than bit i are unchanged]
+     * </pre>
+     */
+    private static <K, V> void bucketShrunk(Array<Map<K, V>> table,
+            long[] bits, int i) {
+        Map<K, V> bucket = table.entry(i);
+        setBit(bits, i, bucket.size() > 0);
+        if (bucket instanceof Map4TreeBucket<?, ?>
+                && bucket.size() < UNTREEIFY_THRESHOLD) {
+            table.setEntry(i, moveAll(bucket, new Map2<K, V>()));
+        }
+    }
+
     /**
      * Creator of initial representation.
      *
      * @param hashTableSize
      *            the size of the hash table
-     * @requires hashTableSize > 0
+     * @param lf
+     *            the load factor
+     * @param hs
+     *            the hash strategy
+     * @requires hashTableSize > 0  and  lf > 0  and  hs /= null
      * @ensures <pre>
-     * |$this.hashTable.entries| = hashTableSize  and
-     * for all i: integer
-     *     where (0 <= i  and  i < |$this.hashTable.entries|)
-     *   ($this.hashTable.entries[i, i+1) = <{}>  and
-     *    i is in $this.hashTable.examinableIndices)  and
-     * $this.size = 0
+     * $this.hashTable = null  and
+     * $this.oldTable = null  and  $this.migrated = 0  and
+     * $this.occupied = null  and  $this.oldOccupied = null  and
+     * $this.tablesShared = false  and
+     * $this.owned = null  and  $this.oldOwned = null  and
+     * $this.removeCursor = 0  and  $this.sweepCursor = 0  and
+     * $this.initialTableSize = hashTableSize  and  $this.loadFactor = lf  and
+     * $this.strategy = hs  and  $this.size = 0
      * </pre>
      */
-    private void createNewRep(int hashTableSize) {
-        this.hashTable = new Array1L<>(hashTableSize);
+    private void createNewRep(int hashTableSize, double lf,
+            HashStrategy<? super K> hs) {
+        this.hashTable = null;
+        this.oldTable = null;
+        this.migrated = 0;
+        this.occupied = null;
+        this.oldOccupied = null;
+        this.tablesShared = false;
+        this.owned = null;
+        this.oldOwned = null;
+        this.removeCursor = 0;
+        this.sweepCursor = 0;
         this.size = 0; //initialize size of Map to 0
-        for (int i = 0; i < hashTableSize; i++) {
+        this.initialTableSize = hashTableSize;
+        this.loadFactor = lf;
+        this.strategy = hs;
+    }
+
+    /**
+     * Gives {@code this} its own copies of the table arrays and bitmaps if a
+     * snapshot shares them; the buckets themselves stay shared until
+     * {@code ownBucket} copies them.
+     *
+     * @updates this
+     * @ensures this = #this  and  not $this.tablesShared
+     */
+    private void unshareTables() {
+        if (this.tablesShared) {
+            this.hashTable = copyTable(this.hashTable);
+            this.occupied = this.occupied.clone();
+            this.owned = newBitmap(this.hashTable.length());
+            if (this.oldTable != null) {
+                this.oldTable = copyTable(this.oldTable);
+                this.oldOccupied = this.oldOccupied.clone();
+                this.oldOwned = newBitmap(this.oldTable.length());
+            }
+            this.tablesShared = false;
+        }
+    }
+
+    /**
+     * Makes sure bucket {@code i} of {@code oldTable} (if {@code inOld}) or of
+     * {@code hashTable} (otherwise) is not shared with any snapshot, copying
+     * it if it is, so that it may be changed.
+     *
+     * @param inOld
+     *            whether the bucket is in {@code oldTable}
+     * @param i
+     *            the bucket
+     * @updates this
+     * @requires <pre>
+     * 0 <= i < [length of the table named by inOld]
+     * </pre>
+     * @ensures <pre>
+     * this = #this  and  not $this.tablesShared  and
+     * [bucket i of the table named by inOld may be changed]
+     * </pre>
+     */
+    private void ownBucket(boolean inOld, int i) {
+        this.unshareTables();
+        Array<Map<K, V>> table = this.hashTable;
+        long[] bits = this.owned;
+        if (inOld) {
+            table = this.oldTable;
+            bits = this.oldOwned;
+        }
+        if (bits != null && !bitIsSet(bits, i)) {
+            if (table.mayBeExamined(i)) {
+                Map<K, V> bucket = table.entry(i);
+                Map<K, V> copy = bucket.newInstance();
+                for (Pair<K, V> p : bucket) {
+                    copy.add(p.key(), p.value());
+                }
+                table.setEntry(i, copy);
+            }
+            setBit(bits, i, true);
+        }
+    }
+
+    /**
+     * Reports whether {@code key} belongs in the unmoved part of
+     * {@code oldTable} rather than in {@code hashTable}.
+     *
+     * @param key
+     *            the key to look for
+     * @return true iff {@code key} belongs in {@code oldTable}
+     * @ensures <pre>
+     * inOldTable = not IS_MIGRATED(key, $this.oldTable, $this.migrated)
+     * </pre>
+     */
+    private boolean inOldTable(K key) {
+        return this.oldTable != null && this.strategy.bucketIndex(key,
+                this.oldTable.length()) >= this.migrated;
+    }
+
+    /**
+     * Returns the bucket that holds (or would hold) {@code key}, or
+     * {@code null} if that bucket has not been allocated. The bucket is first
+     * copied if a snapshot shares it, since even looking a key up in a
+     * {@code Map2} may reorder it.
+     *
+     * @param key
+     *            the key to look for
+     * @return the bucket for {@code key}
+     * @updates this
+     * @ensures <pre>
+     * this = #this  and
+     * if IS_MIGRATED(key, $this.oldTable, $this.migrated) then
+     *   bucketFor is the bucket of $this.hashTable for key
+     * else
+     *   bucketFor is the bucket of $this.oldTable for key
+     * </pre>
+     */
+    private Map<K, V> bucketFor(K key) {
+        boolean inOld = this.inOldTable(key);
+        Array<Map<K, V>> table = this.hashTable;
+        if (inOld) {
+            table = this.oldTable;
+        }
+        Map<K, V> bucket = null;
+        if (table != null) {
+            int i = this.strategy.bucketIndex(key, table.length());
+            this.ownBucket(inOld, i);
+            table = this.hashTable;
+            if (inOld) {
+                table = this.oldTable;
+            }
+            if (table.mayBeExamined(i)) {
+                bucket = table.entry(i);
+            }
+        }
+        return bucket;
+    }
+
+    /**
+     * Reports whether {@code key} is in {@code this}, without counting a
+     * lookup.
+     *
+     * @param key
+     *            the key to look for
+     * @return true iff {@code key} is in DOMAIN(this)
+     * @ensures containsKey = (key is in DOMAIN(this))
+     */
+    private boolean containsKey(K key) {
+        Map<K, V> bucket = this.bucketFor(key);
+        return bucket != null && bucket.hasKey(key);
+    }
+
+    /**
+     * Creates the (empty) table, of {@code tableSize} buckets.
+     *
+     * @param tableSize
+     *            the number of buckets
+     * @updates $this.hashTable, $this.occupied
+     * @requires <pre>
+     * $this.hashTable = null  and  tableSize > 0  and
+     * tableSize = $this.strategy.tableLength(tableSize)
+     * </pre>
+     * @ensures <pre>
+     * |$this.hashTable.entries| = tableSize  and
+     * $this.hashTable.examinableIndices = {}  and
+     * $this.occupied = <0, ..., 0>
+     * </pre>
+     */
+    private void allocateTable(int tableSize) {
+        this.hashTable = newTable(tableSize);
+        this.occupied = newBitmap(tableSize);
+    }
+
+    /**
+     * Adds the pairs of {@code other} to {@code this}; a key already in
+     * {@code this} gets the value {@code combine} makes of its two values.
+     * If both maps use the same hash strategy and have tables of the same
+     * length, each bucket of {@code other} is added to the bucket of
+     * {@code this} with the same index, without computing any key's bucket
+     * or asserting anything per pair; otherwise every pair goes through
+     * {@code add} or {@code replaceValue}.
+     *
+     * @param other
+     *            the map whose pairs are added
+     * @param combine
+     *            combines the value in {@code this} with the value in
+     *            {@code other}, or {@code null} if no key is in both
+     * @updates this
+     * @requires <pre>
+     * other /= this  and
+     * (combine /= null  or  DOMAIN(this) intersection DOMAIN(other) = {})
+     * </pre>
+     * @ensures <pre>
+     * this = #this union other, with combine(#this(k), other(k)) for each
+     *        key k in both
+     * </pre>
+     */
+    private void mergeFrom(Map4<K, V> other, BinaryOperator<V> combine) {
+        /*
+         * Finishing any pending migration changes neither abstract value, and
+         * leaves each map with one table
+         */
+        if (other.oldTable != null) {
+            other.rehashStep(other.oldTable.length() - other.migrated);
+        }
+        if (this.oldTable != null) {
+            this.rehashStep(this.oldTable.length() - this.migrated);
+        }
+        boolean sameStrategy = this.strategy == other.strategy;
+        if (this.hashTable == null && other.hashTable != null
+                && sameStrategy) {
+            this.allocateTable(other.hashTable.length());
+        }
+        if (other.hashTable != null && this.hashTable != null && sameStrategy
+                && this.hashTable.length() == other.hashTable.length()) {
+            int i = nextSetBit(other.occupied, 0);
+            while (i >= 0) {
+                this.ownBucket(false, i);
+                for (Pair<K, V> p : other.hashTable.entry(i)) {
+                    Map<K, V> bucket = null;
+                    if (this.hashTable.mayBeExamined(i)) {
+                        bucket = this.hashTable.entry(i);
+                    }
+                    if (bucket != null && bucket.hasKey(p.key())) {
+                        assert combine != null : ""
+                                + "Violation of: DOMAIN(this) intersection"
+                                + " DOMAIN(other) = {}";
+                        bucket.replaceValue(p.key(), combine
+                                .apply(bucket.value(p.key()), p.value()));
+                    } else {
+                        addToBucket(this.hashTable, this.occupied, i, p.key(),
+                                p.value());
+                        this.size++;
+                        this.inserts++;
+                    }
+                }
+                i = nextSetBit(other.occupied, i + 1);
+            }
             /*
-             * a new temporary alias will be /spanned, which will then point to
-             * an index in the array of this.hashTable
+             * Each map was within its load factor, so one doubling of the
+             * table (started here, carried out by later calls) is enough
              */
-            Map<K, V> tempAlias = new Map2<>();
-            this.hashTable.setEntry(i, tempAlias);
+            this.resizeIfNeeded();
+        } else {
+            for (Pair<K, V> p : other) {
+                if (this.containsKey(p.key())) {
+                    assert combine != null : ""
+                            + "Violation of: DOMAIN(this) intersection"
+                            + " DOMAIN(other) = {}";
+                    this.replaceValue(p.key(),
+                            combine.apply(this.value(p.key()), p.value()));
+                } else {
+                    this.add(p.key(), p.value());
+                }
+            }
         }
     }
 
+    /**
+     * Moves up to {@code buckets} buckets of {@code oldTable} into
+     * {@code hashTable}, dropping {@code oldTable} once it is fully moved.
+     *
+     * @param buckets
+     *            maximum number of buckets to move
+     * @updates this
+     * @ensures this = #this
+     */
+    private void rehashStep(int buckets) {
+        this.unshareTables();
+        int moved = 0;
+        while (this.oldTable != null && moved < buckets) {
+            if (this.oldTable.mayBeExamined(this.migrated)) {
+                this.ownBucket(true, this.migrated);
+                Map<K, V> bucket = this.oldTable.entry(this.migrated);
+                while (bucket.size() > 0) {
+                    Pair<K, V> p = bucket.removeAny();
+                    int index = this.strategy.bucketIndex(p.key(),
+                            this.hashTable.length());
+                    this.ownBucket(false, index);
+                    addToBucket(this.hashTable, this.occupied, index,
+                            p.key(), p.value());
+                }
+            }
+            setBit(this.oldOccupied, this.migrated, false);
+            this.migrated++;
+            moved++;
+            if (this.migrated == this.oldTable.length()) {
+                this.oldTable = null;
+                this.oldOccupied = null;
+                this.oldOwned = null;
+                this.migrated = 0;
+            }
+        }
+    }
+
+    /**
+     * Starts moving the pairs into a table of {@code tableSize} buckets.
+     * Any resize already in progress is finished first.
+     *
+     * @param tableSize
+     *            the new number of buckets
+     * @updates this
+     * @requires <pre>
+     * tableSize > 0  and
+     * tableSize = $this.strategy.tableLength(tableSize)
+     * </pre>
+     * @ensures this = #this  and  |$this.hashTable.entries| = tableSize
+     */
+    private void startResize(int tableSize) {
+        this.rehashes++;
+        this.unshareTables();
+        if (this.oldTable != null) {
+            this.rehashStep(this.oldTable.length() - this.migrated);
+        }
+        this.oldTable = this.hashTable;
+        this.oldOccupied = this.occupied;
+        this.oldOwned = this.owned;
+        this.migrated = 0;
+        this.hashTable = newTable(tableSize);
+        this.occupied = newBitmap(tableSize);
+        this.owned = null;
+        this.removeCursor = 0;
+        this.sweepCursor = 0;
+    }
+
+    /**
+     * Grows or shrinks the table if {@code size} has crossed a threshold, then
+     * performs one rehash step.
+     *
+     * @updates this
+     * @ensures this = #this
+     */
+    private void resizeIfNeeded() {
+        int length = this.hashTable.length();
+        int minLength = this.strategy.tableLength(this.initialTableSize);
+        if (this.size > this.loadFactor * length) {
+            this.startResize(this.strategy.tableLength(2 * length));
+        } else if (length > minLength
+                && this.size < this.loadFactor * length / SHRINK_DIVISOR) {
+            this.startResize(Math.max(minLength,
+                    this.strategy.tableLength(length / 2)));
+        }
+        this.rehashStep(REHASH_BUCKETS_PER_STEP);
+    }
+
     /*
      * Constructors -----------------------------------------------------------
      */
@@ -123,7 +912,8 @@ public class Map4<K, V> extends MapSecondary<K, V> {
      * No-argument constructor.
      */
     public Map4() {
-        this.createNewRep(DEFAULT_HASH_TABLE_SIZE);
+        this.createNewRep(DEFAULT_HASH_TABLE_SIZE, DEFAULT_LOAD_FACTOR,
+                HashStrategies.modulo());
     }
 
     /**
@@ -135,7 +925,48 @@ public class Map4<K, V> extends MapSecondary<K, V> {
      * @ensures this = {}
      */
     public Map4(int hashTableSize) {
-        this.createNewRep(hashTableSize);
+        this.createNewRep(hashTableSize, DEFAULT_LOAD_FACTOR,
+                HashStrategies.modulo());
+    }
+
+    /**
+     * Constructor resulting in a hash table of size {@code hashTableSize} that
+     * grows once size exceeds {@code loadFactor} times its number of buckets.
+     *
+     * @param hashTableSize
+     *            size of hash table
+     * @param loadFactor
+     *            ratio of size to number of buckets that triggers growth
+     * @requires hashTableSize > 0  and  loadFactor > 0
+     * @ensures this = {}
+     */
+    public Map4(int hashTableSize, double loadFactor) {
+        assert hashTableSize > 0 : "Violation of: hashTableSize > 0";
+        assert loadFactor > 0 : "Violation of: loadFactor > 0";
+        this.createNewRep(hashTableSize, loadFactor, HashStrategies.modulo());
+    }
+
+    /**
+     * Constructor resulting in a hash table of (at least) size
+     * {@code hashTableSize} that grows once size exceeds {@code loadFactor}
+     * times its number of buckets, and that places keys in buckets using
+     * {@code strategy}.
+     *
+     * @param hashTableSize
+     *            size of hash table
+     * @param loadFactor
+     *            ratio of size to number of buckets that triggers growth
+     * @param strategy
+     *            chooses the bucket of each key and the allowed table lengths
+     * @requires hashTableSize > 0  and  loadFactor > 0
+     * @ensures this = {}
+     */
+    public Map4(int hashTableSize, double loadFactor,
+            HashStrategy<? super K> strategy) {
+        assert hashTableSize > 0 : "Violation of: hashTableSize > 0";
+        assert loadFactor > 0 : "Violation of: loadFactor > 0";
+        assert strategy != null : "Violation of: strategy is not null";
+        this.createNewRep(hashTableSize, loadFactor, strategy);
     }
 
     /*
@@ -155,7 +986,8 @@ public class Map4<K, V> extends MapSecondary<K, V> {
 
     @Override
     public final void clear() {
-        this.createNewRep(DEFAULT_HASH_TABLE_SIZE);
+        this.createNewRep(this.initialTableSize, this.loadFactor,
+                this.strategy);
     }
 
     @Override
@@ -171,8 +1003,21 @@ public class Map4<K, V> extends MapSecondary<K, V> {
          */
         Map4<K, V> localSource = (Map4<K, V>) source;
         this.hashTable = localSource.hashTable;
+        this.oldTable = localSource.oldTable;
+        this.migrated = localSource.migrated;
+        this.occupied = localSource.occupied;
+        this.oldOccupied = localSource.oldOccupied;
+        this.tablesShared = localSource.tablesShared;
+        this.owned = localSource.owned;
+        this.oldOwned = localSource.oldOwned;
+        this.removeCursor = localSource.removeCursor;
+        this.sweepCursor = localSource.sweepCursor;
         this.size = localSource.size;
-        localSource.createNewRep(DEFAULT_HASH_TABLE_SIZE);
+        this.initialTableSize = localSource.initialTableSize;
+        this.loadFactor = localSource.loadFactor;
+        this.strategy = localSource.strategy;
+        localSource.createNewRep(localSource.initialTableSize,
+                localSource.loadFactor, localSource.strategy);
     }
 
     /*
@@ -183,61 +1028,87 @@ public class Map4<K, V> extends MapSecondary<K, V> {
     public final void add(K key, V value) {
         assert key != null : "Violation of: key is not null";
         assert value != null : "Violation of: value is not null";
-        assert !this.hasKey(key) : "Violation of: key is not in DOMAIN(this)";
-        //find the bucket for this pair and add it accordingly
-        int index = mod(key.hashCode(), this.hashTable.length());
-        this.hashTable.entry(index).add(key, value);
-        this.size++;
+        assert !this.containsKey(
+                key) : "Violation of: key is not in DOMAIN(this)";
+        this.addDistinct(key, value);
     }
 
     @Override
     public final Pair<K, V> remove(K key) {
         assert key != null : "Violation of: key is not null";
-        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+        assert this.containsKey(
+                key) : "Violation of: key is in DOMAIN(this)";
+        this.removals++;
         //find the bucket for this key and remove the pair accordingly
-        int index = mod(key.hashCode(), this.hashTable.length());
-        Pair<K, V> currPair = this.hashTable.entry(index).remove(key);
+        Pair<K, V> currPair = this.bucketFor(key).remove(key);
+        if (this.inOldTable(key)) {
+            bucketShrunk(this.oldTable, this.oldOccupied,
+                    this.strategy.bucketIndex(key, this.oldTable.length()));
+        } else {
+            bucketShrunk(this.hashTable, this.occupied,
+                    this.strategy.bucketIndex(key, this.hashTable.length()));
+        }
         this.size--;
+        this.resizeIfNeeded();
         return currPair;
     }
 
     @Override
     public final Pair<K, V> removeAny() {
         assert this.size() > 0 : "Violation of: this /= empty_set";
-        //will removeAny() from first bucket
-
-        int indexNonEmpty = 0;
-        boolean foundIndex = false;
-        for (int i = 0; !foundIndex && i < this.hashTable.length(); i++) {
-            //will iterate until a bucket with elements is found
-            if (this.hashTable.entry(i).size() > 0) {
-                //returnAny from a bucket that is NOT empty
-                indexNonEmpty = i;
-                foundIndex = true;
+        this.removals++;
+        this.unshareTables();
+        /*
+         * Take from the unmoved part of oldTable first; then from hashTable,
+         * resuming where the last call stopped. The occupancy bitmaps let both
+         * searches skip empty buckets a word at a time, and neither position
+         * moves backward during a sequence of removeAny calls, so draining the
+         * map is linear in the table length.
+         */
+        Array<Map<K, V>> table = this.hashTable;
+        long[] bits = this.occupied;
+        int index = -1;
+        if (this.oldTable != null) {
+            index = nextSetBit(this.oldOccupied, this.migrated);
+            if (index >= 0) {
+                table = this.oldTable;
+                bits = this.oldOccupied;
             }
         }
+        if (index < 0) {
+            index = nextSetBit(this.occupied, this.removeCursor);
+            if (index < 0) {
+                index = nextSetBit(this.occupied, 0);
+            }
+            this.removeCursor = index;
+        }
+        this.ownBucket(table == this.oldTable, index);
+        Pair<K, V> currPair = table.entry(index).removeAny();
+        bucketShrunk(table, bits, index);
         this.size--;
-        return this.hashTable.entry(indexNonEmpty).removeAny();
+        this.resizeIfNeeded();
+        return currPair;
     }
 
     @Override
     public final V value(K key) {
         assert key != null : "Violation of: key is not null";
-        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+        assert this.containsKey(
+                key) : "Violation of: key is in DOMAIN(this)";
+        this.lookups++;
         //find the bucket for this key and get the value accordingly
-        int foundIndex = mod(key.hashCode(), this.hashTable.length());
-        return this.hashTable.entry(foundIndex).value(key);
+        return this.bucketFor(key).value(key);
     }
 
     @Override
     public final boolean hasKey(K key) {
         assert key != null : "Violation of: key is not null";
+        this.lookups++;
         /*
          * find the bucket for this input key and check if the map in this
          * bucket already has the same key
          */
-        int foundIndex = mod(key.hashCode(), this.hashTable.length());
-        return this.hashTable.entry(foundIndex).hasKey(key);
+        return this.containsKey(key);
     }
 
     @Override
@@ -250,8 +1121,382 @@ public class Map4<K, V> extends MapSecondary<K, V> {
         return new Map4Iterator();
     }
 
+    /*
+     * Other methods ----------------------------------------------------------
+     */
+
+    /**
+     * Reports the number of buckets of the table (not counting those of a
+     * table the pairs are being moved out of), or that the table will have
+     * when it is first needed.
+     *
+     * @return the number of buckets
+     * @ensures bucketCount > 0
+     */
+    public final int bucketCount() {
+        int count = this.strategy.tableLength(this.initialTableSize);
+        if (this.hashTable != null) {
+            count = this.hashTable.length();
+        }
+        return count;
+    }
+
+    /**
+     * Adds the pair ({@code key}, {@code value}) to {@code this} without
+     * checking that {@code key} is not already a key, even with assertions
+     * enabled; for loaders (see {@code Map4Serializer}) reading pairs that are
+     * known to have distinct keys.
+     *
+     * @param key
+     *            the key to be added
+     * @param value
+     *            the associated value to be added
+     * @updates this
+     * @requires key is not in DOMAIN(this)
+     * @ensures this = #this union {(key, value)}
+     */
+    final void addDistinct(K key, V value) {
+        this.inserts++;
+        if (this.hashTable == null) {
+            this.allocateTable(
+                    this.strategy.tableLength(this.initialTableSize));
+        }
+        //find the bucket for this pair and add it accordingly
+        if (this.inOldTable(key)) {
+            int i = this.strategy.bucketIndex(key, this.oldTable.length());
+            this.ownBucket(true, i);
+            addToBucket(this.oldTable, this.oldOccupied, i, key, value);
+        } else {
+            int i = this.strategy.bucketIndex(key, this.hashTable.length());
+            this.ownBucket(false, i);
+            addToBucket(this.hashTable, this.occupied, i, key, value);
+        }
+        this.size++;
+        this.resizeIfNeeded();
+    }
+
+    /**
+     * Reports how many buckets hold each number of pairs, for measuring how
+     * well the hash strategy spreads a particular set of keys. Buckets of a
+     * table being migrated count until they have been moved.
+     *
+     * @return the histogram: entry n is the number of buckets holding exactly
+     *         n pairs
+     * @ensures <pre>
+     * |bucketLengthHistogram| = [length of the longest bucket] + 1  and
+     * for all n: integer
+     *     where (0 <= n  and  n < |bucketLengthHistogram|)
+     *   (bucketLengthHistogram[n] =
+     *      [number of buckets of $this.hashTable, and of the unmoved part of
+     *       $this.oldTable, holding exactly n pairs])
+     * </pre>
+     */
+    public final int[] bucketLengthHistogram() {
+        if (this.hashTable == null) {
+            return new int[] {
+                    this.strategy.tableLength(this.initialTableSize) };
+        }
+        int longest = 0;
+        for (int i = 0; i < this.hashTable.length(); i++) {
+            longest = Math.max(longest, bucketSize(this.hashTable, i));
+        }
+        if (this.oldTable != null) {
+            for (int i = this.migrated; i < this.oldTable.length(); i++) {
+                longest = Math.max(longest, bucketSize(this.oldTable, i));
+            }
+        }
+        int[] histogram = new int[longest + 1];
+        for (int i = 0; i < this.hashTable.length(); i++) {
+            histogram[bucketSize(this.hashTable, i)]++;
+        }
+        if (this.oldTable != null) {
+            for (int i = this.migrated; i < this.oldTable.length(); i++) {
+                histogram[bucketSize(this.oldTable, i)]++;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Returns a snapshot of the shape of the hash table (bucket occupancy and
+     * lengths) and of the number of lookups, inserts, removals and rehashes
+     * performed on {@code this} since it was constructed. The counts are
+     * plain field increments, so keeping them costs next to nothing; taking
+     * the snapshot looks at every bucket.
+     *
+     * @return the snapshot
+     * @ensures <pre>
+     * metrics.size = |this|  and
+     * metrics.bucketLengthHistogram = bucketLengthHistogram
+     * </pre>
+     */
+    public final Map4Metrics metrics() {
+        return new Map4Metrics(this.bucketLengthHistogram(), this.size,
+                this.lookups, this.inserts, this.removals, this.rehashes);
+    }
+
+    /**
+     * Adds all the pairs of {@code other} to {@code this}, leaving
+     * {@code other} unchanged. When the two maps use the same hash strategy
+     * and the same table length (or {@code this} is new), this takes one
+     * pass over the buckets of {@code other} and computes no hash codes.
+     *
+     * @param other
+     *            the map whose pairs are added
+     * @updates this
+     * @requires <pre>
+     * other /= this  and
+     * DOMAIN(this) intersection DOMAIN(other) = {}
+     * </pre>
+     * @ensures this = #this union other
+     */
+    public final void addAll(Map4<K, V> other) {
+        assert other != null : "Violation of: other is not null";
+        assert other != this : "Violation of: other is not this";
+        this.mergeFrom(other, null);
+    }
+
+    /**
+     * Adds all the pairs of {@code other} to {@code this}, leaving
+     * {@code other} unchanged; a key in both maps gets the value
+     * {@code combine} makes of its value in {@code this} and its value in
+     * {@code other}. E.g., {@code total.merge(partial, Integer::sum)} adds
+     * one thread's word counts into the total. Takes the same fast path as
+     * {@code addAll}.
+     *
+     * @param other
+     *            the map whose pairs are added
+     * @param combine
+     *            combines the two values of a key in both maps
+     * @updates this
+     * @requires other /= this
+     * @ensures <pre>
+     * DOMAIN(this) = DOMAIN(#this) union DOMAIN(other)  and
+     * for all k: K where (k is in DOMAIN(this))
+     *   (if k is in DOMAIN(#this) intersection DOMAIN(other) then
+     *      this(k) = combine(#this(k), other(k))
+     *    else if k is in DOMAIN(#this) then  this(k) = #this(k)
+     *    else  this(k) = other(k))
+     * </pre>
+     */
+    public final void merge(Map4<K, V> other, BinaryOperator<V> combine) {
+        assert other != null : "Violation of: other is not null";
+        assert other != this : "Violation of: other is not this";
+        assert combine != null : "Violation of: combine is not null";
+        this.mergeFrom(other, combine);
+    }
+
+    /**
+     * Returns a new {@code Map4} with the pairs, table length, load factor
+     * and hash strategy of {@code this}, built bucket by bucket without
+     * computing any hash codes.
+     *
+     * @return the copy
+     * @ensures copy = this
+     */
+    public final Map4<K, V> copy() {
+        Map4<K, V> copy = new Map4<>(this.initialTableSize, this.loadFactor,
+                this.strategy);
+        copy.mergeFrom(this, null);
+        return copy;
+    }
+
+    /**
+     * Removes the pairs for which {@code doomed} is true from the next
+     * {@code buckets} non-empty buckets of the table, resuming where the last
+     * call stopped and going round the table, but never past a full turn in
+     * one call. Since it does a bounded amount of work, calling it from every
+     * operation of a client (see {@code ExpiringMap4}) cleans the whole table
+     * over time without ever pausing for long. Buckets of a table being
+     * migrated are not looked at until they have been moved, so each call
+     * also moves a few of them, as {@code add} and {@code remove} do.
+     *
+     * @param buckets
+     *            maximum number of non-empty buckets to look at
+     * @param doomed
+     *            tells whether a pair is to be removed
+     * @return the number of pairs removed
+     * @updates this
+     * @requires buckets > 0
+     * @ensures <pre>
+     * this = #this \ [some of the pairs p of #this for which
+     *                  doomed.test(p)]  and
+     * sweep = |#this| - |this|
+     * </pre>
+     */
+    public final int sweep(int buckets, Predicate<? super Pair<K, V>> doomed) {
+        assert buckets > 0 : "Violation of: buckets > 0";
+        assert doomed != null : "Violation of: doomed is not null";
+        int removed = 0;
+        if (this.hashTable != null) {
+            if (this.oldTable != null) {
+                this.rehashStep(REHASH_BUCKETS_PER_STEP);
+            }
+            int start = this.sweepCursor;
+            boolean wrapped = false;
+            int visited = 0;
+            while (visited < buckets
+                    && !(wrapped && this.sweepCursor >= start)) {
+                int i = nextSetBit(this.occupied, this.sweepCursor);
+                if (i < 0 && !wrapped) {
+                    wrapped = true;
+                    this.sweepCursor = 0;
+                } else if (i < 0) {
+                    /*
+                     * No non-empty bucket is left before start either
+                     */
+                    this.sweepCursor = start;
+                } else if (wrapped && i >= start) {
+                    this.sweepCursor = i;
+                } else {
+                    removed += this.sweepBucket(i, doomed);
+                    visited++;
+                    this.sweepCursor = i + 1;
+                }
+            }
+            if (removed > 0) {
+                this.size -= removed;
+                this.removals += removed;
+                this.resizeIfNeeded();
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Removes the pairs for which {@code doomed} is true from bucket {@code i}
+     * of {@code hashTable}, leaving {@code size} to the caller.
+     *
+     * @param i
+     *            the bucket
+     * @param doomed
+     *            tells whether a pair is to be removed
+     * @return the number of pairs removed
+     * @updates $this.hashTable, $this.occupied
+     * @requires <pre>
+     * 0 <= i < |$this.hashTable.entries|  and
+     * i is in $this.hashTable.examinableIndices
+     * </pre>
+     */
+    private int sweepBucket(int i, Predicate<? super Pair<K, V>> doomed) {
+        /*
+         * Iterating does not change the bucket, so it is only copied (if a
+         * snapshot shares it) when there is something to remove
+         */
+        List<K> keys = new ArrayList<>();
+        for (Pair<K, V> p : this.hashTable.entry(i)) {
+            if (doomed.test(p)) {
+                keys.add(p.key());
+            }
+        }
+        if (!keys.isEmpty()) {
+            this.ownBucket(false, i);
+            Map<K, V> bucket = this.hashTable.entry(i);
+            for (K key : keys) {
+                bucket.remove(key);
+            }
+            bucketShrunk(this.hashTable, this.occupied, i);
+        }
+        return keys.size();
+    }
+
+    /**
+     * Returns an immutable view of the pairs of {@code this} as they are now,
+     * in constant time. The view shares the table and buckets of
+     * {@code this}; afterwards, the first change to {@code this} copies the
+     * table arrays, and each bucket is copied the first time {@code this}
+     * touches it, so later changes are never seen through the view. The view
+     * may be read by any number of threads at once, without locks, while
+     * {@code this} keeps changing.
+     *
+     * @return the snapshot
+     * @ensures snapshot = this
+     */
+    public final Map4Snapshot<K, V> snapshot() {
+        this.tablesShared = this.hashTable != null;
+        return new Map4Snapshot<>(this.hashTable, this.oldTable,
+                this.migrated, this.size, this.strategy);
+    }
+
+    /**
+     * Returns a {@code Spliterator} over the pairs of {@code this} that splits
+     * by ranges of buckets, so that, e.g.,
+     * {@code StreamSupport.stream(m.spliterator(), true)} processes the pairs
+     * in parallel. Every part reports its exact size ({@code SIZED} and
+     * {@code SUBSIZED}); parts are split where they hold about the same
+     * number of pairs, not the same number of buckets. Creating it counts the
+     * pairs of every bucket once. As with {@code iterator}, {@code this} must
+     * not be changed while the spliterator or any part of it is in use.
+     *
+     * @return the spliterator
+     */
+    @Override
+    public final Spliterator<Pair<K, V>> spliterator() {
+        int buckets = 0;
+        if (this.hashTable != null) {
+            buckets = this.hashTable.length();
+            if (this.oldTable != null) {
+                buckets += this.oldTable.length() - this.migrated;
+            }
+        }
+        int[] before = new int[buckets + 1];
+        for (int i = 0; i < buckets; i++) {
+            before[i + 1] = before[i] + this.numberedBucketSize(i);
+        }
+        return new Map4Spliterator(before, 0, buckets);
+    }
+
+    /**
+     * Returns the bucket numbered {@code i} when the buckets of
+     * {@code hashTable} are numbered first, followed by those of the unmoved
+     * part of {@code oldTable}, or {@code null} if it has not been allocated.
+     *
+     * @param i
+     *            the bucket number
+     * @return the bucket
+     * @requires <pre>
+     * 0 <= i < |$this.hashTable.entries| +
+     *          [|$this.oldTable.entries| - $this.migrated, if
+     *           $this.oldTable /= null]
+     * </pre>
+     */
+    private Map<K, V> numberedBucket(int i) {
+        Array<Map<K, V>> table = this.hashTable;
+        int index = i;
+        if (index >= this.hashTable.length()) {
+            table = this.oldTable;
+            index = index - this.hashTable.length() + this.migrated;
+        }
+        Map<K, V> result = null;
+        if (table.mayBeExamined(index)) {
+            result = table.entry(index);
+        }
+        return result;
+    }
+
     /**
-     * Implementation of {@code Iterator} interface for {@code Map4}.
+     * Returns the number of pairs in the bucket numbered {@code i}, numbering
+     * as in {@code bucket}.
+     *
+     * @param i
+     *            the bucket number
+     * @return the size of the bucket
+     * @requires [i is a bucket number, as for numberedBucket]
+     */
+    private int numberedBucketSize(int i) {
+        Map<K, V> b = this.numberedBucket(i);
+        int result = 0;
+        if (b != null) {
+            result = b.size();
+        }
+        return result;
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for {@code Map4}. It visits
+     * the non-empty buckets of {@code hashTable} and then those of the unmoved
+     * part of {@code oldTable}, finding them through the occupancy bitmaps,
+     * so empty buckets cost neither time per bucket nor an iterator.
      */
     private final class Map4Iterator implements Iterator<Pair<K, V>> {
 
@@ -260,13 +1505,20 @@ public class Map4<K, V> extends MapSecondary<K, V> {
          */
         private int numberSeen;
 
+        /**
+         * Whether the current bucket is in {@code oldTable} rather than
+         * {@code hashTable}.
+         */
+        private boolean inOldTable;
+
         /**
          * Bucket from which current bucket iterator comes.
          */
         private int currentBucket;
 
         /**
-         * Bucket iterator from which next element will come.
+         * Bucket iterator from which next element will come, or {@code null}
+         * before the first bucket is reached.
          */
         private Iterator<Pair<K, V>> bucketIterator;
 
@@ -275,8 +1527,34 @@ public class Map4<K, V> extends MapSecondary<K, V> {
          */
         Map4Iterator() {
             this.numberSeen = 0;
-            this.currentBucket = 0;
-            this.bucketIterator = Map4.this.hashTable.entry(0).iterator();
+            this.inOldTable = false;
+            this.currentBucket = -1;
+            this.bucketIterator = null;
+        }
+
+        /**
+         * Moves to the next non-empty bucket.
+         *
+         * @requires [there is a non-empty bucket after the current one]
+         */
+        private void nextBucket() {
+            if (!this.inOldTable) {
+                this.currentBucket = nextSetBit(Map4.this.occupied,
+                        this.currentBucket + 1);
+                if (this.currentBucket >= 0) {
+                    this.bucketIterator = Map4.this.hashTable
+                            .entry(this.currentBucket).iterator();
+                } else {
+                    this.inOldTable = true;
+                    this.currentBucket = Map4.this.migrated - 1;
+                }
+            }
+            if (this.inOldTable) {
+                this.currentBucket = nextSetBit(Map4.this.oldOccupied,
+                        this.currentBucket + 1);
+                this.bucketIterator = Map4.this.oldTable
+                        .entry(this.currentBucket).iterator();
+            }
         }
 
         @Override
@@ -296,13 +1574,9 @@ public class Map4<K, V> extends MapSecondary<K, V> {
                 throw new NoSuchElementException();
             }
             this.numberSeen++;
-            if (this.bucketIterator.hasNext()) {
-                return this.bucketIterator.next();
-            }
-            while (!this.bucketIterator.hasNext()) {
-                this.currentBucket++;
-                this.bucketIterator = Map4.this.hashTable
-                        .entry(this.currentBucket).iterator();
+            if (this.bucketIterator == null
+                    || !this.bucketIterator.hasNext()) {
+                this.nextBucket();
             }
             return this.bucketIterator.next();
         }
@@ -315,4 +1589,118 @@ public class Map4<K, V> extends MapSecondary<K, V> {
 
     }
 
+    /**
+     * Implementation of {@code Spliterator} interface for {@code Map4},
+     * covering the buckets numbered {@code from} (inclusive) to {@code to}
+     * (exclusive), numbering as in {@code numberedBucket}.
+     */
+    private final class Map4Spliterator implements Spliterator<Pair<K, V>> {
+
+        /**
+         * Entry i is the number of pairs in the buckets numbered before i;
+         * shared by all parts of a split.
+         */
+        private final int[] before;
+
+        /**
+         * Next bucket to start on.
+         */
+        private int from;
+
+        /**
+         * End of the range of buckets.
+         */
+        private int to;
+
+        /**
+         * Number of pairs not yet visited.
+         */
+        private long remaining;
+
+        /**
+         * Iterator of the bucket being visited, or {@code null} between
+         * buckets.
+         */
+        private Iterator<Pair<K, V>> bucketIterator;
+
+        /**
+         * Constructor covering buckets {@code from} to {@code to}.
+         *
+         * @param before
+         *            running counts of pairs per bucket
+         * @param from
+         *            first bucket covered
+         * @param to
+         *            end of the range of buckets
+         */
+        Map4Spliterator(int[] before, int from, int to) {
+            this.before = before;
+            this.from = from;
+            this.to = to;
+            this.remaining = before[to] - before[from];
+            this.bucketIterator = null;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Pair<K, V>> action) {
+            assert action != null : "Violation of: action is not null";
+            while ((this.bucketIterator == null
+                    || !this.bucketIterator.hasNext())
+                    && this.from < this.to) {
+                this.bucketIterator = null;
+                Map<K, V> b = Map4.this.numberedBucket(this.from);
+                if (b != null && b.size() > 0) {
+                    this.bucketIterator = b.iterator();
+                }
+                this.from++;
+            }
+            boolean advanced = this.bucketIterator != null
+                    && this.bucketIterator.hasNext();
+            if (advanced) {
+                this.remaining--;
+                action.accept(this.bucketIterator.next());
+            }
+            return advanced;
+        }
+
+        @Override
+        public Spliterator<Pair<K, V>> trySplit() {
+            /*
+             * Find the bucket where the pairs not yet started on divide most
+             * evenly, and hand the buckets from there on to a new part
+             */
+            int half = (this.before[this.from] + this.before[this.to]) / 2;
+            int low = this.from + 1;
+            int high = this.to;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (this.before[mid] < half) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            Spliterator<Pair<K, V>> split = null;
+            if (low < this.to && this.before[this.from] < this.before[low]
+                    && this.before[low] < this.before[this.to]) {
+                split = new Map4Spliterator(this.before, low, this.to);
+                this.remaining -= this.before[this.to] - this.before[low];
+                this.to = low;
+            }
+            return split;
+        }
+
+        @Override
+        public long estimateSize() {
+            return this.remaining;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.SIZED | Spliterator.SUBSIZED
+                    | Spliterator.DISTINCT | Spliterator.NONNULL;
+        }
+
+    }
+
 }
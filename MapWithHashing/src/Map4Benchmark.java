@@ -0,0 +1,451 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import components.map.Map;
+import components.map.Map1L;
+import components.map.Map2;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+
+/**
+ * Times {@code add}, {@code hasKey}, {@code value}, iteration, {@code remove}
+ * and {@code removeAny} on {@code String} keys in {@code Map4} at the hash
+ * table sizes of the {@code Map4Test} fixtures (101, 5, 30 and 1009), and in
+ * {@code Map1L}, {@code Map2} and {@code java.util.HashMap} for comparison,
+ * for maps of 10^2 up to 10^5 entries.
+ *
+ * <p>
+ * {@code Map4} is timed twice at each table size: once growing from that size
+ * as usual, and once with growth turned off (an infinite load factor), which
+ * is how the fixtures' tables behaved before {@code Map4} could resize and
+ * shows what each fixed bucket count costs. {@code Map2} searches its pairs
+ * one by one, so it is only timed up to {@code LINEAR_MAX_SIZE} entries.
+ * {@code HashMap} has no {@code removeAny}, so it drains through one
+ * iterator, removing each key it returns; a new iterator per call would scan
+ * again past every bucket already emptied (a {@code HashMap} never shrinks),
+ * and time the harness rather than the map.
+ *
+ * <p>
+ * Every operation is repeated until about {@code OPERATIONS} calls have been
+ * timed, and the time per call is reported in nanoseconds. The keys looked up
+ * and removed are built separately from the keys added and shuffled, as in
+ * {@code SwissMap4Benchmark}.
+ *
+ * @author Mingzhu Bao and Andy Shih
+ *
+ */
+public final class Map4Benchmark {
+
+    /**
+     * Smallest map size timed.
+     */
+    private static final int MIN_SIZE = 100;
+
+    /**
+     * Largest map size timed.
+     */
+    private static final int MAX_SIZE = 100_000;
+
+    /**
+     * Factor between successive map sizes.
+     */
+    private static final int SIZE_STEP = 10;
+
+    /**
+     * Largest map size timed for maps whose operations take linear time.
+     */
+    private static final int LINEAR_MAX_SIZE = 1_000;
+
+    /**
+     * Number of calls timed per operation, whatever the size of the map.
+     */
+    private static final int OPERATIONS = 1_000_000;
+
+    /**
+     * Number of untimed runs first so the JIT compiler has warmed up.
+     */
+    private static final int WARM_UP_RUNS = 3;
+
+    /**
+     * Hash table sizes of the {@code Map4Test} fixtures.
+     */
+    private static final int[] TABLE_SIZES = { 101, 5, 30, 1009 };
+
+    /**
+     * Seed of the shuffles, so every run uses keys in the same order.
+     */
+    private static final long SEED = 42;
+
+    /**
+     * The operations timed, as one interface over the components maps and
+     * {@code java.util.HashMap}.
+     */
+    private interface Subject {
+
+        /**
+         * Adds the pair ({@code key}, {@code value}).
+         *
+         * @param key
+         *            the key
+         * @param value
+         *            the value
+         */
+        void add(String key, int value);
+
+        /**
+         * Reports whether {@code key} is a key.
+         *
+         * @param key
+         *            the key
+         * @return true iff {@code key} is a key
+         */
+        boolean hasKey(String key);
+
+        /**
+         * Reports the value of {@code key}.
+         *
+         * @param key
+         *            the key
+         * @return the value of {@code key}
+         */
+        int value(String key);
+
+        /**
+         * Removes the pair whose key is {@code key}.
+         *
+         * @param key
+         *            the key
+         */
+        void remove(String key);
+
+        /**
+         * Removes {@code n} pairs, any of them, one at a time.
+         *
+         * @param n
+         *            the number of pairs to remove
+         */
+        void drain(int n);
+
+        /**
+         * Reports the sum of the values, visiting every pair once.
+         *
+         * @return the sum of the values
+         */
+        long sumValues();
+
+    }
+
+    /**
+     * A {@code Subject} backed by a components {@code Map}.
+     */
+    private static final class ComponentsSubject implements Subject {
+
+        /**
+         * The map timed.
+         */
+        private final Map<String, Integer> map;
+
+        /**
+         * Constructor.
+         *
+         * @param map
+         *            the map timed
+         */
+        ComponentsSubject(Map<String, Integer> map) {
+            this.map = map;
+        }
+
+        @Override
+        public void add(String key, int value) {
+            this.map.add(key, value);
+        }
+
+        @Override
+        public boolean hasKey(String key) {
+            return this.map.hasKey(key);
+        }
+
+        @Override
+        public int value(String key) {
+            return this.map.value(key);
+        }
+
+        @Override
+        public void remove(String key) {
+            this.map.remove(key);
+        }
+
+        @Override
+        public void drain(int n) {
+            for (int i = 0; i < n; i++) {
+                this.map.removeAny();
+            }
+        }
+
+        @Override
+        public long sumValues() {
+            long sum = 0;
+            for (Map.Pair<String, Integer> p : this.map) {
+                sum += p.value();
+            }
+            return sum;
+        }
+
+    }
+
+    /**
+     * A {@code Subject} backed by a {@code java.util.HashMap}.
+     */
+    private static final class HashMapSubject implements Subject {
+
+        /**
+         * The map timed.
+         */
+        private final HashMap<String, Integer> map = new HashMap<>();
+
+        @Override
+        public void add(String key, int value) {
+            this.map.put(key, value);
+        }
+
+        @Override
+        public boolean hasKey(String key) {
+            return this.map.containsKey(key);
+        }
+
+        @Override
+        public int value(String key) {
+            return this.map.get(key);
+        }
+
+        @Override
+        public void remove(String key) {
+            this.map.remove(key);
+        }
+
+        @Override
+        public void drain(int n) {
+            Iterator<String> it = this.map.keySet().iterator();
+            for (int i = 0; i < n; i++) {
+                it.next();
+                it.remove();
+            }
+        }
+
+        @Override
+        public long sumValues() {
+            long sum = 0;
+            for (int v : this.map.values()) {
+                sum += v;
+            }
+            return sum;
+        }
+
+    }
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private Map4Benchmark() {
+    }
+
+    /**
+     * Returns the keys {@code prefix + i} for 0 <= i < n, each a new object.
+     *
+     * @param prefix
+     *            the prefix of every key
+     * @param n
+     *            the number of keys
+     * @return the keys
+     */
+    private static String[] keys(String prefix, int n) {
+        String[] result = new String[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = new StringBuilder(prefix).append(i).toString();
+        }
+        return result;
+    }
+
+    /**
+     * Shuffles {@code a} in place.
+     *
+     * @param a
+     *            the array
+     * @param random
+     *            the source of randomness
+     * @updates a
+     * @ensures [a is a permutation of #a]
+     */
+    private static void shuffle(String[] a, Random random) {
+        for (int i = a.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            String t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+
+    /**
+     * Adds the pairs ({@code added[i]}, i) to {@code s}.
+     *
+     * @param s
+     *            the subject
+     * @param added
+     *            the keys to add
+     */
+    private static void fill(Subject s, String[] added) {
+        for (int i = 0; i < added.length; i++) {
+            s.add(added[i], i);
+        }
+    }
+
+    /**
+     * Times every operation on subjects made by {@code factory} holding the
+     * keys {@code added}, and reports the time per call of each, in the order
+     * add, hasKey, value, iteration (per pair), remove and removeAny.
+     *
+     * @param factory
+     *            makes a new empty subject
+     * @param added
+     *            the keys added
+     * @param probes
+     *            the same keys as new objects, in another order
+     * @return the time per call of each operation in nanoseconds
+     */
+    private static long[] time(Supplier<Subject> factory, String[] added,
+            String[] probes) {
+        int n = added.length;
+        int rounds = Math.max(1, OPERATIONS / n);
+        long addTime = 0;
+        long iterateTime = 0;
+        long removeTime = 0;
+        long removeAnyTime = 0;
+        long checksum = 0;
+
+        for (int r = 0; r < rounds; r++) {
+            Subject s = factory.get();
+            long start = System.nanoTime();
+            fill(s, added);
+            long afterAdd = System.nanoTime();
+            checksum += s.sumValues();
+            long afterIterate = System.nanoTime();
+            for (String key : probes) {
+                s.remove(key);
+            }
+            long afterRemove = System.nanoTime();
+            addTime += afterAdd - start;
+            iterateTime += afterIterate - afterAdd;
+            removeTime += afterRemove - afterIterate;
+
+            fill(s, added);
+            start = System.nanoTime();
+            s.drain(n);
+            removeAnyTime += System.nanoTime() - start;
+        }
+
+        Subject s = factory.get();
+        fill(s, added);
+        long lookups = (long) rounds * n;
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (String key : probes) {
+                if (s.hasKey(key)) {
+                    checksum++;
+                }
+            }
+        }
+        long hasKeyTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (String key : probes) {
+                checksum += s.value(key);
+            }
+        }
+        long valueTime = System.nanoTime() - start;
+
+        /*
+         * Use the results, so the calls cannot be optimized away
+         */
+        if (checksum == -1) {
+            throw new AssertionError();
+        }
+        return new long[] { addTime / lookups, hasKeyTime / lookups,
+                valueTime / lookups, iterateTime / lookups,
+                removeTime / lookups, removeAnyTime / lookups };
+    }
+
+    /**
+     * Times every subject on maps of {@code n} entries and prints one line
+     * per subject, unless {@code out} is null.
+     *
+     * @param n
+     *            the number of entries
+     * @param random
+     *            the source of randomness for the shuffles
+     * @param out
+     *            the output stream, or null for an untimed warm-up run
+     * @updates out.content
+     */
+    private static void run(int n, Random random, SimpleWriter out) {
+        String[] added = keys("word", n);
+        String[] probes = keys("word", n);
+        shuffle(probes, random);
+
+        List<String> names = new ArrayList<>();
+        List<Supplier<Subject>> factories = new ArrayList<>();
+        for (int tableSize : TABLE_SIZES) {
+            names.add("Map4(" + tableSize + ")");
+            factories.add(() -> new ComponentsSubject(new Map4<>(tableSize)));
+            names.add("Map4(" + tableSize + ", fixed)");
+            factories.add(() -> new ComponentsSubject(
+                    new Map4<>(tableSize, Double.POSITIVE_INFINITY)));
+        }
+        names.add("Map1L");
+        factories.add(() -> new ComponentsSubject(new Map1L<>()));
+        if (n <= LINEAR_MAX_SIZE) {
+            names.add("Map2");
+            factories.add(() -> new ComponentsSubject(new Map2<>()));
+        }
+        names.add("HashMap");
+        factories.add(HashMapSubject::new);
+
+        for (int i = 0; i < names.size(); i++) {
+            long[] t = time(factories.get(i), added, probes);
+            if (out != null) {
+                out.print(n + "\t" + names.get(i));
+                for (long x : t) {
+                    out.print("\t" + x);
+                }
+                out.println();
+            }
+        }
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        SimpleWriter out = new SimpleWriter1L();
+        Random random = new Random(SEED);
+
+        for (int run = 0; run < WARM_UP_RUNS; run++) {
+            run(MIN_SIZE, random, null);
+        }
+
+        out.println("entries\tmap\tadd\thasKey\tvalue\titerate\tremove"
+                + "\tremoveAny\t(ns per call)");
+        for (int n = MIN_SIZE; n <= MAX_SIZE; n *= SIZE_STEP) {
+            run(n, random, out);
+        }
+
+        out.close();
+    }
+
+}
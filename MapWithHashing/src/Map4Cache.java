@@ -0,0 +1,794 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import components.map.Map;
+import components.map.MapSecondary;
+
+/**
+ * {@code Map} holding at most {@code maxSize} pairs, for memoizing expensive
+ * lookups: when {@code add} finds it full, it first evicts one pair, chosen by
+ * an {@code Eviction} policy. The pairs are kept in a {@code Map4} from each
+ * key to an entry that also serves as the policy's node (the policy's lists
+ * run through the entries themselves), so {@code hasKey}, {@code value} and
+ * {@code add} do a constant number of hash lookups and O(1) policy work, and
+ * no memory beyond {@code maxSize} entries is ever held.
+ *
+ * <p>
+ * {@code hasKey} and {@code value} count as uses of a key. {@code hasKey} also
+ * counts a hit or a miss, the way a memoizing client asks before computing;
+ * {@code add} counts each pair it evicts.
+ *
+ * @param <K>
+ *            type of {@code Map} domain (key) entries
+ * @param <V>
+ *            type of {@code Map} range (associated value) entries
+ * @convention <pre>
+ * $this.maxSize > 0  and  |$this.entries| <= $this.maxSize  and
+ * for all k: K, e: Entry
+ *     where ((k, e) is in $this.entries)
+ *   (e.key = k  and  e.value /= null  and
+ *    [e is in the structure of $this.policy])  and
+ * [the structure of $this.policy holds no other entries]  and
+ * $this.hits >= 0  and  $this.misses >= 0  and  $this.evictions >= 0
+ * </pre>
+ * @correspondence <pre>
+ * this = {(k, v): (K, V)
+ *            where (there exists e: Entry
+ *                     ((k, e) is in $this.entries  and  e.value = v))}
+ * </pre>
+ *
+ * @author Mingzhu Bao and Andy Shih
+ *
+ */
+public class Map4Cache<K, V> extends MapSecondary<K, V> {
+
+    /**
+     * Policies choosing which pair a full cache evicts.
+     */
+    public enum Eviction {
+        /**
+         * Evict the pair used least recently.
+         */
+        LRU,
+        /**
+         * Evict the pair used least often, the least recently used of those
+         * if there is a tie.
+         */
+        LFU,
+        /**
+         * Approximate LRU: a hand sweeps the pairs, sparing (once) each pair
+         * used since the hand last passed it.
+         */
+        CLOCK
+    }
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Default maximum number of pairs.
+     */
+    private static final int DEFAULT_MAX_SIZE = 1000;
+
+    /**
+     * A cached pair, linked into the structure of the eviction policy.
+     *
+     * @param <K>
+     *            type of key
+     * @param <V>
+     *            type of value
+     */
+    private static final class Entry<K, V> {
+
+        /**
+         * The key.
+         */
+        private final K key;
+
+        /**
+         * The value.
+         */
+        private final V value;
+
+        /**
+         * Previous entry in the policy's list (LRU and LFU).
+         */
+        private Entry<K, V> prev;
+
+        /**
+         * Next entry in the policy's list (LRU and LFU).
+         */
+        private Entry<K, V> next;
+
+        /**
+         * Group of the entries with the same use count (LFU).
+         */
+        private Group<K, V> group;
+
+        /**
+         * Whether the entry was used since the hand last passed it (CLOCK).
+         */
+        private boolean referenced;
+
+        /**
+         * Position of the entry on the clock face (CLOCK).
+         */
+        private int slot;
+
+        /**
+         * Constructor.
+         *
+         * @param key
+         *            the key
+         * @param value
+         *            the value
+         */
+        Entry(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        /**
+         * Makes this entry the only one in its (circular) list.
+         */
+        void selfLink() {
+            this.prev = this;
+            this.next = this;
+        }
+
+        /**
+         * Inserts {@code e} just after this entry.
+         *
+         * @param e
+         *            the entry to insert
+         */
+        void linkAfter(Entry<K, V> e) {
+            e.prev = this;
+            e.next = this.next;
+            this.next.prev = e;
+            this.next = e;
+        }
+
+        /**
+         * Takes this entry out of its list.
+         */
+        void unlink() {
+            this.prev.next = this.next;
+            this.next.prev = this.prev;
+            this.prev = null;
+            this.next = null;
+        }
+
+    }
+
+    /**
+     * For LFU, the entries used the same number of times, most recently used
+     * first, with the groups kept in a circular list by increasing count.
+     *
+     * @param <K>
+     *            type of key
+     * @param <V>
+     *            type of value
+     */
+    private static final class Group<K, V> {
+
+        /**
+         * Number of uses of every entry in this group.
+         */
+        private final long count;
+
+        /**
+         * Sentinel of the list of entries.
+         */
+        private final Entry<K, V> entries;
+
+        /**
+         * Previous group.
+         */
+        private Group<K, V> prev;
+
+        /**
+         * Next group.
+         */
+        private Group<K, V> next;
+
+        /**
+         * Constructor of an empty group, linked to itself.
+         *
+         * @param count
+         *            the number of uses
+         */
+        Group(long count) {
+            this.count = count;
+            this.entries = new Entry<>(null, null);
+            this.entries.selfLink();
+            this.prev = this;
+            this.next = this;
+        }
+
+        /**
+         * Inserts a new empty group of count {@code c} just after this group,
+         * and returns it.
+         *
+         * @param c
+         *            the number of uses of the new group
+         * @return the new group
+         */
+        Group<K, V> insertAfter(long c) {
+            Group<K, V> g = new Group<>(c);
+            g.prev = this;
+            g.next = this.next;
+            this.next.prev = g;
+            this.next = g;
+            return g;
+        }
+
+        /**
+         * Takes this group out of the list of groups if it has no entries.
+         */
+        void unlinkIfEmpty() {
+            if (this.entries.next == this.entries) {
+                this.prev.next = this.next;
+                this.next.prev = this.prev;
+            }
+        }
+
+    }
+
+    /**
+     * Bookkeeping of an eviction policy: told of every entry added, used and
+     * removed, and asked for the entry to evict.
+     *
+     * @param <K>
+     *            type of key
+     * @param <V>
+     *            type of value
+     */
+    private abstract static class Policy<K, V> {
+
+        /**
+         * Records that {@code e} is now cached.
+         *
+         * @param e
+         *            the entry
+         */
+        abstract void added(Entry<K, V> e);
+
+        /**
+         * Records a use of {@code e}.
+         *
+         * @param e
+         *            the entry
+         */
+        abstract void used(Entry<K, V> e);
+
+        /**
+         * Records that {@code e} is no longer cached.
+         *
+         * @param e
+         *            the entry
+         */
+        abstract void removed(Entry<K, V> e);
+
+        /**
+         * Returns the entry to evict, without removing it.
+         *
+         * @return the entry
+         * @requires [some entry is cached]
+         */
+        abstract Entry<K, V> victim();
+
+    }
+
+    /**
+     * LRU: a circular list of the entries, most recently used first.
+     *
+     * @param <K>
+     *            type of key
+     * @param <V>
+     *            type of value
+     */
+    private static final class LruPolicy<K, V> extends Policy<K, V> {
+
+        /**
+         * Sentinel of the list.
+         */
+        private final Entry<K, V> head = new Entry<>(null, null);
+
+        /**
+         * Constructor.
+         */
+        LruPolicy() {
+            this.head.selfLink();
+        }
+
+        @Override
+        void added(Entry<K, V> e) {
+            this.head.linkAfter(e);
+        }
+
+        @Override
+        void used(Entry<K, V> e) {
+            e.unlink();
+            this.head.linkAfter(e);
+        }
+
+        @Override
+        void removed(Entry<K, V> e) {
+            e.unlink();
+        }
+
+        @Override
+        Entry<K, V> victim() {
+            return this.head.prev;
+        }
+
+    }
+
+    /**
+     * LFU: the groups of entries with the same use count, by increasing count,
+     * so the least used entry is at the end of the first group.
+     *
+     * @param <K>
+     *            type of key
+     * @param <V>
+     *            type of value
+     */
+    private static final class LfuPolicy<K, V> extends Policy<K, V> {
+
+        /**
+         * Sentinel of the list of groups.
+         */
+        private final Group<K, V> groups = new Group<>(0);
+
+        @Override
+        void added(Entry<K, V> e) {
+            Group<K, V> g = this.groups.next;
+            if (g == this.groups || g.count != 1) {
+                g = this.groups.insertAfter(1);
+            }
+            g.entries.linkAfter(e);
+            e.group = g;
+        }
+
+        @Override
+        void used(Entry<K, V> e) {
+            Group<K, V> g = e.group;
+            Group<K, V> h = g.next;
+            if (h == this.groups || h.count != g.count + 1) {
+                h = g.insertAfter(g.count + 1);
+            }
+            e.unlink();
+            h.entries.linkAfter(e);
+            e.group = h;
+            g.unlinkIfEmpty();
+        }
+
+        @Override
+        void removed(Entry<K, V> e) {
+            e.unlink();
+            e.group.unlinkIfEmpty();
+            e.group = null;
+        }
+
+        @Override
+        Entry<K, V> victim() {
+            return this.groups.next.entries.prev;
+        }
+
+    }
+
+    /**
+     * CLOCK: the entries in the slots of a fixed array, swept by a hand.
+     *
+     * @param <K>
+     *            type of key
+     * @param <V>
+     *            type of value
+     */
+    private static final class ClockPolicy<K, V> extends Policy<K, V> {
+
+        /**
+         * The clock face; {@code null} slots are free.
+         */
+        private final Entry<K, V>[] face;
+
+        /**
+         * Stack of free slots.
+         */
+        private final int[] free;
+
+        /**
+         * Number of slots on the stack of free slots.
+         */
+        private int freeCount;
+
+        /**
+         * Slot the hand points at.
+         */
+        private int hand;
+
+        /**
+         * Constructor.
+         *
+         * @param slots
+         *            the maximum number of entries
+         */
+        @SuppressWarnings("unchecked")
+        ClockPolicy(int slots) {
+            this.face = (Entry<K, V>[]) new Entry<?, ?>[slots];
+            this.free = new int[slots];
+            for (int i = 0; i < slots; i++) {
+                this.free[i] = slots - 1 - i;
+            }
+            this.freeCount = slots;
+            this.hand = 0;
+        }
+
+        @Override
+        void added(Entry<K, V> e) {
+            this.freeCount--;
+            e.slot = this.free[this.freeCount];
+            e.referenced = false;
+            this.face[e.slot] = e;
+        }
+
+        @Override
+        void used(Entry<K, V> e) {
+            e.referenced = true;
+        }
+
+        @Override
+        void removed(Entry<K, V> e) {
+            this.face[e.slot] = null;
+            this.free[this.freeCount] = e.slot;
+            this.freeCount++;
+        }
+
+        @Override
+        Entry<K, V> victim() {
+            /*
+             * Each pass of the hand clears the bits it sees, so it stops
+             * within two turns of the face
+             */
+            Entry<K, V> e = this.face[this.hand];
+            while (e == null || e.referenced) {
+                if (e != null) {
+                    e.referenced = false;
+                }
+                this.hand = (this.hand + 1) % this.face.length;
+                e = this.face[this.hand];
+            }
+            this.hand = (this.hand + 1) % this.face.length;
+            return e;
+        }
+
+    }
+
+    /**
+     * The cached pairs, by key.
+     */
+    private Map4<K, Entry<K, V>> entries;
+
+    /**
+     * Bookkeeping of the eviction policy.
+     */
+    private Policy<K, V> policy;
+
+    /**
+     * Maximum number of pairs.
+     */
+    private int maxSize;
+
+    /**
+     * The eviction policy chosen by the client.
+     */
+    private Eviction eviction;
+
+    /**
+     * Number of {@code hasKey} calls that found their key.
+     */
+    private long hits;
+
+    /**
+     * Number of {@code hasKey} calls that did not find their key.
+     */
+    private long misses;
+
+    /**
+     * Number of pairs evicted by {@code add}.
+     */
+    private long evictions;
+
+    /**
+     * Creator of initial representation.
+     *
+     * @param max
+     *            the maximum number of pairs
+     * @param ev
+     *            the eviction policy
+     * @requires max > 0  and  ev /= null
+     * @ensures <pre>
+     * $this.entries = {}  and  $this.maxSize = max  and
+     * $this.eviction = ev  and
+     * $this.hits = 0  and  $this.misses = 0  and  $this.evictions = 0
+     * </pre>
+     */
+    private void createNewRep(int max, Eviction ev) {
+        this.entries = new Map4<>(max);
+        this.maxSize = max;
+        this.eviction = ev;
+        switch (ev) {
+            case LFU:
+                this.policy = new LfuPolicy<>();
+                break;
+            case CLOCK:
+                this.policy = new ClockPolicy<>(max);
+                break;
+            default:
+                this.policy = new LruPolicy<>();
+                break;
+        }
+        this.hits = 0;
+        this.misses = 0;
+        this.evictions = 0;
+    }
+
+    /**
+     * Removes the pair of entry {@code e} and returns it.
+     *
+     * @param e
+     *            the entry
+     * @return the removed pair
+     * @updates this
+     * @requires e is an entry of $this.entries
+     * @ensures <pre>
+     * removeEntry = (e.key, e.value)  and  this = #this \ {removeEntry}
+     * </pre>
+     */
+    private Pair<K, V> removeEntry(Entry<K, V> e) {
+        this.entries.remove(e.key);
+        this.policy.removed(e);
+        return new SimplePair<>(e.key, e.value);
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor: an LRU cache of the default size.
+     */
+    public Map4Cache() {
+        this.createNewRep(DEFAULT_MAX_SIZE, Eviction.LRU);
+    }
+
+    /**
+     * Constructor resulting in an LRU cache of at most {@code maxSize} pairs.
+     *
+     * @param maxSize
+     *            maximum number of pairs
+     * @requires maxSize > 0
+     * @ensures this = {}
+     */
+    public Map4Cache(int maxSize) {
+        assert maxSize > 0 : "Violation of: maxSize > 0";
+        this.createNewRep(maxSize, Eviction.LRU);
+    }
+
+    /**
+     * Constructor resulting in a cache of at most {@code maxSize} pairs that
+     * evicts according to {@code eviction}.
+     *
+     * @param maxSize
+     *            maximum number of pairs
+     * @param eviction
+     *            the eviction policy
+     * @requires maxSize > 0
+     * @ensures this = {}
+     */
+    public Map4Cache(int maxSize, Eviction eviction) {
+        assert maxSize > 0 : "Violation of: maxSize > 0";
+        assert eviction != null : "Violation of: eviction is not null";
+        this.createNewRep(maxSize, eviction);
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final Map<K, V> newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.createNewRep(this.maxSize, this.eviction);
+    }
+
+    @Override
+    public final void transferFrom(Map<K, V> source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof Map4Cache<?, ?> : ""
+                + "Violation of: source is of dynamic type Map4Cache<?,?>";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case: source must be of dynamic type
+         * Map4Cache<?,?>, and the ?,? must be K,V or the call would not have
+         * compiled.
+         */
+        Map4Cache<K, V> localSource = (Map4Cache<K, V>) source;
+        this.entries = localSource.entries;
+        this.policy = localSource.policy;
+        this.maxSize = localSource.maxSize;
+        this.eviction = localSource.eviction;
+        this.hits = localSource.hits;
+        this.misses = localSource.misses;
+        this.evictions = localSource.evictions;
+        localSource.createNewRep(localSource.maxSize, localSource.eviction);
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(K key, V value) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+        assert !this.entries
+                .hasKey(key) : "Violation of: key is not in DOMAIN(this)";
+        if (this.entries.size() == this.maxSize) {
+            this.removeEntry(this.policy.victim());
+            this.evictions++;
+        }
+        Entry<K, V> e = new Entry<>(key, value);
+        this.entries.add(key, e);
+        this.policy.added(e);
+    }
+
+    @Override
+    public final Pair<K, V> remove(K key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.entries
+                .hasKey(key) : "Violation of: key is in DOMAIN(this)";
+        return this.removeEntry(this.entries.value(key));
+    }
+
+    @Override
+    public final Pair<K, V> removeAny() {
+        assert this.size() > 0 : "Violation of: this /= empty_set";
+        Entry<K, V> e = this.entries.removeAny().value();
+        this.policy.removed(e);
+        return new SimplePair<>(e.key, e.value);
+    }
+
+    @Override
+    public final V value(K key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.entries
+                .hasKey(key) : "Violation of: key is in DOMAIN(this)";
+        Entry<K, V> e = this.entries.value(key);
+        this.policy.used(e);
+        return e.value;
+    }
+
+    @Override
+    public final boolean hasKey(K key) {
+        assert key != null : "Violation of: key is not null";
+        boolean found = this.entries.hasKey(key);
+        if (found) {
+            this.hits++;
+            this.policy.used(this.entries.value(key));
+        } else {
+            this.misses++;
+        }
+        return found;
+    }
+
+    @Override
+    public final int size() {
+        return this.entries.size();
+    }
+
+    @Override
+    public final Iterator<Pair<K, V>> iterator() {
+        return new Map4CacheIterator();
+    }
+
+    /*
+     * Other methods ----------------------------------------------------------
+     */
+
+    /**
+     * Reports the maximum number of pairs {@code this} holds.
+     *
+     * @return the maximum size
+     */
+    public final int maxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * Reports the number of {@code hasKey} calls that found their key.
+     *
+     * @return the number of hits
+     */
+    public final long hits() {
+        return this.hits;
+    }
+
+    /**
+     * Reports the number of {@code hasKey} calls that did not find their key.
+     *
+     * @return the number of misses
+     */
+    public final long misses() {
+        return this.misses;
+    }
+
+    /**
+     * Reports the number of pairs evicted by {@code add}.
+     *
+     * @return the number of evictions
+     */
+    public final long evictions() {
+        return this.evictions;
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for {@code Map4Cache}. It
+     * does not count as a use of any key.
+     */
+    private final class Map4CacheIterator implements Iterator<Pair<K, V>> {
+
+        /**
+         * Representation iterator.
+         */
+        private final Iterator<Pair<K, Entry<K, V>>> iterator;
+
+        /**
+         * No-argument constructor.
+         */
+        Map4CacheIterator() {
+            this.iterator = Map4Cache.this.entries.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.iterator.hasNext();
+        }
+
+        @Override
+        public Pair<K, V> next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            Entry<K, V> e = this.iterator.next().value();
+            return new SimplePair<>(e.key, e.value);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
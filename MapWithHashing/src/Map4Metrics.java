@@ -0,0 +1,208 @@
+/**
+ * Immutable snapshot of the shape of a {@code Map4}'s hash table and of the
+ * operation counts it has accumulated, as returned by {@code Map4.metrics}.
+ * Its {@code toString} is a single line of {@code name=value} fields, meant to
+ * be logged or scraped by a dashboard.
+ *
+ * @author Mingzhu Bao and Andy Shih
+ *
+ */
+public final class Map4Metrics {
+
+    /**
+     * Entry n is the number of buckets holding exactly n pairs.
+     */
+    private final int[] histogram;
+
+    /**
+     * Number of pairs in the map.
+     */
+    private final int size;
+
+    /**
+     * Number of {@code hasKey} and {@code value} calls.
+     */
+    private final long lookups;
+
+    /**
+     * Number of {@code add} calls.
+     */
+    private final long inserts;
+
+    /**
+     * Number of {@code remove} and {@code removeAny} calls.
+     */
+    private final long removals;
+
+    /**
+     * Number of resizes (growing or shrinking) started.
+     */
+    private final long rehashes;
+
+    /**
+     * Constructor.
+     *
+     * @param histogram
+     *            entry n is the number of buckets holding exactly n pairs
+     * @param size
+     *            number of pairs in the map
+     * @param lookups
+     *            number of {@code hasKey} and {@code value} calls
+     * @param inserts
+     *            number of {@code add} calls
+     * @param removals
+     *            number of {@code remove} and {@code removeAny} calls
+     * @param rehashes
+     *            number of resizes started
+     * @requires |histogram| > 0
+     */
+    Map4Metrics(int[] histogram, int size, long lookups, long inserts,
+            long removals, long rehashes) {
+        assert histogram.length > 0 : "Violation of: |histogram| > 0";
+        this.histogram = histogram.clone();
+        this.size = size;
+        this.lookups = lookups;
+        this.inserts = inserts;
+        this.removals = removals;
+        this.rehashes = rehashes;
+    }
+
+    /**
+     * Reports the number of buckets.
+     *
+     * @return the number of buckets
+     */
+    public int bucketCount() {
+        int count = 0;
+        for (int n : this.histogram) {
+            count += n;
+        }
+        return count;
+    }
+
+    /**
+     * Reports the number of empty buckets.
+     *
+     * @return the number of empty buckets
+     */
+    public int emptyBuckets() {
+        return this.histogram[0];
+    }
+
+    /**
+     * Reports the number of non-empty buckets.
+     *
+     * @return the number of non-empty buckets
+     */
+    public int occupiedBuckets() {
+        return this.bucketCount() - this.emptyBuckets();
+    }
+
+    /**
+     * Reports the fraction of buckets that are non-empty.
+     *
+     * @return occupiedBuckets / bucketCount
+     */
+    public double occupancy() {
+        return (double) this.occupiedBuckets() / this.bucketCount();
+    }
+
+    /**
+     * Reports the number of pairs in the map.
+     *
+     * @return the size of the map
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Reports the number of pairs per bucket.
+     *
+     * @return size / bucketCount
+     */
+    public double loadFactor() {
+        return (double) this.size / this.bucketCount();
+    }
+
+    /**
+     * Reports the length of the longest bucket.
+     *
+     * @return the length of the longest bucket
+     */
+    public int maxBucketLength() {
+        return this.histogram.length - 1;
+    }
+
+    /**
+     * Reports the average length of the non-empty buckets, i.e., the average
+     * number of pairs a successful lookup has to look through.
+     *
+     * @return size / occupiedBuckets, or 0 if every bucket is empty
+     */
+    public double averageBucketLength() {
+        double average = 0;
+        if (this.occupiedBuckets() > 0) {
+            average = (double) this.size / this.occupiedBuckets();
+        }
+        return average;
+    }
+
+    /**
+     * Reports how many buckets hold each number of pairs.
+     *
+     * @return the histogram: entry n is the number of buckets holding exactly
+     *         n pairs
+     */
+    public int[] bucketLengthHistogram() {
+        return this.histogram.clone();
+    }
+
+    /**
+     * Reports the number of {@code hasKey} and {@code value} calls.
+     *
+     * @return the number of lookups
+     */
+    public long lookups() {
+        return this.lookups;
+    }
+
+    /**
+     * Reports the number of {@code add} calls.
+     *
+     * @return the number of inserts
+     */
+    public long inserts() {
+        return this.inserts;
+    }
+
+    /**
+     * Reports the number of {@code remove} and {@code removeAny} calls.
+     *
+     * @return the number of removals
+     */
+    public long removals() {
+        return this.removals;
+    }
+
+    /**
+     * Reports the number of resizes (growing or shrinking) started.
+     *
+     * @return the number of rehashes
+     */
+    public long rehashes() {
+        return this.rehashes;
+    }
+
+    @Override
+    public String toString() {
+        return "size=" + this.size + " buckets=" + this.bucketCount()
+                + " emptyBuckets=" + this.emptyBuckets() + " occupancy="
+                + this.occupancy() + " maxBucketLength="
+                + this.maxBucketLength() + " averageBucketLength="
+                + this.averageBucketLength() + " lookups=" + this.lookups
+                + " inserts=" + this.inserts + " removals=" + this.removals
+                + " rehashes=" + this.rehashes;
+    }
+
+}
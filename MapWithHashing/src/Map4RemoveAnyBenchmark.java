@@ -0,0 +1,113 @@
+import components.map.Map;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+
+/**
+ * Times draining a {@code Map4} with repeated {@code removeAny} calls, the way
+ * {@code WordCounter.wordSort} and {@code TagCloudGen.sorter} do, for maps of
+ * 10^4 up to 10^6 entries. If draining is linear in the size of the map, the
+ * reported time per {@code removeAny} stays roughly constant as the map
+ * grows.
+ *
+ * <p>
+ * Each size is drained twice: once from a table presized to hold every entry
+ * in its own bucket (the sparse table that made the old scan-from-bucket-0
+ * {@code removeAny} quadratic), and once from a default-sized table that grew
+ * while being filled.
+ *
+ * @author Mingzhu Bao and Andy Shih
+ *
+ */
+public final class Map4RemoveAnyBenchmark {
+
+    /**
+     * Smallest map size timed.
+     */
+    private static final int MIN_SIZE = 10_000;
+
+    /**
+     * Largest map size timed.
+     */
+    private static final int MAX_SIZE = 1_000_000;
+
+    /**
+     * Factor between successive map sizes.
+     */
+    private static final int SIZE_STEP = 10;
+
+    /**
+     * Number of untimed drains run first so the JIT compiler has warmed up.
+     */
+    private static final int WARM_UP_RUNS = 3;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private Map4RemoveAnyBenchmark() {
+    }
+
+    /**
+     * Fills {@code map} with the keys 0 through {@code n} - 1.
+     *
+     * @param map
+     *            the map to fill
+     * @param n
+     *            the number of entries
+     * @updates map
+     * @requires map = {}
+     * @ensures map = {(i, i): 0 <= i < n}
+     */
+    private static void fill(Map<Integer, Integer> map, int n) {
+        for (int i = 0; i < n; i++) {
+            map.add(i, i);
+        }
+    }
+
+    /**
+     * Drains {@code map} with {@code removeAny} and reports the time taken.
+     *
+     * @param map
+     *            the map to drain
+     * @return elapsed time in nanoseconds
+     * @clears map
+     */
+    private static long drain(Map<Integer, Integer> map) {
+        long start = System.nanoTime();
+        while (map.size() > 0) {
+            map.removeAny();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        SimpleWriter out = new SimpleWriter1L();
+
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            Map<Integer, Integer> map = new Map4<>(MIN_SIZE);
+            fill(map, MIN_SIZE);
+            drain(map);
+        }
+
+        out.println("entries\tpresized ns/removeAny\tgrown ns/removeAny");
+        for (int n = MIN_SIZE; n <= MAX_SIZE; n *= SIZE_STEP) {
+            Map<Integer, Integer> presized = new Map4<>(n);
+            fill(presized, n);
+            long presizedTime = drain(presized);
+
+            Map<Integer, Integer> grown = new Map4<>();
+            fill(grown, n);
+            long grownTime = drain(grown);
+
+            out.println(n + "\t" + (presizedTime / n) + "\t" + (grownTime / n));
+        }
+
+        out.close();
+    }
+
+}
@@ -0,0 +1,286 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import components.map.Map;
+
+/**
+ * Writes a {@code Map4<String, Integer>} (e.g., word counts) to a channel in
+ * a compact binary format, and reads it back, for checkpointing large maps
+ * and restoring them far faster than rebuilding them from their source text.
+ *
+ * <p>
+ * The format is: the 4 bytes {@code MAGIC}; the number of buckets of the
+ * map's table and the number of pairs, as varints; then each pair, as the
+ * length in bytes of the UTF-8 encoding of the key (a varint), that encoding,
+ * and the value (a zigzag varint, so small negative values are short too).
+ * A varint holds 7 bits per byte, lowest first, with the high bit set on
+ * every byte but the last; most word counts take one byte.
+ *
+ * <p>
+ * {@code read} makes a map with the table size that was written, so it never
+ * grows while loading, and adds each pair with {@code Map4.addDistinct}: the
+ * keys of a checkpoint are known to be distinct, so nothing is looked up.
+ * Both directions go through one {@code ByteBuffer} of {@code BUFFER_SIZE}
+ * bytes, which is the only memory they use besides the map.
+ *
+ * @author Mingzhu Bao and Andy Shih
+ *
+ */
+public final class Map4Serializer {
+
+    /**
+     * First 4 bytes of every checkpoint ("M4S1").
+     */
+    private static final int MAGIC = 0x4D345331;
+
+    /**
+     * Size of the buffer between the map and the channel.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Largest number of bytes of a varint encoding an {@code int}.
+     */
+    private static final int MAX_VARINT_BYTES = 5;
+
+    /**
+     * Bits of payload per varint byte.
+     */
+    private static final int VARINT_SHIFT = 7;
+
+    /**
+     * Mask of the payload bits of a varint byte.
+     */
+    private static final int VARINT_PAYLOAD = 0x7F;
+
+    /**
+     * Bit set on every varint byte but the last.
+     */
+    private static final int VARINT_MORE = 0x80;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private Map4Serializer() {
+    }
+
+    /**
+     * Writes all of {@code buffer}'s content to {@code channel} and clears
+     * {@code buffer}.
+     *
+     * @param buffer
+     *            the buffer, ready to be filled
+     * @param channel
+     *            the channel
+     * @throws IOException
+     *             if the channel cannot be written
+     */
+    private static void flush(ByteBuffer buffer, WritableByteChannel channel)
+            throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Makes sure {@code buffer} has room for {@code n} more bytes, flushing it
+     * to {@code channel} if needed.
+     *
+     * @param buffer
+     *            the buffer, ready to be filled
+     * @param channel
+     *            the channel
+     * @param n
+     *            the number of bytes
+     * @throws IOException
+     *             if the channel cannot be written
+     * @requires n <= BUFFER_SIZE
+     */
+    private static void room(ByteBuffer buffer, WritableByteChannel channel,
+            int n) throws IOException {
+        if (buffer.remaining() < n) {
+            flush(buffer, channel);
+        }
+    }
+
+    /**
+     * Puts {@code n} into {@code buffer} as a varint.
+     *
+     * @param buffer
+     *            the buffer
+     * @param n
+     *            the number, taken as unsigned
+     * @requires [buffer has room for MAX_VARINT_BYTES bytes]
+     */
+    private static void putVarint(ByteBuffer buffer, int n) {
+        int rest = n;
+        while ((rest & ~VARINT_PAYLOAD) != 0) {
+            buffer.put((byte) ((rest & VARINT_PAYLOAD) | VARINT_MORE));
+            rest >>>= VARINT_SHIFT;
+        }
+        buffer.put((byte) rest);
+    }
+
+    /**
+     * Makes sure {@code buffer} holds at least {@code n} unread bytes,
+     * reading more from {@code channel} if needed.
+     *
+     * @param buffer
+     *            the buffer, ready to be read
+     * @param channel
+     *            the channel
+     * @param n
+     *            the number of bytes
+     * @throws IOException
+     *             if the channel cannot be read or ends too soon
+     * @requires n <= BUFFER_SIZE
+     */
+    private static void fill(ByteBuffer buffer, ReadableByteChannel channel,
+            int n) throws IOException {
+        if (buffer.remaining() < n) {
+            buffer.compact();
+            while (buffer.position() < n) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("Truncated Map4 checkpoint");
+                }
+            }
+            buffer.flip();
+        }
+    }
+
+    /**
+     * Takes a varint from {@code buffer}.
+     *
+     * @param buffer
+     *            the buffer, ready to be read
+     * @param channel
+     *            the channel the buffer is filled from
+     * @return the number
+     * @throws IOException
+     *             if the channel cannot be read, ends too soon, or holds a
+     *             varint that is too long
+     */
+    private static int getVarint(ByteBuffer buffer, ReadableByteChannel channel)
+            throws IOException {
+        int result = 0;
+        int shift = 0;
+        int b = VARINT_MORE;
+        while ((b & VARINT_MORE) != 0) {
+            if (shift == MAX_VARINT_BYTES * VARINT_SHIFT) {
+                throw new IOException("Malformed Map4 checkpoint");
+            }
+            fill(buffer, channel, 1);
+            b = buffer.get();
+            result |= (b & VARINT_PAYLOAD) << shift;
+            shift += VARINT_SHIFT;
+        }
+        return result;
+    }
+
+    /**
+     * Writes {@code map} to {@code channel}. The channel is not closed.
+     *
+     * @param map
+     *            the map
+     * @param channel
+     *            the channel
+     * @throws IOException
+     *             if the channel cannot be written
+     * @requires map /= null  and  channel /= null
+     */
+    public static void write(Map4<String, Integer> map,
+            WritableByteChannel channel) throws IOException {
+        assert map != null : "Violation of: map is not null";
+        assert channel != null : "Violation of: channel is not null";
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        buffer.putInt(MAGIC);
+        putVarint(buffer, map.bucketCount());
+        putVarint(buffer, map.size());
+        for (Map.Pair<String, Integer> p : map) {
+            byte[] key = p.key().getBytes(StandardCharsets.UTF_8);
+            room(buffer, channel, MAX_VARINT_BYTES);
+            putVarint(buffer, key.length);
+            if (key.length <= BUFFER_SIZE) {
+                room(buffer, channel, key.length);
+                buffer.put(key);
+            } else {
+                flush(buffer, channel);
+                ByteBuffer whole = ByteBuffer.wrap(key);
+                while (whole.hasRemaining()) {
+                    channel.write(whole);
+                }
+            }
+            int value = p.value();
+            room(buffer, channel, MAX_VARINT_BYTES);
+            putVarint(buffer, (value << 1) ^ (value >> (Integer.SIZE - 1)));
+        }
+        flush(buffer, channel);
+    }
+
+    /**
+     * Reads a map written by {@code write} from {@code channel}. The channel
+     * is not closed; it may have been read past the end of the map.
+     *
+     * @param channel
+     *            the channel
+     * @return the map
+     * @throws IOException
+     *             if the channel cannot be read, or does not hold a map
+     *             written by {@code write}
+     * @requires channel /= null
+     */
+    public static Map4<String, Integer> read(ReadableByteChannel channel)
+            throws IOException {
+        assert channel != null : "Violation of: channel is not null";
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        /*
+         * Start with nothing to read, so the first fill reads the channel
+         */
+        buffer.limit(0);
+        fill(buffer, channel, Integer.BYTES);
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a Map4 checkpoint");
+        }
+        int buckets = getVarint(buffer, channel);
+        int size = getVarint(buffer, channel);
+        if (buckets <= 0 || size < 0) {
+            throw new IOException("Malformed Map4 checkpoint");
+        }
+        Map4<String, Integer> map = new Map4<>(buckets);
+        for (int i = 0; i < size; i++) {
+            int length = getVarint(buffer, channel);
+            if (length < 0) {
+                throw new IOException("Malformed Map4 checkpoint");
+            }
+            String key;
+            if (length <= BUFFER_SIZE) {
+                fill(buffer, channel, length);
+                key = new String(buffer.array(),
+                        buffer.arrayOffset() + buffer.position(), length,
+                        StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+            } else {
+                byte[] bytes = new byte[length];
+                int n = Math.min(buffer.remaining(), length);
+                buffer.get(bytes, 0, n);
+                ByteBuffer whole = ByteBuffer.wrap(bytes, n, length - n);
+                while (whole.hasRemaining()) {
+                    if (channel.read(whole) < 0) {
+                        throw new EOFException("Truncated Map4 checkpoint");
+                    }
+                }
+                key = new String(bytes, StandardCharsets.UTF_8);
+            }
+            int zigzag = getVarint(buffer, channel);
+            map.addDistinct(key, (zigzag >>> 1) ^ -(zigzag & 1));
+        }
+        return map;
+    }
+
+}
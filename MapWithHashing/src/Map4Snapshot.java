@@ -0,0 +1,278 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import components.array.Array;
+import components.map.Map;
+import components.map.Map.Pair;
+
+/**
+ * Immutable view of the pairs a {@code Map4} held when its {@code snapshot}
+ * method was called. It shares that map's tables and buckets rather than
+ * copying them; the map copies whatever it changes afterwards, so the view
+ * never changes.
+ *
+ * <p>
+ * Nothing reachable from a snapshot is ever written again, and looking a key
+ * up in it only reads, so any number of threads may use one snapshot at the
+ * same time, without locks, while one other thread goes on changing the
+ * {@code Map4} (and taking newer snapshots of it).
+ *
+ * @param <K>
+ *            type of {@code Map} domain (key) entries
+ * @param <V>
+ *            type of {@code Map} range (associated value) entries
+ *
+ * @author Mingzhu Bao and Andy Shih
+ *
+ */
+public final class Map4Snapshot<K, V> implements Iterable<Pair<K, V>> {
+
+    /**
+     * The {@code hashTable} of the map, or {@code null} if it had none.
+     */
+    private final Array<Map<K, V>> hashTable;
+
+    /**
+     * The {@code oldTable} of the map, or {@code null} if no resize was in
+     * progress.
+     */
+    private final Array<Map<K, V>> oldTable;
+
+    /**
+     * Number of leading buckets of {@code oldTable} already moved.
+     */
+    private final int migrated;
+
+    /**
+     * Number of pairs.
+     */
+    private final int size;
+
+    /**
+     * Chooses the bucket of each key.
+     */
+    private final HashStrategy<? super K> strategy;
+
+    /**
+     * Constructor.
+     *
+     * @param hashTable
+     *            the {@code hashTable} of the map
+     * @param oldTable
+     *            the {@code oldTable} of the map
+     * @param migrated
+     *            the number of buckets of {@code oldTable} already moved
+     * @param size
+     *            the number of pairs in the map
+     * @param strategy
+     *            the hash strategy of the map
+     * @requires <pre>
+     * [the arguments are the representation of a Map4, none of whose tables
+     *  or buckets will be changed again]
+     * </pre>
+     */
+    Map4Snapshot(Array<Map<K, V>> hashTable, Array<Map<K, V>> oldTable,
+            int migrated, int size, HashStrategy<? super K> strategy) {
+        this.hashTable = hashTable;
+        this.oldTable = oldTable;
+        this.migrated = migrated;
+        this.size = size;
+        this.strategy = strategy;
+    }
+
+    /**
+     * Returns the value of {@code key} in {@code bucket}, or {@code null} if
+     * it is not a key of {@code bucket}, without changing {@code bucket}.
+     * {@code Map4TreeBucket} lookups only read its tree; a {@code Map2} may
+     * reorder itself on lookup, so it is iterated instead.
+     *
+     * @param <K>
+     *            type of {@code Map} domain (key) entries
+     * @param <V>
+     *            type of {@code Map} range (associated value) entries
+     * @param bucket
+     *            the bucket
+     * @param key
+     *            the key
+     * @return the value of {@code key}, or {@code null}
+     */
+    private static <K, V> V lookUp(Map<K, V> bucket, K key) {
+        V result = null;
+        if (bucket instanceof Map4TreeBucket<?, ?>) {
+            if (bucket.hasKey(key)) {
+                result = bucket.value(key);
+            }
+        } else {
+            Iterator<Pair<K, V>> it = bucket.iterator();
+            while (result == null && it.hasNext()) {
+                Pair<K, V> p = it.next();
+                if (p.key().equals(key)) {
+                    result = p.value();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the value of {@code key}, or {@code null} if it is not a key.
+     *
+     * @param key
+     *            the key
+     * @return the value of {@code key}, or {@code null}
+     */
+    private V find(K key) {
+        Array<Map<K, V>> table = this.hashTable;
+        if (this.oldTable != null && this.strategy.bucketIndex(key,
+                this.oldTable.length()) >= this.migrated) {
+            table = this.oldTable;
+        }
+        V result = null;
+        if (table != null) {
+            int i = this.strategy.bucketIndex(key, table.length());
+            if (table.mayBeExamined(i)) {
+                result = lookUp(table.entry(i), key);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reports whether {@code key} is a key of {@code this}.
+     *
+     * @param key
+     *            the key
+     * @return true iff {@code key} is in DOMAIN(this)
+     * @requires key /= null
+     * @ensures hasKey = (key is in DOMAIN(this))
+     */
+    public boolean hasKey(K key) {
+        assert key != null : "Violation of: key is not null";
+        return this.find(key) != null;
+    }
+
+    /**
+     * Reports the value associated with {@code key} in {@code this}.
+     *
+     * @param key
+     *            the key
+     * @return the value for {@code key}
+     * @requires key is in DOMAIN(this)
+     * @ensures (key, value) is in this
+     */
+    public V value(K key) {
+        assert key != null : "Violation of: key is not null";
+        V result = this.find(key);
+        assert result != null : "Violation of: key is in DOMAIN(this)";
+        return result;
+    }
+
+    /**
+     * Reports the size of {@code this}.
+     *
+     * @return the number of pairs in {@code this}
+     * @ensures size = |this|
+     */
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public Iterator<Pair<K, V>> iterator() {
+        return new Map4SnapshotIterator();
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for {@code Map4Snapshot}.
+     * It visits the buckets of {@code hashTable} and then those of the
+     * unmoved part of {@code oldTable}.
+     */
+    private final class Map4SnapshotIterator implements Iterator<Pair<K, V>> {
+
+        /**
+         * Number of elements seen already (i.e., |~this.seen|).
+         */
+        private int numberSeen;
+
+        /**
+         * Whether the current bucket is in {@code oldTable} rather than
+         * {@code hashTable}.
+         */
+        private boolean inOldTable;
+
+        /**
+         * Bucket from which current bucket iterator comes.
+         */
+        private int currentBucket;
+
+        /**
+         * Bucket iterator from which next element will come, or {@code null}
+         * before the first bucket is reached.
+         */
+        private Iterator<Pair<K, V>> bucketIterator;
+
+        /**
+         * No-argument constructor.
+         */
+        Map4SnapshotIterator() {
+            this.numberSeen = 0;
+            this.inOldTable = false;
+            this.currentBucket = -1;
+            this.bucketIterator = null;
+        }
+
+        /**
+         * Moves to the next non-empty bucket.
+         *
+         * @requires [there is a non-empty bucket after the current one]
+         */
+        private void nextBucket() {
+            Array<Map<K, V>> table = Map4Snapshot.this.hashTable;
+            if (this.inOldTable) {
+                table = Map4Snapshot.this.oldTable;
+            }
+            do {
+                this.currentBucket++;
+                if (!this.inOldTable && this.currentBucket == table.length()) {
+                    this.inOldTable = true;
+                    this.currentBucket = Map4Snapshot.this.migrated;
+                    table = Map4Snapshot.this.oldTable;
+                }
+            } while (!table.mayBeExamined(this.currentBucket)
+                    || table.entry(this.currentBucket).size() == 0);
+            this.bucketIterator = table.entry(this.currentBucket).iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.numberSeen < Map4Snapshot.this.size;
+        }
+
+        @Override
+        public Pair<K, V> next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            this.numberSeen++;
+            if (this.bucketIterator == null
+                    || !this.bucketIterator.hasNext()) {
+                this.nextBucket();
+            }
+            return this.bucketIterator.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
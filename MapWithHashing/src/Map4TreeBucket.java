@@ -0,0 +1,380 @@
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+import components.map.Map;
+import components.map.Map2;
+import components.map.MapSecondary;
+
+/**
+ * {@code Map} represented as a balanced search tree (a
+ * {@code java.util.TreeMap}) ordered by key hash code, with implementations of
+ * primary methods. {@code Map4} uses it in place of a {@code Map2} for a
+ * bucket that has collected many keys, so that looking through that bucket
+ * takes O(log n) rather than O(n) time.
+ *
+ * <p>
+ * Keys are ordered by hash code first. {@code Comparable} keys with equal hash
+ * codes are then ordered by class and by {@code compareTo}, so even a bucket
+ * of keys that all have the same hash code is searched in O(log n) time if
+ * they are {@code Comparable}. {@code compareTo} is only used to order the
+ * tree and need not be consistent with {@code equals}: each node of the tree
+ * holds a small {@code Map2} of the keys it ranks equal, which is searched
+ * with {@code equals}, as the tree bins of {@code java.util.HashMap} fall back
+ * to {@code equals} on a tie. Other keys are kept, by hash code, in a second
+ * tree whose nodes hold {@code Map2}s the same way, one per hash code; only
+ * keys that rank equal (or have equal hash codes and cannot be compared) are
+ * searched linearly. Any key may be added.
+ *
+ * @param <K>
+ *            type of {@code Map} domain (key) entries
+ * @param <V>
+ *            type of {@code Map} range (associated value) entries
+ * @convention <pre>
+ * [all keys in $this.ordered, and in its Map2s, are Comparable]  and
+ * [$this.ordered is ordered by ORDER]  and
+ * for all k: K, m: Map2
+ *     where ((k, m) is in $this.ordered)
+ *   (|m| > 0  and  k is in DOMAIN(m)  and
+ *    [every key of m is ranked equal to k by ORDER])  and
+ * [no key in any Map2 of $this.unordered is Comparable]  and
+ * for all h: integer, m: Map2
+ *     where ((h, m) is in $this.unordered)
+ *   (|m| > 0  and  [every key of m has hash code h])  and
+ * $this.size = [sum of the sizes of the Map2s of $this.ordered and
+ *   $this.unordered]
+ * </pre>
+ * @correspondence <pre>
+ * this = [union of the Map2s of $this.ordered]  union
+ *   [union of the Map2s of $this.unordered]
+ * </pre>
+ *
+ * @author Mingzhu Bao and Andy Shih
+ *
+ */
+public class Map4TreeBucket<K, V> extends MapSecondary<K, V> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Orders {@code Comparable} keys by hash code, then by class, then by
+     * {@code compareTo}.
+     */
+    private static final Comparator<Object> ORDER = new Comparator<Object>() {
+        @SuppressWarnings("unchecked")
+        @Override
+        public int compare(Object o1, Object o2) {
+            int result = Integer.compare(o1.hashCode(), o2.hashCode());
+            Class<?> c1 = o1.getClass();
+            Class<?> c2 = o2.getClass();
+            if (result == 0 && c1 != c2) {
+                result = c1.getName().compareTo(c2.getName());
+                if (result == 0) {
+                    /*
+                     * Distinct classes of the same name, from different class
+                     * loaders
+                     */
+                    result = Integer.compare(System.identityHashCode(c1),
+                            System.identityHashCode(c2));
+                }
+            }
+            if (result == 0) {
+                result = ((Comparable<Object>) o1).compareTo(o2);
+            }
+            return result;
+        }
+    };
+
+    /**
+     * The pairs whose keys are {@code Comparable}, grouped by the keys
+     * {@code ORDER} ranks equal; each group is filed under one of its keys.
+     */
+    private TreeMap<K, Map<K, V>> ordered;
+
+    /**
+     * The pairs whose keys are not {@code Comparable}, grouped by hash code.
+     */
+    private TreeMap<Integer, Map<K, V>> unordered;
+
+    /**
+     * Total size of abstract {@code this}.
+     */
+    private int size;
+
+    /**
+     * Returns the group that holds {@code key} if it is in {@code this}: the
+     * group of {@code ordered} of the keys ranked equal to it if it is
+     * {@code Comparable}, and the group of {@code unordered} for its hash code
+     * otherwise; or {@code null} if there is none.
+     *
+     * @param key
+     *            the key
+     * @return the group, or {@code null}
+     */
+    private Map<K, V> group(Object key) {
+        Map<K, V> result;
+        if (key instanceof Comparable<?>) {
+            result = this.ordered.get(key);
+        } else {
+            result = this.unordered.get(key.hashCode());
+        }
+        return result;
+    }
+
+    /**
+     * Drops {@code group}, which has just had the pair with key
+     * {@code removed} removed from it, if it is now empty; and, if it is a
+     * group of {@code ordered} filed under {@code removed}, files it under one
+     * of its remaining keys, so the tree does not keep removed keys alive.
+     *
+     * @param group
+     *            the group
+     * @param removed
+     *            the key removed from the group
+     * @updates this.ordered, this.unordered
+     */
+    private void removedFrom(Map<K, V> group, K removed) {
+        if (removed instanceof Comparable<?>) {
+            if (group.size() == 0) {
+                this.ordered.remove(removed);
+            } else if (this.ordered.ceilingKey(removed) == removed) {
+                this.ordered.remove(removed);
+                this.ordered.put(group.iterator().next().key(), group);
+            }
+        } else if (group.size() == 0) {
+            this.unordered.remove(removed.hashCode());
+        }
+    }
+
+    /**
+     * Returns the pair of {@code group} whose key is {@code key}, or
+     * {@code null} if there is none. The group is iterated rather than asked
+     * with {@code hasKey}, since a {@code Map2} may reorder itself on lookup,
+     * and lookups must not change a bucket a {@code Map4Snapshot} may share.
+     *
+     * @param <K>
+     *            type of {@code Map} domain (key) entries
+     * @param <V>
+     *            type of {@code Map} range (associated value) entries
+     * @param group
+     *            the group, or {@code null}
+     * @param key
+     *            the key
+     * @return the pair, or {@code null}
+     */
+    private static <K, V> Pair<K, V> find(Map<K, V> group, Object key) {
+        Pair<K, V> result = null;
+        if (group != null) {
+            Iterator<Pair<K, V>> it = group.iterator();
+            while (result == null && it.hasNext()) {
+                Pair<K, V> p = it.next();
+                if (p.key().equals(key)) {
+                    result = p;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creator of initial representation.
+     */
+    private void createNewRep() {
+        this.ordered = new TreeMap<>(ORDER);
+        this.unordered = new TreeMap<>();
+        this.size = 0;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public Map4TreeBucket() {
+        this.createNewRep();
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final Map<K, V> newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.createNewRep();
+    }
+
+    @Override
+    public final void transferFrom(Map<K, V> source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof Map4TreeBucket<?, ?> : ""
+                + "Violation of: source is of dynamic type Map4TreeBucket<?,?>";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case: source must be of dynamic type
+         * Map4TreeBucket<?,?>, and the ?,? must be K,V or the call would not
+         * have compiled.
+         */
+        Map4TreeBucket<K, V> localSource = (Map4TreeBucket<K, V>) source;
+        this.ordered = localSource.ordered;
+        this.unordered = localSource.unordered;
+        this.size = localSource.size;
+        localSource.createNewRep();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(K key, V value) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+        assert !this.hasKey(key) : "Violation of: key is not in DOMAIN(this)";
+        Map<K, V> group = this.group(key);
+        if (group == null) {
+            group = new Map2<>();
+            if (key instanceof Comparable<?>) {
+                this.ordered.put(key, group);
+            } else {
+                this.unordered.put(key.hashCode(), group);
+            }
+        }
+        group.add(key, value);
+        this.size++;
+    }
+
+    @Override
+    public final Pair<K, V> remove(K key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+        Map<K, V> group = this.group(key);
+        Pair<K, V> removed = group.remove(key);
+        this.removedFrom(group, removed.key());
+        this.size--;
+        return removed;
+    }
+
+    @Override
+    public final Pair<K, V> removeAny() {
+        assert this.size() > 0 : "Violation of: this /= empty_set";
+        Map<K, V> group;
+        if (this.ordered.size() > 0) {
+            group = this.ordered.firstEntry().getValue();
+        } else {
+            group = this.unordered.firstEntry().getValue();
+        }
+        Pair<K, V> removed = group.removeAny();
+        this.removedFrom(group, removed.key());
+        this.size--;
+        return removed;
+    }
+
+    @Override
+    public final V value(K key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+        return find(this.group(key), key).value();
+    }
+
+    @Override
+    public final boolean hasKey(K key) {
+        assert key != null : "Violation of: key is not null";
+        return find(this.group(key), key) != null;
+    }
+
+    @Override
+    public final int size() {
+        return this.size;
+    }
+
+    @Override
+    public final Iterator<Pair<K, V>> iterator() {
+        return new Map4TreeBucketIterator();
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for
+     * {@code Map4TreeBucket}: the groups of {@code ordered}, then those of
+     * {@code unordered}.
+     */
+    private final class Map4TreeBucketIterator
+            implements Iterator<Pair<K, V>> {
+
+        /**
+         * Iterator over the groups of the pairs with {@code Comparable} keys.
+         */
+        private final Iterator<Map<K, V>> orderedGroups;
+
+        /**
+         * Iterator over the groups of the other pairs.
+         */
+        private final Iterator<Map<K, V>> groups;
+
+        /**
+         * Iterator over the group being returned, or {@code null}.
+         */
+        private Iterator<Pair<K, V>> group;
+
+        /**
+         * No-argument constructor.
+         */
+        Map4TreeBucketIterator() {
+            this.orderedGroups = Map4TreeBucket.this.ordered.values()
+                    .iterator();
+            this.groups = Map4TreeBucket.this.unordered.values().iterator();
+            this.group = null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.orderedGroups.hasNext() || this.groups.hasNext()
+                    || (this.group != null && this.group.hasNext());
+        }
+
+        @Override
+        public Pair<K, V> next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            if (this.group == null || !this.group.hasNext()) {
+                if (this.orderedGroups.hasNext()) {
+                    this.group = this.orderedGroups.next().iterator();
+                } else {
+                    this.group = this.groups.next().iterator();
+                }
+            }
+            return this.group.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
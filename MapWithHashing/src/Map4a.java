@@ -0,0 +1,567 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import components.map.Map;
+import components.map.MapSecondary;
+
+/**
+ * {@code Map} represented as an open-addressing hash table (linear probing)
+ * over parallel key and value arrays, with implementations of primary methods.
+ *
+ * <p>
+ * Unlike {@code Map4}, there is no bucket object per slot: a pair is stored
+ * directly in {@code keys[i]} and {@code values[i]}, so a lookup touches
+ * consecutive array slots instead of following a {@code Map2} per bucket.
+ * Removal shifts the following run of the probe sequence back into the freed
+ * slot, so no tombstones are needed.
+ *
+ * <p>
+ * The probing helpers work on the key array alone and are package-private,
+ * so that {@code CountingMap4}, which lays out its table the same way with
+ * {@code int} counts for values, shares them.
+ *
+ * @param <K>
+ *            type of {@code Map} domain (key) entries
+ * @param <V>
+ *            type of {@code Map} range (associated value) entries
+ * @mathdefinitions <pre>
+ * HOME (
+ *   x: K,
+ *   n: integer
+ *  ) : integer is
+ *  [computed result of spread(x.hashCode())] mod n
+ *
+ * IS_RUN (
+ *   keys: string of K,
+ *   from: integer,
+ *   to: integer
+ *  ) : boolean is
+ *  [every slot visited going forward (wrapping around) from slot from to
+ *   slot to, inclusive, holds a non-null key]
+ * </pre>
+ * @convention <pre>
+ * |$this.keys| = |$this.values|  and
+ * [|$this.keys| is a power of 2]  and
+ * $this.size < |$this.keys|  and
+ * for all i: integer
+ *     where (0 <= i  and  i < |$this.keys|)
+ *   (($this.keys[i] = null) = ($this.values[i] = null))  and
+ * for all i: integer
+ *     where (0 <= i  and  i < |$this.keys|  and  $this.keys[i] /= null)
+ *   (IS_RUN($this.keys, HOME($this.keys[i], |$this.keys|), i)  and
+ *    for all j: integer
+ *        where (0 <= j  and  j < |$this.keys|  and  j /= i)
+ *      ($this.keys[j] /= $this.keys[i]))  and
+ * $this.size = |{i: integer where ($this.keys[i] /= null)}|  and
+ * 0 <= $this.removeCursor < |$this.keys|  and
+ * [every slot after $this.removeCursor is empty]  and
+ * 0 <= $this.initialCapacity
+ * </pre>
+ * @correspondence <pre>
+ * this = {(k, v): (K, V)
+ *            where (there exists i: integer
+ *                     ($this.keys[i] = k  and  $this.values[i] = v))}
+ * </pre>
+ *
+ * @author Mingzhu Bao and Andy Shih
+ *
+ */
+public class Map4a<K, V> extends MapSecondary<K, V> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Default number of pairs the table holds before it first grows.
+     */
+    private static final int DEFAULT_HASH_TABLE_SIZE = 101;
+
+    /**
+     * The table grows when size exceeds LOAD_NUMERATOR / LOAD_DENOMINATOR of
+     * its slots.
+     */
+    private static final int LOAD_NUMERATOR = 3;
+
+    /**
+     * The table grows when size exceeds LOAD_NUMERATOR / LOAD_DENOMINATOR of
+     * its slots.
+     */
+    private static final int LOAD_DENOMINATOR = 4;
+
+    /**
+     * Keys, or {@code null} for an empty slot.
+     */
+    private Object[] keys;
+
+    /**
+     * Values, parallel to {@code keys}.
+     */
+    private Object[] values;
+
+    /**
+     * Total size of abstract {@code this}.
+     */
+    private int size;
+
+    /**
+     * Slot at which {@code removeAny} resumes looking for a pair, going
+     * down.
+     */
+    private int removeCursor;
+
+    /**
+     * Number of pairs the client asked room for; {@code clear} goes back to
+     * it.
+     */
+    private int initialCapacity;
+
+    /**
+     * Mixes the high bits of {@code h} into the low bits, since only the low
+     * bits choose the home slot.
+     *
+     * @param h
+     *            the hash code
+     * @return the spread hash code
+     */
+    static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the number of slots (a power of 2) needed to hold
+     * {@code capacity} pairs without exceeding the load factor.
+     *
+     * @param capacity
+     *            the number of pairs
+     * @return the number of slots
+     * @requires capacity >= 0
+     * @ensures <pre>
+     * [tableLength is a power of 2]  and
+     * capacity * LOAD_DENOMINATOR <= tableLength * LOAD_NUMERATOR  and
+     * capacity < tableLength
+     * </pre>
+     */
+    static int tableLength(int capacity) {
+        int length = 2;
+        while (isOverloaded(capacity, length) || capacity >= length) {
+            length *= 2;
+        }
+        return length;
+    }
+
+    /**
+     * Reports whether a table of {@code length} slots holding {@code size}
+     * pairs exceeds the load factor.
+     *
+     * @param size
+     *            the number of pairs
+     * @param length
+     *            the number of slots
+     * @return true iff the table is too full
+     * @ensures <pre>
+     * isOverloaded = (size * LOAD_DENOMINATOR > length * LOAD_NUMERATOR)
+     * </pre>
+     */
+    static boolean isOverloaded(int size, int length) {
+        return (long) size * LOAD_DENOMINATOR > (long) length * LOAD_NUMERATOR;
+    }
+
+    /**
+     * Returns the slot of {@code keys} holding {@code key}, or the empty slot
+     * that ends its probe sequence if {@code key} is not in {@code keys}.
+     *
+     * @param keys
+     *            the key array
+     * @param key
+     *            the key to look for
+     * @return the slot index
+     * @requires [|keys| is a power of 2]  and  [keys has an empty slot]
+     * @ensures <pre>
+     * (keys[slotOf] = key  or  keys[slotOf] = null)  and
+     * IS_RUN(keys, HOME(key, |keys|), slotOf - 1)
+     * </pre>
+     */
+    static int slotOf(Object[] keys, Object key) {
+        int mask = keys.length - 1;
+        int i = spread(key.hashCode()) & mask;
+        Object k = keys[i];
+        while (k != null && !k.equals(key)) {
+            i = (i + 1) & mask;
+            k = keys[i];
+        }
+        return i;
+    }
+
+    /**
+     * Returns the first empty slot of {@code keys} on the probe sequence of
+     * {@code key}, for moving {@code key} into a new table without comparing
+     * it with the keys already there.
+     *
+     * @param keys
+     *            the key array
+     * @param key
+     *            the key to place
+     * @return the slot index
+     * @requires [|keys| is a power of 2]  and  [keys has an empty slot]
+     * @ensures <pre>
+     * keys[emptySlot] = null  and
+     * IS_RUN(keys, HOME(key, |keys|), emptySlot - 1)
+     * </pre>
+     */
+    static int emptySlot(Object[] keys, Object key) {
+        int mask = keys.length - 1;
+        int i = spread(key.hashCode()) & mask;
+        while (keys[i] != null) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the slot of the next pair, after the just emptied slot
+     * {@code free} in its run, that must shift back into {@code free} so that
+     * its probe sequence is unbroken, or -1 if there is none.
+     *
+     * @param keys
+     *            the key array
+     * @param free
+     *            the empty slot
+     * @return the slot to shift back, or -1
+     * @requires [|keys| is a power of 2]  and  keys[free] = null
+     * @ensures <pre>
+     * if nextToShift = -1 then
+     *   [no key of the run after free has HOME outside the cyclic range
+     *    (free, its slot]]
+     * else
+     *   [nextToShift is the first slot of the run after free whose key has
+     *    HOME outside the cyclic range (free, nextToShift]]
+     * </pre>
+     */
+    static int nextToShift(Object[] keys, int free) {
+        int mask = keys.length - 1;
+        int result = -1;
+        int i = (free + 1) & mask;
+        Object k = keys[i];
+        while (result < 0 && k != null) {
+            int home = spread(k.hashCode()) & mask;
+            /*
+             * The pair at i may move into free only if its home slot is not in
+             * the cyclic range (free, i]
+             */
+            if (((i - home) & mask) >= ((i - free) & mask)) {
+                result = i;
+            } else {
+                i = (i + 1) & mask;
+                k = keys[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creator of initial representation.
+     *
+     * @param capacity
+     *            number of pairs to make room for
+     * @requires capacity >= 0
+     * @ensures <pre>
+     * $this.keys = <null, ..., null>  and
+     * $this.values = <null, ..., null>  and
+     * |$this.keys| = tableLength(capacity)  and
+     * $this.initialCapacity = capacity  and
+     * $this.size = 0  and  $this.removeCursor = |$this.keys| - 1
+     * </pre>
+     */
+    private void createNewRep(int capacity) {
+        int length = tableLength(capacity);
+        this.keys = new Object[length];
+        this.values = new Object[length];
+        this.size = 0;
+        this.removeCursor = length - 1;
+        this.initialCapacity = capacity;
+    }
+
+    /**
+     * Returns the slot holding {@code key}, or the empty slot that ends its
+     * probe sequence if {@code key} is not in {@code this}.
+     *
+     * @param key
+     *            the key to look for
+     * @return the slot index
+     * @ensures <pre>
+     * ($this.keys[indexOf] = key  or  $this.keys[indexOf] = null)  and
+     * IS_RUN($this.keys, HOME(key, |$this.keys|), indexOf - 1)
+     * </pre>
+     */
+    private int indexOf(Object key) {
+        return slotOf(this.keys, key);
+    }
+
+    /**
+     * Moves every pair into a table of {@code length} slots.
+     *
+     * @param length
+     *            the new number of slots
+     * @updates this
+     * @requires [length is a power of 2]  and  $this.size < length
+     * @ensures this = #this  and  |$this.keys| = length
+     */
+    private void rehash(int length) {
+        Object[] oldKeys = this.keys;
+        Object[] oldValues = this.values;
+        this.keys = new Object[length];
+        this.values = new Object[length];
+        for (int j = 0; j < oldKeys.length; j++) {
+            Object k = oldKeys[j];
+            if (k != null) {
+                int i = emptySlot(this.keys, k);
+                this.keys[i] = k;
+                this.values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /**
+     * Empties slot {@code hole} and shifts back any later pair of the same run
+     * whose probe sequence passes over {@code hole}.
+     *
+     * @param hole
+     *            the slot to empty
+     * @updates $this.keys, $this.values
+     * @requires $this.keys[hole] /= null
+     * @ensures <pre>
+     * [the pair in slot hole is removed, and the convention again holds for
+     *  the remaining pairs]
+     * </pre>
+     */
+    private void deleteSlot(int hole) {
+        int free = hole;
+        this.keys[free] = null;
+        int i = nextToShift(this.keys, free);
+        while (i >= 0) {
+            this.keys[free] = this.keys[i];
+            this.values[free] = this.values[i];
+            this.keys[i] = null;
+            free = i;
+            i = nextToShift(this.keys, free);
+        }
+        this.values[free] = null;
+    }
+
+    /**
+     * Removes the pair in slot {@code i} and returns it.
+     *
+     * @param i
+     *            the slot
+     * @return the removed pair
+     * @updates this
+     * @requires $this.keys[i] /= null
+     * @ensures <pre>
+     * removeSlot = (#$this.keys[i], #$this.values[i])  and
+     * this = #this \ {removeSlot}
+     * </pre>
+     */
+    @SuppressWarnings("unchecked")
+    private Pair<K, V> removeSlot(int i) {
+        Pair<K, V> removed = new SimplePair<>((K) this.keys[i],
+                (V) this.values[i]);
+        this.deleteSlot(i);
+        this.size--;
+        return removed;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public Map4a() {
+        this.createNewRep(DEFAULT_HASH_TABLE_SIZE);
+    }
+
+    /**
+     * Constructor resulting in a table with room for {@code hashTableSize}
+     * pairs before it first grows.
+     *
+     * @param hashTableSize
+     *            number of pairs to make room for
+     * @requires hashTableSize > 0
+     * @ensures this = {}
+     */
+    public Map4a(int hashTableSize) {
+        assert hashTableSize > 0 : "Violation of: hashTableSize > 0";
+        this.createNewRep(hashTableSize);
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final Map<K, V> newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.createNewRep(this.initialCapacity);
+    }
+
+    @Override
+    public final void transferFrom(Map<K, V> source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof Map4a<?, ?> : ""
+                + "Violation of: source is of dynamic type Map4a<?,?>";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case: source must be of dynamic type Map4a<?,?>,
+         * and the ?,? must be K,V or the call would not have compiled.
+         */
+        Map4a<K, V> localSource = (Map4a<K, V>) source;
+        this.keys = localSource.keys;
+        this.values = localSource.values;
+        this.size = localSource.size;
+        this.removeCursor = localSource.removeCursor;
+        this.initialCapacity = localSource.initialCapacity;
+        localSource.createNewRep(localSource.initialCapacity);
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(K key, V value) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+        assert !this.hasKey(key) : "Violation of: key is not in DOMAIN(this)";
+        if (isOverloaded(this.size + 1, this.keys.length)) {
+            this.rehash(2 * this.keys.length);
+        }
+        int i = this.indexOf(key);
+        this.keys[i] = key;
+        this.values[i] = value;
+        this.size++;
+        /*
+         * The pair may have gone past the cursor, as may every pair if the
+         * table grew
+         */
+        this.removeCursor = this.keys.length - 1;
+    }
+
+    @Override
+    public final Pair<K, V> remove(K key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+        return this.removeSlot(this.indexOf(key));
+    }
+
+    @Override
+    public final Pair<K, V> removeAny() {
+        assert this.size() > 0 : "Violation of: this /= empty_set";
+        /*
+         * Every slot after the cursor is empty, so the pair found is the last
+         * of its run, and deleteSlot has nothing to shift back, except when
+         * the cursor is on the last slot and the run wraps around: then it may
+         * move pairs into the cursor's slot, which the next call finds again
+         */
+        while (this.keys[this.removeCursor] == null) {
+            this.removeCursor--;
+        }
+        return this.removeSlot(this.removeCursor);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final V value(K key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+        return (V) this.values[this.indexOf(key)];
+    }
+
+    @Override
+    public final boolean hasKey(K key) {
+        assert key != null : "Violation of: key is not null";
+        return this.keys[this.indexOf(key)] != null;
+    }
+
+    @Override
+    public final int size() {
+        return this.size;
+    }
+
+    @Override
+    public final Iterator<Pair<K, V>> iterator() {
+        return new Map4aIterator();
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for {@code Map4a}.
+     */
+    private final class Map4aIterator implements Iterator<Pair<K, V>> {
+
+        /**
+         * Number of elements seen already (i.e., |~this.seen|).
+         */
+        private int numberSeen;
+
+        /**
+         * Slot from which the next element will come, once empty slots are
+         * skipped.
+         */
+        private int currentSlot;
+
+        /**
+         * No-argument constructor.
+         */
+        Map4aIterator() {
+            this.numberSeen = 0;
+            this.currentSlot = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.numberSeen < Map4a.this.size;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Pair<K, V> next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            this.numberSeen++;
+            while (Map4a.this.keys[this.currentSlot] == null) {
+                this.currentSlot++;
+            }
+            int i = this.currentSlot;
+            this.currentSlot++;
+            return new SimplePair<>((K) Map4a.this.keys[i],
+                    (V) Map4a.this.values[i]);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
@@ -0,0 +1,1018 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import components.map.Map;
+import components.map.MapSecondary;
+
+/**
+ * {@code Map} from {@code String} to {@code Integer} represented as an
+ * open-addressing hash table (linear probing, as in {@code Map4a}) that lives
+ * in a memory-mapped file rather than on the Java heap, with implementations
+ * of primary methods.
+ *
+ * <p>
+ * The file holds a header, then {@code slots} fixed-width slots, then a region
+ * of UTF-8 key bytes:
+ *
+ * <pre>
+ * header (32 bytes): MAGIC, slots, size, keysEnd, keysCapacity, liveKeys
+ *                    (ints)
+ * slot   (16 bytes): spread hash code, key offset, key length + 1, value
+ * keys:              UTF-8 bytes of the keys, back to back
+ * </pre>
+ *
+ * A slot whose length field is 0 is empty, so a freshly extended (zeroed)
+ * file is an empty table. Since {@code String.hashCode} is fixed by its
+ * specification, the stored hash codes stay valid across runs, and a map
+ * saved by one run is reopened by the next with {@code MappedMap4(file)}
+ * without reading or rehashing any pair; the pages are brought in by the
+ * operating system as they are touched and never become garbage for the
+ * collector.
+ *
+ * <p>
+ * Removing a pair shifts the rest of its probe run back (no tombstones) but
+ * leaves its key bytes behind; the header counts the bytes of the keys still
+ * in the table ({@code liveKeys}). When the table passes 3/4 full, or the key
+ * region runs out, the pairs are copied into a new file next to this one,
+ * dropping the unused key bytes, and that file replaces this one. The new key
+ * region is sized from the live key bytes: it doubles only if they fill more
+ * than half of the old one, and otherwise keeps its size, so removing and
+ * adding keys over and over does not make the file grow. Each of the slot and
+ * key regions is mapped as one buffer, so each is limited to 2 GiB.
+ *
+ * <p>
+ * {@code close} (or try-with-resources) releases the file, and deletes it if
+ * it is a temporary file made by the no-argument constructor (so does
+ * {@code transferFrom}, for the file {@code this} gives up). A temporary file
+ * of a map that becomes unreachable without being closed is deleted by a
+ * {@code Cleaner}. The mappings of a file are dropped before it is replaced
+ * or truncated, but Java cannot unmap them eagerly: they linger until they
+ * are garbage collected, so on systems that refuse to replace or truncate a
+ * file that is still mapped, growing or clearing the map may fail, leaving
+ * it as it was.
+ *
+ * @mathdefinitions <pre>
+ * HOME (
+ *   h: integer,
+ *   n: integer
+ *  ) : integer is
+ *  h mod n
+ *
+ * KEY (
+ *   i: integer
+ *  ) : string of character is
+ *  [the key decoded from UTF-8 key bytes [$this.slotOffset(i),
+ *   $this.slotOffset(i) + $this.slotLength(i))]
+ * </pre>
+ * @convention <pre>
+ * [$this.slots is a power of 2]  and  $this.size < $this.slots  and
+ * $this.size * 4 <= $this.slots * 3  and
+ * 0 <= $this.liveKeys <= $this.keysEnd <= [capacity of $this.keyBytes]  and
+ * [the header of $this.table holds MAGIC, $this.slots, $this.size,
+ *  $this.keysEnd and $this.liveKeys]  and
+ * for all i: integer
+ *     where (0 <= i  and  i < $this.slots  and  [slot i is not empty])
+ *   ($this.slotHash(i) = spread(KEY(i).hashCode())  and
+ *    $this.slotOffset(i) + $this.slotLength(i) <= $this.keysEnd  and
+ *    [every slot going forward (wrapping around) from
+ *     HOME($this.slotHash(i), $this.slots) to i is not empty]  and
+ *    for all j: integer
+ *        where (0 <= j  and  j < $this.slots  and  j /= i  and
+ *               [slot j is not empty])
+ *      (KEY(j) /= KEY(i)))  and
+ * $this.size = |{i: integer where ([slot i is not empty])}|  and
+ * $this.liveKeys = [sum of $this.slotLength(i) over the non-empty slots i]  and
+ * 0 <= $this.removeCursor <= $this.slots  and
+ * [no slot before $this.removeCursor is not empty]
+ * </pre>
+ * @correspondence <pre>
+ * this = {(k, v): (string of character, integer)
+ *            where (there exists i: integer
+ *                     ([slot i is not empty]  and
+ *                      KEY(i) = k  and  $this.slotValue(i) = v))}
+ * </pre>
+ *
+ * @author Mingzhu Bao and Andy Shih
+ *
+ */
+public class MappedMap4 extends MapSecondary<String, Integer>
+        implements AutoCloseable {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * First int of every file written by this class.
+     */
+    private static final int MAGIC = 0x4D61_7034;
+
+    /**
+     * Number of bytes before the first slot.
+     */
+    private static final int HEADER_BYTES = 32;
+
+    /**
+     * Byte position in the header of the number of slots.
+     */
+    private static final int SLOTS_AT = 4;
+
+    /**
+     * Byte position in the header of the number of pairs.
+     */
+    private static final int SIZE_AT = 8;
+
+    /**
+     * Byte position in the header of the end of the used key bytes.
+     */
+    private static final int KEYS_END_AT = 12;
+
+    /**
+     * Byte position in the header of the size of the key region.
+     */
+    private static final int KEYS_CAPACITY_AT = 16;
+
+    /**
+     * Byte position in the header of the number of key bytes of the pairs in
+     * the table.
+     */
+    private static final int LIVE_KEYS_AT = 20;
+
+    /**
+     * Number of bytes per slot.
+     */
+    private static final int SLOT_BYTES = 16;
+
+    /**
+     * Byte position in a slot of the key offset.
+     */
+    private static final int OFFSET_AT = 4;
+
+    /**
+     * Byte position in a slot of the key length plus one.
+     */
+    private static final int LENGTH_AT = 8;
+
+    /**
+     * Byte position in a slot of the value.
+     */
+    private static final int VALUE_AT = 12;
+
+    /**
+     * Number of pairs a new file has room for before it first grows.
+     */
+    private static final int DEFAULT_CAPACITY = 101;
+
+    /**
+     * Number of key bytes a new file has room for before it first grows.
+     */
+    private static final int DEFAULT_KEYS_CAPACITY = 4096;
+
+    /**
+     * The table grows when size exceeds LOAD_NUMERATOR / LOAD_DENOMINATOR of
+     * its slots.
+     */
+    private static final int LOAD_NUMERATOR = 3;
+
+    /**
+     * The table grows when size exceeds LOAD_NUMERATOR / LOAD_DENOMINATOR of
+     * its slots.
+     */
+    private static final int LOAD_DENOMINATOR = 4;
+
+    /**
+     * Deletes the temporary files of maps that become unreachable.
+     */
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    /**
+     * Cleaning action deleting the temporary file a map owns, if any. It
+     * refers to the file, not to the map, so that the map can become
+     * unreachable.
+     */
+    private static final class TemporaryFile implements Runnable {
+
+        /**
+         * The temporary file, or null if the map does not own one.
+         */
+        private volatile Path file;
+
+        @Override
+        public void run() {
+            try {
+                deleteTemporary(this);
+            } catch (UncheckedIOException e) {
+                /*
+                 * Nobody is left to report to; the file stays behind
+                 */
+            }
+        }
+
+    }
+
+    /**
+     * The file holding {@code this}.
+     */
+    private Path file;
+
+    /**
+     * The temporary file {@code this} owns and deletes, if any.
+     */
+    private final TemporaryFile temporary = new TemporaryFile();
+
+    /**
+     * Registration of {@code temporary} with {@code CLEANER}.
+     */
+    private final Cleaner.Cleanable cleanable = CLEANER.register(this,
+            this.temporary);
+
+    /**
+     * Open channel to {@code file}.
+     */
+    private FileChannel channel;
+
+    /**
+     * The header and slots, mapped.
+     */
+    private MappedByteBuffer table;
+
+    /**
+     * The key region, mapped.
+     */
+    private MappedByteBuffer keyBytes;
+
+    /**
+     * Number of slots.
+     */
+    private int slots;
+
+    /**
+     * Total size of abstract {@code this}.
+     */
+    private int size;
+
+    /**
+     * Number of key bytes used, including those of removed keys.
+     */
+    private int keysEnd;
+
+    /**
+     * Number of key bytes of the pairs in the table.
+     */
+    private int liveKeys;
+
+    /**
+     * Slot at which {@code removeAny} resumes looking for a pair; not saved in
+     * the file.
+     */
+    private int removeCursor;
+
+    /**
+     * Mixes the high bits of {@code h} into the low bits, since only the low
+     * bits choose the home slot.
+     *
+     * @param h
+     *            the hash code
+     * @return the spread hash code
+     */
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the number of slots (a power of 2) needed to hold
+     * {@code capacity} pairs without exceeding the load factor.
+     *
+     * @param capacity
+     *            the number of pairs
+     * @return the number of slots
+     * @requires capacity >= 0
+     * @ensures <pre>
+     * [tableLength is a power of 2]  and
+     * capacity * LOAD_DENOMINATOR <= tableLength * LOAD_NUMERATOR  and
+     * capacity < tableLength
+     * </pre>
+     */
+    private static int tableLength(int capacity) {
+        int length = 2;
+        while ((long) capacity * LOAD_DENOMINATOR > (long) length
+                * LOAD_NUMERATOR || capacity >= length) {
+            length *= 2;
+        }
+        return length;
+    }
+
+    /**
+     * Writes an empty table of {@code slots} slots and {@code keysCapacity}
+     * key bytes to the empty file open on {@code ch}.
+     *
+     * @param ch
+     *            the channel
+     * @param slots
+     *            the number of slots
+     * @param keysCapacity
+     *            the size of the key region
+     * @throws IOException
+     *             if the file cannot be written
+     * @requires <pre>
+     * [the file open on ch is empty]  and
+     * [slots is a power of 2]  and  keysCapacity > 0
+     * </pre>
+     */
+    private static void format(FileChannel ch, int slots, int keysCapacity)
+            throws IOException {
+        /*
+         * Mapping past the end of the file extends it with zero bytes, which
+         * are empty slots
+         */
+        MappedByteBuffer header = ch.map(FileChannel.MapMode.READ_WRITE, 0,
+                (long) HEADER_BYTES + (long) slots * SLOT_BYTES + keysCapacity);
+        header.putInt(0, MAGIC);
+        header.putInt(SLOTS_AT, slots);
+        header.putInt(SIZE_AT, 0);
+        header.putInt(KEYS_END_AT, 0);
+        header.putInt(KEYS_CAPACITY_AT, keysCapacity);
+        header.putInt(LIVE_KEYS_AT, 0);
+    }
+
+    /**
+     * Opens {@code file}, formatting it as an empty table of
+     * {@code slotCount} slots and {@code keysCapacity} key bytes if it is
+     * new or empty, and maps it.
+     *
+     * @param f
+     *            the file
+     * @param slotCount
+     *            the number of slots of a new table
+     * @param keysCapacity
+     *            the size of the key region of a new table
+     * @updates this
+     * @requires <pre>
+     * [f is absent, empty, or a file written by MappedMap4]  and
+     * [slotCount is a power of 2]  and  keysCapacity > 0
+     * </pre>
+     * @ensures [this is the map held in f]  and  $this.removeCursor = 0
+     */
+    private void open(Path f, int slotCount, int keysCapacity) {
+        try {
+            this.file = f;
+            this.channel = FileChannel.open(f, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (this.channel.size() == 0) {
+                format(this.channel, slotCount, keysCapacity);
+            }
+            MappedByteBuffer header = this.channel.map(
+                    FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            assert header.getInt(0) == MAGIC : ""
+                    + "Violation of: file is a MappedMap4 file";
+            this.slots = header.getInt(SLOTS_AT);
+            this.size = header.getInt(SIZE_AT);
+            this.keysEnd = header.getInt(KEYS_END_AT);
+            this.liveKeys = header.getInt(LIVE_KEYS_AT);
+            long slotBytes = HEADER_BYTES + (long) this.slots * SLOT_BYTES;
+            this.table = this.channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    slotBytes);
+            this.keyBytes = this.channel.map(FileChannel.MapMode.READ_WRITE,
+                    slotBytes, header.getInt(KEYS_CAPACITY_AT));
+            this.removeCursor = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Creator of initial representation: an empty map in a new temporary
+     * file, owned by {@code this}.
+     *
+     * @ensures this = {}
+     */
+    private void createNewRep() {
+        try {
+            Path f = Files.createTempFile("MappedMap4", ".map");
+            this.temporary.file = f;
+            this.open(f, tableLength(DEFAULT_CAPACITY),
+                    DEFAULT_KEYS_CAPACITY);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Deletes the temporary file of {@code t}, if any.
+     *
+     * @param t
+     *            the temporary file of a map
+     * @updates t
+     * @ensures t.file = null  and  [#t.file, if not null, is deleted]
+     */
+    private static void deleteTemporary(TemporaryFile t) {
+        Path f = t.file;
+        t.file = null;
+        if (f != null) {
+            try {
+                Files.deleteIfExists(f);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Closes the channel to {@code file} and drops the mappings of it, so
+     * nothing of {@code this} refers to the file any longer. Java has no way
+     * to unmap a buffer; the mappings go when they are garbage collected.
+     *
+     * @updates this
+     * @ensures $this.channel is closed  and  $this.table = null  and
+     *          $this.keyBytes = null
+     */
+    private void release() {
+        this.table = null;
+        this.keyBytes = null;
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the byte position of slot {@code i} in {@code table}.
+     *
+     * @param i
+     *            the slot
+     * @return the position
+     */
+    private static int slotAt(int i) {
+        return HEADER_BYTES + i * SLOT_BYTES;
+    }
+
+    /**
+     * Returns the length of the key in slot {@code i}, or -1 if the slot is
+     * empty.
+     *
+     * @param i
+     *            the slot
+     * @return the key length
+     */
+    private int slotLength(int i) {
+        return this.table.getInt(slotAt(i) + LENGTH_AT) - 1;
+    }
+
+    /**
+     * Returns the stored hash code of the key in slot {@code i}.
+     *
+     * @param i
+     *            the slot
+     * @return the hash code
+     */
+    private int slotHash(int i) {
+        return this.table.getInt(slotAt(i));
+    }
+
+    /**
+     * Returns the offset in {@code keyBytes} of the key in slot {@code i}.
+     *
+     * @param i
+     *            the slot
+     * @return the key offset
+     */
+    private int slotOffset(int i) {
+        return this.table.getInt(slotAt(i) + OFFSET_AT);
+    }
+
+    /**
+     * Returns the value in slot {@code i}.
+     *
+     * @param i
+     *            the slot
+     * @return the value
+     */
+    private int slotValue(int i) {
+        return this.table.getInt(slotAt(i) + VALUE_AT);
+    }
+
+    /**
+     * Fills slot {@code i}.
+     *
+     * @param i
+     *            the slot
+     * @param hash
+     *            the spread hash code of the key
+     * @param offset
+     *            the offset of the key bytes
+     * @param length
+     *            the number of key bytes, or -1 to empty the slot
+     * @param value
+     *            the value
+     */
+    private void setSlot(int i, int hash, int offset, int length, int value) {
+        int at = slotAt(i);
+        this.table.putInt(at, hash);
+        this.table.putInt(at + OFFSET_AT, offset);
+        this.table.putInt(at + LENGTH_AT, length + 1);
+        this.table.putInt(at + VALUE_AT, value);
+    }
+
+    /**
+     * Records {@code size} and {@code keysEnd} in the header.
+     */
+    private void writeHeader() {
+        this.table.putInt(SIZE_AT, this.size);
+        this.table.putInt(KEYS_END_AT, this.keysEnd);
+        this.table.putInt(LIVE_KEYS_AT, this.liveKeys);
+    }
+
+    /**
+     * Returns the key in slot {@code i}.
+     *
+     * @param i
+     *            the slot
+     * @return the key
+     * @requires [slot i is not empty]
+     */
+    private String keyAt(int i) {
+        byte[] b = new byte[this.slotLength(i)];
+        ByteBuffer view = this.keyBytes.duplicate();
+        view.position(this.slotOffset(i));
+        view.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the slot holding the key with spread hash code {@code hash} and
+     * UTF-8 bytes {@code key}, or the empty slot that ends its probe sequence
+     * if there is no such key.
+     *
+     * @param hash
+     *            the spread hash code of the key
+     * @param key
+     *            the UTF-8 bytes of the key
+     * @return the slot index
+     */
+    private int indexOf(int hash, byte[] key) {
+        int mask = this.slots - 1;
+        int i = hash & mask;
+        int length = this.slotLength(i);
+        while (length >= 0 && !(length == key.length
+                && this.slotHash(i) == hash && this.keyEquals(i, key))) {
+            i = (i + 1) & mask;
+            length = this.slotLength(i);
+        }
+        return i;
+    }
+
+    /**
+     * Reports whether the key bytes of slot {@code i} are {@code key}.
+     *
+     * @param i
+     *            the slot
+     * @param key
+     *            the bytes compared
+     * @return true iff the bytes are equal
+     * @requires this.slotLength(i) = |key|
+     */
+    private boolean keyEquals(int i, byte[] key) {
+        int offset = this.slotOffset(i);
+        int j = 0;
+        while (j < key.length && this.keyBytes.get(offset + j) == key[j]) {
+            j++;
+        }
+        return j == key.length;
+    }
+
+    /**
+     * Adds a pair whose key is not in {@code this}, copying the key bytes to
+     * the end of the key region.
+     *
+     * @param hash
+     *            the spread hash code of the key
+     * @param key
+     *            the UTF-8 bytes of the key
+     * @param value
+     *            the value
+     * @updates this
+     * @requires <pre>
+     * [the key is not in DOMAIN(this)]  and
+     * $this.size + 1 < $this.slots  and
+     * $this.keysEnd + |key| <= [capacity of $this.keyBytes]
+     * </pre>
+     */
+    private void insert(int hash, byte[] key, int value) {
+        int i = this.indexOf(hash, key);
+        ByteBuffer view = this.keyBytes.duplicate();
+        view.position(this.keysEnd);
+        view.put(key);
+        this.setSlot(i, hash, this.keysEnd, key.length, value);
+        this.keysEnd += key.length;
+        this.liveKeys += key.length;
+        this.size++;
+        this.writeHeader();
+    }
+
+    /**
+     * Copies every pair into a new file of {@code slotCount} slots and
+     * {@code keysCapacity} key bytes, leaving out unused key bytes, and
+     * replaces {@code file} with it.
+     *
+     * @param slotCount
+     *            the new number of slots
+     * @param keysCapacity
+     *            the new size of the key region
+     * @updates this
+     * @requires <pre>
+     * [slotCount is a power of 2]  and  $this.size < slotCount  and
+     * keysCapacity >= [number of key bytes of the pairs in this]
+     * </pre>
+     * @ensures this = #this
+     */
+    private void rebuild(int slotCount, int keysCapacity) {
+        Path temp = this.file
+                .resolveSibling(this.file.getFileName() + ".tmp");
+        try {
+            Files.deleteIfExists(temp);
+            MappedMap4 copy = new MappedMap4(temp, slotCount, keysCapacity);
+            for (int i = 0; i < this.slots; i++) {
+                int length = this.slotLength(i);
+                if (length >= 0) {
+                    byte[] b = new byte[length];
+                    ByteBuffer view = this.keyBytes.duplicate();
+                    view.position(this.slotOffset(i));
+                    view.get(b);
+                    copy.insert(this.slotHash(i), b, this.slotValue(i));
+                }
+            }
+            copy.table.force();
+            copy.keyBytes.force();
+            /*
+             * Close both channels and drop both mappings before the move.
+             * That cannot unmap them, so where a mapped file cannot be
+             * replaced the move fails; then this goes on in its old file
+             */
+            copy.release();
+            this.release();
+            try {
+                Files.move(temp, this.file,
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                this.open(this.file, slotCount, keysCapacity);
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.open(this.file, slotCount, keysCapacity);
+    }
+
+    /**
+     * Empties slot {@code hole} and shifts back any later pair of the same run
+     * whose probe sequence passes over {@code hole}.
+     *
+     * @param hole
+     *            the slot to empty
+     * @updates this
+     * @requires [slot hole is not empty]
+     * @ensures <pre>
+     * [the pair in slot hole is removed, and the convention again holds for
+     *  the remaining pairs]
+     * </pre>
+     */
+    private void deleteSlot(int hole) {
+        this.liveKeys -= this.slotLength(hole);
+        int mask = this.slots - 1;
+        int free = hole;
+        int i = (free + 1) & mask;
+        while (this.slotLength(i) >= 0) {
+            int home = this.slotHash(i) & mask;
+            /*
+             * The pair at i may move into free only if its home slot is not in
+             * the cyclic range (free, i]
+             */
+            if (((i - home) & mask) >= ((i - free) & mask)) {
+                this.setSlot(free, this.slotHash(i), this.slotOffset(i),
+                        this.slotLength(i), this.slotValue(i));
+                free = i;
+            }
+            i = (i + 1) & mask;
+        }
+        this.setSlot(free, 0, 0, -1, 0);
+        this.size--;
+        this.writeHeader();
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor, resulting in a map held in a temporary file
+     * that is deleted when the program exits.
+     */
+    public MappedMap4() {
+        this.createNewRep();
+    }
+
+    /**
+     * Constructor resulting in the map held in {@code file}: the map saved
+     * there earlier if there is one, and an empty map in a new file
+     * otherwise. Changes to {@code this} are written through to
+     * {@code file}.
+     *
+     * @param file
+     *            the file holding the map
+     * @requires [file is absent, empty, or a file written by MappedMap4]
+     * @ensures this = [the map held in file, or {} if there is none]
+     */
+    public MappedMap4(Path file) {
+        assert file != null : "Violation of: file is not null";
+        this.open(file, tableLength(DEFAULT_CAPACITY), DEFAULT_KEYS_CAPACITY);
+    }
+
+    /**
+     * Constructor resulting in the map held in {@code file}, or in an empty
+     * map of {@code slotCount} slots and {@code keysCapacity} key bytes if
+     * there is none.
+     *
+     * @param file
+     *            the file holding the map
+     * @param slotCount
+     *            the number of slots of a new table
+     * @param keysCapacity
+     *            the size of the key region of a new table
+     * @requires <pre>
+     * [file is absent, empty, or a file written by MappedMap4]  and
+     * [slotCount is a power of 2]  and  keysCapacity > 0
+     * </pre>
+     */
+    private MappedMap4(Path file, int slotCount, int keysCapacity) {
+        this.open(file, slotCount, keysCapacity);
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @Override
+    public final Map<String, Integer> newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        /*
+         * Close the channel and drop the mappings before truncating the file,
+         * and open then formats the empty file. That cannot unmap them, so
+         * where a mapped file cannot be truncated this fails; then this goes
+         * on as it was
+         */
+        this.release();
+        try {
+            FileChannel.open(this.file, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING).close();
+        } catch (IOException e) {
+            this.open(this.file, tableLength(DEFAULT_CAPACITY),
+                    DEFAULT_KEYS_CAPACITY);
+            throw new UncheckedIOException(e);
+        }
+        this.open(this.file, tableLength(DEFAULT_CAPACITY),
+                DEFAULT_KEYS_CAPACITY);
+    }
+
+    @Override
+    public final void transferFrom(Map<String, Integer> source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof MappedMap4 : ""
+                + "Violation of: source is of dynamic type MappedMap4";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case: source must be of dynamic type MappedMap4.
+         * The file of this is closed, and deleted if it is a temporary file of
+         * this, and otherwise left as it was; this takes over the file of
+         * source (and its ownership), and source goes on in a new temporary
+         * file.
+         */
+        MappedMap4 localSource = (MappedMap4) source;
+        this.release();
+        deleteTemporary(this.temporary);
+        this.temporary.file = localSource.temporary.file;
+        localSource.temporary.file = null;
+        this.file = localSource.file;
+        this.channel = localSource.channel;
+        this.table = localSource.table;
+        this.keyBytes = localSource.keyBytes;
+        this.slots = localSource.slots;
+        this.size = localSource.size;
+        this.keysEnd = localSource.keysEnd;
+        this.liveKeys = localSource.liveKeys;
+        this.removeCursor = localSource.removeCursor;
+        localSource.createNewRep();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(String key, Integer value) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+        assert !this.hasKey(key) : "Violation of: key is not in DOMAIN(this)";
+        byte[] b = key.getBytes(StandardCharsets.UTF_8);
+        int keysCapacity = this.keyBytes.capacity();
+        boolean slotsFull = (long) (this.size + 1)
+                * LOAD_DENOMINATOR > (long) this.slots * LOAD_NUMERATOR;
+        boolean keysFull = this.keysEnd + (long) b.length > keysCapacity;
+        if (slotsFull || keysFull) {
+            int slotCount = this.slots;
+            if (slotsFull) {
+                slotCount *= 2;
+            }
+            /*
+             * The rebuilt key region holds only the live key bytes; it grows
+             * only if they (with the new key) fill more than half of it, so
+             * that dropping the dead bytes leaves room for as many again
+             */
+            long live = (long) this.liveKeys + b.length;
+            if (keysFull && 2 * live > keysCapacity) {
+                if (live > Integer.MAX_VALUE) {
+                    throw new IllegalStateException(
+                            "Key region of MappedMap4 is full");
+                }
+                keysCapacity = (int) Math.min(Integer.MAX_VALUE, 2 * live);
+            }
+            this.rebuild(slotCount, keysCapacity);
+        }
+        this.insert(spread(key.hashCode()), b, value);
+        this.removeCursor = 0;
+    }
+
+    @Override
+    public final Pair<String, Integer> remove(String key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+        int i = this.indexOf(spread(key.hashCode()),
+                key.getBytes(StandardCharsets.UTF_8));
+        Pair<String, Integer> removed = new SimplePair<>(key,
+                this.slotValue(i));
+        this.deleteSlot(i);
+        return removed;
+    }
+
+    @Override
+    public final Pair<String, Integer> removeAny() {
+        assert this.size() > 0 : "Violation of: this /= empty_set";
+        /*
+         * Slots before removeCursor were found empty by earlier calls, and
+         * deleteSlot only moves pairs into the slot it empties, so the search
+         * can resume there
+         */
+        while (this.slotLength(this.removeCursor) < 0) {
+            this.removeCursor++;
+        }
+        Pair<String, Integer> removed = new SimplePair<>(
+                this.keyAt(this.removeCursor),
+                this.slotValue(this.removeCursor));
+        this.deleteSlot(this.removeCursor);
+        return removed;
+    }
+
+    @Override
+    public final Integer value(String key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+        return this.slotValue(this.indexOf(spread(key.hashCode()),
+                key.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public final boolean hasKey(String key) {
+        assert key != null : "Violation of: key is not null";
+        return this.slotLength(this.indexOf(spread(key.hashCode()),
+                key.getBytes(StandardCharsets.UTF_8))) >= 0;
+    }
+
+    @Override
+    public final int size() {
+        return this.size;
+    }
+
+    @Override
+    public final Iterator<Pair<String, Integer>> iterator() {
+        return new MappedMap4Iterator();
+    }
+
+    /*
+     * Other methods ----------------------------------------------------------
+     */
+
+    /**
+     * Writes any changes to {@code this} still held in memory out to its
+     * file, so they survive a crash of the machine (they already survive the
+     * program exiting).
+     */
+    public final void force() {
+        this.table.force();
+        this.keyBytes.force();
+    }
+
+    /**
+     * Reports the file holding {@code this}.
+     *
+     * @return the file
+     */
+    public final Path file() {
+        return this.file;
+    }
+
+    /**
+     * Closes the file holding {@code this}, which keeps the pairs written to
+     * it, or deletes it if it is a temporary file. {@code this} may not be
+     * used afterwards.
+     *
+     * @updates this
+     */
+    @Override
+    public final void close() {
+        this.release();
+        this.cleanable.clean();
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for {@code MappedMap4}.
+     */
+    private final class MappedMap4Iterator
+            implements Iterator<Pair<String, Integer>> {
+
+        /**
+         * Number of elements seen already (i.e., |~this.seen|).
+         */
+        private int numberSeen;
+
+        /**
+         * Slot of the next element.
+         */
+        private int currentSlot;
+
+        /**
+         * No-argument constructor.
+         */
+        MappedMap4Iterator() {
+            this.numberSeen = 0;
+            this.currentSlot = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.numberSeen < MappedMap4.this.size;
+        }
+
+        @Override
+        public Pair<String, Integer> next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            while (MappedMap4.this.slotLength(this.currentSlot) < 0) {
+                this.currentSlot++;
+            }
+            Pair<String, Integer> p = new SimplePair<>(
+                    MappedMap4.this.keyAt(this.currentSlot),
+                    MappedMap4.this.slotValue(this.currentSlot));
+            this.numberSeen++;
+            this.currentSlot++;
+            return p;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
@@ -0,0 +1,673 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import components.map.Map;
+import components.map.MapSecondary;
+
+/**
+ * {@code Map} represented as a "Swiss table": open addressing over parallel
+ * key and value arrays, with one control byte per slot and the slots probed
+ * in groups of 8, with implementations of primary methods.
+ *
+ * <p>
+ * A control byte is {@code EMPTY}, {@code DELETED}, or, for a full slot, the
+ * low 7 bits of the key's (mixed) hash code. The 8 control bytes of a group
+ * are packed in one {@code long}, so a lookup compares the 7-bit fragment
+ * against a whole group with a few word operations (SWAR: SIMD within a
+ * register) and calls {@code equals} only on the slots whose fragment matches,
+ * about 1 in 128 of the others. The remaining hash bits choose the first group
+ * probed; later groups follow a triangular sequence, which visits every group
+ * since there is a power of 2 of them. A lookup stops at the first group with
+ * an {@code EMPTY} slot, which is what lets a miss end after looking at one or
+ * two groups.
+ *
+ * @param <K>
+ *            type of {@code Map} domain (key) entries
+ * @param <V>
+ *            type of {@code Map} range (associated value) entries
+ * @mathdefinitions <pre>
+ * CONTROL (
+ *   i: integer
+ *  ) : integer is
+ *  [byte i mod 8 of $this.control[i / 8], byte 0 being the lowest]
+ *
+ * PROBED (
+ *   x: K,
+ *   i: integer
+ *  ) : boolean is
+ *  [slot i is in the group that the probe sequence of x reaches first
+ *   among the groups holding an EMPTY or (then) x]  and
+ *  [no group before it in the probe sequence of x has an EMPTY slot]
+ * </pre>
+ * @convention <pre>
+ * [|$this.control| is a power of 2]  and
+ * |$this.keys| = |$this.values| = |$this.control| * 8  and
+ * for all i: integer
+ *     where (0 <= i  and  i < |$this.keys|)
+ *   ((CONTROL(i) = EMPTY  or  CONTROL(i) = DELETED) =
+ *        ($this.keys[i] = null)  and
+ *    ($this.keys[i] = null) = ($this.values[i] = null)  and
+ *    if $this.keys[i] /= null then
+ *      (CONTROL(i) = h2(spread($this.keys[i].hashCode()))  and
+ *       PROBED($this.keys[i], i)))  and
+ * [no two keys are equal]  and
+ * $this.size = |{i: integer where ($this.keys[i] /= null)}|  and
+ * $this.growthLeft = |$this.keys| * 7 / 8 - $this.size -
+ *     |{i: integer where (CONTROL(i) = DELETED)}|  and
+ * $this.growthLeft >= 0  and
+ * 0 <= $this.removeCursor <= |$this.keys|  and
+ * [every slot before $this.removeCursor is empty or deleted]  and
+ * 0 <= $this.initialCapacity
+ * </pre>
+ * @correspondence <pre>
+ * this = {(k, v): (K, V)
+ *            where (there exists i: integer
+ *                     ($this.keys[i] = k  and  $this.values[i] = v))}
+ * </pre>
+ *
+ * @author Mingzhu Bao and Andy Shih
+ *
+ */
+public class SwissMap4<K, V> extends MapSecondary<K, V> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Default number of pairs the table holds before it first grows.
+     */
+    private static final int DEFAULT_HASH_TABLE_SIZE = 101;
+
+    /**
+     * Number of slots per group, i.e., control bytes per {@code long}.
+     */
+    private static final int GROUP = 8;
+
+    /**
+     * log2 of {@code GROUP}.
+     */
+    private static final int GROUP_SHIFT = 3;
+
+    /**
+     * Control byte of a slot that has never been full.
+     */
+    private static final int EMPTY = 0x80;
+
+    /**
+     * Control byte of a slot whose pair was removed.
+     */
+    private static final int DELETED = 0xFE;
+
+    /**
+     * Number of low hash bits kept in the control byte of a full slot.
+     */
+    private static final int H2_BITS = 7;
+
+    /**
+     * Mask of the low hash bits kept in the control byte of a full slot.
+     */
+    private static final int H2_MASK = 0x7F;
+
+    /**
+     * The lowest bit of every byte of a {@code long}.
+     */
+    private static final long LSBS = 0x0101_0101_0101_0101L;
+
+    /**
+     * The highest bit of every byte of a {@code long}.
+     */
+    private static final long MSBS = 0x8080_8080_8080_8080L;
+
+    /**
+     * A group of 8 {@code EMPTY} control bytes.
+     */
+    private static final long ALL_EMPTY = 0x8080_8080_8080_8080L;
+
+    /**
+     * Mask of one byte of a {@code long}.
+     */
+    private static final long BYTE_MASK = 0xFFL;
+
+    /**
+     * Shift from the index of the lowest set bit in a match mask to the
+     * index of the matching byte.
+     */
+    private static final int BYTE_SHIFT = 3;
+
+    /**
+     * The table holds at most LOAD_NUMERATOR / LOAD_DENOMINATOR full or
+     * deleted slots.
+     */
+    private static final int LOAD_NUMERATOR = 7;
+
+    /**
+     * The table holds at most LOAD_NUMERATOR / LOAD_DENOMINATOR full or
+     * deleted slots.
+     */
+    private static final int LOAD_DENOMINATOR = 8;
+
+    /**
+     * Control bytes, 8 slots to a {@code long}.
+     */
+    private long[] control;
+
+    /**
+     * Keys, or {@code null} for an empty or deleted slot.
+     */
+    private Object[] keys;
+
+    /**
+     * Values, parallel to {@code keys}.
+     */
+    private Object[] values;
+
+    /**
+     * Total size of abstract {@code this}.
+     */
+    private int size;
+
+    /**
+     * Number of {@code EMPTY} slots that may still be filled before the table
+     * must be rebuilt.
+     */
+    private int growthLeft;
+
+    /**
+     * Slot at which {@code removeAny} resumes looking for a pair.
+     */
+    private int removeCursor;
+
+    /**
+     * Number of pairs the client asked room for; {@code clear} goes back to
+     * it.
+     */
+    private int initialCapacity;
+
+    /**
+     * Returns the mixed hash code of {@code key}; its low 7 bits go in the
+     * control byte and the rest choose the first group probed.
+     *
+     * @param key
+     *            the key
+     * @return the mixed hash code
+     */
+    private static int spread(Object key) {
+        return HashStrategies.mix(key.hashCode());
+    }
+
+    /**
+     * Returns the match mask of the bytes of {@code word} equal to
+     * {@code b}: the high bit of each such byte is set, and all other bits
+     * are clear, except possibly the high bits of bytes above a match
+     * (which callers rule out by checking the key).
+     *
+     * @param word
+     *            the group of control bytes
+     * @param b
+     *            the byte looked for
+     * @return the match mask
+     * @requires 0 <= b < 128
+     */
+    private static long matchByte(long word, int b) {
+        long x = word ^ (LSBS * b);
+        return (x - LSBS) & ~x & MSBS;
+    }
+
+    /**
+     * Returns the match mask of the {@code EMPTY} bytes of {@code word}.
+     *
+     * @param word
+     *            the group of control bytes
+     * @return the match mask
+     */
+    private static long matchEmpty(long word) {
+        /*
+         * Of the three kinds of control byte, only EMPTY has its high bit set
+         * and bit 1 clear
+         */
+        return word & ~(word << (H2_BITS - 1)) & MSBS;
+    }
+
+    /**
+     * Returns the match mask of the {@code EMPTY} and {@code DELETED} bytes of
+     * {@code word}.
+     *
+     * @param word
+     *            the group of control bytes
+     * @return the match mask
+     */
+    private static long matchFree(long word) {
+        return word & MSBS;
+    }
+
+    /**
+     * Returns the number of groups (a power of 2) needed to hold
+     * {@code capacity} pairs without exceeding the load factor.
+     *
+     * @param capacity
+     *            the number of pairs
+     * @return the number of groups
+     * @requires capacity >= 0
+     * @ensures <pre>
+     * [groupCount is a power of 2]  and
+     * capacity * LOAD_DENOMINATOR <= groupCount * GROUP * LOAD_NUMERATOR
+     * </pre>
+     */
+    private static int groupCount(int capacity) {
+        int groups = 1;
+        while ((long) capacity * LOAD_DENOMINATOR > (long) groups * GROUP
+                * LOAD_NUMERATOR) {
+            groups *= 2;
+        }
+        return groups;
+    }
+
+    /**
+     * Sets the representation to an empty table of {@code groups} groups.
+     *
+     * @param groups
+     *            the number of groups
+     * @requires [groups is a power of 2]
+     * @ensures <pre>
+     * [every control byte is EMPTY]  and  |$this.control| = groups  and
+     * $this.size = 0  and  $this.removeCursor = 0
+     * </pre>
+     */
+    private void newTable(int groups) {
+        this.control = new long[groups];
+        Arrays.fill(this.control, ALL_EMPTY);
+        this.keys = new Object[groups * GROUP];
+        this.values = new Object[groups * GROUP];
+        this.size = 0;
+        this.growthLeft = groups * GROUP / LOAD_DENOMINATOR * LOAD_NUMERATOR;
+        this.removeCursor = 0;
+    }
+
+    /**
+     * Creator of initial representation.
+     *
+     * @param capacity
+     *            number of pairs to make room for
+     * @requires capacity >= 0
+     * @ensures <pre>
+     * [every control byte is EMPTY]  and
+     * |$this.control| = groupCount(capacity)  and
+     * $this.initialCapacity = capacity  and  $this.size = 0
+     * </pre>
+     */
+    private void createNewRep(int capacity) {
+        this.newTable(groupCount(capacity));
+        this.initialCapacity = capacity;
+    }
+
+    /**
+     * Sets the control byte of slot {@code i} to {@code b}.
+     *
+     * @param i
+     *            the slot
+     * @param b
+     *            the control byte
+     * @updates $this.control
+     */
+    private void setControl(int i, int b) {
+        int shift = (i & (GROUP - 1)) * Byte.SIZE;
+        long word = this.control[i >>> GROUP_SHIFT];
+        this.control[i >>> GROUP_SHIFT] = (word & ~(BYTE_MASK << shift))
+                | ((b & BYTE_MASK) << shift);
+    }
+
+    /**
+     * Returns the slot holding {@code key}, or -1 if {@code key} is not in
+     * {@code this}.
+     *
+     * @param key
+     *            the key to look for
+     * @return the slot index, or -1
+     * @ensures <pre>
+     * if key is in DOMAIN(this) then
+     *   $this.keys[find] = key
+     * else
+     *   find = -1
+     * </pre>
+     */
+    private int find(Object key) {
+        int h = spread(key);
+        int h2 = h & H2_MASK;
+        int mask = this.control.length - 1;
+        int g = (h >>> H2_BITS) & mask;
+        int step = 0;
+        int result = -1;
+        boolean done = false;
+        while (!done) {
+            long word = this.control[g];
+            long matches = matchByte(word, h2);
+            while (matches != 0 && result < 0) {
+                int i = (g << GROUP_SHIFT) + (Long
+                        .numberOfTrailingZeros(matches) >>> BYTE_SHIFT);
+                if (key.equals(this.keys[i])) {
+                    result = i;
+                }
+                matches &= matches - 1;
+            }
+            /*
+             * Every group is probed at most once, and the load factor keeps
+             * at least one slot EMPTY, so this loop ends
+             */
+            done = result >= 0 || matchEmpty(word) != 0;
+            step++;
+            g = (g + step) & mask;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the first {@code EMPTY} or {@code DELETED} slot of the probe
+     * sequence for hash code {@code h}.
+     *
+     * @param h
+     *            the mixed hash code
+     * @return the slot index
+     */
+    private int findFree(int h) {
+        int mask = this.control.length - 1;
+        int g = (h >>> H2_BITS) & mask;
+        int step = 0;
+        long free = matchFree(this.control[g]);
+        while (free == 0) {
+            step++;
+            g = (g + step) & mask;
+            free = matchFree(this.control[g]);
+        }
+        return (g << GROUP_SHIFT)
+                + (Long.numberOfTrailingZeros(free) >>> BYTE_SHIFT);
+    }
+
+    /**
+     * Moves every pair into a new table of {@code groups} groups, dropping
+     * all {@code DELETED} slots.
+     *
+     * @param groups
+     *            the new number of groups
+     * @updates this
+     * @requires <pre>
+     * [groups is a power of 2]  and
+     * $this.size < groups * GROUP * LOAD_NUMERATOR / LOAD_DENOMINATOR
+     * </pre>
+     * @ensures this = #this  and  |$this.control| = groups
+     */
+    private void rehash(int groups) {
+        Object[] oldKeys = this.keys;
+        Object[] oldValues = this.values;
+        this.newTable(groups);
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != null) {
+                this.insert(spread(oldKeys[j]), oldKeys[j], oldValues[j]);
+            }
+        }
+    }
+
+    /**
+     * Puts a pair whose key is not in {@code this} in the first free slot of
+     * its probe sequence.
+     *
+     * @param h
+     *            the mixed hash code of {@code key}
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     * @updates this
+     * @requires key is not in DOMAIN(this)  and  $this.growthLeft > 0
+     */
+    private void insert(int h, Object key, Object value) {
+        int i = this.findFree(h);
+        long word = this.control[i >>> GROUP_SHIFT];
+        if (((word >>> ((i & (GROUP - 1)) * Byte.SIZE))
+                & BYTE_MASK) == EMPTY) {
+            this.growthLeft--;
+        }
+        this.setControl(i, h & H2_MASK);
+        this.keys[i] = key;
+        this.values[i] = value;
+        this.size++;
+    }
+
+    /**
+     * Removes the pair in slot {@code i} and returns it.
+     *
+     * @param i
+     *            the slot
+     * @return the removed pair
+     * @updates this
+     * @requires $this.keys[i] /= null
+     * @ensures <pre>
+     * removeSlot = (#$this.keys[i], #$this.values[i])  and
+     * this = #this \ {removeSlot}
+     * </pre>
+     */
+    @SuppressWarnings("unchecked")
+    private Pair<K, V> removeSlot(int i) {
+        Pair<K, V> removed = new SimplePair<>((K) this.keys[i],
+                (V) this.values[i]);
+        /*
+         * No probe sequence has gone past a group that has an EMPTY slot, so
+         * in such a group the slot can go back to EMPTY; otherwise it must be
+         * left DELETED so probes keep going past it
+         */
+        if (matchEmpty(this.control[i >>> GROUP_SHIFT]) != 0) {
+            this.setControl(i, EMPTY);
+            this.growthLeft++;
+        } else {
+            this.setControl(i, DELETED);
+        }
+        this.keys[i] = null;
+        this.values[i] = null;
+        this.size--;
+        return removed;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public SwissMap4() {
+        this.createNewRep(DEFAULT_HASH_TABLE_SIZE);
+    }
+
+    /**
+     * Constructor resulting in a table with room for {@code hashTableSize}
+     * pairs before it first grows.
+     *
+     * @param hashTableSize
+     *            number of pairs to make room for
+     * @requires hashTableSize > 0
+     * @ensures this = {}
+     */
+    public SwissMap4(int hashTableSize) {
+        assert hashTableSize > 0 : "Violation of: hashTableSize > 0";
+        this.createNewRep(hashTableSize);
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final Map<K, V> newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.createNewRep(this.initialCapacity);
+    }
+
+    @Override
+    public final void transferFrom(Map<K, V> source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof SwissMap4<?, ?> : ""
+                + "Violation of: source is of dynamic type SwissMap4<?,?>";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case: source must be of dynamic type
+         * SwissMap4<?,?>, and the ?,? must be K,V or the call would not have
+         * compiled.
+         */
+        SwissMap4<K, V> localSource = (SwissMap4<K, V>) source;
+        this.control = localSource.control;
+        this.keys = localSource.keys;
+        this.values = localSource.values;
+        this.size = localSource.size;
+        this.growthLeft = localSource.growthLeft;
+        this.removeCursor = localSource.removeCursor;
+        this.initialCapacity = localSource.initialCapacity;
+        localSource.createNewRep(localSource.initialCapacity);
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(K key, V value) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+        assert !this.hasKey(key) : "Violation of: key is not in DOMAIN(this)";
+        if (this.growthLeft == 0) {
+            /*
+             * Out of EMPTY slots to fill: if at least half the used slots are
+             * DELETED, clearing them out is enough; otherwise grow
+             */
+            int groups = this.control.length;
+            if ((long) this.size * 2 * LOAD_DENOMINATOR > (long) groups
+                    * GROUP * LOAD_NUMERATOR) {
+                groups *= 2;
+            }
+            this.rehash(groups);
+        }
+        this.insert(spread(key), key, value);
+        this.removeCursor = 0;
+    }
+
+    @Override
+    public final Pair<K, V> remove(K key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+        return this.removeSlot(this.find(key));
+    }
+
+    @Override
+    public final Pair<K, V> removeAny() {
+        assert this.size() > 0 : "Violation of: this /= empty_set";
+        /*
+         * Full slots have the high bit of their control byte clear; skip the
+         * groups before the cursor's that have none
+         */
+        int g = this.removeCursor >>> GROUP_SHIFT;
+        long full = ~this.control[g] & MSBS
+                & (-1L << ((this.removeCursor & (GROUP - 1)) * Byte.SIZE));
+        while (full == 0) {
+            g++;
+            full = ~this.control[g] & MSBS;
+        }
+        this.removeCursor = (g << GROUP_SHIFT)
+                + (Long.numberOfTrailingZeros(full) >>> BYTE_SHIFT);
+        return this.removeSlot(this.removeCursor);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final V value(K key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+        return (V) this.values[this.find(key)];
+    }
+
+    @Override
+    public final boolean hasKey(K key) {
+        assert key != null : "Violation of: key is not null";
+        return this.find(key) >= 0;
+    }
+
+    @Override
+    public final int size() {
+        return this.size;
+    }
+
+    @Override
+    public final Iterator<Pair<K, V>> iterator() {
+        return new SwissMap4Iterator();
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for {@code SwissMap4}.
+     */
+    private final class SwissMap4Iterator implements Iterator<Pair<K, V>> {
+
+        /**
+         * Number of elements seen already (i.e., |~this.seen|).
+         */
+        private int numberSeen;
+
+        /**
+         * Slot of the next element.
+         */
+        private int currentSlot;
+
+        /**
+         * No-argument constructor.
+         */
+        SwissMap4Iterator() {
+            this.numberSeen = 0;
+            this.currentSlot = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.numberSeen < SwissMap4.this.size;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Pair<K, V> next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            while (SwissMap4.this.keys[this.currentSlot] == null) {
+                this.currentSlot++;
+            }
+            Pair<K, V> p = new SimplePair<>(
+                    (K) SwissMap4.this.keys[this.currentSlot],
+                    (V) SwissMap4.this.values[this.currentSlot]);
+            this.numberSeen++;
+            this.currentSlot++;
+            return p;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
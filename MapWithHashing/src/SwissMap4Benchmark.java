@@ -0,0 +1,190 @@
+import java.util.Random;
+
+import components.map.Map;
+import components.map.Map1L;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+
+/**
+ * Times {@code hasKey} followed by {@code value} on {@code String} keys in
+ * {@code SwissMap4}, {@code Map4} and {@code Map1L}, for maps of 10^3 up to
+ * 10^6 entries, on two workloads: hit-heavy (every key looked up is in the
+ * map) and miss-heavy (no key looked up is in the map, so only
+ * {@code hasKey} runs).
+ *
+ * <p>
+ * The keys looked up are built separately from the keys added, so every
+ * successful lookup calls {@code String.equals} on two distinct objects, as it
+ * would for words read from a file. They are also shuffled: looking them up
+ * in the order they were added would favor hash functions that keep
+ * consecutive keys in consecutive memory, which real lookups do not.
+ *
+ * @author Mingzhu Bao and Andy Shih
+ *
+ */
+public final class SwissMap4Benchmark {
+
+    /**
+     * Smallest map size timed.
+     */
+    private static final int MIN_SIZE = 1_000;
+
+    /**
+     * Largest map size timed.
+     */
+    private static final int MAX_SIZE = 1_000_000;
+
+    /**
+     * Factor between successive map sizes.
+     */
+    private static final int SIZE_STEP = 10;
+
+    /**
+     * Number of lookups timed per map, whatever its size.
+     */
+    private static final int LOOKUPS = 2_000_000;
+
+    /**
+     * Number of untimed runs first so the JIT compiler has warmed up.
+     */
+    private static final int WARM_UP_RUNS = 3;
+
+    /**
+     * Seed of the shuffles, so every run looks keys up in the same order.
+     */
+    private static final long SEED = 42;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private SwissMap4Benchmark() {
+    }
+
+    /**
+     * Returns the keys {@code prefix + i} for 0 <= i < n, each a new object.
+     *
+     * @param prefix
+     *            the prefix of every key
+     * @param n
+     *            the number of keys
+     * @return the keys
+     */
+    private static String[] keys(String prefix, int n) {
+        String[] result = new String[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = new StringBuilder(prefix).append(i).toString();
+        }
+        return result;
+    }
+
+    /**
+     * Shuffles {@code a} in place.
+     *
+     * @param a
+     *            the array
+     * @param random
+     *            the source of randomness
+     * @updates a
+     * @ensures [a is a permutation of #a]
+     */
+    private static void shuffle(String[] a, Random random) {
+        for (int i = a.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            String t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+
+    /**
+     * Returns a new empty map of the kind named {@code kind}.
+     *
+     * @param kind
+     *            "SwissMap4", "Map4" or "Map1L"
+     * @return the map
+     */
+    private static Map<String, Integer> newMap(String kind) {
+        Map<String, Integer> map;
+        if (kind.equals("SwissMap4")) {
+            map = new SwissMap4<>();
+        } else if (kind.equals("Map4")) {
+            map = new Map4<>();
+        } else {
+            map = new Map1L<>();
+        }
+        return map;
+    }
+
+    /**
+     * Looks up {@code LOOKUPS} keys of {@code probes}, cycling through them,
+     * and reports the time taken per lookup.
+     *
+     * @param map
+     *            the map
+     * @param probes
+     *            the keys looked up
+     * @return elapsed time per lookup in nanoseconds
+     */
+    private static long time(Map<String, Integer> map, String[] probes) {
+        long found = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            String key = probes[i % probes.length];
+            if (map.hasKey(key)) {
+                found += map.value(key);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        /*
+         * Use the result, so the lookups cannot be optimized away
+         */
+        if (found == -1) {
+            throw new AssertionError();
+        }
+        return elapsed / LOOKUPS;
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        SimpleWriter out = new SimpleWriter1L();
+        Random random = new Random(SEED);
+        String[] kinds = { "SwissMap4", "Map4", "Map1L" };
+
+        String[] warmKeys = keys("word", MIN_SIZE);
+        for (int run = 0; run < WARM_UP_RUNS; run++) {
+            for (String kind : kinds) {
+                Map<String, Integer> map = newMap(kind);
+                for (int i = 0; i < warmKeys.length; i++) {
+                    map.add(warmKeys[i], i);
+                }
+                time(map, keys("word", MIN_SIZE));
+                time(map, keys("miss", MIN_SIZE));
+            }
+        }
+
+        out.println("entries\tmap\thit ns/lookup\tmiss ns/lookup");
+        for (int n = MIN_SIZE; n <= MAX_SIZE; n *= SIZE_STEP) {
+            String[] added = keys("word", n);
+            String[] hits = keys("word", n);
+            String[] misses = keys("miss", n);
+            shuffle(hits, random);
+            shuffle(misses, random);
+            for (String kind : kinds) {
+                Map<String, Integer> map = newMap(kind);
+                for (int i = 0; i < n; i++) {
+                    map.add(added[i], i);
+                }
+                out.println(n + "\t" + kind + "\t" + time(map, hits) + "\t"
+                        + time(map, misses));
+            }
+        }
+
+        out.close();
+    }
+
+}
@@ -0,0 +1,154 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * Customized JUnit test fixture for {@code ConcurrentMap4} using default
+ * constructor, with extra tests that count, drain and transfer from several
+ * threads at once.
+ */
+public class ConcurrentMap4Test extends MapTest {
+
+    /**
+     * Number of threads used by the concurrent test.
+     */
+    private static final int THREADS = 4;
+
+    /**
+     * Number of distinct keys used by the concurrent test.
+     */
+    private static final int KEYS = 500;
+
+    /**
+     * Number of times each thread counts each key.
+     */
+    private static final int ROUNDS = 20;
+
+    /**
+     * Milliseconds the transfer test waits for its threads before deciding
+     * they are deadlocked.
+     */
+    private static final long DEADLOCK_TIMEOUT = 10000;
+
+    @Override
+    protected final Map<String, String> constructorTest() {
+        return new ConcurrentMap4<String, String>();
+    }
+
+    @Override
+    protected final Map<String, String> constructorRef() {
+        return new Map1L<String, String>();
+    }
+
+    /**
+     * Routine test for merge called from several threads, starting from a
+     * small table so that it grows while the threads run.
+     *
+     * @throws InterruptedException
+     *             if the test is interrupted while joining the threads
+     */
+    @Test
+    public final void mergeConcurrentRoutine() throws InterruptedException {
+        final ConcurrentMap4<String, Integer> s = new ConcurrentMap4<>(1, 4);
+        Thread[] workers = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            workers[t] = new Thread(() -> {
+                for (int r = 0; r < ROUNDS; r++) {
+                    for (int k = 0; k < KEYS; k++) {
+                        s.merge("k" + k, 1, Integer::sum);
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        Map<String, Integer> sExpected = new Map1L<>();
+        for (int k = 0; k < KEYS; k++) {
+            sExpected.add("k" + k, THREADS * ROUNDS);
+        }
+        assertEquals(sExpected, s);
+    }
+
+    /**
+     * Routine test for removeAny called from several threads until the map
+     * is empty; a thread that loses the race for the last pairs gets
+     * NoSuchElementException.
+     *
+     * @throws InterruptedException
+     *             if the test is interrupted while joining the threads
+     */
+    @Test
+    public final void removeAnyConcurrentRoutine()
+            throws InterruptedException {
+        final ConcurrentMap4<String, Integer> s = new ConcurrentMap4<>(1, 4);
+        for (int k = 0; k < KEYS; k++) {
+            s.add("k" + k, k);
+        }
+        final AtomicInteger removed = new AtomicInteger();
+        Thread[] workers = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            workers[t] = new Thread(() -> {
+                while (s.size() > 0) {
+                    try {
+                        s.removeAny();
+                        removed.incrementAndGet();
+                    } catch (NoSuchElementException e) {
+                        /*
+                         * Another thread took the last pair after our check
+                         */
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(KEYS, removed.get());
+        assertEquals(0, s.size());
+    }
+
+    /**
+     * Routine test for transferFrom called between the same two maps, in
+     * opposite directions, from two threads at once.
+     *
+     * @throws InterruptedException
+     *             if the test is interrupted while joining the threads
+     */
+    @Test
+    public final void transferFromConcurrentRoutine()
+            throws InterruptedException {
+        final ConcurrentMap4<String, Integer> a = new ConcurrentMap4<>();
+        final ConcurrentMap4<String, Integer> b = new ConcurrentMap4<>();
+        a.add("k", 1);
+        Thread forth = new Thread(() -> {
+            for (int r = 0; r < KEYS; r++) {
+                b.transferFrom(a);
+            }
+        });
+        Thread back = new Thread(() -> {
+            for (int r = 0; r < KEYS; r++) {
+                a.transferFrom(b);
+            }
+        });
+        forth.start();
+        back.start();
+        forth.join(DEADLOCK_TIMEOUT);
+        back.join(DEADLOCK_TIMEOUT);
+        assertEquals(false, forth.isAlive() || back.isAlive());
+        /*
+         * Each transfer replaces the target's pairs, so the pair survives
+         * only if the last transfer did not come from an empty map
+         */
+        assertEquals(true, a.size() + b.size() <= 1);
+    }
+
+}
@@ -0,0 +1,122 @@
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * JUnit test fixture for {@code CountingMap4}'s kernel and counting methods.
+ */
+public class CountingMap4Test {
+
+    /**
+     * Number of distinct keys used by the growing test.
+     */
+    private static final int MANY = 1000;
+
+    /**
+     * Test the empty constructor.
+     */
+    @Test
+    public final void constructorTestEmpty() {
+        Map<String, Integer> s = new CountingMap4<String>();
+        Map<String, Integer> sExpected = new Map1L<String, Integer>();
+        assertEquals(sExpected, s);
+    }
+
+    /**
+     * Border test for increment on a missing key.
+     */
+    @Test
+    public final void incrementBorder() {
+        CountingMap4<String> s = new CountingMap4<String>();
+        Map<String, Integer> sExpected = new Map1L<String, Integer>();
+        sExpected.add("Apples", 1);
+        assertEquals(1, s.increment("Apples"));
+        assertEquals(sExpected, s);
+    }
+
+    /**
+     * Routine test for increment on a key already present.
+     */
+    @Test
+    public final void incrementRoutine() {
+        CountingMap4<String> s = new CountingMap4<String>();
+        Map<String, Integer> sExpected = new Map1L<String, Integer>();
+        s.add("Apples", 5);
+        s.add("Bananas", 20);
+        sExpected.add("Apples", 6);
+        sExpected.add("Bananas", 20);
+        assertEquals(6, s.increment("Apples"));
+        assertEquals(sExpected, s);
+    }
+
+    /**
+     * Routine test for addTo.
+     */
+    @Test
+    public final void addToRoutine() {
+        CountingMap4<String> s = new CountingMap4<String>();
+        assertEquals(20, s.addTo("Bananas", 20));
+        assertEquals(15, s.addTo("Bananas", -5));
+        assertEquals(15, s.count("Bananas"));
+        assertEquals(Integer.valueOf(15), s.value("Bananas"));
+        assertEquals(0, s.count("Black"));
+        assertEquals(1, s.size());
+    }
+
+    /**
+     * Routine test for counting many keys with a table that has to grow.
+     */
+    @Test
+    public final void manyKeysRoutine() {
+        CountingMap4<String> s = new CountingMap4<String>(1);
+        Map<String, Integer> sExpected = new Map1L<String, Integer>();
+        for (int i = 0; i < MANY; i++) {
+            s.increment("k" + i);
+            s.addTo("k" + i, i);
+            sExpected.add("k" + i, i + 1);
+        }
+        assertEquals(sExpected, s);
+        MapTest.removeAllChecked(s, sExpected, MANY);
+    }
+
+    /**
+     * Routine test for removeAny interleaved with counting, through the
+     * table shrinking and growing again.
+     */
+    @Test
+    public final void removeAnyInterleavedRoutine() {
+        CountingMap4<String> s = new CountingMap4<String>(1);
+        Map<String, Integer> sExpected = new Map1L<String, Integer>();
+        for (int i = 0; i < MANY; i++) {
+            s.increment("k" + i);
+            sExpected.add("k" + i, 1);
+        }
+        while (s.size() > MANY / 10) {
+            Map.Pair<String, Integer> p = s.removeAny();
+            assertEquals(sExpected.remove(p.key()), p);
+        }
+        assertEquals(sExpected, s);
+        for (int i = 0; i < MANY; i++) {
+            int expected = 1;
+            if (sExpected.hasKey("k" + i)) {
+                expected = sExpected.remove("k" + i).value() + 1;
+            }
+            sExpected.add("k" + i, expected);
+            assertEquals(expected, s.increment("k" + i));
+            if (i % 3 == 2) {
+                Map.Pair<String, Integer> p = s.removeAny();
+                assertEquals(sExpected.remove(p.key()), p);
+            }
+        }
+        assertEquals(sExpected, s);
+        while (s.size() > 0) {
+            Map.Pair<String, Integer> p = s.removeAny();
+            assertEquals(sExpected.remove(p.key()), p);
+        }
+        assertEquals(sExpected, s);
+    }
+
+}
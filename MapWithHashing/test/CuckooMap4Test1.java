@@ -0,0 +1,71 @@
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * Customized JUnit test fixture for {@code CuckooMap4} using non-default
+ * constructor with room for 1 pair, so that the tables grow, and pairs are
+ * evicted and stashed, while the tests run.
+ */
+public class CuckooMap4Test1 extends MapTest {
+
+    /**
+     * Initial capacity to be used in tests.
+     */
+    private static final int TEST_HASH_TABLE_SIZE = 1;
+
+    /**
+     * Number of two-letter blocks in the keys of the colliding test; the
+     * test adds 2^BLOCKS keys with the same hash code.
+     */
+    private static final int BLOCKS = 5;
+
+    @Override
+    protected final Map<String, String> constructorTest() {
+        return new CuckooMap4<String, String>(TEST_HASH_TABLE_SIZE);
+    }
+
+    @Override
+    protected final Map<String, String> constructorRef() {
+        return new Map1L<String, String>();
+    }
+
+    /**
+     * Challenging test: keys that all have the same hash code, far more than
+     * their two slots and the initial stash can hold, are all found.
+     */
+    @Test
+    public final void sameHashCodeChallenging() {
+        Map<String, String> s = this.constructorTest();
+        Map<String, String> sExpected = this.constructorRef();
+        /*
+         * "Aa" and "BB" have the same hash code, so every string made of
+         * BLOCKS of them does too
+         */
+        for (int bits = 0; bits < (1 << BLOCKS); bits++) {
+            StringBuilder key = new StringBuilder();
+            for (int b = 0; b < BLOCKS; b++) {
+                if ((bits & (1 << b)) != 0) {
+                    key.append("Aa");
+                } else {
+                    key.append("BB");
+                }
+            }
+            s.add(key.toString(), "v" + bits);
+            sExpected.add(key.toString(), "v" + bits);
+        }
+        assertEquals(sExpected, s);
+        for (Map.Pair<String, String> p : sExpected) {
+            assertEquals(p.value(), s.value(p.key()));
+        }
+        while (s.size() > 0) {
+            Map.Pair<String, String> p = s.removeAny();
+            assertEquals(sExpected.remove(p.key()), p);
+        }
+        assertEquals(sExpected, s);
+    }
+
+}
@@ -0,0 +1,199 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * Customized JUnit test fixture for {@code ExpiringMap4}: the kernel tests of
+ * {@code MapTest} on a map whose pairs never expire, plus tests of expiry
+ * with a clock the tests control, and of {@code Map4.sweep}.
+ */
+public class ExpiringMap4Test extends MapTest {
+
+    /**
+     * Time to live used by the expiry tests.
+     */
+    private static final long TTL = 10;
+
+    /**
+     * Number of keys added by the sweep tests.
+     */
+    private static final int MANY = 1000;
+
+    /**
+     * Most pairs one operation may reclaim in the sweep test: the pairs of a
+     * few buckets of a table at most 3/4 full.
+     */
+    private static final int FEW = 50;
+
+    @Override
+    protected final Map<String, String> constructorTest() {
+        return new ExpiringMap4<String, String>();
+    }
+
+    @Override
+    protected final Map<String, String> constructorRef() {
+        return new Map1L<String, String>();
+    }
+
+    /**
+     * Routine test: a pair is found until its time to live has passed, and is
+     * then reclaimed on access.
+     */
+    @Test
+    public final void lazyExpiryRoutine() {
+        AtomicLong time = new AtomicLong(0);
+        ExpiringMap4<String, String> s = new ExpiringMap4<>(TTL, time::get);
+        s.add("a", "1");
+        time.set(TTL - 1);
+        assertTrue(s.hasKey("a"));
+        assertEquals("1", s.value("a"));
+        assertEquals(1, s.timeToLive("a"));
+        time.set(TTL);
+        assertTrue(!s.hasKey("a"));
+        assertEquals(0, s.size());
+        assertEquals(1, s.reclaimed());
+    }
+
+    /**
+     * Routine test: pairs added with their own time to live expire at their
+     * own times.
+     */
+    @Test
+    public final void ownTimeToLiveRoutine() {
+        AtomicLong time = new AtomicLong(0);
+        ExpiringMap4<String, String> s = new ExpiringMap4<>(TTL, time::get);
+        s.add("short", "1", TTL / 2);
+        s.add("default", "2");
+        s.add("long", "3", TTL * 2);
+        time.set(TTL / 2);
+        assertTrue(!s.hasKey("short"));
+        assertTrue(s.hasKey("default"));
+        time.set(TTL);
+        assertTrue(!s.hasKey("default"));
+        assertEquals(TTL, s.timeToLive("long"));
+    }
+
+    /**
+     * Routine test: a new instance keeps the time to live and the clock of
+     * the map it came from.
+     */
+    @Test
+    public final void newInstanceRoutine() {
+        AtomicLong time = new AtomicLong(0);
+        ExpiringMap4<String, String> s = new ExpiringMap4<>(TTL, time::get);
+        @SuppressWarnings("unchecked")
+        ExpiringMap4<String, String> t = (ExpiringMap4<String, String>) s
+                .newInstance();
+        t.add("a", "1");
+        assertEquals(TTL, t.timeToLive("a"));
+        time.set(TTL);
+        assertTrue(!t.hasKey("a"));
+    }
+
+    /**
+     * Routine test: a key whose pair has expired can be added again without
+     * first being looked up.
+     */
+    @Test
+    public final void addOverExpiredRoutine() {
+        AtomicLong time = new AtomicLong(0);
+        ExpiringMap4<String, String> s = new ExpiringMap4<>(TTL, time::get);
+        s.add("a", "1");
+        time.set(TTL);
+        s.add("a", "2");
+        assertEquals("2", s.value("a"));
+        assertEquals(1, s.size());
+    }
+
+    /**
+     * Routine test: replacing the value of a pair keeps its expiry time, be
+     * it its own or the default.
+     */
+    @Test
+    public final void replaceValueKeepsTimeToLiveRoutine() {
+        AtomicLong time = new AtomicLong(0);
+        ExpiringMap4<String, String> s = new ExpiringMap4<>(TTL, time::get);
+        s.add("own", "1", TTL * 2);
+        s.add("default", "2");
+        time.set(TTL / 2);
+        assertEquals("1", s.replaceValue("own", "3"));
+        assertEquals("2", s.replaceValue("default", "4"));
+        assertEquals(TTL * 2 - TTL / 2, s.timeToLive("own"));
+        assertEquals(TTL - TTL / 2, s.timeToLive("default"));
+        time.set(TTL);
+        assertTrue(!s.hasKey("default"));
+        assertEquals("3", s.value("own"));
+    }
+
+    /**
+     * Challenging test: pairs nobody asks for again are reclaimed by the
+     * sweep, a few per operation, until none is left.
+     */
+    @Test
+    public final void sweepChallenging() {
+        AtomicLong time = new AtomicLong(0);
+        ExpiringMap4<Integer, Integer> s = new ExpiringMap4<>(TTL,
+                time::get);
+        for (int i = 0; i < MANY; i++) {
+            s.add(i, i);
+        }
+        time.set(TTL);
+        int operations = 0;
+        while (s.size() > 0) {
+            int before = s.size();
+            assertTrue(!s.hasKey(-1));
+            assertTrue(before - s.size() <= FEW);
+            operations++;
+            assertTrue(operations <= MANY);
+        }
+        assertEquals(MANY, s.reclaimed());
+    }
+
+    /**
+     * Border test for {@code Map4.sweep}: asking for more buckets than there
+     * are goes round the table once, and removes exactly the doomed pairs.
+     */
+    @Test
+    public final void map4SweepFullTurnBorder() {
+        Map4<Integer, Integer> s = new Map4<>();
+        Map<Integer, Integer> sExpected = new Map1L<>();
+        for (int i = 0; i < MANY; i++) {
+            s.add(i, i);
+            if (i % 2 == 1) {
+                sExpected.add(i, i);
+            }
+        }
+        s.sweep(MANY, p -> p.key() == MANY / 2);
+        assertEquals(MANY - 1, s.size());
+        assertEquals(MANY / 2 - 1, s.sweep(Integer.MAX_VALUE,
+                p -> p.key() % 2 == 0));
+        assertEquals(sExpected, s);
+        assertEquals(0, s.sweep(Integer.MAX_VALUE, p -> p.key() % 2 == 0));
+    }
+
+    /**
+     * Border test for {@code Map4.sweep}: a sweep that resumes partway round
+     * the table returns even when no bucket of the table is occupied, as
+     * happens while a shrinking table is migrated.
+     */
+    @Test
+    public final void map4SweepEmptiedBorder() {
+        Map4<Integer, Integer> s = new Map4<>();
+        for (int i = 0; i < MANY; i++) {
+            s.add(i, i);
+        }
+        assertEquals(0, s.sweep(MANY / 2, p -> false));
+        while (s.size() > 0) {
+            s.removeAny();
+            assertEquals(0, s.sweep(1, p -> false));
+        }
+        assertEquals(0, s.sweep(Integer.MAX_VALUE, p -> true));
+    }
+
+}
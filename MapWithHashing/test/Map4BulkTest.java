@@ -0,0 +1,124 @@
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * JUnit test fixture for {@code Map4}'s bulk methods {@code addAll},
+ * {@code merge} and {@code copy}.
+ */
+public class Map4BulkTest {
+
+    /**
+     * Number of keys used by the routine tests.
+     */
+    private static final int MANY = 2000;
+
+    /**
+     * Adds (i, value) to both maps for from <= i < to.
+     *
+     * @param s
+     *            the map under test
+     * @param sExpected
+     *            the reference map
+     * @param from
+     *            the first key
+     * @param to
+     *            the end of the keys
+     * @param value
+     *            the value of every key
+     */
+    private static void fill(Map<Integer, Integer> s,
+            Map<Integer, Integer> sExpected, int from, int to, int value) {
+        for (int i = from; i < to; i++) {
+            s.add(i, value);
+            sExpected.add(i, value);
+        }
+    }
+
+    /**
+     * Routine test for addAll between maps with tables of the same length.
+     */
+    @Test
+    public final void addAllSameSizeRoutine() {
+        Map4<Integer, Integer> s = new Map4<>();
+        Map4<Integer, Integer> t = new Map4<>();
+        Map<Integer, Integer> sExpected = new Map1L<>();
+        Map<Integer, Integer> tExpected = new Map1L<>();
+        fill(s, sExpected, 0, MANY / 2, 1);
+        fill(t, tExpected, MANY / 2, MANY, 2);
+        fill(new Map1L<>(), sExpected, MANY / 2, MANY, 2);
+        s.addAll(t);
+        assertEquals(sExpected, s);
+        assertEquals(tExpected, t);
+    }
+
+    /**
+     * Routine test for addAll between maps with tables of different lengths.
+     */
+    @Test
+    public final void addAllDifferentSizeRoutine() {
+        Map4<Integer, Integer> s = new Map4<>(7);
+        Map4<Integer, Integer> t = new Map4<>(1009);
+        Map<Integer, Integer> sExpected = new Map1L<>();
+        fill(s, sExpected, 0, 10, 1);
+        fill(t, new Map1L<>(), 10, 20, 2);
+        fill(new Map1L<>(), sExpected, 10, 20, 2);
+        s.addAll(t);
+        assertEquals(sExpected, s);
+    }
+
+    /**
+     * Routine test for merge with overlapping keys, as for adding up partial
+     * word counts.
+     */
+    @Test
+    public final void mergeRoutine() {
+        for (int tableSize : new int[] {101, 1 }) {
+            Map4<Integer, Integer> s = new Map4<>();
+            Map4<Integer, Integer> t = new Map4<>(tableSize);
+            Map<Integer, Integer> sExpected = new Map1L<>();
+            fill(s, new Map1L<>(), 0, MANY, 1);
+            fill(t, new Map1L<>(), MANY / 2, MANY + MANY / 2, 2);
+            fill(new Map1L<>(), sExpected, 0, MANY / 2, 1);
+            fill(new Map1L<>(), sExpected, MANY / 2, MANY, 1 + 2);
+            fill(new Map1L<>(), sExpected, MANY, MANY + MANY / 2, 2);
+            s.merge(t, Integer::sum);
+            assertEquals(sExpected, s);
+            assertEquals(MANY, t.size());
+        }
+    }
+
+    /**
+     * Border test for merge into an empty map.
+     */
+    @Test
+    public final void mergeIntoEmptyBorder() {
+        Map4<Integer, Integer> s = new Map4<>();
+        Map4<Integer, Integer> t = new Map4<>(1);
+        Map<Integer, Integer> sExpected = new Map1L<>();
+        fill(t, sExpected, 0, MANY, 2);
+        s.merge(t, Integer::sum);
+        assertEquals(sExpected, s);
+        s.add(MANY, 0);
+        assertEquals(MANY + 1, s.size());
+    }
+
+    /**
+     * Routine test for copy: the copy is equal and independent.
+     */
+    @Test
+    public final void copyRoutine() {
+        Map4<Integer, Integer> s = new Map4<>(1);
+        Map<Integer, Integer> sExpected = new Map1L<>();
+        fill(s, sExpected, 0, MANY, 3);
+        Map4<Integer, Integer> c = s.copy();
+        assertEquals(sExpected, c);
+        c.remove(0);
+        assertEquals(sExpected, s);
+        assertEquals(MANY - 1, c.size());
+    }
+
+}
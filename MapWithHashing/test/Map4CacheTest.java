@@ -0,0 +1,154 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * Customized JUnit test fixture for {@code Map4Cache}: the kernel tests of
+ * {@code MapTest} on a cache too large to evict, plus tests of each eviction
+ * policy and of the counters.
+ */
+public class Map4CacheTest extends MapTest {
+
+    /**
+     * Maximum size of the caches in the eviction tests.
+     */
+    private static final int SMALL = 3;
+
+    /**
+     * Number of keys added by the bound test.
+     */
+    private static final int MANY = 1000;
+
+    @Override
+    protected final Map<String, String> constructorTest() {
+        return new Map4Cache<String, String>();
+    }
+
+    @Override
+    protected final Map<String, String> constructorRef() {
+        return new Map1L<String, String>();
+    }
+
+    /**
+     * Routine test for LRU: the pair used least recently is evicted.
+     */
+    @Test
+    public final void lruRoutine() {
+        Map4Cache<String, String> s = new Map4Cache<>(SMALL,
+                Map4Cache.Eviction.LRU);
+        s.add("a", "1");
+        s.add("b", "2");
+        s.add("c", "3");
+        assertTrue(s.hasKey("a"));
+        s.add("d", "4");
+        assertTrue(!s.hasKey("b"));
+        assertTrue(s.hasKey("a"));
+        assertTrue(s.hasKey("c"));
+        assertTrue(s.hasKey("d"));
+        assertEquals(SMALL, s.size());
+        assertEquals(1, s.evictions());
+    }
+
+    /**
+     * Routine test for LFU: the pair used least often is evicted, and the
+     * least recently used of those on a tie.
+     */
+    @Test
+    public final void lfuRoutine() {
+        Map4Cache<String, String> s = new Map4Cache<>(SMALL,
+                Map4Cache.Eviction.LFU);
+        s.add("a", "1");
+        s.add("b", "2");
+        s.add("c", "3");
+        s.value("a");
+        s.value("a");
+        s.value("c");
+        s.add("d", "4");
+        assertTrue(!s.hasKey("b"));
+        s.add("e", "5");
+        assertTrue(!s.hasKey("d"));
+        assertTrue(s.hasKey("a"));
+        assertTrue(s.hasKey("c"));
+        assertTrue(s.hasKey("e"));
+    }
+
+    /**
+     * Routine test for CLOCK: a pair used since the hand last passed it is
+     * spared once.
+     */
+    @Test
+    public final void clockRoutine() {
+        Map4Cache<String, String> s = new Map4Cache<>(SMALL,
+                Map4Cache.Eviction.CLOCK);
+        s.add("a", "1");
+        s.add("b", "2");
+        s.add("c", "3");
+        s.value("a");
+        s.add("d", "4");
+        assertTrue(!s.hasKey("b"));
+        assertTrue(s.hasKey("a"));
+        assertTrue(s.hasKey("c"));
+        assertTrue(s.hasKey("d"));
+    }
+
+    /**
+     * Routine test for remove and removeAny: removed pairs are forgotten by
+     * the policy, so their room is reused without evicting.
+     */
+    @Test
+    public final void removeThenAddRoutine() {
+        for (Map4Cache.Eviction ev : Map4Cache.Eviction.values()) {
+            Map4Cache<String, String> s = new Map4Cache<>(SMALL, ev);
+            s.add("a", "1");
+            s.add("b", "2");
+            s.add("c", "3");
+            s.remove("b");
+            s.removeAny();
+            s.add("d", "4");
+            s.add("e", "5");
+            assertEquals(SMALL, s.size());
+            assertEquals(0, s.evictions());
+            assertTrue(s.hasKey("d"));
+            assertTrue(s.hasKey("e"));
+        }
+    }
+
+    /**
+     * Routine test for the counters.
+     */
+    @Test
+    public final void countersRoutine() {
+        Map4Cache<String, String> s = new Map4Cache<>(SMALL);
+        assertTrue(!s.hasKey("a"));
+        s.add("a", "1");
+        assertTrue(s.hasKey("a"));
+        assertTrue(s.hasKey("a"));
+        assertEquals(2, s.hits());
+        assertEquals(1, s.misses());
+        assertEquals(0, s.evictions());
+    }
+
+    /**
+     * Challenging test: adding many keys never holds more than the maximum,
+     * under every policy.
+     */
+    @Test
+    public final void boundChallenging() {
+        for (Map4Cache.Eviction ev : Map4Cache.Eviction.values()) {
+            Map4Cache<Integer, Integer> s = new Map4Cache<>(SMALL, ev);
+            for (int i = 0; i < MANY; i++) {
+                if (!s.hasKey(i / 2)) {
+                    s.add(i / 2, i);
+                }
+                assertTrue(s.size() <= SMALL);
+            }
+            assertEquals(MANY / 2 - SMALL, s.evictions());
+            assertEquals(SMALL, s.maxSize());
+        }
+    }
+
+}
@@ -0,0 +1,71 @@
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code Map4.metrics} and {@code Map4Metrics}.
+ */
+public class Map4MetricsTest {
+
+    /**
+     * Size of hash table to be used in tests.
+     */
+    private static final int TEST_HASH_TABLE_SIZE = 5;
+
+    /**
+     * Border test for the metrics of an empty map.
+     */
+    @Test
+    public final void metricsBorder() {
+        Map4<String, String> s = new Map4<>(TEST_HASH_TABLE_SIZE);
+        Map4Metrics m = s.metrics();
+        assertEquals(TEST_HASH_TABLE_SIZE, m.bucketCount());
+        assertEquals(TEST_HASH_TABLE_SIZE, m.emptyBuckets());
+        assertEquals(0, m.occupiedBuckets());
+        assertEquals(0, m.maxBucketLength());
+        assertEquals(0.0, m.averageBucketLength(), 0.0);
+        assertEquals(0, m.lookups());
+        assertEquals(0, m.inserts());
+        assertEquals(0, m.removals());
+        assertEquals(0, m.rehashes());
+    }
+
+    /**
+     * Routine test for the bucket shape reported by metrics.
+     */
+    @Test
+    public final void metricsShapeRoutine() {
+        Map4<String, String> s = new Map4<>(TEST_HASH_TABLE_SIZE, 1.0,
+                HashStrategies.modulo(key -> key.length()));
+        s.add("a", "1");
+        s.add("b", "2");
+        s.add("cc", "3");
+        Map4Metrics m = s.metrics();
+        assertEquals(3, m.size());
+        assertEquals(2, m.occupiedBuckets());
+        assertEquals(TEST_HASH_TABLE_SIZE - 2, m.emptyBuckets());
+        assertEquals(2, m.maxBucketLength());
+        assertEquals(1.5, m.averageBucketLength(), 0.0);
+    }
+
+    /**
+     * Routine test for the operation counts reported by metrics.
+     */
+    @Test
+    public final void metricsCountsRoutine() {
+        Map4<String, String> s = new Map4<>(1, 1.0);
+        s.add("Apples", "5");
+        s.add("Bananas", "20");
+        s.hasKey("Black");
+        s.value("Apples");
+        s.remove("Apples");
+        s.removeAny();
+        Map4Metrics m = s.metrics();
+        assertEquals(2, m.inserts());
+        assertEquals(2, m.lookups());
+        assertEquals(2, m.removals());
+        //grew on the second add, shrank back when emptied
+        assertEquals(2, m.rehashes());
+    }
+
+}
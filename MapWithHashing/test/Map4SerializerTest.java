@@ -0,0 +1,197 @@
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * JUnit test fixture for {@code Map4Serializer}: maps written and read back
+ * are equal to the originals, and what is not a whole checkpoint is
+ * rejected.
+ */
+public class Map4SerializerTest {
+
+    /**
+     * Number of pairs in the larger maps.
+     */
+    private static final int MANY = 10000;
+
+    /**
+     * Length of a key too long for the serializer's buffer.
+     */
+    private static final int LONG_KEY_LENGTH = 100000;
+
+    /**
+     * Returns the bytes {@code Map4Serializer.write} writes for {@code map}.
+     *
+     * @param map
+     *            the map
+     * @return the bytes
+     * @throws IOException
+     *             if writing fails
+     */
+    private static byte[] bytesOf(Map4<String, Integer> map)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Map4Serializer.write(map, Channels.newChannel(out));
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the map {@code Map4Serializer.read} reads from {@code bytes}.
+     *
+     * @param bytes
+     *            the bytes
+     * @return the map
+     * @throws IOException
+     *             if reading fails
+     */
+    private static Map4<String, Integer> mapOf(byte[] bytes)
+            throws IOException {
+        return Map4Serializer
+                .read(Channels.newChannel(new ByteArrayInputStream(bytes)));
+    }
+
+    /**
+     * Checks that {@code map} is written and read back unchanged, with the
+     * same number of buckets.
+     *
+     * @param map
+     *            the map
+     * @throws IOException
+     *             if writing or reading fails
+     */
+    private static void checkRoundTrip(Map4<String, Integer> map)
+            throws IOException {
+        Map<String, Integer> expected = new Map1L<>();
+        for (Map.Pair<String, Integer> p : map) {
+            expected.add(p.key(), p.value());
+        }
+        Map4<String, Integer> copy = mapOf(bytesOf(map));
+        assertEquals(expected, copy);
+        assertEquals(map.bucketCount(), copy.bucketCount());
+    }
+
+    /**
+     * Boundary test: the empty map.
+     *
+     * @throws IOException
+     *             if writing or reading fails
+     */
+    @Test
+    public final void emptyBoundary() throws IOException {
+        checkRoundTrip(new Map4<>());
+    }
+
+    /**
+     * Routine test: a few pairs, in a map that has not grown.
+     *
+     * @throws IOException
+     *             if writing or reading fails
+     */
+    @Test
+    public final void fewRoutine() throws IOException {
+        Map4<String, Integer> map = new Map4<>();
+        map.add("red", 1);
+        map.add("green", 2);
+        map.add("blue", 3);
+        checkRoundTrip(map);
+    }
+
+    /**
+     * Routine test: many pairs, more than the buffer holds, in a map that has
+     * grown, and the result can still be changed.
+     *
+     * @throws IOException
+     *             if writing or reading fails
+     */
+    @Test
+    public final void manyRoutine() throws IOException {
+        Map4<String, Integer> map = new Map4<>(1);
+        for (int i = 0; i < MANY; i++) {
+            map.add("word" + i, i * i);
+        }
+        checkRoundTrip(map);
+        Map4<String, Integer> copy = mapOf(bytesOf(map));
+        copy.add("word" + MANY, MANY);
+        assertEquals(0, copy.remove("word0").value().intValue());
+        assertEquals(MANY, copy.size());
+    }
+
+    /**
+     * Boundary test: values at both ends of the range of {@code int}, and
+     * around 0.
+     *
+     * @throws IOException
+     *             if writing or reading fails
+     */
+    @Test
+    public final void extremeValuesBoundary() throws IOException {
+        Map4<String, Integer> map = new Map4<>();
+        map.add("min", Integer.MIN_VALUE);
+        map.add("max", Integer.MAX_VALUE);
+        map.add("minusOne", -1);
+        map.add("zero", 0);
+        map.add("one", 1);
+        checkRoundTrip(map);
+    }
+
+    /**
+     * Challenging test: keys that are empty, or not ASCII, or longer than the
+     * serializer's buffer.
+     *
+     * @throws IOException
+     *             if writing or reading fails
+     */
+    @Test
+    public final void unusualKeysChallenging() throws IOException {
+        Map4<String, Integer> map = new Map4<>();
+        map.add("", 0);
+        map.add("caf\u00e9", 1);
+        map.add("\u65e5\u672c", 2);
+        map.add("\ud83d\ude00", 3);
+        char[] longKey = new char[LONG_KEY_LENGTH];
+        Arrays.fill(longKey, '\u00e9');
+        map.add(new String(longKey), 4);
+        checkRoundTrip(map);
+    }
+
+    /**
+     * Error test: bytes that do not start as a checkpoint does are rejected.
+     *
+     * @throws IOException
+     *             expected
+     */
+    @Test(expected = IOException.class)
+    public final void badMagicError() throws IOException {
+        Map4<String, Integer> map = new Map4<>();
+        map.add("red", 1);
+        byte[] bytes = bytesOf(map);
+        bytes[0]++;
+        mapOf(bytes);
+    }
+
+    /**
+     * Error test: a checkpoint cut short is rejected.
+     *
+     * @throws IOException
+     *             expected
+     */
+    @Test(expected = IOException.class)
+    public final void truncatedError() throws IOException {
+        Map4<String, Integer> map = new Map4<>();
+        for (int i = 0; i < MANY; i++) {
+            map.add("word" + i, i);
+        }
+        byte[] bytes = bytesOf(map);
+        mapOf(Arrays.copyOf(bytes, bytes.length - 1));
+    }
+
+}
@@ -0,0 +1,222 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * JUnit test fixture for {@code Map4.snapshot} and {@code Map4Snapshot}.
+ */
+public class Map4SnapshotTest {
+
+    /**
+     * Number of keys used by the routine tests.
+     */
+    private static final int MANY = 5000;
+
+    /**
+     * Number of keys added between snapshots in the resizing test.
+     */
+    private static final int STEP = 97;
+
+    /**
+     * Number of times the reader thread goes through its snapshot.
+     */
+    private static final int READS = 50;
+
+    /**
+     * Returns the pairs of {@code snap} in a {@code Map1L}, checking on the
+     * way that {@code snap} agrees with itself.
+     *
+     * @param snap
+     *            the snapshot
+     * @return the pairs of {@code snap}
+     */
+    private static Map<Integer, Integer> contents(
+            Map4Snapshot<Integer, Integer> snap) {
+        Map<Integer, Integer> result = new Map1L<>();
+        for (Map.Pair<Integer, Integer> p : snap) {
+            result.add(p.key(), p.value());
+            assertTrue(snap.hasKey(p.key()));
+            assertEquals(p.value(), snap.value(p.key()));
+        }
+        assertEquals(snap.size(), result.size());
+        return result;
+    }
+
+    /**
+     * Returns the map {(i, value): from <= i < to}.
+     *
+     * @param from
+     *            the first key
+     * @param to
+     *            the end of the keys
+     * @param value
+     *            the value of every key
+     * @return the map
+     */
+    private static Map<Integer, Integer> range(int from, int to, int value) {
+        Map<Integer, Integer> result = new Map1L<>();
+        for (int i = from; i < to; i++) {
+            result.add(i, value);
+        }
+        return result;
+    }
+
+    /**
+     * Border test: a snapshot of an empty map stays empty.
+     */
+    @Test
+    public final void emptyBorder() {
+        Map4<Integer, Integer> s = new Map4<>();
+        Map4Snapshot<Integer, Integer> snap = s.snapshot();
+        s.add(1, 1);
+        assertEquals(0, snap.size());
+        assertTrue(!snap.hasKey(1));
+        assertTrue(!snap.iterator().hasNext());
+        assertEquals(1, s.size());
+    }
+
+    /**
+     * Routine test: adds, removes and value changes after a snapshot do not
+     * show through it, and the map itself sees all of them.
+     */
+    @Test
+    public final void isolationRoutine() {
+        Map4<Integer, Integer> s = new Map4<>();
+        for (int i = 0; i < MANY; i++) {
+            s.add(i, 0);
+        }
+        Map4Snapshot<Integer, Integer> snap = s.snapshot();
+        for (int i = 0; i < MANY / 2; i++) {
+            s.remove(i);
+        }
+        for (int i = MANY / 2; i < MANY; i++) {
+            s.replaceValue(i, 1);
+        }
+        for (int i = MANY; i < MANY + MANY / 2; i++) {
+            s.add(i, 1);
+        }
+        assertEquals(range(0, MANY, 0), contents(snap));
+        assertTrue(!snap.hasKey(MANY));
+        assertEquals(range(MANY / 2, MANY + MANY / 2, 1), s);
+    }
+
+    /**
+     * Routine test: snapshots taken at different times each keep their own
+     * pairs, and clearing the map changes none of them.
+     */
+    @Test
+    public final void severalSnapshotsRoutine() {
+        Map4<Integer, Integer> s = new Map4<>();
+        for (int i = 0; i < MANY; i++) {
+            s.add(i, 0);
+        }
+        Map4Snapshot<Integer, Integer> first = s.snapshot();
+        s.remove(0);
+        Map4Snapshot<Integer, Integer> second = s.snapshot();
+        s.remove(1);
+        Map4Snapshot<Integer, Integer> third = s.snapshot();
+        s.clear();
+        assertEquals(range(0, MANY, 0), contents(first));
+        assertEquals(range(1, MANY, 0), contents(second));
+        assertEquals(range(2, MANY, 0), contents(third));
+        assertEquals(0, s.size());
+    }
+
+    /**
+     * Challenging test: snapshots taken every few calls while the table grows
+     * and then shrinks, so many are taken in the middle of a resize, each
+     * still hold exactly the pairs the map held then.
+     */
+    @Test
+    public final void resizingChallenging() {
+        Map4<Integer, Integer> s = new Map4<>(1);
+        List<Map4Snapshot<Integer, Integer>> snaps = new ArrayList<>();
+        List<Integer> froms = new ArrayList<>();
+        List<Integer> tos = new ArrayList<>();
+        for (int i = 0; i < MANY; i++) {
+            s.add(i, i % 2);
+            if (i % STEP == 0) {
+                snaps.add(s.snapshot());
+                froms.add(0);
+                tos.add(i + 1);
+            }
+        }
+        for (int i = 0; i < MANY; i++) {
+            s.remove(i);
+            if (i % STEP == 0) {
+                snaps.add(s.snapshot());
+                froms.add(i + 1);
+                tos.add(MANY);
+            }
+        }
+        for (int k = 0; k < snaps.size(); k++) {
+            Map<Integer, Integer> expected = new Map1L<>();
+            for (int i = froms.get(k); i < tos.get(k); i++) {
+                expected.add(i, i % 2);
+            }
+            assertEquals(expected, contents(snaps.get(k)));
+        }
+        assertEquals(0, s.size());
+    }
+
+    /**
+     * Challenging test: a reader thread goes through a snapshot again and
+     * again while this thread keeps changing the map, and always finds the
+     * same pairs.
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting for the reader
+     */
+    @Test
+    public final void concurrentReaderChallenging()
+            throws InterruptedException {
+        Map4<Integer, Integer> s = new Map4<>();
+        for (int i = 0; i < MANY; i++) {
+            s.add(i, 1);
+        }
+        Map4Snapshot<Integer, Integer> snap = s.snapshot();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try {
+                for (int r = 0; r < READS; r++) {
+                    long sum = 0;
+                    for (Map.Pair<Integer, Integer> p : snap) {
+                        sum += p.value();
+                    }
+                    assertEquals(MANY, sum);
+                    assertTrue(snap.hasKey(r));
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        reader.start();
+        int next = MANY;
+        while (reader.isAlive()) {
+            s.remove(next - MANY);
+            s.add(next, 2);
+            next++;
+        }
+        reader.join();
+        assertEquals(null, failure.get());
+        assertEquals(range(0, MANY, 1), contents(snap));
+        Map<Integer, Integer> expected = new Map1L<>();
+        for (int i = next - MANY; i < next; i++) {
+            if (i < MANY) {
+                expected.add(i, 1);
+            } else {
+                expected.add(i, 2);
+            }
+        }
+        assertEquals(expected, s);
+    }
+
+}
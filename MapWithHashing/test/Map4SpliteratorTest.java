@@ -0,0 +1,126 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Spliterator;
+import java.util.stream.StreamSupport;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * JUnit test fixture for {@code Map4.spliterator}.
+ */
+public class Map4SpliteratorTest {
+
+    /**
+     * Number of keys used by the routine tests.
+     */
+    private static final int MANY = 10000;
+
+    /**
+     * Number of keys after which a {@code Map4} of initial size 1 is in the
+     * middle of moving its pairs to a larger table.
+     */
+    private static final int RESIZING = 12300;
+
+    /**
+     * Returns a {@code Map4} holding (i, i) for 0 <= i < n.
+     *
+     * @param n
+     *            the number of pairs
+     * @return the map
+     */
+    private static Map4<Integer, Integer> filled(int n) {
+        Map4<Integer, Integer> s = new Map4<>();
+        for (int i = 0; i < n; i++) {
+            s.add(i, i);
+        }
+        return s;
+    }
+
+    /**
+     * Border test: an empty map has an empty spliterator that does not split.
+     */
+    @Test
+    public final void emptyBorder() {
+        Map4<Integer, Integer> s = new Map4<>();
+        Spliterator<Map.Pair<Integer, Integer>> sp = s.spliterator();
+        assertEquals(0, sp.estimateSize());
+        assertTrue(sp.trySplit() == null);
+        assertTrue(!sp.tryAdvance(p -> {
+        }));
+    }
+
+    /**
+     * Routine test: a sequential stream sees every pair exactly once.
+     */
+    @Test
+    public final void sequentialRoutine() {
+        Map4<Integer, Integer> s = filled(MANY);
+        Map<Integer, Integer> seen = new Map1L<>();
+        StreamSupport.stream(s.spliterator(), false)
+                .forEach(p -> seen.add(p.key(), p.value()));
+        assertEquals(s, seen);
+    }
+
+    /**
+     * Routine test: a parallel stream computes the same aggregates as a
+     * sequential one.
+     */
+    @Test
+    public final void parallelRoutine() {
+        Map4<Integer, Integer> s = filled(MANY);
+        long sum = StreamSupport.stream(s.spliterator(), true)
+                .mapToLong(p -> p.value()).sum();
+        int max = StreamSupport.stream(s.spliterator(), true)
+                .mapToInt(p -> p.value()).max().getAsInt();
+        assertEquals((long) MANY * (MANY - 1) / 2, sum);
+        assertEquals(MANY - 1, max);
+        assertEquals(MANY, StreamSupport.stream(s.spliterator(), true).count());
+    }
+
+    /**
+     * Routine test: the parts of a split report exact sizes that add up to
+     * the size of the map, and split about evenly.
+     */
+    @Test
+    public final void splitSizesRoutine() {
+        Map4<Integer, Integer> s = filled(MANY);
+        Spliterator<Map.Pair<Integer, Integer>> sp = s.spliterator();
+        assertTrue(sp.hasCharacteristics(Spliterator.SUBSIZED));
+        assertEquals(MANY, sp.getExactSizeIfKnown());
+        Spliterator<Map.Pair<Integer, Integer>> other = sp.trySplit();
+        assertTrue(other != null);
+        assertEquals(MANY, sp.estimateSize() + other.estimateSize());
+        assertTrue(Math.abs(sp.estimateSize() - other.estimateSize()) < MANY
+                / 10);
+        long otherSize = other.estimateSize();
+        int[] count = new int[1];
+        other.forEachRemaining(p -> count[0]++);
+        assertEquals(otherSize, count[0]);
+        assertEquals(0, other.estimateSize());
+    }
+
+    /**
+     * Challenging test: a map in the middle of a resize still streams every
+     * pair exactly once.
+     */
+    @Test
+    public final void duringResizeChallenging() {
+        Map4<Integer, Integer> s = new Map4<>(1);
+        Map<Integer, Integer> sExpected = new Map1L<>();
+        for (int i = 0; i < RESIZING; i++) {
+            s.add(i, i);
+            sExpected.add(i, i);
+        }
+        Map<Integer, Integer> seen = new Map1L<>();
+        StreamSupport.stream(s.spliterator(), false)
+                .forEach(p -> seen.add(p.key(), p.value()));
+        assertEquals(sExpected, seen);
+        assertEquals(RESIZING,
+                StreamSupport.stream(s.spliterator(), true).count());
+    }
+
+}
@@ -0,0 +1,254 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * Customized JUnit test fixture for {@code Map4} using a hash function that
+ * puts every key in the same bucket, so that bucket turns into a tree and back
+ * as pairs are added and removed.
+ */
+public class Map4TestCollide extends MapTest {
+
+    /**
+     * Size of hash table to be used in tests.
+     */
+    private static final int TEST_HASH_TABLE_SIZE = 30;
+
+    /**
+     * Load factor to be used in tests.
+     */
+    private static final double TEST_LOAD_FACTOR = 0.75;
+
+    /**
+     * Number of colliding keys used by the routine tests; well past the size
+     * at which a bucket becomes a tree.
+     */
+    private static final int MANY = 500;
+
+    @Override
+    protected final Map<String, String> constructorTest() {
+        return new Map4<String, String>(TEST_HASH_TABLE_SIZE, TEST_LOAD_FACTOR,
+                HashStrategies.modulo(key -> 0));
+    }
+
+    @Override
+    protected final Map<String, String> constructorRef() {
+        return new Map1L<String, String>();
+    }
+
+    /**
+     * Routine test: fill one bucket with many keys, look each one up, then
+     * remove them all, checking against the reference at every step.
+     */
+    @Test
+    public final void collideRoutine() {
+        Map<String, String> s = this.constructorTest();
+        Map<String, String> sExpected = this.constructorRef();
+        for (int i = 0; i < MANY; i++) {
+            s.add("k" + i, "v" + i);
+            sExpected.add("k" + i, "v" + i);
+        }
+        assertEquals(sExpected, s);
+        for (int i = 0; i < MANY; i++) {
+            assertTrue(s.hasKey("k" + i));
+            assertEquals("v" + i, s.value("k" + i));
+        }
+        assertTrue(!s.hasKey("k" + MANY));
+        for (int i = 0; i < MANY; i++) {
+            s.remove("k" + i);
+            sExpected.remove("k" + i);
+            assertEquals(sExpected, s);
+        }
+    }
+
+    /**
+     * Routine test: drain a map whose keys all collide with removeAny.
+     */
+    @Test
+    public final void collideRemoveAnyRoutine() {
+        Map<String, String> s = this.constructorTest();
+        Map<String, String> sExpected = this.constructorRef();
+        for (int i = 0; i < MANY; i++) {
+            s.add("k" + i, "v" + i);
+            sExpected.add("k" + i, "v" + i);
+        }
+        while (s.size() > 0) {
+            Map.Pair<String, String> p = s.removeAny();
+            assertTrue(sExpected.hasKey(p.key()));
+            assertEquals(sExpected.remove(p.key()).value(), p.value());
+        }
+        assertEquals(0, sExpected.size());
+    }
+
+    /**
+     * Challenging test: a tree bucket of strings also takes a key of another
+     * class, ordered against them by hash code and then by class.
+     */
+    @Test
+    public final void collideMixedKeysChallenging() {
+        Map4<Object, String> s = new Map4<>(TEST_HASH_TABLE_SIZE,
+                TEST_LOAD_FACTOR, HashStrategies.modulo(key -> 0));
+        Map<Object, String> sExpected = new Map1L<>();
+        for (int i = 0; i < MANY; i++) {
+            s.add("k" + i, "v" + i);
+            sExpected.add("k" + i, "v" + i);
+        }
+        s.add(0, "zero");
+        sExpected.add(0, "zero");
+        assertEquals(sExpected, s);
+        assertEquals("zero", s.value(0));
+        assertEquals("v0", s.value("k0"));
+        assertTrue(!s.hasKey(1));
+        s.remove(0);
+        sExpected.remove(0);
+        assertEquals(sExpected, s);
+    }
+
+    /**
+     * Key that is not {@code Comparable}, with a hash code chosen by the test.
+     */
+    private static final class Opaque {
+
+        /**
+         * Identity of the key.
+         */
+        private final int id;
+
+        /**
+         * Hash code of the key.
+         */
+        private final int hash;
+
+        /**
+         * Constructor from identity and hash code.
+         *
+         * @param id
+         *            the identity
+         * @param hash
+         *            the hash code
+         */
+        Opaque(int id, int hash) {
+            this.id = id;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Opaque && ((Opaque) obj).id == this.id;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+    }
+
+    /**
+     * {@code Comparable} key, with a hash code chosen by the test, whose
+     * {@code compareTo} ranks all keys equal although they are not.
+     */
+    private static final class Tied implements Comparable<Tied> {
+
+        /**
+         * Identity of the key.
+         */
+        private final int id;
+
+        /**
+         * Constructor from identity.
+         *
+         * @param id
+         *            the identity
+         */
+        Tied(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Tied other) {
+            return 0;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Tied && ((Tied) obj).id == this.id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 0;
+        }
+
+    }
+
+    /**
+     * Challenging test: keys whose {@code compareTo} is not consistent with
+     * {@code equals} are told apart by {@code equals} in a tree bucket.
+     */
+    @Test
+    public final void collideTiedKeysChallenging() {
+        Map4<Object, String> s = new Map4<>(TEST_HASH_TABLE_SIZE,
+                TEST_LOAD_FACTOR, HashStrategies.modulo(key -> 0));
+        Map<Object, String> sExpected = new Map1L<>();
+        for (int i = 0; i < MANY; i += 2) {
+            s.add(new Tied(i), "v" + i);
+            sExpected.add(new Tied(i), "v" + i);
+        }
+        assertEquals(sExpected, s);
+        for (int i = 0; i < MANY; i++) {
+            assertEquals(i % 2 == 0, s.hasKey(new Tied(i)));
+            if (i % 2 == 0) {
+                assertEquals("v" + i, s.value(new Tied(i)));
+            }
+        }
+        for (int i = 0; i < MANY; i += 4) {
+            assertEquals("v" + i, s.remove(new Tied(i)).value());
+            sExpected.remove(new Tied(i));
+        }
+        assertEquals(sExpected, s);
+        while (s.size() > 0) {
+            Map.Pair<Object, String> p = s.removeAny();
+            assertEquals(sExpected.remove(p.key()).value(), p.value());
+        }
+        assertEquals(0, sExpected.size());
+    }
+
+    /**
+     * Challenging test: keys that are not {@code Comparable} go in a tree
+     * bucket too, by hash code, including some with equal hash codes.
+     */
+    @Test
+    public final void collideOpaqueKeysChallenging() {
+        final int hashes = 50;
+        Map4<Object, String> s = new Map4<>(TEST_HASH_TABLE_SIZE,
+                TEST_LOAD_FACTOR, HashStrategies.modulo(key -> 0));
+        Map<Object, String> sExpected = new Map1L<>();
+        for (int i = 0; i < MANY; i++) {
+            s.add(new Opaque(i, i % hashes), "v" + i);
+            sExpected.add(new Opaque(i, i % hashes), "v" + i);
+        }
+        s.add("k0", "string");
+        sExpected.add("k0", "string");
+        assertEquals(sExpected, s);
+        for (int i = 0; i < MANY; i++) {
+            assertEquals("v" + i, s.value(new Opaque(i, i % hashes)));
+        }
+        assertTrue(!s.hasKey(new Opaque(MANY, 0)));
+        for (int i = 0; i < MANY; i += 2) {
+            s.remove(new Opaque(i, i % hashes));
+            sExpected.remove(new Opaque(i, i % hashes));
+        }
+        assertEquals(sExpected, s);
+        while (s.size() > 0) {
+            Map.Pair<Object, String> p = s.removeAny();
+            assertEquals(sExpected.remove(p.key()).value(), p.value());
+        }
+        assertEquals(0, sExpected.size());
+    }
+
+}
@@ -0,0 +1,90 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * Customized JUnit test fixture for {@code Map4} using the mixed hash strategy
+ * with a caller-supplied hash function and hash table size 30, plus tests of
+ * {@code bucketLengthHistogram}.
+ */
+public class Map4TestMixed extends MapTest {
+
+    /**
+     * Size of hash table to be used in tests.
+     */
+    private static final int TEST_HASH_TABLE_SIZE = 30;
+
+    /**
+     * Load factor to be used in tests.
+     */
+    private static final double TEST_LOAD_FACTOR = 0.75;
+
+    /**
+     * Number of sequential keys used by the histogram test.
+     */
+    private static final int MANY = 1000;
+
+    @Override
+    protected final Map<String, String> constructorTest() {
+        return new Map4<String, String>(TEST_HASH_TABLE_SIZE, TEST_LOAD_FACTOR,
+                HashStrategies.mixed(String::hashCode));
+    }
+
+    @Override
+    protected final Map<String, String> constructorRef() {
+        return new Map1L<String, String>();
+    }
+
+    /**
+     * Border test for bucketLengthHistogram on an empty map.
+     */
+    @Test
+    public final void histogramBorder() {
+        Map4<String, String> s = new Map4<>(TEST_HASH_TABLE_SIZE);
+        int[] histogram = s.bucketLengthHistogram();
+        assertEquals(1, histogram.length);
+        assertEquals(TEST_HASH_TABLE_SIZE, histogram[0]);
+    }
+
+    /**
+     * Routine test for bucketLengthHistogram: a hash function putting every
+     * key in one bucket shows up as a single long bucket.
+     */
+    @Test
+    public final void histogramRoutine() {
+        Map4<String, String> s = new Map4<>(TEST_HASH_TABLE_SIZE,
+                TEST_LOAD_FACTOR, HashStrategies.modulo(key -> 0));
+        s.add("Apples", "5");
+        s.add("Bananas", "20");
+        s.add("Black", "100");
+        int[] histogram = s.bucketLengthHistogram();
+        assertEquals(4, histogram.length);
+        assertEquals(TEST_HASH_TABLE_SIZE - 1, histogram[0]);
+        assertEquals(1, histogram[3]);
+    }
+
+    /**
+     * Routine test for bucketLengthHistogram: the histogram accounts for
+     * every pair, and mixing keeps sequential keys out of long buckets.
+     */
+    @Test
+    public final void histogramSequentialKeys() {
+        Map4<String, String> s = new Map4<>(TEST_HASH_TABLE_SIZE,
+                TEST_LOAD_FACTOR, HashStrategies.powerOfTwo());
+        for (int i = 0; i < MANY; i++) {
+            s.add("id" + i, "");
+        }
+        int[] histogram = s.bucketLengthHistogram();
+        int pairs = 0;
+        for (int n = 0; n < histogram.length; n++) {
+            pairs += n * histogram[n];
+        }
+        assertEquals(MANY, pairs);
+        assertTrue(histogram.length <= 10);
+    }
+
+}
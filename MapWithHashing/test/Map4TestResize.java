@@ -0,0 +1,99 @@
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * Customized JUnit test fixture for {@code Map4} using non-default constructor
+ * with hash table size 1 and load factor 0.5, so that the table is resized
+ * (and incrementally rehashed) while the tests run.
+ */
+public class Map4TestResize extends MapTest {
+
+    /**
+     * Size of hash table to be used in tests.
+     */
+    private static final int TEST_HASH_TABLE_SIZE = 1;
+
+    /**
+     * Load factor to be used in tests.
+     */
+    private static final double TEST_LOAD_FACTOR = 0.5;
+
+    /**
+     * Number of keys used by the growing and shrinking tests.
+     */
+    private static final int MANY = 1000;
+
+    @Override
+    protected final Map<String, String> constructorTest() {
+        return new Map4<String, String>(TEST_HASH_TABLE_SIZE,
+                TEST_LOAD_FACTOR);
+    }
+
+    @Override
+    protected final Map<String, String> constructorRef() {
+        return new Map1L<String, String>();
+    }
+
+    /**
+     * Routine test for add and remove across many resizes.
+     */
+    @Test
+    public final void growAndShrinkRoutine() {
+        Map<String, String> s = this.constructorTest();
+        Map<String, String> sExpected = this.constructorRef();
+        for (int i = 0; i < MANY; i++) {
+            s.add("k" + i, "v" + i);
+            sExpected.add("k" + i, "v" + i);
+        }
+        assertEquals(sExpected, s);
+        for (int i = 0; i < MANY; i += 2) {
+            assertEquals(sExpected.remove("k" + i), s.remove("k" + i));
+        }
+        assertEquals(sExpected, s);
+        while (s.size() > 0) {
+            Map.Pair<String, String> p = s.removeAny();
+            assertEquals(sExpected.remove(p.key()), p);
+        }
+        assertEquals(sExpected, s);
+    }
+
+    /**
+     * Routine test for clear after the table has grown.
+     */
+    @Test
+    public final void clearRoutine() {
+        Map<String, String> s = this.constructorTest();
+        Map<String, String> sExpected = this.constructorRef();
+        for (int i = 0; i < MANY; i++) {
+            s.add("k" + i, "v" + i);
+        }
+        s.clear();
+        assertEquals(sExpected, s);
+        s.add("Apples", "5");
+        sExpected.add("Apples", "5");
+        assertEquals(sExpected, s);
+    }
+
+    /**
+     * Routine test for the iterator while a resize is in progress.
+     */
+    @Test
+    public final void iteratorRoutine() {
+        Map<String, String> s = this.constructorTest();
+        Map<String, String> sExpected = this.constructorRef();
+        for (int i = 0; i < MANY; i++) {
+            s.add("k" + i, "v" + i);
+            sExpected.add("k" + i, "v" + i);
+        }
+        Map<String, String> seen = this.constructorRef();
+        for (Map.Pair<String, String> p : s) {
+            seen.add(p.key(), p.value());
+        }
+        assertEquals(sExpected, seen);
+    }
+
+}
@@ -15,6 +15,11 @@ import components.map.Map.Pair;
  */
 public abstract class MapTest {
 
+    /**
+     * Number of keys used by the many-keys tests.
+     */
+    private static final int MANY = 1000;
+
     /**
      * Invokes the appropriate {@code Map} constructor for the implementation
      * under test and returns the result.
@@ -83,6 +88,42 @@ public abstract class MapTest {
         return map;
     }
 
+    /**
+     * Removes from {@code s} the pairs whose keys are "k" + i for every third
+     * i in [0, n), then all the rest with {@code removeAny}, checking each pair
+     * removed against {@code sExpected}. Also used by the fixtures of maps
+     * whose values are not {@code String}s.
+     *
+     * @param <V>
+     *            type of {@code Map} range (associated value) entries
+     * @param s
+     *            the map under test
+     * @param sExpected
+     *            the reference map
+     * @param n
+     *            bound on the key numbers
+     * @updates s, sExpected
+     * @requires <pre>
+     * s = sExpected  and
+     * for all i: integer where (0 <= i < n  and  i mod 3 = 0)
+     *   ("k" + i is in DOMAIN(s))
+     * </pre>
+     * @ensures s = {}  and  sExpected = {}
+     */
+    static <V> void removeAllChecked(Map<String, V> s,
+            Map<String, V> sExpected, int n) {
+        for (int i = 0; i < n; i += 3) {
+            assertEquals(sExpected.remove("k" + i).value(),
+                    s.remove("k" + i).value());
+        }
+        assertEquals(sExpected, s);
+        while (s.size() > 0) {
+            Pair<String, V> p = s.removeAny();
+            assertEquals(sExpected.remove(p.key()).value(), p.value());
+        }
+        assertEquals(sExpected, s);
+    }
+
     /**
      * Test the empty map4 constructor.
      */
@@ -309,4 +350,47 @@ public abstract class MapTest {
         assertEquals(4, s.size());
     }
 
+    /**
+     * Routine test for add, remove and removeAny with many keys.
+     */
+    @Test
+    public final void manyKeysRoutine() {
+        Map<String, String> s = this.constructorTest();
+        Map<String, String> sExpected = this.constructorRef();
+        for (int i = 0; i < MANY; i++) {
+            s.add("k" + i, "v" + i);
+            sExpected.add("k" + i, "v" + i);
+        }
+        assertEquals(sExpected, s);
+        removeAllChecked(s, sExpected, MANY);
+    }
+
+    /**
+     * Routine test for removeAny interleaved with add and remove, so pairs go
+     * in past wherever removeAny resumes from.
+     */
+    @Test
+    public final void removeAnyInterleavedRoutine() {
+        Map<String, String> s = this.constructorTest();
+        Map<String, String> sExpected = this.constructorRef();
+        for (int i = 0; i < MANY; i++) {
+            s.add("k" + i, "v" + i);
+            sExpected.add("k" + i, "v" + i);
+            if (i % 3 == 2) {
+                Pair<String, String> p = s.removeAny();
+                assertEquals(sExpected.remove(p.key()), p);
+            }
+            if (i % 7 == 6 && sExpected.hasKey("k" + (i - 1))) {
+                assertEquals(sExpected.remove("k" + (i - 1)),
+                        s.remove("k" + (i - 1)));
+            }
+        }
+        assertEquals(sExpected, s);
+        while (s.size() > 0) {
+            Pair<String, String> p = s.removeAny();
+            assertEquals(sExpected.remove(p.key()), p);
+        }
+        assertEquals(sExpected, s);
+    }
+
 }
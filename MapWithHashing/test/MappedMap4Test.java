@@ -0,0 +1,245 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * JUnit test fixture for {@code MappedMap4}'s kernel methods and for reopening
+ * a map saved in a file.
+ */
+public class MappedMap4Test {
+
+    /**
+     * Number of distinct keys used by the growing tests; enough to make both
+     * the slots and the key region grow several times.
+     */
+    private static final int MANY = 5000;
+
+    /**
+     * Number of rounds of adding and removing keys in the churn test.
+     */
+    private static final int ROUNDS = 200;
+
+    /**
+     * Number of keys added and removed in each round of the churn test.
+     */
+    private static final int FEW = 50;
+
+    /**
+     * Returns the path of a new, empty file for a test map, deleted when the
+     * tests exit.
+     *
+     * @return the path
+     */
+    private static Path tempFile() {
+        try {
+            Path f = Files.createTempFile("MappedMap4Test", ".map");
+            f.toFile().deleteOnExit();
+            return f;
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Test the empty constructor.
+     */
+    @Test
+    public final void constructorTestEmpty() {
+        Map<String, Integer> s = new MappedMap4();
+        Map<String, Integer> sExpected = new Map1L<String, Integer>();
+        assertEquals(sExpected, s);
+    }
+
+    /**
+     * Routine test for add, value, hasKey and remove.
+     */
+    @Test
+    public final void kernelRoutine() {
+        Map<String, Integer> s = new MappedMap4();
+        Map<String, Integer> sExpected = new Map1L<String, Integer>();
+        s.add("Apples", 5);
+        s.add("Bananas", 20);
+        s.add("", 0);
+        sExpected.add("Apples", 5);
+        sExpected.add("Bananas", 20);
+        sExpected.add("", 0);
+        assertEquals(sExpected, s);
+        assertEquals(Integer.valueOf(20), s.value("Bananas"));
+        assertTrue(s.hasKey(""));
+        assertTrue(!s.hasKey("Cherries"));
+        Map.Pair<String, Integer> p = s.remove("Apples");
+        sExpected.remove("Apples");
+        assertEquals("Apples", p.key());
+        assertEquals(Integer.valueOf(5), p.value());
+        assertEquals(sExpected, s);
+    }
+
+    /**
+     * Routine test for keys outside ASCII, which take more than one byte per
+     * character in the key region.
+     */
+    @Test
+    public final void nonAsciiRoutine() {
+        Map<String, Integer> s = new MappedMap4();
+        s.add("caf\u00e9", 1);
+        s.add("cafe", 2);
+        s.add("\u65e5\u672c", -3);
+        assertEquals(Integer.valueOf(1), s.value("caf\u00e9"));
+        assertEquals(Integer.valueOf(2), s.value("cafe"));
+        assertEquals(Integer.valueOf(-3), s.value("\u65e5\u672c"));
+    }
+
+    /**
+     * Routine test: add many keys, so that the file grows, then remove a
+     * third of them and drain the rest with removeAny.
+     */
+    @Test
+    public final void manyKeysRoutine() {
+        Map<String, Integer> s = new MappedMap4();
+        Map<String, Integer> sExpected = new Map1L<String, Integer>();
+        for (int i = 0; i < MANY; i++) {
+            s.add("k" + i, i);
+            sExpected.add("k" + i, i);
+        }
+        assertEquals(sExpected, s);
+        MapTest.removeAllChecked(s, sExpected, MANY);
+    }
+
+    /**
+     * Routine test: a map saved in a file is there again when the file is
+     * reopened.
+     */
+    @Test
+    public final void reopenRoutine() {
+        Path f = tempFile();
+        MappedMap4 s = new MappedMap4(f);
+        Map<String, Integer> sExpected = new Map1L<String, Integer>();
+        for (int i = 0; i < MANY; i++) {
+            s.add("key" + i, i);
+            sExpected.add("key" + i, i);
+        }
+        s.remove("key0");
+        sExpected.remove("key0");
+        s.force();
+        Map<String, Integer> reopened = new MappedMap4(f);
+        assertEquals(sExpected, reopened);
+        assertEquals(Integer.valueOf(MANY - 1),
+                reopened.value("key" + (MANY - 1)));
+    }
+
+    /**
+     * Routine test for close: a map grown (and so rebuilt) inside
+     * try-with-resources is in its file once closed.
+     */
+    @Test
+    public final void closeRoutine() {
+        Path f = tempFile();
+        Map<String, Integer> sExpected = new Map1L<String, Integer>();
+        try (MappedMap4 s = new MappedMap4(f)) {
+            for (int i = 0; i < MANY; i++) {
+                s.add("key" + i, i);
+                sExpected.add("key" + i, i);
+            }
+            s.clear();
+            sExpected.clear();
+            for (int i = 0; i < MANY; i++) {
+                s.add("again" + i, i);
+                sExpected.add("again" + i, i);
+            }
+        }
+        try (MappedMap4 reopened = new MappedMap4(f)) {
+            assertEquals(sExpected, reopened);
+        }
+    }
+
+    /**
+     * Routine test for clear: the file is emptied too.
+     */
+    @Test
+    public final void clearRoutine() {
+        Path f = tempFile();
+        MappedMap4 s = new MappedMap4(f);
+        s.add("Apples", 5);
+        s.clear();
+        assertEquals(0, s.size());
+        assertEquals(0, new MappedMap4(f).size());
+        s.add("Bananas", 20);
+        assertEquals(Integer.valueOf(20), s.value("Bananas"));
+    }
+
+    /**
+     * Challenging test: adding and removing keys over and over, with few
+     * keys in the map at any time, compacts the key region but never makes
+     * the file grow.
+     *
+     * @throws IOException
+     *             if the size of the file cannot be read
+     */
+    @Test
+    public final void churnChallenging() throws IOException {
+        Path f = tempFile();
+        try (MappedMap4 s = new MappedMap4(f)) {
+            long initial = Files.size(f);
+            for (int round = 0; round < ROUNDS; round++) {
+                for (int i = 0; i < FEW; i++) {
+                    s.add("key" + round + "/" + i, i);
+                }
+                for (int i = 0; i < FEW; i++) {
+                    assertEquals(Integer.valueOf(i),
+                            s.remove("key" + round + "/" + i).value());
+                }
+            }
+            assertEquals(0, s.size());
+            assertEquals(initial, Files.size(f));
+        }
+    }
+
+    /**
+     * Routine test: the temporary file of a map made by the no-argument
+     * constructor is deleted by close, and by transferFrom when the map gives
+     * it up.
+     */
+    @Test
+    public final void temporaryFileRoutine() {
+        MappedMap4 s = new MappedMap4();
+        MappedMap4 t = new MappedMap4();
+        Path sFile = s.file();
+        Path tFile = t.file();
+        t.add("Apples", 5);
+        s.transferFrom(t);
+        assertTrue(!Files.exists(sFile));
+        assertEquals(tFile, s.file());
+        s.close();
+        assertTrue(!Files.exists(tFile));
+        Path tNewFile = t.file();
+        t.close();
+        assertTrue(!Files.exists(tNewFile));
+    }
+
+    /**
+     * Routine test for transferFrom.
+     */
+    @Test
+    public final void transferFromRoutine() {
+        MappedMap4 s = new MappedMap4();
+        MappedMap4 t = new MappedMap4();
+        Map<String, Integer> sExpected = new Map1L<String, Integer>();
+        t.add("Apples", 5);
+        sExpected.add("Apples", 5);
+        s.add("Bananas", 20);
+        s.transferFrom(t);
+        assertEquals(sExpected, s);
+        assertEquals(0, t.size());
+        t.add("Cherries", 1);
+        assertEquals(1, t.size());
+    }
+
+}
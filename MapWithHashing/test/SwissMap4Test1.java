@@ -0,0 +1,55 @@
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * Customized JUnit test fixture for {@code SwissMap4} using non-default
+ * constructor with room for 1 pair, so that the table grows, and fills up
+ * with deleted slots, while the tests run.
+ */
+public class SwissMap4Test1 extends MapTest {
+
+    /**
+     * Initial capacity to be used in tests.
+     */
+    private static final int TEST_HASH_TABLE_SIZE = 1;
+
+    /**
+     * Number of keys used by the growing tests.
+     */
+    private static final int MANY = 1000;
+
+    @Override
+    protected final Map<String, String> constructorTest() {
+        return new SwissMap4<String, String>(TEST_HASH_TABLE_SIZE);
+    }
+
+    @Override
+    protected final Map<String, String> constructorRef() {
+        return new Map1L<String, String>();
+    }
+
+    /**
+     * Challenging test: a map whose size stays small while keys come and go
+     * keeps finding every key, although its slots keep turning into deleted
+     * ones.
+     */
+    @Test
+    public final void churnChallenging() {
+        Map<String, String> s = this.constructorTest();
+        Map<String, String> sExpected = this.constructorRef();
+        for (int i = 0; i < MANY; i++) {
+            s.add("k" + i, "v" + i);
+            sExpected.add("k" + i, "v" + i);
+            if (i >= 2) {
+                assertEquals(sExpected.remove("k" + (i - 2)),
+                        s.remove("k" + (i - 2)));
+            }
+        }
+        assertEquals(sExpected, s);
+    }
+
+}
@@ -0,0 +1,51 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Strategy used by {@code ExternalSortingMachine} to write its entries to the
+ * files of its sorted runs, and to read them back. Implementations for the
+ * usual entry types are provided by {@code EntrySerializers}.
+ *
+ * @param <T>
+ *            type of entries serialized
+ *
+ * @author Andy
+ * @author Mingzhu
+ *
+ */
+public interface EntrySerializer<T> {
+
+    /**
+     * Writes {@code x} to {@code out}.
+     *
+     * @param x
+     *            the entry
+     * @param out
+     *            the output
+     * @throws IOException
+     *             if {@code out} cannot be written
+     * @requires x /= null
+     * @ensures <pre>
+     * [out.content = #out.content * [the bytes of x], which read reads back
+     *  as an entry equal to x in every way the machine's order looks at]
+     * </pre>
+     */
+    void write(T x, DataOutput out) throws IOException;
+
+    /**
+     * Reads an entry written by {@code write} from {@code in}.
+     *
+     * @param in
+     *            the input
+     * @return the entry
+     * @throws IOException
+     *             if {@code in} cannot be read
+     * @requires [in.content starts with the bytes of an entry written by write]
+     * @ensures <pre>
+     * #in.content = [the bytes of read] * in.content
+     * </pre>
+     */
+    T read(DataInput in) throws IOException;
+
+}
@@ -0,0 +1,93 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Factory methods for the {@code EntrySerializer}s used with
+ * {@code ExternalSortingMachine}.
+ *
+ * <p>
+ * {@code strings} writes the length of a string's UTF-8 encoding as an
+ * {@code int}, then that encoding; unlike {@code DataOutput.writeUTF}, it
+ * has no 64 KB limit. {@code integers} writes an {@code int}.
+ *
+ * @author Andy
+ * @author Mingzhu
+ *
+ */
+public final class EntrySerializers {
+
+    /**
+     * The serializer returned by {@code strings()}.
+     */
+    private static final EntrySerializer<String> STRINGS = new Strings();
+
+    /**
+     * The serializer returned by {@code integers()}.
+     */
+    private static final EntrySerializer<Integer> INTEGERS = new Integers();
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private EntrySerializers() {
+    }
+
+    /**
+     * {@code EntrySerializer} for {@code String}s.
+     */
+    private static final class Strings implements EntrySerializer<String> {
+
+        @Override
+        public void write(String x, DataOutput out) throws IOException {
+            byte[] bytes = x.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+    }
+
+    /**
+     * {@code EntrySerializer} for {@code Integer}s.
+     */
+    private static final class Integers implements EntrySerializer<Integer> {
+
+        @Override
+        public void write(Integer x, DataOutput out) throws IOException {
+            out.writeInt(x);
+        }
+
+        @Override
+        public Integer read(DataInput in) throws IOException {
+            return in.readInt();
+        }
+
+    }
+
+    /**
+     * Returns the serializer of {@code String}s.
+     *
+     * @return the serializer
+     */
+    public static EntrySerializer<String> strings() {
+        return STRINGS;
+    }
+
+    /**
+     * Returns the serializer of {@code Integer}s.
+     *
+     * @return the serializer
+     */
+    public static EntrySerializer<Integer> integers() {
+        return INTEGERS;
+    }
+
+}
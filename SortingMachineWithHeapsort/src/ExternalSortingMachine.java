@@ -0,0 +1,1106 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.lang.reflect.Constructor;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import components.sortingmachine.SortingMachine;
+import components.sortingmachine.SortingMachineSecondary;
+
+/**
+ * {@code SortingMachine} that keeps at most a fixed number of entries in
+ * memory, spilling sorted runs of them to temporary files and merging those
+ * runs as they are extracted, with implementations of primary methods.
+ *
+ * <p>
+ * Entries are added to an in-memory buffer of at most {@code budget} entries.
+ * When it fills, it is sorted and written, through the machine's
+ * {@code EntrySerializer}, to a new temporary file: a run. If no run was ever
+ * written, {@code changeToExtractionMode} just sorts the buffer, and
+ * {@code removeFirst} advances a cursor through it. Otherwise the buffer is
+ * written as a last run, and the runs are merged: each run is read through a
+ * small buffered stream, its next entry (its "head") is held in memory, and
+ * the runs are kept in a binary heap ordered by their heads, so
+ * {@code removeFirst} takes the head of the run at the root, reads that run's
+ * next entry, and sifts the run down, in O(log k) comparisons for k runs.
+ * Memory in extraction mode is therefore about k stream buffers and k heads,
+ * whatever the number of entries. To bound k (and the number of open files),
+ * if there are more than {@code MAX_FAN_IN} runs, groups of
+ * {@code MAX_FAN_IN} of them are first merged into longer runs. A run's file
+ * is deleted as soon as it has been read to the end, and by {@code clear} and
+ * {@code transferFrom}. The files of a machine that becomes unreachable
+ * before it is emptied or cleared (say, after reading only the first few
+ * entries, or after an exception) are deleted by a {@code Cleaner}, which
+ * holds the machine's list of runs but not the machine itself.
+ *
+ * <p>
+ * The budget counts entries, not bytes: the caller picks it so that
+ * {@code budget} entries fit in the memory the sort may use. The iterator
+ * reads the runs' files again, so it costs a pass over the entries on disk;
+ * it reads them in chunks of at most {@code ITERATOR_CHUNK} entries, each
+ * from a stream opened and closed for it, so an iterator dropped part way
+ * through holds no open file.
+ *
+ * @param <T>
+ *            type of {@code SortingMachine} entries
+ * @mathdefinitions <pre>
+ * IS_TOTAL_PREORDER (
+ *   r: binary relation on T
+ *  ) : boolean is
+ *  for all x, y, z: T
+ *   ((r(x, y) or r(y, x))  and
+ *    (if (r(x, y) and r(y, z)) then r(x, z)))
+ *
+ * RUN_ENTRIES (
+ *   r: Run
+ *  ) : string of T is
+ *  [the r.length entries serialized in file r.file, in order]
+ *
+ * UNREAD (
+ *   r: Run
+ *  ) : finite multiset of T is
+ *  multiset_entries(RUN_ENTRIES(r)[r.consumed, r.length))
+ * </pre>
+ * @convention <pre>
+ * IS_TOTAL_PREORDER([relation computed by $this.machineOrder.compare method]  and
+ * $this.budget > 0  and
+ * 0 <= $this.cursor <= $this.buffered <= |$this.buffer| <= $this.budget  and
+ * [$this.buffer[i] = null for all 0 <= i < $this.cursor  and
+ *  for all $this.buffered <= i < |$this.buffer|]  and
+ * for all r: Run in $this.runs
+ *   ([RUN_ENTRIES(r) is sorted according to $this.machineOrder]  and
+ *    0 <= r.consumed < r.length)  and
+ * $this.size = $this.buffered - $this.cursor +
+ *   [sum over r in $this.runs of (r.length - r.consumed)]  and
+ * if $this.insertionMode then
+ *   $this.cursor = 0  and  $this.buffered < $this.budget  and
+ *   [for all r in $this.runs, r.consumed = 0 and r.in = null]
+ * else if $this.runs /= <> then
+ *   $this.buffered = 0  and
+ *   [for all r in $this.runs, r.in is open just past entry r.consumed of
+ *    RUN_ENTRIES(r), and r.head = RUN_ENTRIES(r)[r.consumed]]  and
+ *   [$this.runs is a binary heap of runs ordered by their heads according
+ *    to $this.machineOrder]
+ * else
+ *   [$this.buffer[$this.cursor, $this.buffered) is sorted according to
+ *    $this.machineOrder]
+ * </pre>
+ * @correspondence <pre>
+ * this = ($this.insertionMode, $this.machineOrder,
+ *   multiset_entries($this.buffer[$this.cursor, $this.buffered)) union
+ *   [union over r in $this.runs of UNREAD(r)])
+ * </pre>
+ *
+ * @author Andy
+ * @author Mingzhu
+ *
+ */
+public class ExternalSortingMachine<T> extends SortingMachineSecondary<T> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Default largest number of entries kept in memory.
+     */
+    private static final int DEFAULT_BUDGET = 1 << 20;
+
+    /**
+     * Largest number of runs merged at once.
+     */
+    private static final int MAX_FAN_IN = 64;
+
+    /**
+     * Size in bytes of the buffer of each run's stream.
+     */
+    private static final int STREAM_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Largest number of entries the iterator reads from a run at once (fewer
+     * if the budget is smaller).
+     */
+    private static final int ITERATOR_CHUNK = 1 << 10;
+
+    /**
+     * Length of the in-memory buffer before anything is added.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * A sorted run of entries in a temporary file.
+     *
+     * @param <T>
+     *            type of entries
+     */
+    private static final class Run<T> {
+
+        /**
+         * The file.
+         */
+        private final Path file;
+
+        /**
+         * Number of entries in the file.
+         */
+        private final int length;
+
+        /**
+         * Number of entries of the file already taken out of the run.
+         */
+        private int consumed;
+
+        /**
+         * Stream reading the file, open in extraction mode.
+         */
+        private DataInputStream in;
+
+        /**
+         * Entry {@code consumed} of the file, in extraction mode.
+         */
+        private T head;
+
+        /**
+         * Constructor from file and length.
+         *
+         * @param file
+         *            the file
+         * @param length
+         *            the number of entries in the file
+         */
+        private Run(Path file, int length) {
+            this.file = file;
+            this.length = length;
+            this.consumed = 0;
+        }
+
+    }
+
+    /**
+     * Input stream that counts the bytes read through it.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        /**
+         * Number of bytes read or skipped.
+         */
+        private long count;
+
+        /**
+         * Constructor from the stream to read.
+         *
+         * @param in
+         *            the stream
+         */
+        private CountingInputStream(InputStream in) {
+            super(in);
+            this.count = 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                this.count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                this.count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            this.count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+    }
+
+    /**
+     * Deletes the run files of machines that become unreachable.
+     */
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    /**
+     * Cleaning action discarding the runs of a machine. It refers to the
+     * machine's list of runs, not to the machine, so that the machine can
+     * become unreachable.
+     */
+    private static final class RunFiles implements Runnable {
+
+        /**
+         * The runs of the machine.
+         */
+        private volatile List<? extends Run<?>> runs;
+
+        @Override
+        public void run() {
+            List<? extends Run<?>> left = this.runs;
+            if (left != null) {
+                for (Run<?> run : left) {
+                    try {
+                        discard(run);
+                    } catch (UncheckedIOException e) {
+                        /*
+                         * Nobody is left to report to; this file stays behind
+                         */
+                    }
+                }
+            }
+        }
+
+    }
+
+    /**
+     * The runs {@code CLEANER} discards once {@code this} is unreachable.
+     */
+    private final RunFiles runFiles = new RunFiles();
+
+    /**
+     * Order.
+     */
+    private Comparator<T> machineOrder;
+
+    /**
+     * Serializer of entries to and from the runs' files.
+     */
+    private EntrySerializer<T> serializer;
+
+    /**
+     * Largest number of entries kept in memory.
+     */
+    private int budget;
+
+    /**
+     * Insertion mode.
+     */
+    private boolean insertionMode;
+
+    /**
+     * Entries in memory, in the slots from {@code cursor} to
+     * {@code buffered}.
+     */
+    private Object[] buffer;
+
+    /**
+     * Index of the next in-memory entry {@code removeFirst} returns.
+     */
+    private int cursor;
+
+    /**
+     * Index just past the last in-memory entry.
+     */
+    private int buffered;
+
+    /**
+     * Runs not yet read to the end; a heap ordered by heads in extraction
+     * mode.
+     */
+    private List<Run<T>> runs;
+
+    /**
+     * Number of entries.
+     */
+    private int size;
+
+    /**
+     * Returns {@code array[i]} as a {@code T}.
+     *
+     * @param <T>
+     *            type of array entries
+     * @param array
+     *            the array
+     * @param i
+     *            the index
+     * @return array[i]
+     * @requires [array[i] is a T]
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T entry(Object[] array, int i) {
+        /*
+         * This cast cannot fail, since only entries of type T are ever stored
+         * in the buffer of an ExternalSortingMachine<T>
+         */
+        return (T) array[i];
+    }
+
+    /**
+     * Opens a buffered stream reading {@code file} from the start.
+     *
+     * @param file
+     *            the file
+     * @return the stream
+     */
+    private static DataInputStream openRun(Path file) {
+        try {
+            return new DataInputStream(new BufferedInputStream(
+                    Files.newInputStream(file), STREAM_BUFFER_SIZE));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Closes {@code run}'s stream, if open, and deletes its file.
+     *
+     * @param <T>
+     *            type of entries
+     * @param run
+     *            the run
+     * @updates run
+     * @ensures run.in = null  and  run.head = null
+     */
+    private static <T> void discard(Run<T> run) {
+        try {
+            if (run.in != null) {
+                run.in.close();
+                run.in = null;
+            }
+            run.head = null;
+            Files.deleteIfExists(run.file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads the next entry of {@code run} into {@code run.head}, or, if the
+     * run has been read to the end, discards it and sets {@code run.head} to
+     * null.
+     *
+     * @param <T>
+     *            type of entries
+     * @param run
+     *            the run
+     * @param serializer
+     *            the serializer of the entries
+     * @updates run
+     * @requires run.in /= null
+     * @ensures <pre>
+     * if run.consumed < run.length then
+     *   run.head = RUN_ENTRIES(run)[run.consumed]
+     * else
+     *   run.head = null  and  [run's file is deleted]
+     * </pre>
+     */
+    private static <T> void advance(Run<T> run, EntrySerializer<T> serializer) {
+        if (run.consumed < run.length) {
+            try {
+                run.head = serializer.read(run.in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            discard(run);
+        }
+    }
+
+    /**
+     * Given a list of runs that would be a heap ordered by heads except for
+     * the run at index {@code top}, sifts that run down to make it a heap.
+     *
+     * @param <T>
+     *            type of entries
+     * @param heap
+     *            the runs
+     * @param top
+     *            the index of the run out of place
+     * @param order
+     *            total preorder for sorting
+     * @updates heap
+     * @requires <pre>
+     * 0 <= top < |heap|  and
+     * [the subtrees rooted at the children of top are heaps of runs ordered
+     *  by their heads according to order]
+     * </pre>
+     * @ensures <pre>
+     * [the subtree rooted at top is a heap of runs ordered by their heads
+     *  according to order]  and  perms(heap, #heap)
+     * </pre>
+     */
+    private static <T> void siftDown(List<Run<T>> heap, int top,
+            Comparator<T> order) {
+        Run<T> root = heap.get(top);
+        int hole = top;
+        int child = 2 * hole + 1;
+        boolean placed = false;
+        while (!placed && child < heap.size()) {
+            if (child + 1 < heap.size() && order.compare(heap.get(child).head,
+                    heap.get(child + 1).head) > 0) {
+                child++;
+            }
+            if (order.compare(root.head, heap.get(child).head) <= 0) {
+                placed = true;
+            } else {
+                //move the run with the smallest head up into the hole
+                heap.set(hole, heap.get(child));
+                hole = child;
+                child = 2 * hole + 1;
+            }
+        }
+        heap.set(hole, root);
+    }
+
+    /**
+     * Opens every run of {@code heap}, reads its head, and makes
+     * {@code heap} a heap of runs ordered by their heads.
+     *
+     * @param <T>
+     *            type of entries
+     * @param heap
+     *            the runs
+     * @param serializer
+     *            the serializer of the entries
+     * @param order
+     *            total preorder for sorting
+     * @updates heap
+     * @requires <pre>
+     * [for all r in heap, r.consumed = 0 < r.length and r.in = null]
+     * </pre>
+     * @ensures <pre>
+     * [for all r in heap, r.in is open just past the first entry of
+     *  RUN_ENTRIES(r), and r.head = RUN_ENTRIES(r)[0]]  and
+     * [heap is a heap of runs ordered by their heads according to order]  and
+     * perms(heap, #heap)
+     * </pre>
+     */
+    private static <T> void startMerge(List<Run<T>> heap,
+            EntrySerializer<T> serializer, Comparator<T> order) {
+        for (Run<T> run : heap) {
+            run.in = openRun(run.file);
+            advance(run, serializer);
+        }
+        for (int top = heap.size() / 2 - 1; top >= 0; top--) {
+            siftDown(heap, top, order);
+        }
+    }
+
+    /**
+     * Removes and returns the smallest head of the runs in {@code heap},
+     * reading the next entry of its run, and dropping that run if it has
+     * been read to the end.
+     *
+     * @param <T>
+     *            type of entries
+     * @param heap
+     *            the runs
+     * @param serializer
+     *            the serializer of the entries
+     * @param order
+     *            total preorder for sorting
+     * @return the smallest head
+     * @updates heap
+     * @requires <pre>
+     * heap /= <>  and
+     * [heap is a heap of open runs ordered by their heads according to order]
+     * </pre>
+     * @ensures <pre>
+     * [takeFirst is a smallest head of #heap according to order]  and
+     * [heap is #heap with takeFirst consumed from its run, as a heap of the
+     *  runs not yet read to the end]
+     * </pre>
+     */
+    private static <T> T takeFirst(List<Run<T>> heap,
+            EntrySerializer<T> serializer, Comparator<T> order) {
+        Run<T> top = heap.get(0);
+        T first = top.head;
+        top.consumed++;
+        advance(top, serializer);
+        if (top.head == null) {
+            Run<T> last = heap.remove(heap.size() - 1);
+            if (last != top) {
+                heap.set(0, last);
+            }
+        }
+        if (!heap.isEmpty()) {
+            siftDown(heap, 0, order);
+        }
+        return first;
+    }
+
+    /**
+     * Checks that the part of the convention repeated below holds for the
+     * current representation. So that it takes constant time, only the slots
+     * next to the in-memory entries are checked to be null, only the last run
+     * (in insertion mode) or the root run and its children (in extraction
+     * mode) are looked at, and the order of the in-memory entries only
+     * between the one at the cursor and the next.
+     *
+     * @return true if the convention holds (or if assertion checking is off);
+     *         otherwise reports a violated assertion
+     * @convention <pre>
+     * $this.budget > 0  and
+     * 0 <= $this.cursor <= $this.buffered <= |$this.buffer|  and
+     * |$this.buffer| <= $this.budget  and
+     * [$this.buffer[i] = null for i = $this.cursor - 1 if it is >= 0  and
+     *  for i = $this.buffered if it is < |$this.buffer|]  and
+     * $this.size >= $this.buffered - $this.cursor  and
+     * if $this.runs = <> then
+     *   $this.size = $this.buffered - $this.cursor  and
+     * if $this.insertionMode then
+     *   $this.cursor = 0  and  $this.buffered < $this.budget  and
+     *   [for r the last run of $this.runs, if any,
+     *    0 = r.consumed < r.length and r.in = null]
+     * else if $this.runs /= <> then
+     *   $this.buffered = 0  and
+     *   [for r the first run of $this.runs and its children in the heap,
+     *    0 <= r.consumed < r.length and r.in /= null and r.head /= null, and
+     *    the head of the first run comes first according to
+     *    $this.machineOrder]
+     * else
+     *   [$this.buffer[$this.cursor, min($this.cursor + 2, $this.buffered))
+     *    is sorted according to $this.machineOrder]
+     * </pre>
+     */
+    private boolean conventionHolds() {
+        assert this.budget > 0 : "Violation of: $this.budget > 0";
+        assert 0 <= this.cursor : "Violation of: 0 <= $this.cursor";
+        assert this.cursor <= this.buffered : ""
+                + "Violation of: $this.cursor <= $this.buffered";
+        assert this.buffered <= this.buffer.length : ""
+                + "Violation of: $this.buffered <= |$this.buffer|";
+        assert this.buffer.length <= this.budget : ""
+                + "Violation of: |$this.buffer| <= $this.budget";
+        assert this.cursor == 0 || this.buffer[this.cursor - 1] == null : ""
+                + "Violation of: $this.buffer[$this.cursor - 1] = null";
+        assert this.buffered == this.buffer.length
+                || this.buffer[this.buffered] == null : ""
+                        + "Violation of: $this.buffer[$this.buffered] = null";
+        assert this.size >= this.buffered - this.cursor : ""
+                + "Violation of: $this.size >= $this.buffered - $this.cursor";
+        assert !this.runs.isEmpty()
+                || this.size == this.buffered - this.cursor : ""
+                        + "Violation of: if $this.runs = <> then"
+                        + " $this.size = $this.buffered - $this.cursor";
+        if (this.insertionMode) {
+            assert this.cursor == 0 : ""
+                    + "Violation of: if $this.insertionMode then"
+                    + " $this.cursor = 0";
+            assert this.buffered < this.budget : ""
+                    + "Violation of: if $this.insertionMode then"
+                    + " $this.buffered < $this.budget";
+            if (!this.runs.isEmpty()) {
+                Run<T> run = this.runs.get(this.runs.size() - 1);
+                assert run.consumed == 0 && 0 < run.length
+                        && run.in == null : ""
+                                + "Violation of: if $this.insertionMode then"
+                                + " 0 = r.consumed < r.length and r.in = null";
+            }
+        } else if (!this.runs.isEmpty()) {
+            assert this.buffered == 0 : ""
+                    + "Violation of: if not $this.insertionMode and"
+                    + " $this.runs /= <> then $this.buffered = 0";
+            int end = Math.min(this.runs.size(), 3);
+            for (int i = 0; i < end; i++) {
+                Run<T> run = this.runs.get(i);
+                assert 0 <= run.consumed && run.consumed < run.length : ""
+                        + "Violation of: 0 <= r.consumed < r.length";
+                assert run.in != null && run.head != null : ""
+                        + "Violation of: r.in /= null and r.head /= null";
+                assert this.machineOrder.compare(this.runs.get(0).head,
+                        run.head) <= 0 : ""
+                                + "Violation of: [$this.runs is a binary heap"
+                                + " of runs ordered by their heads]";
+            }
+        } else {
+            assert this.cursor + 1 >= this.buffered || this.machineOrder
+                    .compare(entry(this.buffer, this.cursor),
+                            entry(this.buffer, this.cursor + 1)) <= 0 : ""
+                                    + "Violation of: [$this.buffer"
+                                    + "[$this.cursor, $this.buffered)"
+                                    + " is sorted]";
+        }
+        return true;
+    }
+
+    /**
+     * Sorts the in-memory entries and writes them to a new run.
+     *
+     * @updates this.buffer, this.buffered, this.runs
+     * @requires $this.insertionMode  and  $this.buffered > 0
+     * @ensures <pre>
+     * $this.buffered = 0  and
+     * $this.runs = #$this.runs * <[a new run of the entries of
+     *   #$this.buffer[0, #$this.buffered), sorted]>
+     * </pre>
+     */
+    @SuppressWarnings("unchecked")
+    private void spill() {
+        /*
+         * This cast cannot fail: T[] is erased to Object[], and the buffer
+         * only holds entries of type T, which is all the sort relies on
+         */
+        T[] sortable = (T[]) this.buffer;
+        Arrays.sort(sortable, 0, this.buffered, this.machineOrder);
+        try {
+            Path file = Files.createTempFile("ExternalSortingMachine", ".run");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(file),
+                            STREAM_BUFFER_SIZE))) {
+                for (int i = 0; i < this.buffered; i++) {
+                    this.serializer.write(sortable[i], out);
+                }
+            } catch (IOException e) {
+                Files.deleteIfExists(file);
+                throw e;
+            }
+            this.runs.add(new Run<>(file, this.buffered));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Arrays.fill(this.buffer, 0, this.buffered, null);
+        this.buffered = 0;
+    }
+
+    /**
+     * Merges the first {@code MAX_FAN_IN} runs into one new run, put at the
+     * end of {@code this.runs}.
+     *
+     * @updates this.runs
+     * @requires <pre>
+     * |$this.runs| > MAX_FAN_IN  and
+     * [for all r in $this.runs, r.consumed = 0 and r.in = null]
+     * </pre>
+     * @ensures <pre>
+     * [$this.runs is #$this.runs with its first MAX_FAN_IN runs replaced, at
+     *  the end, by one run of all their entries, sorted]
+     * </pre>
+     */
+    private void mergeFirstRuns() {
+        /*
+         * The group stays in this.runs until it is merged, so that runFiles
+         * still reaches its files if the merge fails
+         */
+        List<Run<T>> group = new ArrayList<>(
+                this.runs.subList(0, MAX_FAN_IN));
+        int length = 0;
+        for (Run<T> run : group) {
+            length += run.length;
+        }
+        startMerge(group, this.serializer, this.machineOrder);
+        try {
+            Path file = Files.createTempFile("ExternalSortingMachine", ".run");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(file),
+                            STREAM_BUFFER_SIZE))) {
+                while (!group.isEmpty()) {
+                    this.serializer.write(takeFirst(group, this.serializer,
+                            this.machineOrder), out);
+                }
+            } catch (IOException e) {
+                Files.deleteIfExists(file);
+                throw e;
+            }
+            this.runs.subList(0, MAX_FAN_IN).clear();
+            this.runs.add(new Run<>(file, length));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Deletes the files of all runs of {@code this.runs}.
+     */
+    private void discardRuns() {
+        if (this.runs != null) {
+            for (Run<T> run : this.runs) {
+                discard(run);
+            }
+        }
+    }
+
+    /**
+     * Creator of initial representation.
+     *
+     * @param order
+     *            total preorder for sorting
+     * @param s
+     *            serializer of entries
+     * @param max
+     *            largest number of entries kept in memory
+     */
+    private void createNewRep(Comparator<T> order, EntrySerializer<T> s,
+            int max) {
+
+        this.machineOrder = order;
+        this.serializer = s;
+        this.budget = max;
+        this.insertionMode = true;
+        this.buffer = new Object[Math.min(max, INITIAL_CAPACITY)];
+        this.cursor = 0;
+        this.buffered = 0;
+        this.runs = new ArrayList<>();
+        this.runFiles.runs = this.runs;
+        this.size = 0;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor from order and serializer, keeping at most
+     * {@code DEFAULT_BUDGET} entries in memory.
+     *
+     * @param order
+     *            total preorder for sorting
+     * @param serializer
+     *            serializer of entries
+     */
+    public ExternalSortingMachine(Comparator<T> order,
+            EntrySerializer<T> serializer) {
+        assert serializer != null : "Violation of: serializer is not null";
+        this.createNewRep(order, serializer, DEFAULT_BUDGET);
+        CLEANER.register(this, this.runFiles);
+        assert this.conventionHolds();
+    }
+
+    /**
+     * Constructor from order, serializer and memory budget.
+     *
+     * @param order
+     *            total preorder for sorting
+     * @param serializer
+     *            serializer of entries
+     * @param budget
+     *            largest number of entries kept in memory
+     * @requires budget > 0
+     */
+    public ExternalSortingMachine(Comparator<T> order,
+            EntrySerializer<T> serializer, int budget) {
+        assert serializer != null : "Violation of: serializer is not null";
+        assert budget > 0 : "Violation of: budget > 0";
+        this.createNewRep(order, serializer, budget);
+        CLEANER.register(this, this.runFiles);
+        assert this.conventionHolds();
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final SortingMachine<T> newInstance() {
+        try {
+            Constructor<?> c = this.getClass().getConstructor(Comparator.class,
+                    EntrySerializer.class, int.class);
+            return (SortingMachine<T>) c.newInstance(this.machineOrder,
+                    this.serializer, this.budget);
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.discardRuns();
+        this.createNewRep(this.machineOrder, this.serializer, this.budget);
+        assert this.conventionHolds();
+    }
+
+    @Override
+    public final void transferFrom(SortingMachine<T> source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof ExternalSortingMachine<?> : ""
+                + "Violation of: source is of dynamic type"
+                + " ExternalSortingMachine<?>";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case: source must be of dynamic type
+         * ExternalSortingMachine<?>, and the ? must be T or the call would not
+         * have compiled.
+         */
+        ExternalSortingMachine<T> localSource =
+                (ExternalSortingMachine<T>) source;
+        this.discardRuns();
+        this.insertionMode = localSource.insertionMode;
+        this.machineOrder = localSource.machineOrder;
+        this.serializer = localSource.serializer;
+        this.budget = localSource.budget;
+        this.buffer = localSource.buffer;
+        this.cursor = localSource.cursor;
+        this.buffered = localSource.buffered;
+        this.runs = localSource.runs;
+        this.runFiles.runs = this.runs;
+        this.size = localSource.size;
+        localSource.createNewRep(localSource.machineOrder,
+                localSource.serializer, localSource.budget);
+        assert this.conventionHolds();
+        assert localSource.conventionHolds();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(T x) {
+        assert x != null : "Violation of: x is not null";
+        assert this.isInInsertionMode() : "Violation of: this.insertion_mode";
+        if (this.buffered == this.buffer.length) {
+            int capacity = (int) Math.min(this.budget,
+                    Math.max(2L * this.buffer.length, 1));
+            this.buffer = Arrays.copyOf(this.buffer, capacity);
+        }
+        this.buffer[this.buffered] = x;
+        this.buffered++;
+        this.size++;
+        if (this.buffered == this.budget) {
+            this.spill();
+        }
+        assert this.conventionHolds();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final void changeToExtractionMode() {
+        assert this.isInInsertionMode() : "Violation of: this.insertion_mode";
+
+        this.insertionMode = false;
+        if (this.runs.isEmpty()) {
+            /*
+             * This cast cannot fail: T[] is erased to Object[], and the buffer
+             * only holds entries of type T
+             */
+            T[] sortable = (T[]) this.buffer;
+            Arrays.sort(sortable, 0, this.buffered, this.machineOrder);
+        } else {
+            if (this.buffered > 0) {
+                this.spill();
+            }
+            this.buffer = new Object[0];
+            while (this.runs.size() > MAX_FAN_IN) {
+                this.mergeFirstRuns();
+            }
+            startMerge(this.runs, this.serializer, this.machineOrder);
+        }
+
+        assert this.conventionHolds();
+    }
+
+    @Override
+    public final T removeFirst() {
+        assert !this
+                .isInInsertionMode() : "Violation of: not this.insertion_mode";
+        assert this.size() > 0 : "Violation of: this.contents /= {}";
+
+        T removed;
+        if (this.runs.isEmpty()) {
+            removed = entry(this.buffer, this.cursor);
+            this.buffer[this.cursor] = null;
+            this.cursor++;
+        } else {
+            removed = takeFirst(this.runs, this.serializer, this.machineOrder);
+        }
+        this.size--;
+
+        assert this.conventionHolds();
+        return removed;
+    }
+
+    @Override
+    public final boolean isInInsertionMode() {
+        assert this.conventionHolds();
+        return this.insertionMode;
+    }
+
+    @Override
+    public final Comparator<T> order() {
+        assert this.conventionHolds();
+        return this.machineOrder;
+    }
+
+    @Override
+    public final int size() {
+        assert this.conventionHolds();
+        return this.size;
+    }
+
+    @Override
+    public final Iterator<T> iterator() {
+        return new ExternalSortingMachineIterator();
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for
+     * {@code ExternalSortingMachine}: the in-memory entries, then the unread
+     * entries of each run, read in chunks. Each chunk is read through a
+     * stream opened at the byte position where the previous chunk of the run
+     * ended, and closed before {@code next} returns, so no stream is left
+     * open however far the iteration goes.
+     */
+    private final class ExternalSortingMachineIterator implements Iterator<T> {
+
+        /**
+         * Index of the next in-memory entry to return.
+         */
+        private int next;
+
+        /**
+         * Index in {@code runs} of the next run to start reading.
+         */
+        private int runIndex;
+
+        /**
+         * Number of entries of the run being read not yet read into
+         * {@code chunk}.
+         */
+        private int left;
+
+        /**
+         * Byte position in the file of the run being read where the next
+         * chunk starts.
+         */
+        private long position;
+
+        /**
+         * Entries read from the run being read, in the slots from
+         * {@code chunkNext} to {@code chunkEnd}.
+         */
+        private Object[] chunk;
+
+        /**
+         * Index of the next entry of {@code chunk} to return.
+         */
+        private int chunkNext;
+
+        /**
+         * Index just past the last entry read into {@code chunk}.
+         */
+        private int chunkEnd;
+
+        /**
+         * No-argument constructor.
+         */
+        private ExternalSortingMachineIterator() {
+            this.next = ExternalSortingMachine.this.cursor;
+            this.runIndex = 0;
+            this.left = 0;
+            this.position = 0;
+            this.chunk = new Object[Math.min(ExternalSortingMachine.this.budget,
+                    ITERATOR_CHUNK)];
+            this.chunkNext = 0;
+            this.chunkEnd = 0;
+            assert ExternalSortingMachine.this.conventionHolds();
+        }
+
+        /**
+         * Reads the next chunk of entries: of the run being read if some of
+         * its entries are left, and of the next run otherwise, skipping the
+         * entries already taken out of it.
+         *
+         * @updates this
+         * @requires <pre>
+         * this.chunkNext = this.chunkEnd  and
+         * (this.left > 0  or  this.runIndex < |runs|)
+         * </pre>
+         * @ensures this.chunkNext = 0  and  this.chunkEnd > 0
+         */
+        private void readChunk() {
+            ExternalSortingMachine<T> m = ExternalSortingMachine.this;
+            int skip = 0;
+            if (this.left == 0) {
+                Run<T> run = m.runs.get(this.runIndex);
+                this.runIndex++;
+                this.left = run.length - run.consumed;
+                this.position = 0;
+                skip = run.consumed;
+            }
+            Path file = m.runs.get(this.runIndex - 1).file;
+            int n = Math.min(this.left, this.chunk.length);
+            try (FileChannel ch = FileChannel.open(file)) {
+                ch.position(this.position);
+                CountingInputStream counted = new CountingInputStream(
+                        new BufferedInputStream(Channels.newInputStream(ch),
+                                STREAM_BUFFER_SIZE));
+                DataInputStream in = new DataInputStream(counted);
+                for (int i = 0; i < skip; i++) {
+                    m.serializer.read(in);
+                }
+                for (int i = 0; i < n; i++) {
+                    this.chunk[i] = m.serializer.read(in);
+                }
+                this.position += counted.count;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            this.left -= n;
+            this.chunkNext = 0;
+            this.chunkEnd = n;
+        }
+
+        @Override
+        public boolean hasNext() {
+            assert ExternalSortingMachine.this.conventionHolds();
+            ExternalSortingMachine<T> m = ExternalSortingMachine.this;
+            return this.next < m.buffered || this.chunkNext < this.chunkEnd
+                    || this.left > 0 || this.runIndex < m.runs.size();
+        }
+
+        @Override
+        public T next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            T result;
+            if (this.next < ExternalSortingMachine.this.buffered) {
+                result = entry(ExternalSortingMachine.this.buffer, this.next);
+                this.next++;
+            } else {
+                if (this.chunkNext == this.chunkEnd) {
+                    this.readChunk();
+                }
+                result = entry(this.chunk, this.chunkNext);
+                this.chunk[this.chunkNext] = null;
+                this.chunkNext++;
+            }
+            assert ExternalSortingMachine.this.conventionHolds();
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
@@ -0,0 +1,369 @@
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import components.sortingmachine.SortingMachine;
+import components.sortingmachine.SortingMachineSecondary;
+
+/**
+ * {@code SortingMachine} represented as an array that is sorted all at once,
+ * on all cores, by {@code changeToExtractionMode}, with implementations of
+ * primary methods.
+ *
+ * <p>
+ * Entries are appended to a plain {@code Object[]}, which grows by doubling.
+ * {@code changeToExtractionMode} sorts it with {@code Arrays.parallelSort},
+ * a fork-join merge sort that splits large arrays over the common pool (and
+ * sorts small ones, below a few thousand entries, on the calling thread).
+ * After that, {@code removeFirst} just returns the entry at a cursor and
+ * advances it, in constant time. Compared with {@code SortingMachine5a}, which
+ * heapifies on one core and pays O(log n) comparisons on every
+ * {@code removeFirst}, all of the O(n log n) work is done up front and in
+ * parallel; the price is that the machine keeps its whole array until it is
+ * emptied, and that the first entry is available only once everything is
+ * sorted. The sort is stable, though a {@code SortingMachine} does not promise
+ * it.
+ *
+ * @param <T>
+ *            type of {@code SortingMachine} entries
+ * @mathdefinitions <pre>
+ * IS_TOTAL_PREORDER (
+ *   r: binary relation on T
+ *  ) : boolean is
+ *  for all x, y, z: T
+ *   ((r(x, y) or r(y, x))  and
+ *    (if (r(x, y) and r(y, z)) then r(x, z)))
+ *
+ * IS_SORTED (
+ *   a: string of T,
+ *   start: integer,
+ *   stop: integer,
+ *   r: binary relation on T
+ *  ) : boolean is
+ *  for all i: integer where (start < i < stop)
+ *   (r(a[i - 1], a[i]))
+ * </pre>
+ * @convention <pre>
+ * IS_TOTAL_PREORDER([relation computed by $this.machineOrder.compare method]  and
+ * 0 <= $this.cursor <= $this.length <= |$this.entries|  and
+ * [$this.entries[i] = null for all 0 <= i < $this.cursor  and
+ *  for all $this.length <= i < |$this.entries|]  and
+ * if $this.insertionMode then
+ *   $this.cursor = 0
+ * else
+ *   IS_SORTED($this.entries, $this.cursor, $this.length,
+ *     [relation computed by $this.machineOrder.compare method])
+ * </pre>
+ * @correspondence <pre>
+ * this = ($this.insertionMode, $this.machineOrder,
+ *   multiset_entries($this.entries[$this.cursor, $this.length)))
+ * </pre>
+ *
+ * @author Andy
+ * @author Mingzhu
+ *
+ */
+public class ParallelSortingMachine<T> extends SortingMachineSecondary<T> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Length of the array before anything is added.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Order.
+     */
+    private Comparator<T> machineOrder;
+
+    /**
+     * Insertion mode.
+     */
+    private boolean insertionMode;
+
+    /**
+     * Entries, in the slots from {@code cursor} to {@code length}.
+     */
+    private Object[] entries;
+
+    /**
+     * Index of the next entry {@code removeFirst} returns.
+     */
+    private int cursor;
+
+    /**
+     * Index just past the last entry.
+     */
+    private int length;
+
+    /**
+     * Returns {@code array[i]} as a {@code T}.
+     *
+     * @param <T>
+     *            type of array entries
+     * @param array
+     *            the array
+     * @param i
+     *            the index
+     * @return array[i]
+     * @requires [array[i] is a T]
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T entry(Object[] array, int i) {
+        /*
+         * This cast cannot fail, since only entries of type T are ever stored
+         * in the array of a ParallelSortingMachine<T>
+         */
+        return (T) array[i];
+    }
+
+    /**
+     * Checks that the part of the convention repeated below holds for the
+     * current representation. So that it takes constant time, only the slots
+     * next to the entries are checked to be null, and the order only between
+     * the entry at the cursor and the one after it.
+     *
+     * @return true if the convention holds (or if assertion checking is off);
+     *         otherwise reports a violated assertion
+     * @convention <pre>
+     * 0 <= $this.cursor <= $this.length <= |$this.entries|  and
+     * [$this.entries[i] = null for i = $this.cursor - 1 if it is >= 0  and
+     *  for i = $this.length if it is < |$this.entries|]  and
+     * if $this.insertionMode then
+     *   $this.cursor = 0
+     * else
+     *   IS_SORTED($this.entries, $this.cursor,
+     *     min($this.cursor + 2, $this.length),
+     *     [relation computed by $this.machineOrder.compare method])
+     * </pre>
+     */
+    private boolean conventionHolds() {
+        assert 0 <= this.cursor : "Violation of: 0 <= $this.cursor";
+        assert this.cursor <= this.length : ""
+                + "Violation of: $this.cursor <= $this.length";
+        assert this.length <= this.entries.length : ""
+                + "Violation of: $this.length <= |$this.entries|";
+        assert this.cursor == 0 || this.entries[this.cursor - 1] == null : ""
+                + "Violation of: $this.entries[$this.cursor - 1] = null";
+        assert this.length == this.entries.length
+                || this.entries[this.length] == null : ""
+                        + "Violation of: $this.entries[$this.length] = null";
+        if (this.insertionMode) {
+            assert this.cursor == 0 : ""
+                    + "Violation of: if $this.insertionMode then"
+                    + " $this.cursor = 0";
+        } else {
+            assert this.cursor + 1 >= this.length || this.machineOrder.compare(
+                    entry(this.entries, this.cursor),
+                    entry(this.entries, this.cursor + 1)) <= 0 : ""
+                            + "Violation of: if not $this.insertionMode"
+                            + " then IS_SORTED($this.entries, $this.cursor,"
+                            + " min($this.cursor + 2, $this.length),"
+                            + " [relation computed by"
+                            + " $this.machineOrder.compare method])";
+        }
+        return true;
+    }
+
+    /**
+     * Creator of initial representation.
+     *
+     * @param order
+     *            total preorder for sorting
+     */
+    private void createNewRep(Comparator<T> order) {
+
+        this.machineOrder = order;
+        this.insertionMode = true;
+        this.entries = new Object[INITIAL_CAPACITY];
+        this.cursor = 0;
+        this.length = 0;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor from order.
+     *
+     * @param order
+     *            total preorder for sorting
+     */
+    public ParallelSortingMachine(Comparator<T> order) {
+        this.createNewRep(order);
+        assert this.conventionHolds();
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final SortingMachine<T> newInstance() {
+        try {
+            Constructor<?> c = this.getClass().getConstructor(Comparator.class);
+            return (SortingMachine<T>) c.newInstance(this.machineOrder);
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.createNewRep(this.machineOrder);
+        assert this.conventionHolds();
+    }
+
+    @Override
+    public final void transferFrom(SortingMachine<T> source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof ParallelSortingMachine<?> : ""
+                + "Violation of: source is of dynamic type"
+                + " ParallelSortingMachine<?>";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case: source must be of dynamic type
+         * ParallelSortingMachine<?>, and the ? must be T or the call would not
+         * have compiled.
+         */
+        ParallelSortingMachine<T> localSource =
+                (ParallelSortingMachine<T>) source;
+        this.insertionMode = localSource.insertionMode;
+        this.machineOrder = localSource.machineOrder;
+        this.entries = localSource.entries;
+        this.cursor = localSource.cursor;
+        this.length = localSource.length;
+        localSource.createNewRep(localSource.machineOrder);
+        assert this.conventionHolds();
+        assert localSource.conventionHolds();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(T x) {
+        assert x != null : "Violation of: x is not null";
+        assert this.isInInsertionMode() : "Violation of: this.insertion_mode";
+        if (this.length == this.entries.length) {
+            this.entries = Arrays.copyOf(this.entries, 2 * this.length);
+        }
+        this.entries[this.length] = x;
+        this.length++;
+        assert this.conventionHolds();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final void changeToExtractionMode() {
+        assert this.isInInsertionMode() : "Violation of: this.insertion_mode";
+
+        this.insertionMode = false;
+        /*
+         * This cast cannot fail: T[] is erased to Object[], and the array only
+         * holds entries of type T, which is all the sort relies on
+         */
+        T[] sortable = (T[]) this.entries;
+        Arrays.parallelSort(sortable, 0, this.length, this.machineOrder);
+
+        assert this.conventionHolds();
+    }
+
+    @Override
+    public final T removeFirst() {
+        assert !this
+                .isInInsertionMode() : "Violation of: not this.insertion_mode";
+        assert this.size() > 0 : "Violation of: this.contents /= {}";
+
+        T removed = entry(this.entries, this.cursor);
+        this.entries[this.cursor] = null;
+        this.cursor++;
+
+        assert this.conventionHolds();
+        return removed;
+    }
+
+    @Override
+    public final boolean isInInsertionMode() {
+        assert this.conventionHolds();
+        return this.insertionMode;
+    }
+
+    @Override
+    public final Comparator<T> order() {
+        assert this.conventionHolds();
+        return this.machineOrder;
+    }
+
+    @Override
+    public final int size() {
+        assert this.conventionHolds();
+        return this.length - this.cursor;
+    }
+
+    @Override
+    public final Iterator<T> iterator() {
+        return new ParallelSortingMachineIterator();
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for
+     * {@code ParallelSortingMachine}.
+     */
+    private final class ParallelSortingMachineIterator implements Iterator<T> {
+
+        /**
+         * Index of the next entry to return.
+         */
+        private int next;
+
+        /**
+         * No-argument constructor.
+         */
+        private ParallelSortingMachineIterator() {
+            this.next = ParallelSortingMachine.this.cursor;
+            assert ParallelSortingMachine.this.conventionHolds();
+        }
+
+        @Override
+        public boolean hasNext() {
+            assert ParallelSortingMachine.this.conventionHolds();
+            return this.next < ParallelSortingMachine.this.length;
+        }
+
+        @Override
+        public T next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            T result = entry(ParallelSortingMachine.this.entries, this.next);
+            this.next++;
+            assert ParallelSortingMachine.this.conventionHolds();
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
@@ -1,18 +1,55 @@
 import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
-import components.array.Array;
-import components.array.Array1L;
-import components.queue.Queue;
-import components.queue.Queue2;
 import components.sortingmachine.SortingMachine;
 import components.sortingmachine.SortingMachineSecondary;
 
 /**
- * {@code SortingMachine} represented as a {@code Queue} and an {@code Array}
- * (using an embedding of heap sort), with implementations of primary methods.
+ * {@code SortingMachine} represented as an array (using an embedding of heap
+ * sort), with implementations of primary methods.
+ *
+ * <p>
+ * The entries are kept in a plain {@code Object[]}, which grows by doubling
+ * while entries are added, and which {@code changeToExtractionMode} turns
+ * into a heap in place, bottom-up (Floyd's method, O(n) comparisons). Sifting
+ * down moves a "hole" rather than exchanging entries: each level costs one
+ * array write instead of three, and the entry being sifted is written once,
+ * where it ends up.
+ *
+ * <p>
+ * The heap is binary by default, but can be made d-ary at construction: each
+ * node then has up to d children, next to each other in the array. A d-ary
+ * heap of n entries has about log_d(n) levels instead of log_2(n), so sifting
+ * down visits fewer, wider levels: more comparisons per level, but the d
+ * children share one or two cache lines, and there are fewer levels to miss
+ * the cache on. A "blocked" heap also leaves the first d - 1 slots of the
+ * array empty, so the children of every node start at a multiple of d: with
+ * d = 16 (64 bytes of 4-byte references) each node's children fill exactly
+ * one block of the array, which lines up with cache lines as far as the JVM
+ * aligns the array itself. See {@code SortingMachine5aBenchmark} for which
+ * arity wins for which entries.
+ *
+ * <p>
+ * A machine made with a {@code limit} is bounded: it keeps only the
+ * {@code limit} entries that come first in its order, which is all a "top N"
+ * query needs. Once it holds {@code limit} entries, they are kept in a heap
+ * whose root is the one that comes last, and each further {@code add} either
+ * drops its argument or replaces that root, in O(log limit) time; so adding n
+ * entries takes O(n log limit) time and O(limit) space, and
+ * {@code changeToExtractionMode} only has {@code limit} entries to heapify.
+ * That is, for a bounded machine, {@code add} ensures:
+ *
+ * <pre>
+ * if |#this.contents| < limit then
+ *   this.contents = #this.contents union {x}
+ * else
+ *   [this.contents is #this.contents union {x} without one of its entries
+ *    that comes last in this.ordering]
+ * </pre>
  *
  * @param <T>
  *            type of {@code SortingMachine} entries
@@ -24,42 +61,37 @@ import components.sortingmachine.SortingMachineSecondary;
  *   ((r(x, y) or r(y, x))  and
  *    (if (r(x, y) and r(y, z)) then r(x, z)))
  *
- * SUBTREE_IS_HEAP (
- *   a: ARRAY_MODEL,
- *   start: integer,
- *   stop: integer,
+ * IS_HEAP (
+ *   a: string of T,
+ *   base: integer,
+ *   d: integer,
+ *   n: integer,
  *   r: binary relation on T
  *  ) : boolean is
- *  [the subtree of a (when a is interpreted as a complete binary tree) rooted
- *   at index start and only through entry stop of a satisfies the heap
- *   ordering property according to the relation r]
- *
- * SUBTREE_ARRAY_ENTRIES (
- *   a: ARRAY_MODEL,
- *   start: integer,
- *   stop: integer
- *  ) : finite multiset of T is
- *  [the multiset of entries in a that belong to the subtree of a
- *   (when a is interpreted as a complete binary tree) rooted at
- *   index start and only through entry stop]
+ *  for all i: integer where (0 < i < n)
+ *   (r(a[base + (i - 1) / d], a[base + i]))
  * </pre>
  * @convention <pre>
  * IS_TOTAL_PREORDER([relation computed by $this.machineOrder.compare method]  and
+ * $this.limit > 0  and
+ * [$this.reverseOrder.compare(x, y) = $this.machineOrder.compare(y, x)]  and
+ * $this.arity >= 2  and
+ * ($this.base = 0  or  $this.base = $this.arity - 1)  and
+ * 0 <= $this.heapSize <= $this.limit  and
+ * $this.base + $this.heapSize <= |$this.heap|  and
+ * [$this.heap[i] = null for all 0 <= i < $this.base  and
+ *  for all $this.base + $this.heapSize <= i < |$this.heap|]  and
  * if $this.insertionMode then
- *   $this.heapSize = 0
+ *   if $this.heapSize = $this.limit then
+ *     IS_HEAP($this.heap, $this.base, $this.arity, $this.heapSize,
+ *       [relation computed by $this.reverseOrder.compare method])
  * else
- *   $this.entries = <>  and
- *   |$this.heap.examinableIndices| = |$this.heap.entries|  and
- *   SUBTREE_IS_HEAP($this.heap, 0, $this.heapSize - 1,
- *     [relation computed by $this.machineOrder.compare method])  and
- *   0 <= $this.heapSize <= |$this.heap.entries|
+ *   IS_HEAP($this.heap, $this.base, $this.arity, $this.heapSize,
+ *     [relation computed by $this.machineOrder.compare method])
  * </pre>
  * @correspondence <pre>
- * if $this.insertionMode then
- *   this = (true, $this.machineOrder, multiset_entries($this.entries))
- * else
- *   this = (false, $this.machineOrder,
- *     multiset_entries($this.heap.entries[0, $this.heapSize)))
+ * this = ($this.insertionMode, $this.machineOrder,
+ *   multiset_entries($this.heap[$this.base, $this.base + $this.heapSize)))
  * </pre>
  *
  * @author Andy
@@ -72,292 +104,308 @@ public class SortingMachine5a<T> extends SortingMachineSecondary<T> {
      * Private members --------------------------------------------------------
      */
 
+    /**
+     * Length of the array of an unbounded machine before anything is added.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
     /**
      * Order.
      */
     private Comparator<T> machineOrder;
 
+    /**
+     * Reverse of the order, for the heap of a bounded machine in insertion
+     * mode.
+     */
+    private Comparator<T> reverseOrder;
+
+    /**
+     * Largest number of entries kept ({@code Integer.MAX_VALUE} if unbounded).
+     */
+    private int limit;
+
+    /**
+     * Number of children of each node of the heap.
+     */
+    private int arity;
+
+    /**
+     * Index in {@code heap} of the root (0, or arity - 1 if blocked).
+     */
+    private int base;
+
     /**
      * Insertion mode.
      */
     private boolean insertionMode;
 
     /**
-     * Entries.
+     * Entries, in the {@code heapSize} slots from {@code base} on.
      */
-    private Queue<T> entries;
+    private Object[] heap;
 
     /**
-     * Heap.
+     * Heap size, i.e., number of entries.
      */
-    private Array<T> heap;
+    private int heapSize;
 
     /**
-     * Heap size.
+     * Returns {@code array[i]} as a {@code T}.
+     *
+     * @param <T>
+     *            type of array entries
+     * @param array
+     *            the array
+     * @param i
+     *            the index
+     * @return array[i]
+     * @requires [array[i] is a T]
      */
-    private int heapSize;
+    @SuppressWarnings("unchecked")
+    private static <T> T entry(Object[] array, int i) {
+        /*
+         * This cast cannot fail, since only entries of type T are ever stored
+         * in the arrays of a SortingMachine5a<T>
+         */
+        return (T) array[i];
+    }
 
     /**
-     * Given an {@code Array} that represents a complete binary tree and an
-     * index referring to the root of a subtree that would be a heap except for
-     * its root, sifts the root down to turn that whole subtree into a heap.
+     * Given an array that holds a complete {@code arity}-ary tree of
+     * {@code size} entries from index {@code base} on, and the (logical)
+     * index of the root of a subtree that would be a heap except for its root,
+     * sifts the root down to turn that whole subtree into a heap.
      *
      * @param <T>
      *            type of array entries
      * @param array
-     *            the complete binary tree
+     *            the complete tree
+     * @param base
+     *            the index in {@code array} of the root of the tree
+     * @param arity
+     *            the number of children of each node
      * @param top
-     *            the index of the root of the "subtree"
-     * @param last
-     *            the index of the last entry in the heap
+     *            the logical index of the root of the "subtree"
+     * @param size
+     *            the number of entries in the tree
      * @param order
      *            total preorder for sorting
-     * @updates array.entries
+     * @updates array
      * @requires <pre>
-     * 0 <= top  and  last < |array.entries|  and
-     * |array.examinableIndices| = |array.entries|  and
-     * [subtree rooted at {@code top} is a complete binary tree]  and
-     * SUBTREE_IS_HEAP(array, 2 * top + 1, last,
-     *     [relation computed by order.compare method])  and
-     * SUBTREE_IS_HEAP(array, 2 * top + 2, last,
-     *     [relation computed by order.compare method])  and
+     * 0 <= base  and  arity >= 2  and
+     * 0 <= top < size  and  base + size <= |array|  and
+     * [the subtrees rooted at the children of top satisfy the heap ordering
+     *  property according to the relation computed by order.compare]  and
      * IS_TOTAL_PREORDER([relation computed by order.compare method])
      * </pre>
      * @ensures <pre>
-     * SUBTREE_IS_HEAP(array, top, last,
-     *     [relation computed by order.compare method])  and
-     * perms(array.entries, #array.entries)  and
-     * SUBTREE_ARRAY_ENTRIES(array, top, last) =
-     *  SUBTREE_ARRAY_ENTRIES(#array, top, last)  and
-     * [the other entries in array.entries are the same as in #array.entries]
+     * [the subtree rooted at top satisfies the heap ordering property
+     *  according to the relation computed by order.compare]  and
+     * [array holds the same entries as #array, and the ones outside the
+     *  subtree rooted at top are where they were]
      * </pre>
      */
-    private static <T> void siftDown(Array<T> array, int top, int last,
-            Comparator<T> order) {
+    private static <T> void siftDown(Object[] array, int base, int arity,
+            int top, int size, Comparator<T> order) {
         assert array != null : "Violation of: array is not null";
         assert order != null : "Violation of: order is not null";
+        assert 0 <= base : "Violation of: 0 <= base";
+        assert arity >= 2 : "Violation of: arity >= 2";
         assert 0 <= top : "Violation of: 0 <= top";
-        assert last < array.length() : "Violation of: last < |array.entries|";
-        for (int i = 0; i < array.length(); i++) {
-            assert array.mayBeExamined(i) : ""
-                    + "Violation of: |array.examinableIndices| = |array.entries|";
-        }
-        assert isHeap(array, 2 * top + 1, last, order) : ""
-                + "Violation of: SUBTREE_IS_HEAP(array, 2 * top + 1, last,"
-                + " [relation computed by order.compare method])";
-        assert isHeap(array, 2 * top + 2, last, order) : ""
-                + "Violation of: SUBTREE_IS_HEAP(array, 2 * top + 2, last,"
-                + " [relation computed by order.compare method])";
+        assert top < size : "Violation of: top < size";
+        assert base + size <= array.length : ""
+                + "Violation of: base + size <= |array|";
         /*
-         * Impractical to check last requires clause; no need to check the other
-         * requires clause, because it must be true when using the Array
-         * representation for a complete binary tree.
+         * Impractical to check the other requires clauses.
          */
 
-        int leftIndex = 2 * top + 1;
-
-        if (leftIndex <= last) {
-            T leftChild = array.entry(leftIndex);
-            T rightChild = leftChild;
-            if (leftIndex + 1 <= last) { //if rightIndex exists
-                rightChild = array.entry(leftIndex + 1);
-            }
-            T smallestChild = leftChild;
-            int indexSwitch = leftIndex; //index to potentially exchange values with root
-            if (order.compare(leftChild, rightChild) > 0) {
-                smallestChild = rightChild;
-                indexSwitch = leftIndex + 1;
+        int end = base + size;
+        T root = entry(array, base + top);
+        int hole = base + top;
+        int child = base + arity * top + 1;
+        boolean placed = false;
+        while (!placed && child < end) {
+            /*
+             * Find the smallest of the (up to arity) children, which are next
+             * to each other in the array
+             */
+            int lastChild = Math.min(child + arity, end);
+            T smallestChild = entry(array, child);
+            for (int c = child + 1; c < lastChild; c++) {
+                T other = entry(array, c);
+                if (order.compare(smallestChild, other) > 0) {
+                    smallestChild = other;
+                    child = c;
+                }
             }
-
-            //found smallest_child of current root HERE
-
-            T currRoot = array.entry(top);
-            if (order.compare(currRoot, smallestChild) > 0) { //ONLY sift_down when bigger
-                array.exchangeEntries(top, indexSwitch);
-                siftDown(array, indexSwitch, last, order);
+            if (order.compare(root, smallestChild) <= 0) {
+                placed = true;
+            } else {
+                //move the smallest child up into the hole
+                array[hole] = smallestChild;
+                hole = child;
+                child = base + arity * (child - base) + 1;
             }
         }
+        array[hole] = root;
     }
 
     /**
-     * Heapifies the subtree of the given {@code Array} rooted at the given
-     * {@code top}.
+     * Turns the {@code size} entries of the given array from index
+     * {@code base} on into an {@code arity}-ary heap, sifting down the root of
+     * every subtree from the last one up.
      *
      * @param <T>
-     *            type of {@code Array} entries
+     *            type of array entries
      * @param array
-     *            the {@code Array} to be turned into a heap
-     * @param top
-     *            the index of the root of the "subtree" to heapify
+     *            the array to be turned into a heap
+     * @param base
+     *            the index in {@code array} of the root of the heap
+     * @param arity
+     *            the number of children of each node
+     * @param size
+     *            the number of entries in the heap
      * @param order
      *            the total preorder for sorting
-     * @updates array.entries
+     * @updates array
      * @requires <pre>
-     * 0 <= top  and
-     * |array.examinableIndices| = |array.entries|  and
-     * [subtree rooted at {@code top} is a complete binary tree]  and
+     * 0 <= base  and  arity >= 2  and
+     * 0 <= size  and  base + size <= |array|  and
      * IS_TOTAL_PREORDER([relation computed by order.compare method])
      * </pre>
      * @ensures <pre>
-     * SUBTREE_IS_HEAP(array, top, |array.entries| - 1,
-     *     [relation computed by order.compare method])  and
-     * perms(array.entries, #array.entries)
+     * IS_HEAP(array, base, arity, size,
+     *   [relation computed by order.compare method])  and
+     * perms(array[base, base + size), #array[base, base + size))  and
+     * [the other entries of array are the same as in #array]
      * </pre>
      */
-    private static <T> void heapify(Array<T> array, int top,
-            Comparator<T> order) {
+    private static <T> void heapify(Object[] array, int base, int arity,
+            int size, Comparator<T> order) {
         assert array != null : "Violation of: array is not null";
         assert order != null : "Violation of: order is not null";
-        assert 0 <= top : "Violation of: 0 <= top";
-        for (int i = 0; i < array.length(); i++) {
-            assert array.mayBeExamined(i) : ""
-                    + "Violation of: |array.examinableIndices| = |array.entries|";
-        }
+        assert 0 <= size : "Violation of: 0 <= size";
+        assert base + size <= array.length : ""
+                + "Violation of: base + size <= |array|";
         /*
-         * Impractical to check last requires clause; no need to check the other
-         * requires clause, because it must be true when using the Array
-         * representation for a complete binary tree.
+         * Impractical to check the last requires clause.
          */
 
-        int leftIndex = 2 * top + 1;
-
-        if (leftIndex < array.length()) {
-            heapify(array, leftIndex, order);
-            heapify(array, leftIndex + 1, order);
-            siftDown(array, top, array.length() - 1, order);
-        }
-
-    }
-
-    /**
-     * Constructs and returns an {@code Array} representing a heap with the
-     * entries from the given {@code Queue}.
-     *
-     * @param <T>
-     *            type of {@code Queue} and {@code Array} entries
-     * @param q
-     *            the {@code Queue} with the entries for the heap
-     * @param order
-     *            the total preorder for sorting
-     * @return the {@code Array} representation of a heap
-     * @clears q
-     * @requires IS_TOTAL_PREORDER([relation computed by order.compare method])
-     * @ensures <pre>
-     * SUBTREE_IS_HEAP(buildHeap, 0, |buildHeap.entries| - 1)  and
-     * perms(buildHeap.entries, #q)  and
-     * |buildHeap.examinableIndices| = |buildHeap.entries|
-     * </pre>
-     */
-    private static <T> Array<T> buildHeap(Queue<T> q, Comparator<T> order) {
-        assert q != null : "Violation of: q is not null";
-        assert order != null : "Violation of: order is not null";
         /*
-         * Impractical to check the requires clause.
+         * The last node with children is the parent of the last node, if
+         * there are at least 2 nodes
          */
-        Array<T> heap = new Array1L<T>(q.length());
-        for (int i = 0; 0 < q.length(); i++) {
-            heap.setEntry(i, q.dequeue());
+        for (int top = (size + arity - 2) / arity - 1; top >= 0; top--) {
+            siftDown(array, base, arity, top, size, order);
         }
-        heapify(heap, 0, order); //0 is top of the entire structure
-
-        return heap;
-
     }
 
     /**
-     * Checks if the subtree of the given {@code Array} rooted at the given
-     * {@code top} is a heap.
+     * Checks if the {@code size} entries of the given array from index
+     * {@code base} on are an {@code arity}-ary heap.
      *
      * @param <T>
-     *            type of {@code Array} entries
+     *            type of array entries
      * @param array
-     *            the complete binary tree
-     * @param top
-     *            the index of the root of the "subtree"
-     * @param last
-     *            the index of the last entry in the heap
+     *            the complete tree
+     * @param base
+     *            the index in {@code array} of the root of the tree
+     * @param arity
+     *            the number of children of each node
+     * @param size
+     *            the number of entries in the heap
      * @param order
      *            total preorder for sorting
-     * @return true if the subtree of the given {@code Array} rooted at the
-     *         given {@code top} is a heap; false otherwise
+     * @return true if the entries are a heap; false otherwise
      * @requires <pre>
-     * 0 <= top  and  last < |array.entries|  and
-     * |array.examinableIndices| = |array.entries|  and
-     * [subtree rooted at {@code top} is a complete binary tree]
+     * 0 <= base  and  arity >= 2  and
+     * 0 <= size  and  base + size <= |array|
      * </pre>
      * @ensures <pre>
-     * isHeap = SUBTREE_IS_HEAP(heap, top, last,
+     * isHeap = IS_HEAP(array, base, arity, size,
      *     [relation computed by order.compare method])
      * </pre>
      */
-    private static <T> boolean isHeap(Array<T> array, int top, int last,
-            Comparator<T> order) {
+    private static <T> boolean isHeap(Object[] array, int base, int arity,
+            int size, Comparator<T> order) {
         assert array != null : "Violation of: array is not null";
-        assert 0 <= top : "Violation of: 0 <= top";
-        assert last < array.length() : "Violation of: last < |array.entries|";
-        for (int i = 0; i < array.length(); i++) {
-            assert array.mayBeExamined(i) : ""
-                    + "Violation of: |array.examinableIndices| = |array.entries|";
-        }
-        /*
-         * No need to check the other requires clause, because it must be true
-         * when using the Array representation for a complete binary tree.
-         */
-        int left = 2 * top + 1;
+        assert 0 <= size : "Violation of: 0 <= size";
+        assert base + size <= array.length : ""
+                + "Violation of: base + size <= |array|";
+
         boolean isHeap = true;
-        if (left <= last) {
-            isHeap = (order.compare(array.entry(top), array.entry(left)) <= 0)
-                    && isHeap(array, left, last, order);
-            int right = left + 1;
-            if (isHeap && (right <= last)) {
-                isHeap = (order.compare(array.entry(top),
-                        array.entry(right)) <= 0)
-                        && isHeap(array, right, last, order);
-            }
+        for (int i = 1; isHeap && i < size; i++) {
+            isHeap = order.compare(entry(array, base + (i - 1) / arity),
+                    entry(array, base + i)) <= 0;
         }
         return isHeap;
     }
 
     /**
      * Checks that the part of the convention repeated below holds for the
-     * current representation.
+     * current representation. So that it takes constant time (for a given
+     * arity), only the first slot past the entries is checked to be null, and
+     * the heap ordering only between the root and its children.
      *
      * @return true if the convention holds (or if assertion checking is off);
      *         otherwise reports a violated assertion
      * @convention <pre>
+     * $this.limit > 0  and
+     * $this.arity >= 2  and
+     * ($this.base = 0  or  $this.base = $this.arity - 1)  and
+     * 0 <= $this.heapSize <= $this.limit  and
+     * $this.base + $this.heapSize <= |$this.heap|  and
+     * [$this.heap[i] = null for all 0 <= i < $this.base  and
+     *  for i = $this.base + $this.heapSize if it is < |$this.heap|]  and
      * if $this.insertionMode then
-     *   $this.heapSize = 0
+     *   if $this.heapSize = $this.limit then
+     *     IS_HEAP($this.heap, $this.base, $this.arity,
+     *       min($this.heapSize, $this.arity + 1),
+     *       [relation computed by $this.reverseOrder.compare method])
      * else
-     *   $this.entries = <>  and
-     *   |$this.heap.examinableIndices| = |$this.heap.entries|  and
-     *   SUBTREE_IS_HEAP($this.heap, 0, $this.heapSize - 1,
-     *     [relation computed by $this.machineOrder.compare method])  and
-     *   0 <= $this.heapSize <= |$this.heap.entries|
+     *   IS_HEAP($this.heap, $this.base, $this.arity,
+     *     min($this.heapSize, $this.arity + 1),
+     *     [relation computed by $this.machineOrder.compare method])
      * </pre>
      */
     private boolean conventionHolds() {
+        assert this.limit > 0 : "Violation of: $this.limit > 0";
+        assert this.arity >= 2 : "Violation of: $this.arity >= 2";
+        assert this.base == 0 || this.base == this.arity - 1 : ""
+                + "Violation of: $this.base = 0 or $this.base = $this.arity - 1";
+        assert 0 <= this.heapSize : "Violation of: 0 <= $this.heapSize";
+        assert this.heapSize <= this.limit : ""
+                + "Violation of: $this.heapSize <= $this.limit";
+        assert this.base + this.heapSize <= this.heap.length : ""
+                + "Violation of: $this.base + $this.heapSize <= |$this.heap|";
+        for (int i = 0; i < this.base; i++) {
+            assert this.heap[i] == null : ""
+                    + "Violation of: $this.heap[i] = null for all"
+                    + " 0 <= i < $this.base";
+        }
+        int end = this.base + this.heapSize;
+        assert end == this.heap.length || this.heap[end] == null : ""
+                + "Violation of: $this.heap[$this.base + $this.heapSize]"
+                + " = null";
+        int top = Math.min(this.heapSize, this.arity + 1);
         if (this.insertionMode) {
-            assert this.heapSize == 0 : ""
-                    + "Violation of: if $this.insertionMode then $this.heapSize = 0";
+            assert this.heapSize < this.limit || isHeap(this.heap, this.base,
+                    this.arity, top, this.reverseOrder) : ""
+                            + "Violation of: if $this.insertionMode and"
+                            + " $this.heapSize = $this.limit then"
+                            + " IS_HEAP($this.heap, $this.base, $this.arity,"
+                            + " min($this.heapSize, $this.arity + 1),"
+                            + " [relation computed by"
+                            + " $this.reverseOrder.compare method])";
         } else {
-            assert this.entries.length() == 0 : ""
-                    + "Violation of: if not $this.insertionMode then $this.entries = <>";
-            assert 0 <= this.heapSize : ""
-                    + "Violation of: if not $this.insertionMode then 0 <= $this.heapSize";
-            assert this.heapSize <= this.heap.length() : ""
-                    + "Violation of: if not $this.insertionMode then"
-                    + " $this.heapSize <= |$this.heap.entries|";
-            for (int i = 0; i < this.heap.length(); i++) {
-                assert this.heap.mayBeExamined(i) : ""
-                        + "Violation of: if not $this.insertionMode then"
-                        + " |$this.heap.examinableIndices| = |$this.heap.entries|";
-            }
-            assert isHeap(this.heap, 0, this.heapSize - 1,
+            assert isHeap(this.heap, this.base, this.arity, top,
                     this.machineOrder) : ""
                             + "Violation of: if not $this.insertionMode then"
-                            + " SUBTREE_IS_HEAP($this.heap, 0, $this.heapSize - 1,"
-                            + " [relation computed by $this.machineOrder.compare"
-                            + " method])";
+                            + " IS_HEAP($this.heap, $this.base, $this.arity,"
+                            + " min($this.heapSize, $this.arity + 1),"
+                            + " [relation computed by"
+                            + " $this.machineOrder.compare method])";
         }
         return true;
     }
@@ -367,12 +415,28 @@ public class SortingMachine5a<T> extends SortingMachineSecondary<T> {
      *
      * @param order
      *            total preorder for sorting
+     * @param max
+     *            largest number of entries kept
+     * @param d
+     *            number of children of each node of the heap
+     * @param blocked
+     *            whether the children of each node start at a multiple of d
      */
-    private void createNewRep(Comparator<T> order) {
+    private void createNewRep(Comparator<T> order, int max, int d,
+            boolean blocked) {
 
         this.machineOrder = order;
+        this.reverseOrder = Collections.reverseOrder(order);
+        this.limit = max;
+        this.arity = d;
+        if (blocked) {
+            this.base = d - 1;
+        } else {
+            this.base = 0;
+        }
         this.insertionMode = true;
-        this.entries = new Queue2<>();
+        this.heap = new Object[this.base + Math.min(max, INITIAL_CAPACITY)];
+        this.heapSize = 0;
     }
 
     /*
@@ -386,7 +450,46 @@ public class SortingMachine5a<T> extends SortingMachineSecondary<T> {
      *            total preorder for sorting
      */
     public SortingMachine5a(Comparator<T> order) {
-        this.createNewRep(order);
+        this.createNewRep(order, Integer.MAX_VALUE, 2, false);
+        assert this.conventionHolds();
+    }
+
+    /**
+     * Constructor from order and limit, for a bounded machine that keeps only
+     * the {@code limit} entries that come first in {@code order}.
+     *
+     * @param order
+     *            total preorder for sorting
+     * @param limit
+     *            largest number of entries kept
+     * @requires limit > 0
+     */
+    public SortingMachine5a(Comparator<T> order, int limit) {
+        assert limit > 0 : "Violation of: limit > 0";
+        this.createNewRep(order, limit, 2, false);
+        assert this.conventionHolds();
+    }
+
+    /**
+     * Constructor from order, limit and heap layout.
+     *
+     * @param order
+     *            total preorder for sorting
+     * @param limit
+     *            largest number of entries kept ({@code Integer.MAX_VALUE} for
+     *            no limit)
+     * @param arity
+     *            number of children of each node of the heap
+     * @param blocked
+     *            whether the children of each node start at a multiple of
+     *            {@code arity} in the array
+     * @requires limit > 0  and  arity >= 2
+     */
+    public SortingMachine5a(Comparator<T> order, int limit, int arity,
+            boolean blocked) {
+        assert limit > 0 : "Violation of: limit > 0";
+        assert arity >= 2 : "Violation of: arity >= 2";
+        this.createNewRep(order, limit, arity, blocked);
         assert this.conventionHolds();
     }
 
@@ -398,8 +501,10 @@ public class SortingMachine5a<T> extends SortingMachineSecondary<T> {
     @Override
     public final SortingMachine<T> newInstance() {
         try {
-            Constructor<?> c = this.getClass().getConstructor(Comparator.class);
-            return (SortingMachine<T>) c.newInstance(this.machineOrder);
+            Constructor<?> c = this.getClass().getConstructor(Comparator.class,
+                    int.class, int.class, boolean.class);
+            return (SortingMachine<T>) c.newInstance(this.machineOrder,
+                    this.limit, this.arity, this.base > 0);
         } catch (ReflectiveOperationException e) {
             throw new AssertionError(
                     "Cannot construct object of type " + this.getClass());
@@ -408,7 +513,8 @@ public class SortingMachine5a<T> extends SortingMachineSecondary<T> {
 
     @Override
     public final void clear() {
-        this.createNewRep(this.machineOrder);
+        this.createNewRep(this.machineOrder, this.limit, this.arity,
+                this.base > 0);
         assert this.conventionHolds();
     }
 
@@ -427,10 +533,14 @@ public class SortingMachine5a<T> extends SortingMachineSecondary<T> {
         SortingMachine5a<T> localSource = (SortingMachine5a<T>) source;
         this.insertionMode = localSource.insertionMode;
         this.machineOrder = localSource.machineOrder;
-        this.entries = localSource.entries;
+        this.reverseOrder = localSource.reverseOrder;
+        this.limit = localSource.limit;
+        this.arity = localSource.arity;
+        this.base = localSource.base;
         this.heap = localSource.heap;
         this.heapSize = localSource.heapSize;
-        localSource.createNewRep(localSource.machineOrder);
+        localSource.createNewRep(localSource.machineOrder, localSource.limit,
+                localSource.arity, localSource.base > 0);
         assert this.conventionHolds();
         assert localSource.conventionHolds();
     }
@@ -443,7 +553,28 @@ public class SortingMachine5a<T> extends SortingMachineSecondary<T> {
     public final void add(T x) {
         assert x != null : "Violation of: x is not null";
         assert this.isInInsertionMode() : "Violation of: this.insertion_mode";
-        this.entries.enqueue(x);
+        if (this.heapSize < this.limit) {
+            if (this.base + this.heapSize == this.heap.length) {
+                int capacity = (int) Math.min(this.limit,
+                        Math.max(2L * this.heapSize, 1));
+                this.heap = Arrays.copyOf(this.heap, this.base + capacity);
+            }
+            this.heap[this.base + this.heapSize] = x;
+            this.heapSize++;
+            if (this.heapSize == this.limit) {
+                /*
+                 * Full: from now on, keep the entries in a heap whose root is
+                 * the entry the next one must beat to be kept
+                 */
+                heapify(this.heap, this.base, this.arity, this.heapSize,
+                        this.reverseOrder);
+            }
+        } else if (this.machineOrder.compare(x,
+                entry(this.heap, this.base)) < 0) {
+            this.heap[this.base] = x;
+            siftDown(this.heap, this.base, this.arity, 0, this.heapSize,
+                    this.reverseOrder);
+        }
         assert this.conventionHolds();
     }
 
@@ -452,9 +583,8 @@ public class SortingMachine5a<T> extends SortingMachineSecondary<T> {
         assert this.isInInsertionMode() : "Violation of: this.insertion_mode";
 
         this.insertionMode = false;
-
-        this.heap = buildHeap(this.entries, this.machineOrder);
-        this.heapSize = this.heap.length(); //which is the same as this.entries.length()
+        heapify(this.heap, this.base, this.arity, this.heapSize,
+                this.machineOrder);
 
         assert this.conventionHolds();
     }
@@ -465,10 +595,14 @@ public class SortingMachine5a<T> extends SortingMachineSecondary<T> {
                 .isInInsertionMode() : "Violation of: not this.insertion_mode";
         assert this.size() > 0 : "Violation of: this.contents /= {}";
 
-        T removed = this.heap.entry(0); //aliasing
-        this.heap.exchangeEntries(0, this.heapSize - 1);
+        T removed = entry(this.heap, this.base);
         this.heapSize--;
-        siftDown(this.heap, 0, this.heapSize - 1, this.machineOrder);
+        this.heap[this.base] = this.heap[this.base + this.heapSize];
+        this.heap[this.base + this.heapSize] = null;
+        if (this.heapSize > 0) {
+            siftDown(this.heap, this.base, this.arity, 0, this.heapSize,
+                    this.machineOrder);
+        }
 
         assert this.conventionHolds();
         return removed;
@@ -488,15 +622,8 @@ public class SortingMachine5a<T> extends SortingMachineSecondary<T> {
 
     @Override
     public final int size() {
-
-        int size = 0;
-        if (this.insertionMode) { //meaning still in insertion mode
-            size = this.entries.length();
-        } else {
-            size = this.heapSize;
-        }
         assert this.conventionHolds();
-        return size;
+        return this.heapSize;
     }
 
     @Override
@@ -511,37 +638,22 @@ public class SortingMachine5a<T> extends SortingMachineSecondary<T> {
     private final class SortingMachine5aIterator implements Iterator<T> {
 
         /**
-         * Representation iterator.
+         * Number of entries seen so far.
          */
-        private final Iterator<T> iterator;
-
-        /**
-         * Iterator count.
-         */
-        private int notSeenCount;
+        private int numberSeen;
 
         /**
          * No-argument constructor.
          */
         private SortingMachine5aIterator() {
-            if (SortingMachine5a.this.insertionMode) {
-                this.iterator = SortingMachine5a.this.entries.iterator();
-            } else {
-                this.iterator = SortingMachine5a.this.heap.iterator();
-                this.notSeenCount = SortingMachine5a.this.heapSize;
-            }
+            this.numberSeen = 0;
             assert SortingMachine5a.this.conventionHolds();
         }
 
         @Override
         public boolean hasNext() {
-            if (!SortingMachine5a.this.insertionMode
-                    && (this.notSeenCount == 0)) {
-                assert SortingMachine5a.this.conventionHolds();
-                return false;
-            }
             assert SortingMachine5a.this.conventionHolds();
-            return this.iterator.hasNext();
+            return this.numberSeen < SortingMachine5a.this.heapSize;
         }
 
         @Override
@@ -555,11 +667,11 @@ public class SortingMachine5a<T> extends SortingMachineSecondary<T> {
                  */
                 throw new NoSuchElementException();
             }
-            if (!SortingMachine5a.this.insertionMode) {
-                this.notSeenCount--;
-            }
+            T next = entry(SortingMachine5a.this.heap,
+                    SortingMachine5a.this.base + this.numberSeen);
+            this.numberSeen++;
             assert SortingMachine5a.this.conventionHolds();
-            return this.iterator.next();
+            return next;
         }
 
         @Override
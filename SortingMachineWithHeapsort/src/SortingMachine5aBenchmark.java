@@ -0,0 +1,257 @@
+import java.util.Comparator;
+import java.util.Random;
+
+import components.map.Map;
+import components.map.Map1L;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+import components.sortingmachine.SortingMachine;
+
+/**
+ * Times heap sort with {@code SortingMachine5a} for each heap layout (arity 2,
+ * 4, 8 and 16, plain and blocked), on {@code String}s and on the
+ * {@code Map.Pair<String, Integer>}s the tag cloud generators sort, for
+ * 10^3 up to 10^6 entries, and reports the time per entry of filling the
+ * machine and heapifying it, and of emptying it with {@code removeFirst}.
+ *
+ * <p>
+ * The strings are "word0", "word1", ..., shuffled, so comparing two of them
+ * reads a few characters of each. The pairs have those strings as keys and
+ * small counts as values, and are ordered as in {@code TagCloudGen}: by
+ * decreasing count, then by key, so most comparisons of pairs with equal
+ * counts compare strings too. Each size is sorted often enough to handle
+ * about {@code ENTRIES_PER_CELL} entries, so every figure averages over about
+ * the same amount of work.
+ *
+ * @author Andy
+ * @author Mingzhu
+ *
+ */
+public final class SortingMachine5aBenchmark {
+
+    /**
+     * Smallest number of entries sorted.
+     */
+    private static final int MIN_SIZE = 1_000;
+
+    /**
+     * Largest number of entries sorted.
+     */
+    private static final int MAX_SIZE = 1_000_000;
+
+    /**
+     * Factor between successive numbers of entries.
+     */
+    private static final int SIZE_STEP = 10;
+
+    /**
+     * Number of entries sorted per size and layout, whatever the size.
+     */
+    private static final int ENTRIES_PER_CELL = 2_000_000;
+
+    /**
+     * Number of untimed runs first so the JIT compiler has warmed up.
+     */
+    private static final int WARM_UP_RUNS = 3;
+
+    /**
+     * Arities timed.
+     */
+    private static final int[] ARITIES = { 2, 4, 8, 16 };
+
+    /**
+     * Largest count given to a pair.
+     */
+    private static final int MAX_COUNT = 100;
+
+    /**
+     * Seed of the shuffles and counts, so every run sorts the same entries.
+     */
+    private static final long SEED = 42;
+
+    /**
+     * Order of the pairs: by decreasing count, then by key.
+     */
+    private static final class PairOrder
+            implements Comparator<Map.Pair<String, Integer>> {
+        @Override
+        public int compare(Map.Pair<String, Integer> p1,
+                Map.Pair<String, Integer> p2) {
+            int result = p2.value().compareTo(p1.value());
+            if (result == 0) {
+                result = p1.key().compareTo(p2.key());
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private SortingMachine5aBenchmark() {
+    }
+
+    /**
+     * Returns the strings {@code prefix + i} for 0 <= i < n, shuffled.
+     *
+     * @param prefix
+     *            the prefix of every string
+     * @param n
+     *            the number of strings
+     * @param random
+     *            the source of randomness
+     * @return the strings
+     */
+    private static String[] words(String prefix, int n, Random random) {
+        String[] result = new String[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = new StringBuilder(prefix).append(i).toString();
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            String t = result[i];
+            result[i] = result[j];
+            result[j] = t;
+        }
+        return result;
+    }
+
+    /**
+     * Returns pairs with keys {@code words}, in the same order, and random
+     * counts from 1 to {@code MAX_COUNT}.
+     *
+     * @param words
+     *            the keys
+     * @param random
+     *            the source of randomness
+     * @return the pairs
+     */
+    private static Object[] pairs(String[] words, Random random) {
+        Map<String, Integer> counts = new Map1L<>();
+        for (String w : words) {
+            counts.add(w, 1 + random.nextInt(MAX_COUNT));
+        }
+        Map<String, Map.Pair<String, Integer>> byKey = new Map1L<>();
+        for (Map.Pair<String, Integer> p : counts) {
+            byKey.add(p.key(), p);
+        }
+        Object[] result = new Object[words.length];
+        for (int i = 0; i < words.length; i++) {
+            result[i] = byKey.value(words[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Sorts {@code entries} {@code reps} times with a machine of the given
+     * layout, and returns the elapsed times of filling and heapifying, and of
+     * emptying, in nanoseconds.
+     *
+     * @param <T>
+     *            type of entries
+     * @param entries
+     *            the entries
+     * @param order
+     *            the order
+     * @param arity
+     *            the arity of the heap
+     * @param blocked
+     *            whether the heap is blocked
+     * @param reps
+     *            the number of sorts
+     * @return the two elapsed times
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> long[] time(Object[] entries, Comparator<T> order,
+            int arity, boolean blocked, int reps) {
+        long fill = 0;
+        long empty = 0;
+        long checksum = 0;
+        for (int r = 0; r < reps; r++) {
+            SortingMachine<T> m = new SortingMachine5a<>(order,
+                    Integer.MAX_VALUE, arity, blocked);
+            long start = System.nanoTime();
+            for (Object x : entries) {
+                m.add((T) x);
+            }
+            m.changeToExtractionMode();
+            long middle = System.nanoTime();
+            while (m.size() > 0) {
+                checksum += m.removeFirst().hashCode();
+            }
+            long stop = System.nanoTime();
+            fill += middle - start;
+            empty += stop - middle;
+        }
+        /*
+         * Use the result, so the sorting cannot be optimized away
+         */
+        if (checksum == 1) {
+            throw new AssertionError();
+        }
+        return new long[] { fill, empty };
+    }
+
+    /**
+     * Returns a name for the given layout.
+     *
+     * @param arity
+     *            the arity of the heap
+     * @param blocked
+     *            whether the heap is blocked
+     * @return the name
+     */
+    private static String layout(int arity, boolean blocked) {
+        String name = arity + "-ary";
+        if (blocked) {
+            name = name + " blocked";
+        }
+        return name;
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        SimpleWriter out = new SimpleWriter1L();
+        Random random = new Random(SEED);
+        Comparator<String> stringOrder = Comparator.naturalOrder();
+        Comparator<Map.Pair<String, Integer>> pairOrder = new PairOrder();
+        boolean[] blocks = { false, true };
+
+        String[] warmWords = words("word", MIN_SIZE, random);
+        Object[] warmPairs = pairs(warmWords, random);
+        for (int run = 0; run < WARM_UP_RUNS; run++) {
+            for (int arity : ARITIES) {
+                for (boolean blocked : blocks) {
+                    time(warmWords, stringOrder, arity, blocked, 1);
+                    time(warmPairs, pairOrder, arity, blocked, 1);
+                }
+            }
+        }
+
+        out.println("entries\tlayout\tentry\tfill ns/entry\tempty ns/entry");
+        for (int n = MIN_SIZE; n <= MAX_SIZE; n *= SIZE_STEP) {
+            String[] words = words("word", n, random);
+            Object[] pairs = pairs(words, random);
+            int reps = Math.max(1, ENTRIES_PER_CELL / n);
+            long perCell = (long) reps * n;
+            for (int arity : ARITIES) {
+                for (boolean blocked : blocks) {
+                    long[] s = time(words, stringOrder, arity, blocked, reps);
+                    out.println(n + "\t" + layout(arity, blocked) + "\tString\t"
+                            + s[0] / perCell + "\t" + s[1] / perCell);
+                    long[] p = time(pairs, pairOrder, arity, blocked, reps);
+                    out.println(n + "\t" + layout(arity, blocked) + "\tPair\t"
+                            + p[0] / perCell + "\t" + p[1] / perCell);
+                }
+            }
+        }
+
+        out.close();
+    }
+
+}
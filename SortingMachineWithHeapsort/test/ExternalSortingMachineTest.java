@@ -0,0 +1,169 @@
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+
+import org.junit.Test;
+
+import components.sortingmachine.SortingMachine;
+import components.sortingmachine.SortingMachine1L;
+
+/**
+ * Customized JUnit test fixture for {@code ExternalSortingMachine}, with a
+ * memory budget of {@code BUDGET} entries so that most tests spill runs.
+ */
+public final class ExternalSortingMachineTest extends SortingMachineTest {
+
+    /**
+     * Largest number of entries kept in memory by the machines under test.
+     */
+    private static final int BUDGET = 2;
+
+    /**
+     * Number of entries added by the test of the iterator that makes more
+     * runs than are merged at once (64), with a budget of
+     * {@code MANY_BUDGET}.
+     */
+    private static final int MANY = 10000;
+
+    /**
+     * Memory budget of the test that adds {@code MANY} entries.
+     */
+    private static final int MANY_BUDGET = 7;
+
+    /**
+     * Longest time, in milliseconds, the cleaner test waits for the files of
+     * an unreachable machine to be deleted.
+     */
+    private static final long CLEANER_TIMEOUT = 10000;
+
+    /**
+     * Pause, in milliseconds, between two checks of the cleaner test.
+     */
+    private static final long CLEANER_PAUSE = 10;
+
+    /**
+     * Returns the number of run files in the temporary directory.
+     *
+     * @return the number of run files
+     */
+    private static int runFiles() {
+        Path dir = Paths.get(System.getProperty("java.io.tmpdir"));
+        int count = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir,
+                "ExternalSortingMachine*.run")) {
+            for (Path f : files) {
+                count++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return count;
+    }
+
+    /**
+     * Adds {@code MANY} entries to a new machine, removes only the first and
+     * drops the machine.
+     *
+     * @return the number of run files while the machine was reachable
+     */
+    private int abandonMachine() {
+        SortingMachine<String> m = this.constructorTest(
+                Comparator.naturalOrder());
+        for (int i = 0; i < MANY; i++) {
+            m.add(String.format("k%04d", i));
+        }
+        m.changeToExtractionMode();
+        assertEquals("k0000", m.removeFirst());
+        return runFiles();
+    }
+
+    @Override
+    protected SortingMachine<String> constructorTest(Comparator<String> order) {
+        return new ExternalSortingMachine<String>(order,
+                EntrySerializers.strings(), BUDGET);
+    }
+
+    @Override
+    protected SortingMachine<String> constructorRef(Comparator<String> order) {
+        return new SortingMachine1L<String>(order);
+    }
+
+    @Test
+    public final void testIteratorPartlyExtracted() {
+        final int stride = 3337;
+        final int extracted = MANY / 3;
+        Comparator<String> order = Comparator.naturalOrder();
+        SortingMachine<String> m = new ExternalSortingMachine<String>(order,
+                EntrySerializers.strings(), MANY_BUDGET);
+        SortingMachine<String> mExpected = this.constructorRef(order);
+        for (int i = 0; i < MANY; i++) {
+            String x = String.format("k%04d", (i * stride) % MANY);
+            m.add(x);
+            mExpected.add(x);
+        }
+        m.changeToExtractionMode();
+        mExpected.changeToExtractionMode();
+        for (int i = 0; i < extracted; i++) {
+            assertEquals(mExpected.removeFirst(), m.removeFirst());
+        }
+        assertEquals(mExpected, m);
+    }
+
+    @Test
+    public final void testRemoveFirstUnicode() {
+        Comparator<String> order = Comparator.naturalOrder();
+        SortingMachine<String> m = this.constructorTest(order);
+        m.add("\u00e9t\u00e9");
+        m.add("zebra");
+        m.add("\u65e5\u672c");
+        m.add("apple");
+        m.add("");
+        m.changeToExtractionMode();
+        assertEquals("", m.removeFirst());
+        assertEquals("apple", m.removeFirst());
+        assertEquals("zebra", m.removeFirst());
+        assertEquals("\u00e9t\u00e9", m.removeFirst());
+        assertEquals("\u65e5\u672c", m.removeFirst());
+        assertEquals(0, m.size());
+    }
+
+    @Test
+    public final void testClearExtractionMode() {
+        Comparator<String> order = Comparator.naturalOrder();
+        SortingMachine<String> m = this.constructorTest(order);
+        m.add("green");
+        m.add("apple");
+        m.add("blue");
+        m.add("red");
+        m.add("cyan");
+        m.changeToExtractionMode();
+        assertEquals("apple", m.removeFirst());
+        m.clear();
+        assertEquals(0, m.size());
+        assertEquals(true, m.isInInsertionMode());
+        m.add("pink");
+        m.changeToExtractionMode();
+        assertEquals("pink", m.removeFirst());
+    }
+
+    @Test
+    public final void testCleanerDeletesRunsOfDroppedMachine()
+            throws InterruptedException {
+        int before = runFiles();
+        assertEquals(true, this.abandonMachine() > before);
+        long deadline = System.currentTimeMillis() + CLEANER_TIMEOUT;
+        while (runFiles() > before
+                && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Thread.sleep(CLEANER_PAUSE);
+        }
+        assertEquals(true, runFiles() <= before);
+    }
+
+}
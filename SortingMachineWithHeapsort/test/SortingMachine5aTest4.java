@@ -0,0 +1,28 @@
+import java.util.Comparator;
+
+import components.sortingmachine.SortingMachine;
+import components.sortingmachine.SortingMachine1L;
+
+/**
+ * Customized JUnit test fixture for {@code SortingMachine5a} using a 4-ary
+ * heap.
+ */
+public final class SortingMachine5aTest4 extends SortingMachineTest {
+
+    /**
+     * Number of children of each node of the heap.
+     */
+    private static final int ARITY = 4;
+
+    @Override
+    protected SortingMachine<String> constructorTest(Comparator<String> order) {
+        return new SortingMachine5a<String>(order, Integer.MAX_VALUE, ARITY,
+                false);
+    }
+
+    @Override
+    protected SortingMachine<String> constructorRef(Comparator<String> order) {
+        return new SortingMachine1L<String>(order);
+    }
+
+}
@@ -0,0 +1,29 @@
+import java.util.Comparator;
+
+import components.sortingmachine.SortingMachine;
+import components.sortingmachine.SortingMachine1L;
+
+/**
+ * Customized JUnit test fixture for {@code SortingMachine5a} using a 16-ary
+ * blocked heap, whose child groups each fill a 64-byte block of 4-byte
+ * references.
+ */
+public final class SortingMachine5aTestBlocked16 extends SortingMachineTest {
+
+    /**
+     * Number of children of each node of the heap.
+     */
+    private static final int ARITY = 16;
+
+    @Override
+    protected SortingMachine<String> constructorTest(Comparator<String> order) {
+        return new SortingMachine5a<String>(order, Integer.MAX_VALUE, ARITY,
+                true);
+    }
+
+    @Override
+    protected SortingMachine<String> constructorRef(Comparator<String> order) {
+        return new SortingMachine1L<String>(order);
+    }
+
+}
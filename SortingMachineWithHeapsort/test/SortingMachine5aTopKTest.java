@@ -0,0 +1,132 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.Comparator;
+
+import org.junit.Test;
+
+import components.sortingmachine.SortingMachine;
+import components.sortingmachine.SortingMachine1L;
+
+/**
+ * Customized JUnit test fixture for {@code SortingMachine5a} bounded to
+ * {@code LIMIT} entries: the kernel tests of {@code SortingMachineTest}, some
+ * of which fill the machine exactly (and one of which, told the limit, adds
+ * more), plus tests that add more.
+ */
+public final class SortingMachine5aTopKTest extends SortingMachineTest {
+
+    /**
+     * Largest number of entries kept by the machines under test.
+     */
+    private static final int LIMIT = 4;
+
+    /**
+     * Number of entries added by the tests that add more than {@code LIMIT}.
+     */
+    private static final int MANY = 1000;
+
+    /**
+     * Order of the tests that add more than {@code LIMIT}.
+     */
+    private static final Comparator<String> NATURAL = Comparator
+            .naturalOrder();
+
+    @Override
+    protected SortingMachine<String> constructorTest(Comparator<String> order) {
+        return new SortingMachine5a<String>(order, LIMIT);
+    }
+
+    @Override
+    protected SortingMachine<String> constructorRef(Comparator<String> order) {
+        return new SortingMachine1L<String>(order);
+    }
+
+    @Override
+    protected int limit() {
+        return LIMIT;
+    }
+
+    /**
+     * Returns the key of the {@code i}-th entry added by the tests that add
+     * more than {@code LIMIT}: "k000" to "k999", in an order far from sorted.
+     *
+     * @param i
+     *            the index of the entry
+     * @return the entry
+     */
+    private static String key(int i) {
+        final int stride = 337;
+        return String.format("k%03d", (i * stride) % MANY);
+    }
+
+    @Test
+    public final void testAddManyKeepsFirst() {
+        SortingMachine<String> m = this.constructorTest(NATURAL);
+        SortingMachine<String> mExpected = this.constructorRef(NATURAL);
+        for (int i = 0; i < MANY; i++) {
+            m.add(key(i));
+        }
+        for (int i = 0; i < LIMIT; i++) {
+            mExpected.add(String.format("k%03d", i));
+        }
+        assertEquals(LIMIT, m.size());
+        assertEquals(mExpected, m);
+        m.changeToExtractionMode();
+        for (int i = 0; i < LIMIT; i++) {
+            assertEquals(String.format("k%03d", i), m.removeFirst());
+        }
+        assertEquals(0, m.size());
+    }
+
+    @Test
+    public final void testAddManyEqual() {
+        SortingMachine<String> m = this.constructorTest(NATURAL);
+        for (int i = 0; i < MANY; i++) {
+            m.add("same");
+        }
+        m.add("first");
+        assertEquals(LIMIT, m.size());
+        m.changeToExtractionMode();
+        assertEquals("first", m.removeFirst());
+        for (int i = 1; i < LIMIT; i++) {
+            assertEquals("same", m.removeFirst());
+        }
+    }
+
+    @Test
+    public final void testNewInstanceAndClearKeepLimit() {
+        SortingMachine<String> m = this.constructorTest(NATURAL);
+        for (int i = 0; i < MANY; i++) {
+            m.add(key(i));
+        }
+        SortingMachine<String> n = m.newInstance();
+        for (int i = 0; i < MANY; i++) {
+            n.add(key(i));
+        }
+        assertEquals(m, n);
+        m.clear();
+        for (int i = 0; i < MANY; i++) {
+            m.add(key(i));
+        }
+        assertEquals(LIMIT, m.size());
+    }
+
+    @Test
+    public final void testTransferFromBounded() {
+        SortingMachine<String> m = this.constructorTest(NATURAL);
+        SortingMachine<String> mExpected = this.constructorTest(NATURAL);
+        for (int i = 0; i < MANY; i++) {
+            m.add(key(i));
+            mExpected.add(key(i));
+        }
+        SortingMachine<String> n = this.constructorTest(NATURAL);
+        n.transferFrom(m);
+        assertEquals(mExpected, n);
+        assertEquals(0, m.size());
+        for (int i = 0; i < MANY; i++) {
+            m.add(key(i));
+        }
+        assertEquals(mExpected, m);
+    }
+
+}
@@ -42,6 +42,18 @@ public abstract class SortingMachineTest {
     protected abstract SortingMachine<String> constructorRef(
             Comparator<String> order);
 
+    /**
+     * Returns the largest number of entries kept by the machines returned by
+     * {@code constructorTest}; a bounded machine keeps the ones that come
+     * first. Only {@code testRemoveFirstMany} adds more than 4 entries.
+     *
+     * @return the largest number of entries kept
+     * @ensures limit > 0
+     */
+    protected int limit() {
+        return Integer.MAX_VALUE;
+    }
+
     /**
      *
      * Creates and returns a {@code SortingMachine<String>} of the
@@ -118,6 +130,13 @@ public abstract class SortingMachineTest {
      */
     private static final StringLT ORDER = new StringLT();
 
+    /**
+     * Number of entries added by {@code testRemoveFirstMany}: far more than
+     * any of the other tests add, with each entry added twice, so that the
+     * machine must give back many equal entries, in order.
+     */
+    private static final int MANY = 10000;
+
     /*
      * Constructor test cases.
      */
@@ -276,4 +295,39 @@ public abstract class SortingMachineTest {
         assertEquals(mExpected.size(), m.size());
         assertEquals(mExpected.size(), 4);
     }
+
+    /*
+     * Tests with many entries, and of transferFrom in extraction mode.
+     */
+    @Test
+    public final void testRemoveFirstMany() {
+        final int stride = 3337;
+        final int distinct = MANY / 2;
+        SortingMachine<String> m = this.constructorTest(ORDER);
+        for (int i = 0; i < MANY; i++) {
+            m.add(String.format("k%04d", (i * stride) % distinct));
+        }
+        m.changeToExtractionMode();
+        int kept = Math.min(MANY, this.limit());
+        assertEquals(kept, m.size());
+        for (int i = 0; i < kept; i++) {
+            assertEquals(String.format("k%04d", i / 2), m.removeFirst());
+        }
+        assertEquals(0, m.size());
+    }
+
+    @Test
+    public final void testTransferFromExtractionMode() {
+        SortingMachine<String> m = this.createFromArgsTest(ORDER, true, "green",
+                "apple", "blue");
+        m.changeToExtractionMode();
+        assertEquals("apple", m.removeFirst());
+        SortingMachine<String> n = m.newInstance();
+        n.transferFrom(m);
+        assertEquals(0, m.size());
+        assertEquals(true, m.isInInsertionMode());
+        assertEquals("blue", n.removeFirst());
+        assertEquals("green", n.removeFirst());
+        assertEquals(0, n.size());
+    }
 }
@@ -1,7 +1,6 @@
 import java.util.Comparator;
 
 import components.map.Map;
-import components.map.Map1L;
 import components.set.Set;
 import components.set.Set1L;
 import components.set.Set2;
@@ -107,7 +106,7 @@ public final class TagCloudGen {
      */
     public static Map<String, Integer> wordCount(Set<Character> separator,
             SimpleReader input) {
-        Map<String, Integer> count = new Map1L<>();
+        CountingMap4<String> count = new CountingMap4<>();
         while (!input.atEOS()) {
             String sentence = input.nextLine();
             if (!sentence.isEmpty()) {
@@ -118,14 +117,7 @@ public final class TagCloudGen {
                             sentence).toLowerCase();
                     //check if what we get is a word
                     if (isWord(separator, nextString)) {
-                        if (!count.hasKey(nextString)) {
-                            count.add(nextString, 1);
-                        } else {
-                            int addValue = count.value(nextString);
-                            addValue++;
-                            count.replaceValue(nextString, addValue);
-                        }
-
+                        count.increment(nextString);
                     }
                     position = position + nextString.length();
                 }
@@ -143,7 +135,10 @@ public final class TagCloudGen {
      * @clears currMap
      * @replaces resultSM
      * @return min value in {@code currMap}
-     * @ensures resultSM.entries = #resultSM.entries * currMap
+     * @ensures <pre>
+     * resultSM.entries = #resultSM.entries * currMap
+     * [or, if resultSM is bounded, as many of those as it keeps]
+     * </pre>
      */
     public static int sorter(SortingMachine<Map.Pair<String, Integer>> resultSM,
             Map<String, Integer> currMap) {
@@ -160,7 +155,7 @@ public final class TagCloudGen {
                 }
             }
         }
-        resultSM.changeToExtractionMode(); //not sorted yet (SELECTION SORT ALG)
+        resultSM.changeToExtractionMode(); //heapifies only what resultSM kept
         //currMap here is cleared
         return min;
     }
@@ -400,8 +395,8 @@ public final class TagCloudGen {
         separatorsSet(separators);
         Map<String, Integer> words = wordCount(separators, input);
         Comparator<Map.Pair<String, Integer>> compVal = new PairComparator();
-        SortingMachine<Map.Pair<String, Integer>> mySM = new SortingMachine2<>(
-                compVal); //embedding SELECTION SORT (best for small-mid N values)
+        SortingMachine<Map.Pair<String, Integer>> mySM = new SortingMachine5a<>(
+                compVal, top); //keeps only the top N pairs while they are added
 
         final int min = sorter(mySM, words);
 
@@ -413,8 +408,8 @@ public final class TagCloudGen {
         final int max = temp.value();
         mySM2.add(temp);
 
-        for (int i = 0; i < top - 1; i++) {
-            //top-1 because one line already printed in maxOfInput method
+        while (mySM.size() > 0) {
+            //mySM holds at most the top N pairs, one already moved above
             temp = mySM.removeFirst();
             mySM2.add(temp);
         }
@@ -11,6 +11,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeMap;
 
@@ -130,6 +131,9 @@ public final class TagCloudGenJava {
 
     /**
      * Sorts the words with respect to their occurrences and alphabetical order.
+     * Only the top {@code n} words are kept while the words are scanned, in a
+     * heap whose head is the kept word with the fewest occurrences, so this
+     * takes O(|words| log n) time and O(n) space besides {@code words}.
      *
      *
      * @param words
@@ -143,26 +147,30 @@ public final class TagCloudGenJava {
     public static List<Map.Entry<String, Integer>> sorter(
             Map<String, Integer> words, int n) {
 
-        List<Map.Entry<String, Integer>> sortedValues = new ArrayList<>();
-        List<Map.Entry<String, Integer>> sortedKeys = new ArrayList<>();
-
         Comparator<Map.Entry<String, Integer>> numerical = new IntegerLT();
         Comparator<Map.Entry<String, Integer>> alphabetical = new StringLT();
 
-        //transfer all words from input to a list
+        PriorityQueue<Map.Entry<String, Integer>> topValues;
+        topValues = new PriorityQueue<>(Math.max(n, 1), numerical.reversed());
+        List<Map.Entry<String, Integer>> sortedKeys = new ArrayList<>();
+
+        //keep the top n words of the input, dropping the others as they come
         for (Map.Entry<String, Integer> entry : words.entrySet()) {
-            sortedValues.add(entry);
+            if (topValues.size() < n) {
+                topValues.add(entry);
+            } else if (n > 0
+                    && numerical.compare(entry, topValues.peek()) < 0) {
+                topValues.poll();
+                topValues.add(entry);
+            }
         }
 
-        //sort the list by their numerical values
-        sortedValues.sort(numerical);
-
         max = 0;
-        min = sortedValues.get(0).getValue();
+        min = Integer.MAX_VALUE;
 
-        //remove words from the sortedValues
-        while (!sortedValues.isEmpty() && sortedKeys.size() < n) {
-            Map.Entry<String, Integer> temp = sortedValues.remove(0);
+        //move the kept words to sortedKeys
+        while (!topValues.isEmpty()) {
+            Map.Entry<String, Integer> temp = topValues.poll();
             sortedKeys.add(temp);
 
             if (sortedKeys.get(sortedKeys.size() - 1).getValue() > max) {
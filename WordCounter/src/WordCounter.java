@@ -159,7 +159,8 @@ public final class WordCounter {
      *          word from {@code in}
      *
      */
-    private static void process(SimpleReader in, Map<String, Integer> words) {
+    private static void process(SimpleReader in,
+            CountingMap4<String> words) {
 
         int pos = 0;
         Set<Character> exclusion = new Set1L<>();
@@ -182,19 +183,10 @@ public final class WordCounter {
                 //extract a word from {@code in}
                 String singleWord = nextWordOrSeparator(line, pos, exclusion);
 
-                //if the word is not in {@code words}, add the word in {@code words}
+                //count the word, adding it to {@code words} if not there yet
                 if (!exclusion.contains(singleWord.charAt(0))) {
 
-                    if (!words.hasKey(singleWord)) {
-
-                        words.add(singleWord, 1);
-                    } else {
-
-                        int occurrences = words.value(singleWord);
-                        occurrences++;
-                        words.replaceValue(singleWord, occurrences);
-
-                    }
+                    words.increment(singleWord);
 
                 }
 
@@ -270,7 +262,7 @@ public final class WordCounter {
         SimpleReader in = new SimpleReader1L();
         SimpleWriter out = new SimpleWriter1L();
 
-        Map<String, Integer> words = new Map1L<>();
+        CountingMap4<String> words = new CountingMap4<>();
         Queue<String> orderedQueue = new Queue1L<>();
         Comparator<String> alphabetical = new StringLT();
 